@@ -184,6 +184,56 @@ public final class StudioFlags {
 
   public static final Flag<Boolean> PROFILER_TRACEBOX =
     Flag.create(PROFILER, "tracebox", "Tracebox", "Tracebox for versions M,N,O,P of Android", false);
+
+  public static final Flag<Integer> PROFILER_DATASTORE_BATCH_SIZE = Flag.create(
+    PROFILER, "datastore.batch.size", "Profiler database event batch size",
+    "Number of events the profiler database accumulates before writing them in a single batch. " +
+    "Values of 1 or less write each event as soon as it is received.",
+    500);
+
+  public static final Flag<Integer> PROFILER_DATASTORE_COMMIT_INTERVAL_MS = Flag.create(
+    PROFILER, "datastore.commit.interval", "Profiler database commit interval",
+    "Interval in milliseconds at which pending events are written and the profiler database transaction is committed. " +
+    "Values of 0 or less only commit when the database is closed.",
+    1000);
+
+  public static final Flag<Boolean> PROFILER_DATASTORE_PARTITIONED_EVENTS = Flag.create(
+    PROFILER, "datastore.partitioned.events", "Query events from an in-memory partitioned store",
+    "Answer event group queries from an in-memory store partitioned by stream, kind and group instead of from SQLite. " +
+    "Events are still written to the profiler database.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_DATASTORE_RESTORE_PREVIOUS_RUN = Flag.create(
+    PROFILER, "datastore.restore.previous.run", "Restore profiler sessions of the previous run",
+    "On startup, copy the most recent sessions recorded before Studio was last closed into the profiler database, " +
+    "so they are listed in the sessions panel again.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_DATASTORE_POLL_SCHEDULER = Flag.create(
+    PROFILER, "datastore.poll.scheduler", "Poll profiler data on a shared adaptive scheduler",
+    "Run the profiler database pollers on a small shared thread pool that polls idle pollers less often and busy pollers more often, " +
+    "instead of on a dedicated thread per poller with a fixed period.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_PARALLEL_HEAP_DUMP_LOADING = Flag.create(
+    PROFILER, "memory.heapdump.parallel.loading", "Index heap dumps in parallel",
+    "Create and classify the instances of a heap dump on several threads instead of one while loading it.",
+    true);
+
+  public static final Flag<Boolean> PROFILER_MEMORY_MAPPED_HEAP_DUMP_LOADING = Flag.create(
+    PROFILER, "memory.heapdump.mapped.loading", "Parse heap dumps from a memory-mapped file",
+    "Write transferred heap dumps to a temp file and parse them through a memory-mapped buffer instead of keeping them on the IDE heap.",
+    true);
+
+  public static final Flag<Boolean> PROFILER_HEAP_DUMP_DOMINATOR_TREE = Flag.create(
+    PROFILER, "memory.heapdump.dominator.tree", "Compute heap dump retained sizes on a compact graph",
+    "Compute the dominator tree and retained sizes of heap dumps from a compact copy of the object graph instead of from perflib's objects.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_LIVE_ALLOCATION_CHECKPOINTS = Flag.create(
+    PROFILER, "memory.live.allocation.checkpoints", "Checkpoint live allocation tracking",
+    "Keep periodic checkpoints of the live instances during allocation tracking, so that selecting a range only replays the events since the nearest checkpoint.",
+    true);
   //endregion
 
   //region ML
@@ -382,6 +432,15 @@ public final class StudioFlags {
     RESOURCE_REPOSITORY, "trace.size", "Maximum Size of Resource Repository Update Trace",
     "Size of the in-memory cyclic buffer used for tracing of resource repository updates",
     10000);
+  public static final Flag<Boolean> RESOURCE_REPOSITORY_PARALLEL_LOADING = Flag.create(
+    RESOURCE_REPOSITORY, "parallel.loading", "Parallel Loading of Resource Folders",
+    "Parse the XML files of a resource folder on multiple threads when creating its resource repository",
+    false);
+  public static final Flag<Boolean> RESOURCE_REPOSITORY_LOCK_FREE_READS = Flag.create(
+    RESOURCE_REPOSITORY, "lock.free.reads", "Lock-Free Reads of Resource Folders",
+    "Serve resource lookups in a resource folder from an immutable snapshot updated after each incremental update instead of " +
+    "holding the global resource lock",
+    false);
   //endregion
 
   //region Run/Debug
@@ -642,6 +701,24 @@ public final class StudioFlags {
     "Enable Export/Import feature",
     true
   );
+
+  public static final Flag<Boolean> LOGCAT_OFF_HEAP_BACKLOG = Flag.create(
+    LOGCAT,
+    "off.heap.backlog",
+    "Keep the Logcat backlog outside the Java heap",
+    "Keeps the messages of the Logcat backlog in indexed chunks outside the Java heap, so that filters skip chunks that can't match " +
+    "without decoding them. Changing the value of this flag applies to newly created Logcat panels.",
+    false
+  );
+
+  public static final Flag<Boolean> LOGCAT_PARALLEL_RELOAD = Flag.create(
+    LOGCAT,
+    "parallel.reload",
+    "Reload Logcat messages in parallel chunks",
+    "Filters and formats chunks of the Logcat backlog in parallel when the filter or formatting changes, and shows the newest " +
+    "messages first. A reload in progress is cancelled when the filter changes again.",
+    false
+  );
   //endregion
 
   //region Gradle Project System
@@ -918,6 +995,10 @@ public final class StudioFlags {
     EMBEDDED_EMULATOR, "screenshot.statistics.interval", "Aggregation Interval for Screenshot Statistics",
     "Aggregation interval in seconds for statistics of received Emulator screenshots",
     120);
+  public static final Flag<Boolean> EMBEDDED_EMULATOR_SHARED_MEMORY_FRAMES = Flag.create(
+    EMBEDDED_EMULATOR, "shared.memory.frames", "Receive Emulator Display Frames Through Shared Memory",
+    "Makes the Emulator write display frames to a memory-mapped file instead of sending them over gRPC",
+    false);
   public static final Flag<Boolean> EMBEDDED_EMULATOR_TRACE_GRPC_CALLS = Flag.create(
     EMBEDDED_EMULATOR, "trace.grpc.calls", "Enable Emulator gRPC Tracing",
     "Enables tracing of most Emulator gRPC calls",
@@ -1464,6 +1545,11 @@ public final class StudioFlags {
     COMPOSE, "preview.loader.affinity", "Enable the class loading affinity.",
     "If enabled, the class loading will cache which class loaders are more likely to have the class.",
     true);
+
+  public static final Flag<Boolean> COMPOSE_PERSISTENT_CLASS_CACHE = Flag.create(
+    COMPOSE, "preview.persistent.class.cache", "Enable the persistent class cache.",
+    "If enabled, library classes transformed for rendering previews will be cached on disk and reused across IDE restarts.",
+    true);
   // endregion
 
   // region Network Inspector
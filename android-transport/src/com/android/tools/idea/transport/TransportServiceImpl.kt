@@ -16,7 +16,10 @@
 package com.android.tools.idea.transport
 
 import com.android.tools.datastore.DataStoreService
+import com.android.tools.datastore.poller.PollRunner
+import com.android.tools.datastore.poller.PollScheduler
 import com.android.tools.idea.diagnostics.crash.exception.NoPiiException
+import com.android.tools.idea.flags.StudioFlags
 import com.android.tools.idea.io.grpc.inprocess.InProcessChannelBuilder
 import com.android.tools.profiler.proto.Common
 import com.google.common.annotations.VisibleForTesting
@@ -40,12 +43,14 @@ class TransportServiceImpl @VisibleForTesting constructor() : TransportService {
   private val streamIdToServerMap: MutableMap<Long, EventStreamServer> = HashMap()
 
   override val logService = IntellijLogService()
+  private val pollScheduler = PollScheduler(POLL_SCHEDULER_THREAD_COUNT, logService)
   override val messageBus = ApplicationManager.getApplication().messageBus
 
   override fun dispose() {
     streamIdToServerMap.values.forEach(EventStreamServer::stop)
     streamIdToServerMap.clear()
     dataStoreService.shutdown()
+    pollScheduler.shutdown()
   }
 
   override fun registerStreamServer(streamType: Common.Stream.Type, streamServer: EventStreamServer): Common.Stream {
@@ -64,15 +69,27 @@ class TransportServiceImpl @VisibleForTesting constructor() : TransportService {
     }
   }
 
+  private fun execute(runnable: Runnable) {
+    if (runnable is PollRunner && StudioFlags.PROFILER_DATASTORE_POLL_SCHEDULER.get()) {
+      pollScheduler.schedule(runnable)
+    }
+    else {
+      ApplicationManager.getApplication().executeOnPooledThread(runnable)
+    }
+  }
+
   companion object {
     private val logger = Logger.getInstance(TransportServiceImpl::class.java)
+    private const val POLL_SCHEDULER_THREAD_COUNT = 2
   }
 
   init {
     val datastoreDirectory = Paths.get(PathManager.getSystemPath(), ".android").toString() + File.separator
-    dataStoreService = DataStoreService(TransportService.channelName, datastoreDirectory,
-                                        { runnable -> ApplicationManager.getApplication().executeOnPooledThread(runnable) }, logService)
+    dataStoreService = DataStoreService(TransportService.channelName, datastoreDirectory, ::execute, logService)
     dataStoreService.setNoPiiExceptionHandler { t -> logger.error(NoPiiException(t)) }
+    if (StudioFlags.PROFILER_DATASTORE_RESTORE_PREVIOUS_RUN.get()) {
+      ApplicationManager.getApplication().executeOnPooledThread { dataStoreService.restorePreviousRun() }
+    }
     deviceManager = TransportDeviceManager(dataStoreService, messageBus, this)
   }
 }
\ No newline at end of file
@@ -15,10 +15,17 @@
  */
 package com.android.tools.idea.configurations;
 
+import static com.android.ide.common.rendering.api.ResourceNamespace.RES_AUTO;
 import static com.android.tools.idea.testing.AndroidTestUtils.waitForUpdates;
 import static com.google.common.truth.Truth.assertThat;
 
+import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.resources.ResourceResolver;
+import com.android.ide.common.resources.ResourceValueMap;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.ide.common.resources.configuration.ScreenDimensionQualifier;
+import com.android.resources.ResourceType;
+import com.android.sdklib.IAndroidTarget;
 import com.android.sdklib.devices.Device;
 import com.android.sdklib.devices.Screen;
 import com.android.tools.configurations.Configuration;
@@ -26,15 +33,19 @@ import com.android.tools.configurations.ResourceResolverCache;
 import com.android.tools.idea.res.StudioResourceRepositoryManager;
 import com.android.tools.res.LocalResourceRepository;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Table;
 import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.psi.xml.XmlTagValue;
 import org.jetbrains.android.AndroidTestCase;
 import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
 
 public class ResourceResolverCacheTest extends AndroidTestCase {
 
@@ -115,8 +126,8 @@ public class ResourceResolverCacheTest extends AndroidTestCase {
     assertEquals(1, cache.myFrameworkResourceMap.size());
     String originalResolverMapKey = Iterables.getFirst(cache.myResolverMap.keySet(), null);
     String originalResourceMapKey = Iterables.getFirst(cache.myAppResourceMap.keySet(), null);
-    // Framework and App resource maps use the same key
-    assertEquals(originalResourceMapKey, Iterables.getFirst(cache.myFrameworkResourceMap.keySet(), null));
+    // The framework resource map key contains only the qualifiers used by framework resources.
+    String originalFrameworkMapKey = Iterables.getFirst(cache.myFrameworkResourceMap.keySet(), null);
 
     Device original = configuration.getDevice();
     Device.Builder builder = new Device.Builder(original);
@@ -137,7 +148,7 @@ public class ResourceResolverCacheTest extends AndroidTestCase {
     assertEquals(2, cache.myFrameworkResourceMap.size());
     assertContainsElements(cache.myResolverMap.keySet(), originalResolverMapKey);
     assertContainsElements(cache.myAppResourceMap.keySet(), originalResourceMapKey);
-    assertContainsElements(cache.myFrameworkResourceMap.keySet(), originalResourceMapKey);
+    assertContainsElements(cache.myFrameworkResourceMap.keySet(), originalFrameworkMapKey);
 
     // Get the custom key used for this device
     String customResolverMapKey = cache.myResolverMap.keySet().stream()
@@ -166,8 +177,59 @@ public class ResourceResolverCacheTest extends AndroidTestCase {
     assertEquals(2, cache.myFrameworkResourceMap.size());
     assertContainsElements(cache.myResolverMap.keySet(), originalResolverMapKey);
     assertContainsElements(cache.myAppResourceMap.keySet(), originalResourceMapKey);
-    assertContainsElements(cache.myFrameworkResourceMap.keySet(), originalResourceMapKey);
+    assertContainsElements(cache.myFrameworkResourceMap.keySet(), originalFrameworkMapKey);
     // We've only changed the theme so the resource maps won't change. They are indexed per device config.
     assertDoesntContain(cache.myResolverMap.keySet(), customResolverMapKey);
   }
+
+  public void testOnlyChangedResourceTypesAreConfiguredAgain() {
+    VirtualFile layoutFile = myFixture.copyFileToProject("render/layout1.xml", "res/layout/layout1.xml");
+    VirtualFile stringsFile = myFixture.copyFileToProject("javadoc/strings/strings.xml", "res/values/strings.xml");
+    Configuration configuration = ConfigurationManager.getOrCreateInstance(myModule).getConfiguration(layoutFile);
+    ResourceResolverCache cache = configuration.getSettings().getResolverCache();
+    LocalResourceRepository resources = StudioResourceRepositoryManager.getModuleResources(myFacet);
+    PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+    Document document = documentManager.getDocument(PsiManager.getInstance(getProject()).findFile(stringsFile));
+    assertNotNull(document);
+
+    // The first edit converts the strings file to PSI, which rescans it.
+    replaceString(document, "Cancel", "Cancel2");
+    waitForUpdates(resources);
+    assertEquals("Cancel2", configuration.getResourceResolver().findResValue("@string/cancel", false).getValue());
+    Table<ResourceNamespace, ResourceType, ResourceValueMap> appResources = Iterables.getOnlyElement(cache.myAppResourceMap.values());
+
+    // The second edit only changes a string.
+    replaceString(document, "Cancel2", "Cancel3");
+    waitForUpdates(resources);
+    assertEquals("Cancel3", configuration.getResourceResolver().findResValue("@string/cancel", false).getValue());
+    Table<ResourceNamespace, ResourceType, ResourceValueMap> newAppResources = Iterables.getOnlyElement(cache.myAppResourceMap.values());
+    assertNotSame(appResources, newAppResources);
+    assertNotSame(appResources.get(RES_AUTO, ResourceType.STRING), newAppResources.get(RES_AUTO, ResourceType.STRING));
+    assertSame(appResources.get(RES_AUTO, ResourceType.LAYOUT), newAppResources.get(RES_AUTO, ResourceType.LAYOUT));
+  }
+
+  public void testFrameworkResourcesAreSharedAcrossNonFrameworkQualifiers() {
+    VirtualFile file = myFixture.copyFileToProject("render/layout1.xml", "res/layout/layout1.xml");
+    Configuration configuration = ConfigurationManager.getOrCreateInstance(myModule).getConfiguration(file);
+    ResourceResolverCache cache = configuration.getSettings().getResolverCache();
+    IAndroidTarget target = configuration.getTarget();
+    assertNotNull(target);
+
+    // Framework resources don't depend on the screen dimension qualifier.
+    FolderConfiguration configuration1 = FolderConfiguration.copyOf(configuration.getFullConfig());
+    configuration1.addQualifier(new ScreenDimensionQualifier(1280, 768));
+    FolderConfiguration configuration2 = FolderConfiguration.copyOf(configuration.getFullConfig());
+    configuration2.addQualifier(new ScreenDimensionQualifier(1920, 1080));
+    assertSame(cache.getConfiguredFrameworkResources(target, configuration1), cache.getConfiguredFrameworkResources(target, configuration2));
+    assertEquals(1, cache.myFrameworkResourceMap.size());
+  }
+
+  private void replaceString(@NotNull Document document, @NotNull String oldText, @NotNull String newText) {
+    PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+    int offset = document.getText().indexOf(">" + oldText + "<") + 1;
+    WriteCommandAction.runWriteCommandAction(null, () -> {
+      document.replaceString(offset, offset + oldText.length(), newText);
+      documentManager.commitDocument(document);
+    });
+  }
 }
@@ -16,9 +16,12 @@
 package org.jetbrains.android.uipreview
 
 import com.google.common.base.Ticker
+import com.google.common.util.concurrent.MoreExecutors
 import com.intellij.openapi.module.Module
 import org.junit.Before
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 import org.mockito.Mock
 import org.mockito.MockitoAnnotations
 import kotlin.test.assertEquals
@@ -31,6 +34,9 @@ class ClassBinaryCacheManagerTest {
     override fun read(): Long = timeNanos
   }
 
+  @get:Rule
+  val tempFolder = TemporaryFolder()
+
   @Mock
   private lateinit var module: Module
 
@@ -105,4 +111,29 @@ class ClassBinaryCacheManagerTest {
 
     assertNull(moduleCache.get("a.b.c"))
   }
-}
\ No newline at end of file
+
+  @Test
+  fun testFallsBackToDiskCache() {
+    val cacheDirectory = tempFolder.newFolder("cache").toPath()
+    val libraryA = tempFolder.newFile("a.jar").apply { writeText("A") }.path
+    val libraryB = tempFolder.newFile("b.jar").apply { writeText("B") }.path
+    fun createDiskCache() = DiskClassBinaryCache(cacheDirectory, "1.0", 1000, 0, MoreExecutors.directExecutor())
+
+    createDiskCache().use { diskCache ->
+      val moduleCache = ClassBinaryCacheManager.getTestInstance(ManualTicker(), 100, 1, diskCache).getCache(module)
+      moduleCache.setDependencies(listOf(libraryA, libraryB))
+      moduleCache.put("a.b.c", "A", libraryA, "hello".toByteArray())
+    }
+
+    // A new manager, like after an IDE restart, finds the class on disk as long as its library is still a dependency.
+    createDiskCache().use { diskCache ->
+      val restartedModuleCache = ClassBinaryCacheManager.getTestInstance(ManualTicker(), 100, 1, diskCache).getCache(module)
+      restartedModuleCache.setDependencies(listOf(libraryA, libraryB))
+      assertEquals("hello", restartedModuleCache.get("a.b.c", "A")?.toString(Charsets.UTF_8))
+      assertNull(restartedModuleCache.get("a.b.c", "B"))
+
+      restartedModuleCache.setDependencies(listOf(libraryB))
+      assertNull(restartedModuleCache.get("a.b.c", "A"))
+    }
+  }
+}
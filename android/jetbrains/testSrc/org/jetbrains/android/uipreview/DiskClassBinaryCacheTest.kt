@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.uipreview
+
+import com.google.common.util.concurrent.MoreExecutors
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.Executor
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class DiskClassBinaryCacheTest {
+  @get:Rule
+  val tempFolder = TemporaryFolder()
+
+  private val cacheDirectory: Path by lazy { tempFolder.newFolder("cache").toPath() }
+  private val caches = mutableListOf<DiskClassBinaryCache>()
+
+  @After
+  fun tearDown() {
+    caches.forEach { it.close() }
+  }
+
+  private fun createCache(maxBytes: Long = 1000,
+                          prewarmBytes: Long = 0,
+                          codeVersion: String = "1.0",
+                          executor: Executor = MoreExecutors.directExecutor()) =
+    DiskClassBinaryCache(cacheDirectory, codeVersion, maxBytes, prewarmBytes, executor).also { caches.add(it) }
+
+  private fun createLibrary(name: String, content: String): String =
+    tempFolder.root.toPath().resolve(name).also { Files.writeString(it, content) }.toString()
+
+  private fun DiskClassBinaryCache.getString(fqcn: String, libraryPath: String, transformationId: String = "T") =
+    getKnownLibraryHash(libraryPath)?.let { get(fqcn, transformationId, setOf(it)) }?.second?.toString(Charsets.UTF_8)
+
+  @Test
+  fun testEntriesAreKeptAcrossInstances() {
+    val libraryA = createLibrary("a.jar", "A")
+    val libraryB = createLibrary("b.jar", "B")
+    createCache().apply {
+      put("a.b.c", "T", libraryA, "hello".toByteArray())
+      put("d.e.f", "T", libraryB, "bye".toByteArray())
+      put("d.e.f", "U", libraryB, "transformed bye".toByteArray())
+    }
+
+    listOf(createCache(), createCache(prewarmBytes = 1000)).forEach { cache ->
+      assertEquals("hello", cache.getString("a.b.c", libraryA))
+      assertEquals("bye", cache.getString("d.e.f", libraryB))
+      assertEquals("transformed bye", cache.getString("d.e.f", libraryB, "U"))
+      assertNull(cache.getString("a.b.c", libraryB))
+      assertNull(cache.getString("a.b.c", libraryA, "U"))
+    }
+  }
+
+  @Test
+  fun testEntriesAreKeyedByLibraryContent() {
+    val library = createLibrary("a.jar", "A")
+    val cache = createCache()
+    cache.put("a.b.c", "T", library, "hello".toByteArray())
+
+    // The same library in another location shares the entries.
+    val copy = createLibrary("copy.jar", "A")
+    cache.put("d.e.f", "T", copy, "bye".toByteArray())
+    assertEquals("bye", cache.getString("d.e.f", library))
+    assertEquals(cache.getKnownLibraryHash(library), cache.getKnownLibraryHash(copy))
+
+    // Once the library changes, its hash needs to be computed again.
+    Files.writeString(Path.of(library), "A2")
+    Files.setLastModifiedTime(Path.of(library), FileTime.fromMillis(0))
+    assertNull(cache.getKnownLibraryHash(library))
+    cache.put("x.y.z", "T", library, "new".toByteArray())
+    assertNull(cache.getString("a.b.c", library))
+    assertEquals("new", cache.getString("x.y.z", library))
+  }
+
+  @Test
+  fun testEntriesFromOtherCodeVersionsAreDropped() {
+    val library = createLibrary("a.jar", "A")
+    createCache(codeVersion = "1.0").put("a.b.c", "T", library, "hello".toByteArray())
+
+    val cache = createCache(codeVersion = "2.0")
+    assertNull(cache.getString("a.b.c", library))
+    assertEquals(0, cache.size)
+  }
+
+  @Test
+  fun testLeastRecentlyUsedEntriesAreEvicted() {
+    val library = createLibrary("a.jar", "A")
+    val cache = createCache(maxBytes = 100)
+    cache.put("a", "T", library, ByteArray(40))
+    cache.put("b", "T", library, ByteArray(40))
+    assertNotNull(cache.getString("a", library))
+
+    cache.put("c", "T", library, ByteArray(40))
+    assertNotNull(cache.getString("a", library))
+    assertNull(cache.getString("b", library))
+    assertNotNull(cache.getString("c", library))
+    assertEquals(80, cache.size)
+  }
+
+  @Test
+  fun testPackFileIsCompacted() {
+    val library = createLibrary("a.jar", "A")
+    val cache = createCache(maxBytes = 100)
+    repeat(50) { cache.put("class$it", "T", library, "class $it".padEnd(20).toByteArray()) }
+
+    // The 50 records take about 2.7kB, while the 5 live ones take about 270 bytes.
+    assertTrue(Files.size(cacheDirectory.resolve("classes.pack")) < 1000)
+    val reopened = createCache(maxBytes = 100)
+    assertEquals(cache.size, reopened.size)
+    assertEquals("class 49".padEnd(20), reopened.getString("class49", library))
+    assertNull(reopened.getString("class0", library))
+  }
+
+  @Test
+  fun testIncompleteRecordIsDropped() {
+    val library = createLibrary("a.jar", "A")
+    createCache().apply {
+      put("a.b.c", "T", library, "hello".toByteArray())
+      put("d.e.f", "T", library, "bye".toByteArray())
+    }
+    val packFile = cacheDirectory.resolve("classes.pack")
+    FileChannel.open(packFile, StandardOpenOption.WRITE).use { it.truncate(Files.size(packFile) - 1) }
+
+    val cache = createCache()
+    assertEquals("hello", cache.getString("a.b.c", library))
+    assertNull(cache.getString("d.e.f", library))
+
+    // New entries are appended after the last complete one.
+    cache.put("d.e.f", "T", library, "bye again".toByteArray())
+    assertEquals("bye again", createCache().getString("d.e.f", library))
+  }
+
+  @Test
+  fun testLookupsMissWhileLoading() {
+    val library = createLibrary("a.jar", "A")
+    createCache().put("a.b.c", "T", library, "hello".toByteArray())
+
+    val tasks = ArrayDeque<Runnable>()
+    val cache = createCache(executor = { tasks.add(it) })
+    val libraryHash = createCache().getKnownLibraryHash(library)!!
+    assertNull(cache.getKnownLibraryHash(library))
+    assertNull(cache.get("a.b.c", "T", setOf(libraryHash)))
+    val generation = cache.libraryHashGeneration
+
+    while (tasks.isNotEmpty()) tasks.removeFirst().run()
+    assertTrue(cache.libraryHashGeneration > generation)
+    assertEquals("hello", cache.getString("a.b.c", library))
+  }
+
+  @Test
+  fun testClosedCacheIsEmpty() {
+    val library = createLibrary("a.jar", "A")
+    val cache = createCache()
+    cache.put("a.b.c", "T", library, "hello".toByteArray())
+    cache.close()
+
+    assertNull(cache.getString("a.b.c", library))
+    cache.put("d.e.f", "T", library, "bye".toByteArray())
+    assertNull(createCache().getString("d.e.f", library))
+    assertEquals("hello", createCache().getString("a.b.c", library))
+  }
+
+  @Test
+  fun testCacheIsDisabledWhileLockedByAnotherProcess() {
+    val library = createLibrary("a.jar", "A")
+    createCache().apply {
+      put("a.b.c", "T", library, "hello".toByteArray())
+      close()
+    }
+
+    // A lock taken through another channel stands for another process.
+    FileChannel.open(cacheDirectory.resolve("cache.lock"), StandardOpenOption.WRITE).use { channel ->
+      channel.lock()
+      val cache = createCache()
+      assertNull(cache.getString("a.b.c", library))
+      cache.put("d.e.f", "T", library, "bye".toByteArray())
+      assertEquals(0, cache.size)
+      cache.close()
+    }
+
+    val cache = createCache()
+    assertEquals("hello", cache.getString("a.b.c", library))
+    assertNull(cache.getString("d.e.f", library))
+  }
+}
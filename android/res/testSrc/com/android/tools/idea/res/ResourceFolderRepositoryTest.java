@@ -55,6 +55,7 @@ import com.android.resources.ResourceType;
 import com.android.testutils.TestUtils;
 import com.android.tools.configurations.Configuration;
 import com.android.tools.idea.configurations.ConfigurationManager;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.rendering.DrawableRenderer;
 import com.android.tools.idea.testing.AndroidProjectRule;
 import com.android.tools.res.LocalResourceRepository;
@@ -3959,6 +3960,76 @@ public class ResourceFolderRepositoryTest {
     assertContainSameData(myFacet, repository, fromCacheFile);
   }
 
+  @Test
+  public void parallelLoading() {
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
+    myFixture.copyFileToProject(LAYOUT1, "res/layout-xlarge-land/layout.xml");
+    myFixture.copyFileToProject(LAYOUT_WITH_DATA_BINDING, "res/layout/layout_with_data_binding.xml");
+    for (int i = 0; i < 40; i++) {
+      myFixture.copyFileToProject(LAYOUT1, "res/layout/layout" + i + ".xml");
+    }
+    myFixture.copyFileToProject(DRAWABLE, "res/drawable/logo.png");
+    myFixture.copyFileToProject(VALUES1, "res/values/myvalues.xml");
+    myFixture.copyFileToProject(STRINGS, "res/values-fr/not_really_french_strings.xml");
+    ResourceFolderRepository repository = createRepository(false);
+
+    StudioFlags.RESOURCE_REPOSITORY_PARALLEL_LOADING.override(true);
+    try {
+      ResourceFolderRepository loadedInParallel = createRepository(false);
+      assertThat(loadedInParallel.getNumXmlFilesLoadedInitially()).isEqualTo(repository.getNumXmlFilesLoadedInitially());
+      assertThat(loadedInParallel.getNumXmlFilesLoadedInitiallyFromSources()).isEqualTo(45);
+      assertContainSameData(myFacet, repository, loadedInParallel);
+    }
+    finally {
+      StudioFlags.RESOURCE_REPOSITORY_PARALLEL_LOADING.clearOverride();
+    }
+  }
+
+  @Test
+  public void lockFreeReads() {
+    VirtualFile file1 = myFixture.copyFileToProject(VALUES1, "res/values/myvalues.xml");
+    PsiFile psiFile1 = PsiManager.getInstance(myProject).findFile(file1);
+    assertThat(psiFile1).isNotNull();
+
+    StudioFlags.RESOURCE_REPOSITORY_LOCK_FREE_READS.override(true);
+    try {
+      ResourceFolderRepository repository = createRegisteredRepository();
+      Multimap<String, ResourceItem> stringsBefore = repository.getResources(RES_AUTO, ResourceType.STRING);
+      assertThat(stringsBefore.keySet()).hasSize(8);
+      assertThat(repository.getResourceTypes(RES_AUTO)).contains(ResourceType.STRING);
+      assertThat(repository.hasResources(RES_AUTO, ResourceType.STRING, "new_string")).isFalse();
+      long generation = repository.getModificationCount();
+      long stringGeneration = repository.getModificationCount(RES_AUTO, ResourceType.STRING);
+      long integerGeneration = repository.getModificationCount(RES_AUTO, ResourceType.INTEGER);
+
+      PsiDocumentManager documentManager = PsiDocumentManager.getInstance(myProject);
+      Document document = documentManager.getDocument(psiFile1);
+      assertThat(document).isNotNull();
+      int offset = document.getText().indexOf("    <item type");
+      WriteCommandAction.runWriteCommandAction(null, () -> {
+        document.insertString(offset, "<string name=\"new_string\">New String</string>");
+        documentManager.commitDocument(document);
+      });
+      waitForUpdates(repository);
+
+      // The update is visible once it has been applied, while the previously returned resources stay unchanged.
+      assertThat(repository.hasResources(RES_AUTO, ResourceType.STRING, "new_string")).isTrue();
+      assertThat(repository.getResources(RES_AUTO, ResourceType.STRING, "new_string").get(0).getResourceValue().getValue())
+        .isEqualTo("New String");
+      assertThat(repository.getResourceNames(RES_AUTO, ResourceType.STRING)).hasSize(9);
+      assertThat(stringsBefore.keySet()).hasSize(8);
+      // Resource types that didn't change are still found.
+      assertThat(repository.hasResources(RES_AUTO, ResourceType.INTEGER, "card_flip_time_full")).isTrue();
+      // The modification counts are updated together with the snapshot.
+      assertThat(repository.getModificationCount()).isGreaterThan(generation);
+      assertThat(repository.getModificationCount(RES_AUTO, ResourceType.STRING)).isGreaterThan(stringGeneration);
+      assertThat(repository.getModificationCount(RES_AUTO, ResourceType.INTEGER)).isEqualTo(integerGeneration);
+    }
+    finally {
+      StudioFlags.RESOURCE_REPOSITORY_LOCK_FREE_READS.clearOverride();
+    }
+  }
+
   @Test
   public void invalidateCache() {
     myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
@@ -4079,6 +4150,35 @@ public class ResourceFolderRepositoryTest {
     assertThat(fromCacheFile.hasResources(RES_AUTO, ResourceType.STRING, "hello_there")).isTrue();
   }
 
+  @Test
+  public void serializationEditXmlFileLoadsOtherFilesFromCache() throws Exception {
+    VirtualFile file1 = myFixture.copyFileToProject(STRINGS, "res/values/strings.xml");
+    myFixture.copyFileToProject(VALUES1, "res/values/myvalues.xml");
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
+    File file1AsFile = virtualToIoFile(file1);
+    ResourceFolderRepository repository = createRepository(true);
+    assertThat(repository.getNumXmlFilesLoadedInitiallyFromSources()).isEqualTo(3);
+
+    String newFileContent = FileUtilRt.loadFile(file1AsFile).replace("hello_world", "hello_there");
+    FileUtil.writeToFile(file1AsFile, newFileContent);
+    if (!file1AsFile.setLastModified(file1AsFile.lastModified() + 2000)) {
+      // Not supported on this platform?
+      return;
+    }
+    file1.refresh(false, false);
+
+    // Only the edited file is parsed, the resources of the other files come from their sections of the cache file.
+    ResourceFolderRepository fromCacheFile = createRepository(false);
+    assertThat(fromCacheFile.getNumXmlFilesLoadedInitially()).isEqualTo(3);
+    assertThat(fromCacheFile.getNumXmlFilesLoadedInitiallyFromSources()).isEqualTo(1);
+
+    assertThat(fromCacheFile.hasResources(RES_AUTO, ResourceType.STRING, "hello_there")).isTrue();
+    assertThat(fromCacheFile.hasResources(RES_AUTO, ResourceType.STRING, "hello_world")).isFalse();
+    assertThat(fromCacheFile.hasResources(RES_AUTO, ResourceType.LAYOUT, "layout")).isTrue();
+    assertThat(fromCacheFile.hasResources(RES_AUTO, ResourceType.ID, "noteArea")).isTrue();
+    assertThat(fromCacheFile.hasResources(RES_AUTO, ResourceType.STYLE, "DarkActionBar")).isTrue();
+  }
+
   @Test
   public void serializationAddXmlFileAndLoad() {
     myFixture.copyFileToProject(STRINGS, "res/values/strings.xml");
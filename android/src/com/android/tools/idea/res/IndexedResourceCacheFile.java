@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.utils.Base128InputStream;
+import com.android.utils.Base128OutputStream;
+import com.intellij.util.io.ByteBufferUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Resource cache file consisting of independently decodable sections, one per resource file, and an index of the sections.
+ * The layout of the file is:
+ * <pre>
+ *   header | section 1 | ... | section N | index | index length (4 bytes, big endian)
+ * </pre>
+ * Each index entry contains the path of the resource file relative to the resource directory, the
+ * {@link FileTimeStampLengthHasher} hash of the file, if validity of the section depends on it, and the position
+ * of the section. The file is memory-mapped while being read, so that sections of resource files that changed
+ * since the cache was written are skipped without being decoded.
+ */
+final class IndexedResourceCacheFile implements Closeable {
+  private static final int INDEX_LENGTH_SIZE = Integer.BYTES;
+
+  @NotNull private final MappedByteBuffer myBuffer;
+  private final int mySectionsStart;
+  @NotNull private final List<Entry> myEntries;
+
+  private IndexedResourceCacheFile(@NotNull MappedByteBuffer buffer, int sectionsStart, @NotNull List<Entry> entries) {
+    myBuffer = buffer;
+    mySectionsStart = sectionsStart;
+    myEntries = entries;
+  }
+
+  /**
+   * Memory-maps the given cache file and reads its index.
+   *
+   * @param cacheFile the cache file to read
+   * @param header the expected header of the cache file
+   * @param hashFunction returns the current {@link FileTimeStampLengthHasher} hash of the resource file with the given
+   *     relative path, used to determine validity of the sections
+   * @return the opened cache file, or null if the header of the file doesn't match
+   */
+  @Nullable
+  static IndexedResourceCacheFile open(@NotNull Path cacheFile, @NotNull byte[] header, @NotNull Function<String, byte[]> hashFunction)
+      throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    boolean success = false;
+    try {
+      int size = buffer.limit();
+      if (size < header.length + INDEX_LENGTH_SIZE) {
+        return null;
+      }
+      try (Base128InputStream stream = new Base128InputStream(new ByteBufferInputStream(slice(buffer, 0, header.length)))) {
+        if (!stream.validateContents(header)) {
+          return null;
+        }
+      }
+      int indexLength = buffer.getInt(size - INDEX_LENGTH_SIZE);
+      int indexStart = size - INDEX_LENGTH_SIZE - indexLength;
+      if (indexLength < 0 || indexStart < header.length) {
+        throw Base128InputStream.StreamFormatException.invalidFormat();
+      }
+      List<Entry> entries;
+      int sectionsLength;
+      try (Base128InputStream stream = new Base128InputStream(new ByteBufferInputStream(slice(buffer, indexStart, indexLength)))) {
+        sectionsLength = stream.readInt();
+        int count = stream.readInt();
+        entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          String relativePath = stream.readString();
+          if (relativePath == null) {
+            throw Base128InputStream.StreamFormatException.invalidFormat();
+          }
+          boolean hashed = stream.readInt() != 0;
+          boolean valid = !hashed || stream.validateContents(hashFunction.apply(relativePath));
+          entries.add(new Entry(relativePath, valid, stream.readInt(), stream.readInt()));
+        }
+      }
+      int sectionsStart = indexStart - sectionsLength;
+      if (sectionsStart < header.length) {
+        throw Base128InputStream.StreamFormatException.invalidFormat();
+      }
+      for (Entry entry : entries) {
+        if (entry.myOffset < 0 || entry.myLength < 0 || entry.myOffset + entry.myLength > sectionsLength) {
+          throw Base128InputStream.StreamFormatException.invalidFormat();
+        }
+      }
+      success = true;
+      return new IndexedResourceCacheFile(buffer, sectionsStart, entries);
+    }
+    finally {
+      if (!success) {
+        ByteBufferUtil.cleanBuffer(buffer);
+      }
+    }
+  }
+
+  /**
+   * Returns the index entries in the order the sections were written in.
+   */
+  @NotNull
+  List<Entry> getEntries() {
+    return myEntries;
+  }
+
+  /**
+   * Opens a stream reading the section of the given entry. The stream has to be closed before this cache file.
+   */
+  @NotNull
+  Base128InputStream openSection(@NotNull Entry entry) {
+    return new Base128InputStream(new ByteBufferInputStream(slice(myBuffer, mySectionsStart + entry.myOffset, entry.myLength)));
+  }
+
+  /**
+   * Unmaps the cache file, so that it can be replaced while the JVM is still running.
+   */
+  @Override
+  public void close() {
+    ByteBufferUtil.cleanBuffer(myBuffer);
+  }
+
+  /**
+   * Writes the index and the given sections to the stream. The header is expected to be already written.
+   */
+  static void write(@NotNull Base128OutputStream stream, @NotNull List<Section> sections) throws IOException {
+    ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    try (Base128OutputStream index = new Base128OutputStream(indexBytes)) {
+      int sectionsLength = 0;
+      for (Section section : sections) {
+        sectionsLength += section.myContent.length;
+      }
+      index.writeInt(sectionsLength);
+      index.writeInt(sections.size());
+      int offset = 0;
+      for (Section section : sections) {
+        index.writeString(section.myRelativePath);
+        index.writeInt(section.myHash == null ? 0 : 1);
+        if (section.myHash != null) {
+          index.write(section.myHash);
+        }
+        index.writeInt(offset);
+        index.writeInt(section.myContent.length);
+        offset += section.myContent.length;
+      }
+    }
+
+    for (Section section : sections) {
+      stream.write(section.myContent);
+    }
+    stream.write(indexBytes.toByteArray());
+    stream.write(ByteBuffer.allocate(INDEX_LENGTH_SIZE).putInt(indexBytes.size()).array());
+  }
+
+  @NotNull
+  private static ByteBuffer slice(@NotNull ByteBuffer buffer, int offset, int length) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset).limit(offset + length);
+    return slice.slice();
+  }
+
+  /**
+   * Index entry of a section of a cache file.
+   */
+  static final class Entry {
+    @NotNull private final String myRelativePath;
+    private final boolean myValid;
+    private final int myOffset;
+    private final int myLength;
+
+    private Entry(@NotNull String relativePath, boolean valid, int offset, int length) {
+      myRelativePath = relativePath;
+      myValid = valid;
+      myOffset = offset;
+      myLength = length;
+    }
+
+    /**
+     * Returns the path of the resource file relative to the resource directory.
+     */
+    @NotNull
+    String getRelativePath() {
+      return myRelativePath;
+    }
+
+    /**
+     * Returns false if the hash of the resource file doesn't match the one the file had when the section was written.
+     * Sections of files that aren't parsed, e.g. PNG drawables, stay valid when the contents of the file change.
+     */
+    boolean isValid() {
+      return myValid;
+    }
+  }
+
+  /**
+   * Serialized resources of a single resource file to be written to a cache file. The hash is null if the resources don't depend
+   * on the contents of the file.
+   */
+  static final class Section {
+    @NotNull private final String myRelativePath;
+    @Nullable private final byte[] myHash;
+    @NotNull private final byte[] myContent;
+
+    Section(@NotNull String relativePath, @Nullable byte[] hash, @NotNull byte[] content) {
+      myRelativePath = relativePath;
+      myHash = hash;
+      myContent = content;
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    @NotNull private final ByteBuffer myBuffer;
+
+    ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+      myBuffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return myBuffer.hasRemaining() ? myBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!myBuffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(length, myBuffer.remaining());
+      myBuffer.get(bytes, offset, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skipped = (int)Math.max(0, Math.min(n, myBuffer.remaining()));
+      myBuffer.position(myBuffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return myBuffer.remaining();
+    }
+  }
+}
@@ -65,17 +65,22 @@ import com.android.resources.base.ResourceSerializationUtil;
 import com.android.resources.base.ResourceSourceFile;
 import com.android.sdklib.IAndroidTarget;
 import com.android.tools.idea.configurations.ConfigurationManager;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.util.FileExtensions;
 import com.android.tools.module.ModuleKeyManager;
 import com.android.tools.res.LocalResourceRepository;
 import com.android.tools.sdk.AndroidTargetData;
 import com.android.utils.Base128InputStream;
+import com.android.utils.Base128OutputStream;
 import com.android.utils.SdkUtils;
 import com.android.utils.TraceUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.intellij.ide.highlighter.XmlFileType;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ReadAction;
@@ -118,6 +123,7 @@ import com.intellij.psi.xml.XmlTag;
 import com.intellij.psi.xml.XmlText;
 import com.intellij.serviceContainer.AlreadyDisposedException;
 import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -131,6 +137,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -142,8 +149,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.sdk.AndroidPlatforms;
 import org.jetbrains.annotations.Contract;
@@ -177,7 +189,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
    * Increment when making changes that may affect content of repository cache files.
    * Used together with CachingData.codeVersion. Important for developer builds.
    */
-  static final String CACHE_FILE_FORMAT_VERSION = "2";
+  static final String CACHE_FILE_FORMAT_VERSION = "3";
   private static final byte[] CACHE_FILE_HEADER = "Resource cache".getBytes(UTF_8);
   /**
    * Maximum fraction of resources out of date in the cache for the cache to be considered fresh.
@@ -189,6 +201,10 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
    * keeping cache fresh is pretty low.
    */
   private static final double CACHE_STALENESS_THRESHOLD = 0.05;
+  /** Number of files parsed by a single task when loading the repository in parallel. */
+  private static final int PARALLEL_LOADING_BATCH_SIZE = 16;
+  /** Maximum time a continuous stream of update actions may delay the publication of a new snapshot. */
+  private static final long MAX_SNAPSHOT_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(100);
   private static final Comparator<ResourceItemSource<?>> SOURCE_COMPARATOR =
       Comparator.comparing(ResourceItemSource::getFolderConfiguration);
   private static final Logger LOG = Logger.getInstance(ResourceFolderRepository.class);
@@ -216,6 +232,32 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   @GuardedBy("ITEM_MAP_LOCK")
   @NotNull private final Map<ResourceType, ListMultimap<String, ResourceItem>> myResourceTable = new EnumMap<>(ResourceType.class);
 
+  /**
+   * Immutable copy of {@link #myResourceTable} used for lookups that don't acquire {@link #ITEM_MAP_LOCK}. It is replaced after
+   * the initial load and once the pending update actions have been applied, so readers see the state left by a completed
+   * update. Null while the repository is being created and when {@link StudioFlags#RESOURCE_REPOSITORY_LOCK_FREE_READS} is
+   * disabled.
+   */
+  @Nullable private volatile Map<ResourceType, ListMultimap<String, ResourceItem>> mySnapshot;
+  /** Resource types of {@link #myResourceTable} that may have changed since {@link #mySnapshot} was published. */
+  @SuppressWarnings("InstanceGuardedByStatic")
+  @GuardedBy("ITEM_MAP_LOCK")
+  @NotNull private final Set<ResourceType> myTypesChangedSinceSnapshot = EnumSet.noneOf(ResourceType.class);
+  private final boolean myLockFreeReads = StudioFlags.RESOURCE_REPOSITORY_LOCK_FREE_READS.get();
+  /** Modification counts of individual resource types indexed by {@link ResourceType#ordinal()}. */
+  @NotNull private final AtomicLongArray myTypeModificationCounts = new AtomicLongArray(ResourceType.values().length);
+  /**
+   * Modification count to be set when the next snapshot is published, or 0 if there is none. The modification counts are not
+   * changed before the snapshot, otherwise a reader could cache the old contents of the repository under the new count.
+   */
+  @SuppressWarnings("InstanceGuardedByStatic")
+  @GuardedBy("ITEM_MAP_LOCK")
+  private long myPendingModificationCount;
+  /** Resource types whose modification counts are set to {@link #myPendingModificationCount} when the next snapshot is published. */
+  @SuppressWarnings("InstanceGuardedByStatic")
+  @GuardedBy("ITEM_MAP_LOCK")
+  @NotNull private final Set<ResourceType> myTypesWithPendingModificationCount = EnumSet.noneOf(ResourceType.class);
+
   @NotNull private final ConcurrentMap<VirtualFile, ResourceItemSource<?>> mySources = new ConcurrentHashMap<>();
   @NotNull private final PsiManager myPsiManager;
   @NotNull private final PsiNameHelper myPsiNameHelper;
@@ -292,6 +334,10 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
     Loader loader = new Loader(this, cachingData);
     loader.load();
+    publishSnapshot();
+    for (int i = 0; i < myTypeModificationCounts.length(); i++) {
+      myTypeModificationCounts.set(i, getModificationCount());
+    }
 
     Disposer.register(myFacet, updateExecutor::shutdownNow);
     ResourceUpdateTracer.logDirect(() ->
@@ -508,6 +554,10 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   @NotNull
   public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
     if (visitor.shouldVisitNamespace(myNamespace)) {
+      Map<ResourceType, ListMultimap<String, ResourceItem>> snapshot = mySnapshot;
+      if (snapshot != null) {
+        return acceptByResources(snapshot, visitor);
+      }
       synchronized (ITEM_MAP_LOCK) {
         if (acceptByResources(myResourceTable, visitor) == ResourceVisitor.VisitResult.ABORT) {
           return ResourceVisitor.VisitResult.ABORT;
@@ -533,10 +583,139 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   @GuardedBy("ITEM_MAP_LOCK")
   @NotNull
   private ListMultimap<String, ResourceItem> getOrCreateMap(@NotNull ResourceType type) {
+    myTypesChangedSinceSnapshot.add(type);
     // Use LinkedListMultimap to preserve ordering for editors that show original order.
     return myResourceTable.computeIfAbsent(type, k -> LinkedListMultimap.create());
   }
 
+  /**
+   * Returns the map of the given resource type for modification, or null if there are no resources of that type.
+   */
+  @SuppressWarnings("InstanceGuardedByStatic")
+  @GuardedBy("ITEM_MAP_LOCK")
+  @Nullable
+  private ListMultimap<String, ResourceItem> getMapForUpdate(@NotNull ResourceType type) {
+    ListMultimap<String, ResourceItem> map = myResourceTable.get(type);
+    if (map != null) {
+      myTypesChangedSinceSnapshot.add(type);
+    }
+    return map;
+  }
+
+  /**
+   * Replaces {@link #mySnapshot} by a copy of the current contents of the repository and then sets the modification counts
+   * of the changes it contains. Only the maps of the resource types that changed since the previous snapshot are copied.
+   * Called on the thread applying the updates, so no update is in progress while the copy is made.
+   */
+  private void publishSnapshot() {
+    synchronized (ITEM_MAP_LOCK) {
+      Map<ResourceType, ListMultimap<String, ResourceItem>> previous = mySnapshot;
+      if (myLockFreeReads && (previous == null || !myTypesChangedSinceSnapshot.isEmpty())) {
+        Map<ResourceType, ListMultimap<String, ResourceItem>> snapshot = new EnumMap<>(ResourceType.class);
+        if (previous != null) {
+          snapshot.putAll(previous);
+        }
+        for (ResourceType type : previous == null ? myResourceTable.keySet() : myTypesChangedSinceSnapshot) {
+          ListMultimap<String, ResourceItem> map = myResourceTable.get(type);
+          if (map == null || map.isEmpty()) {
+            snapshot.remove(type);
+          }
+          else {
+            snapshot.put(type, ImmutableListMultimap.copyOf(map));
+          }
+        }
+        myTypesChangedSinceSnapshot.clear();
+        mySnapshot = snapshot;
+      }
+
+      if (myPendingModificationCount != 0) {
+        for (ResourceType type : myTypesWithPendingModificationCount) {
+          myTypeModificationCounts.set(type.ordinal(), myPendingModificationCount);
+        }
+        setModificationCount(myPendingModificationCount);
+        myTypesWithPendingModificationCount.clear();
+        myPendingModificationCount = 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the snapshot of the resources of the given type, or null if lookups have to go through {@link #getMap}.
+   */
+  @Nullable
+  private ListMultimap<String, ResourceItem> getSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    Map<ResourceType, ListMultimap<String, ResourceItem>> snapshot = mySnapshot;
+    if (snapshot == null) {
+      return null;
+    }
+    ListMultimap<String, ResourceItem> map = namespace.equals(myNamespace) ? snapshot.get(type) : null;
+    return map == null ? ImmutableListMultimap.of() : map;
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull String resourceName) {
+    ListMultimap<String, ResourceItem> map = getSnapshot(namespace, resourceType);
+    return map == null ? super.getResources(namespace, resourceType, resourceName) : map.get(resourceName);
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull Predicate<ResourceItem> filter) {
+    ListMultimap<String, ResourceItem> map = getSnapshot(namespace, resourceType);
+    if (map == null) {
+      return super.getResources(namespace, resourceType, filter);
+    }
+    ImmutableList.Builder<ResourceItem> builder = ImmutableList.builder();
+    for (ResourceItem item : map.values()) {
+      if (filter.test(item)) {
+        builder.add(item);
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  @NotNull
+  public ListMultimap<String, ResourceItem> getResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    ListMultimap<String, ResourceItem> map = getSnapshot(namespace, resourceType);
+    return map == null ? super.getResources(namespace, resourceType) : map;
+  }
+
+  @Override
+  @NotNull
+  public Set<String> getResourceNames(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    ListMultimap<String, ResourceItem> map = getSnapshot(namespace, resourceType);
+    return map == null ? super.getResourceNames(namespace, resourceType) : ImmutableSet.copyOf(map.keySet());
+  }
+
+  @Override
+  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType, @NotNull String resourceName) {
+    ListMultimap<String, ResourceItem> map = getSnapshot(namespace, resourceType);
+    return map == null ? super.hasResources(namespace, resourceType, resourceName) : map.containsKey(resourceName);
+  }
+
+  @Override
+  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    ListMultimap<String, ResourceItem> map = getSnapshot(namespace, resourceType);
+    return map == null ? super.hasResources(namespace, resourceType) : !map.isEmpty();
+  }
+
+  @Override
+  @NotNull
+  public Set<ResourceType> getResourceTypes(@NotNull ResourceNamespace namespace) {
+    Map<ResourceType, ListMultimap<String, ResourceItem>> snapshot = mySnapshot;
+    if (snapshot == null) {
+      return super.getResourceTypes(namespace);
+    }
+    // The snapshot contains no empty maps.
+    return namespace.equals(myNamespace) ? Sets.immutableEnumSet(snapshot.keySet()) : ImmutableSet.of();
+  }
+
   @Override
   @NotNull
   public ResourceNamespace getNamespace() {
@@ -804,6 +983,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     if (wasEmpty) {
       try {
         updateExecutor.execute(() -> {
+          // The snapshot is published once the queue is drained rather than after every action, so that a burst of edits
+          // copies the changed maps only once.
+          long lastPublishedNs = System.nanoTime();
           while (true) {
             Runnable action;
             synchronized (updateQueue) {
@@ -826,7 +1008,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                                              TraceUtils.getStackTrace(e));
               LOG.error(e);
             }
+            if (System.nanoTime() - lastPublishedNs > MAX_SNAPSHOT_DELAY_NS) {
+              publishSnapshot();
+              lastPublishedNs = System.nanoTime();
+            }
           }
+          publishSnapshot();
         });
       }
       catch (RejectedExecutionException ignore) {
@@ -838,7 +1025,11 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   @Override
   public void invokeAfterPendingUpdatesFinish(@NotNull Executor executor, @NotNull Runnable callback) {
     ResourceUpdateTracer.log(() -> getSimpleId(this) + ".invokeAfterPendingUpdatesFinish " + callback);
-    scheduleUpdate(() -> executor.execute(callback));
+    scheduleUpdate(() -> {
+      // Make the results of the preceding updates visible to the callback.
+      publishSnapshot();
+      executor.execute(callback);
+    });
   }
 
   @Nullable
@@ -896,7 +1087,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       if (added || removed) {
         // TODO: Consider doing a deeper diff of the changes to the resource items
         //       to determine if the removed and added items actually differ.
-        setModificationCount(ourModificationCounter.incrementAndGet());
+        incrementModificationCount(ResourceType.values());
         invalidateParentCaches(this, ResourceType.values());
       }
     } else if (checkResourceFilename(file, folderType)) {
@@ -915,7 +1106,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
           // to update the id's:
           Set<String> idsBefore = new HashSet<>();
           synchronized (ITEM_MAP_LOCK) {
-            ListMultimap<String, ResourceItem> idMultimap = myResourceTable.get(ResourceType.ID);
+            ListMultimap<String, ResourceItem> idMultimap = getMapForUpdate(ResourceType.ID);
             if (idMultimap != null) {
               List<PsiResourceItem> idItems = new ArrayList<>();
               for (PsiResourceItem item : psiResourceFile) {
@@ -962,7 +1153,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
           }
 
           // Identities may have changed even if the ids are the same, so update maps.
-          setModificationCount(ourModificationCounter.incrementAndGet());
+          incrementModificationCount(ResourceType.ID);
           invalidateParentCaches(this, ResourceType.ID);
         }
       } else {
@@ -994,7 +1185,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
               scanFileResourceFileAsPsi(file, folderType, folderConfiguration, type, idGeneratingFile, result);
             }
           }
-          setModificationCount(ourModificationCounter.incrementAndGet());
+          incrementModificationCount(ResourceType.values());
           invalidateParentCaches(this, ResourceType.values());
         }
       }
@@ -1050,7 +1241,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       for (Iterator<PsiResourceItem> sourceIter = source.iterator(); sourceIter.hasNext();) {
         PsiResourceItem item = sourceIter.next();
         if (item.wasTag(xmlTag)) {
-          ListMultimap<String, ResourceItem> map = myResourceTable.get(resourceType);
+          ListMultimap<String, ResourceItem> map = getMapForUpdate(resourceType);
           List<ResourceItem> items = map.get(item.getName());
           for (Iterator<ResourceItem> iter = items.iterator(); iter.hasNext(); ) {
             ResourceItem candidate = iter.next();
@@ -1078,7 +1269,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
     synchronized (ITEM_MAP_LOCK) {
       for (ResourceItem item : source) {
-        ListMultimap<String, ResourceItem> map = myResourceTable.get(item.getType());
+        ListMultimap<String, ResourceItem> map = getMapForUpdate(item.getType());
         List<ResourceItem> items = map.get(item.getName());
         for (Iterator<ResourceItem> iter = items.iterator(); iter.hasNext(); ) {
           ResourceItem candidate = iter.next();
@@ -1144,6 +1335,30 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     super.setModificationCount(count);
   }
 
+  /**
+   * Increments the modification count of the repository and of the given resource types.
+   */
+  private void incrementModificationCount(@NotNull ResourceType... types) {
+    long count = ourModificationCounter.incrementAndGet();
+    if (myLockFreeReads) {
+      // Readers of the snapshot must not see the new counts before the changes, so they are set by publishSnapshot.
+      synchronized (ITEM_MAP_LOCK) {
+        Collections.addAll(myTypesWithPendingModificationCount, types);
+        myPendingModificationCount = count;
+      }
+      return;
+    }
+    for (ResourceType type : types) {
+      myTypeModificationCounts.set(type.ordinal(), count);
+    }
+    setModificationCount(count);
+  }
+
+  @Override
+  public long getModificationCount(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    return namespace.equals(myNamespace) ? myTypeModificationCounts.get(type.ordinal()) : 0;
+  }
+
   /**
    * PSI listener which keeps the repository up to date. It handles simple edits synchronously and schedules rescans for other events.
    *
@@ -1201,7 +1416,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                           synchronized (ITEM_MAP_LOCK) {
                             getOrCreateMap(type).put(name, item);
                             psiResourceFile.addItem(item);
-                            setModificationCount(ourModificationCounter.incrementAndGet());
+                            incrementModificationCount(type);
                             invalidateParentCaches(ResourceFolderRepository.this, type);
                           }
 
@@ -1218,7 +1433,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     ResourceItem parentItem = findValueResourceItem(parentTag, psiFile);
                     if (parentItem instanceof PsiResourceItem) {
                       if (((PsiResourceItem)parentItem).recomputeValue()) {
-                        setModificationCount(ourModificationCounter.incrementAndGet());
+                        incrementModificationCount(parentItem.getType());
                       }
                       ResourceUpdateTracer.log(() -> getSimpleId(this) + ".childAdded " + pathForLogging(event.getFile()) +
                                                      " recomputed: " + parentItem);
@@ -1275,7 +1490,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                         psiResourceFile.addItem(item);
                       }
                       commitToRepository(result);
-                      setModificationCount(ourModificationCounter.incrementAndGet());
+                      incrementModificationCount(ResourceType.ID);
                       invalidateParentCaches(ResourceFolderRepository.this, ResourceType.ID);
                     }
                   });
@@ -1308,7 +1523,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                           psiResourceFile.addItem(newIdResource);
                           ResourceUpdateTracer.log(() -> getSimpleId(this) + ": Adding id/" + newIdResource.getName());
                           getOrCreateMap(ResourceType.ID).put(newIdResource.getName(), newIdResource);
-                          setModificationCount(ourModificationCounter.incrementAndGet());
+                          incrementModificationCount(ResourceType.ID);
                           invalidateParentCaches(ResourceFolderRepository.this, ResourceType.ID);
                         }
                       }
@@ -1366,7 +1581,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                     if (resourceItem instanceof PsiResourceItem) {
                       if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                        setModificationCount(ourModificationCounter.incrementAndGet());
+                        incrementModificationCount(resourceItem.getType());
                       }
                       ResourceUpdateTracer.log(() -> getSimpleId(this) + ".childRemoved " + pathForLogging(event.getFile()) +
                                                      " recomputed: " + resourceItem);
@@ -1377,7 +1592,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                           ResourceItem declareStyleable = findValueResourceItem(parentTag, psiFile);
                           if (declareStyleable instanceof PsiResourceItem) {
                             if (((PsiResourceItem)declareStyleable).recomputeValue()) {
-                              setModificationCount(ourModificationCounter.incrementAndGet());
+                              incrementModificationCount(declareStyleable.getType());
                             }
                           }
                         }
@@ -1419,7 +1634,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                         synchronized (ITEM_MAP_LOCK) {
                           boolean removed = removeItemsForTag(resourceFile, tag, type);
                           if (removed) {
-                            setModificationCount(ourModificationCounter.incrementAndGet());
+                            incrementModificationCount(type);
                             invalidateParentCaches(ResourceFolderRepository.this, type);
                           }
                         }
@@ -1543,7 +1758,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                             psiResourceFile.addItem(item);
                           }
                           commitToRepositoryWithoutLock(result);
-                          setModificationCount(ourModificationCounter.incrementAndGet());
+                          incrementModificationCount(ResourceType.ID);
                         }
                       });
 
@@ -1596,7 +1811,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                         for (PsiResourceItem item : items) {
                           psiResourceFile.addItem(item);
                         }
-                        setModificationCount(ourModificationCounter.incrementAndGet());
+                        incrementModificationCount(ResourceType.ID);
                         invalidateParentCaches(ResourceFolderRepository.this, ResourceType.ID);
                       }
                     });
@@ -1607,7 +1822,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                 // This is an XML change within an ID generating folder to something that it's not an ID. While we do not need
                 // to generate the ID, we need to notify that something relevant has changed.
                 // One example of this change would be an edit to a drawable.
-                setModificationCount(ourModificationCounter.incrementAndGet());
+                incrementModificationCount(FolderTypeRelationship.getNonIdRelatedResourceType(folderType));
                 return;
               }
 
@@ -1646,7 +1861,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                     if (resourceItem instanceof PsiResourceItem) {
                       if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                        setModificationCount(ourModificationCounter.incrementAndGet());
+                        incrementModificationCount(resourceItem.getType());
                       }
                       ResourceUpdateTracer.log(() -> getSimpleId(this) + ".childReplaced " + pathForLogging(event.getFile()) +
                                                      " recomputed: " + resourceItem);
@@ -1712,7 +1927,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                         }
 
                         synchronized (ITEM_MAP_LOCK) {
-                          ListMultimap<String, ResourceItem> items = myResourceTable.get(type);
+                          ListMultimap<String, ResourceItem> items = getMapForUpdate(type);
                           if (items == null) {
                             scan(psiFile, folderType);
                             return;
@@ -1738,7 +1953,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                               assert false : item;
                             }
                           }
-                          setModificationCount(ourModificationCounter.incrementAndGet());
+                          incrementModificationCount(type);
                           invalidateParentCaches(ResourceFolderRepository.this, type);
                         }
 
@@ -1769,7 +1984,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                         ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                         if (resourceItem instanceof PsiResourceItem) {
                           if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                            setModificationCount(ourModificationCounter.incrementAndGet());
+                            incrementModificationCount(resourceItem.getType());
                           }
                           ResourceUpdateTracer.log(() -> getSimpleId(this) + ".childReplaced " + pathForLogging(event.getFile()) +
                                                          " recomputed: " + resourceItem);
@@ -1801,7 +2016,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                   }
                 }
 
-                setModificationCount(ourModificationCounter.incrementAndGet());
+                incrementModificationCount(ResourceType.COLOR);
                 return;
               }
             }
@@ -1818,7 +2033,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
                 // A change to an XML file that does not require adding/removing resources.
                 // This could be a change to the contents of an XML file in the raw folder.
-                setModificationCount(ourModificationCounter.incrementAndGet());
+                incrementModificationCount(FolderTypeRelationship.getNonIdRelatedResourceType(folderType));
               }
             } // else: can ignore this edit.
           }
@@ -1886,7 +2101,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             if (item instanceof PsiResourceItem) {
               boolean cleared = ((PsiResourceItem)item).recomputeValue();
               if (cleared) { // Only bump revision if this is a value which has already been observed!
-                setModificationCount(ourModificationCounter.incrementAndGet());
+                incrementModificationCount(item.getType());
               }
               ResourceUpdateTracer.log(() -> getSimpleId(this) + ".handleValueXmlTextEdit " + pathForLogging(virtualFile) +
                                              " recomputed: " + item);
@@ -1915,7 +2130,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             // Edited XML value.
             boolean cleared = ((PsiResourceItem)item).recomputeValue();
             if (cleared) { // Only bump revision if this is a value which has already been observed!
-              setModificationCount(ourModificationCounter.incrementAndGet());
+              incrementModificationCount(item.getType());
             }
             ResourceUpdateTracer.log(() -> getSimpleId(this) + ".handleValueXmlTextEdit " + pathForLogging(virtualFile) +
                                            " recomputed: " + item);
@@ -2023,7 +2238,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
     boolean removed = removeItemsFromSource(source);
     if (removed) {
-      setModificationCount(ourModificationCounter.incrementAndGet());
+      incrementModificationCount(ResourceType.values());
       invalidateParentCaches(this, ResourceType.values());
     }
 
@@ -2284,6 +2499,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
     @NotNull Set<VirtualFile> myFilesToReparseAsPsi = new HashSet<>();
     private final FileDocumentManager myFileDocumentManager;
+    private int myNumCacheSectionsLoaded;
+    private int myNumCacheSectionsSkipped;
+    private final boolean myParallelLoading = StudioFlags.RESOURCE_REPOSITORY_PARALLEL_LOADING.get();
+    @NotNull private List<FileToLoad> myPendingFiles = new ArrayList<>();
+    @NotNull private final List<ForkJoinTask<Loader>> myParallelLoads = new ArrayList<>();
+    private int myNumFilesLoadedInParallel;
 
     Loader(@NotNull ResourceFolderRepository repository, @Nullable ResourceFolderRepositoryCachingData cachingData) {
       super(VfsUtilCore.virtualToIoFile(repository.myResourceDir).toPath(), null, repository.getNamespace());
@@ -2301,15 +2522,27 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         return;
       }
 
+      long startTime = System.nanoTime();
       loadFromPersistentCache();
+      long cacheLoadedTime = System.nanoTime();
 
       ApplicationManager.getApplication().runReadAction(this::getPsiDirsForListener);
 
       scanResFolder();
+      long scannedTime = System.nanoTime();
 
       populateRepository();
 
       ApplicationManager.getApplication().runReadAction(this::scanQueuedPsiResources);
+      long endTime = System.nanoTime();
+      ResourceUpdateTracer.logDirect(() ->
+        getSimpleId(myRepository) + " " + myRepository.pathForLogging(myResourceDir) +
+        " loaded in " + TimeUnit.NANOSECONDS.toMillis(endTime - startTime) + " ms" +
+        " (cache: " + TimeUnit.NANOSECONDS.toMillis(cacheLoadedTime - startTime) + " ms for " + myNumCacheSectionsLoaded +
+        " files, " + myNumCacheSectionsSkipped + " stale files skipped;" +
+        " scan: " + TimeUnit.NANOSECONDS.toMillis(scannedTime - cacheLoadedTime) + " ms, " +
+        myRepository.myNumXmlFilesLoadedInitiallyFromSources + " of " + myRepository.myNumXmlFilesLoadedInitially + " XML files parsed)"
+      );
 
       if (myCachingData != null && !myRepository.hasFreshFileCache()) {
         Executor executor = myCachingData.getCacheCreationExecutor();
@@ -2325,12 +2558,25 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       }
 
       byte[] fileHeader = getCacheFileHeader(myCachingData);
-      try (Base128InputStream stream = new Base128InputStream(myCachingData.getCacheFile())) {
-        if (!stream.validateContents(fileHeader)) {
+      try (IndexedResourceCacheFile cacheFile = IndexedResourceCacheFile.open(
+          myCachingData.getCacheFile(), fileHeader,
+          relativePath -> FileTimeStampLengthHasher.hash(myResourceDir.findFileByRelativePath(relativePath)))) {
+        if (cacheFile == null) {
           return; // Cache file header doesn't match.
         }
-        ResourceSerializationUtil.readResourcesFromStream(stream, Maps.newHashMapWithExpectedSize(1000), null, myRepository,
-                                                          item -> addResourceItem(item, myRepository));
+        Map<String, String> stringCache = Maps.newHashMapWithExpectedSize(1000);
+        for (IndexedResourceCacheFile.Entry entry : cacheFile.getEntries()) {
+          // Sections of the files that changed since the cache file was created are not decoded. The files are parsed by scanResFolder.
+          if (!entry.isValid()) {
+            myNumCacheSectionsSkipped++;
+            continue;
+          }
+          try (Base128InputStream stream = cacheFile.openSection(entry)) {
+            ResourceSerializationUtil.readResourcesFromStream(stream, stringCache, null, myRepository,
+                                                              item -> addResourceItem(item, myRepository));
+          }
+          myNumCacheSectionsLoaded++;
+        }
       }
       catch (NoSuchFileException ignored) {
         // Cache file does not exist.
@@ -2360,13 +2606,47 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       assert myCachingData != null;
       byte[] header = getCacheFileHeader(myCachingData);
       try {
-        createPersistentCache(myCachingData.getCacheFile(), header, stream -> writeResourcesToStream(myResources, stream, config -> true));
+        List<IndexedResourceCacheFile.Section> sections = createCacheSections();
+        createPersistentCache(myCachingData.getCacheFile(), header, stream -> IndexedResourceCacheFile.write(stream, sections));
       }
       catch (Throwable e) {
         LOG.error(e);
       }
     }
 
+    /**
+     * Serializes the resources of each resource file to a separate section of the cache file.
+     */
+    @NotNull
+    private List<IndexedResourceCacheFile.Section> createCacheSections() throws IOException {
+      List<IndexedResourceCacheFile.Section> sections = new ArrayList<>(mySources.size());
+      for (Map.Entry<VirtualFile, ResourceItemSource<BasicResourceItem>> entry : mySources.entrySet()) {
+        VirtualFile file = entry.getKey();
+        String relativePath = VfsUtilCore.getRelativePath(file, myResourceDir);
+        if (relativePath == null) {
+          continue;
+        }
+        Map<ResourceType, ListMultimap<String, ResourceItem>> resources = new EnumMap<>(ResourceType.class);
+        for (BasicResourceItem item : entry.getValue()) {
+          resources.computeIfAbsent(item.getType(), type -> LinkedListMultimap.create()).put(item.getName(), item);
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (Base128OutputStream stream = new Base128OutputStream(content)) {
+          writeResourcesToStream(resources, stream, config -> true);
+        }
+        // Items of values files and of files in id-generating folders come from their contents. Other files, e.g. PNG drawables, only
+        // define a file resource that stays valid whatever their contents, as in deserializeFileResourceItem, so their sections aren't
+        // hashed and are loaded even if the file changed.
+        String folderName = new PathString(relativePath).getParentFileName();
+        ResourceFolderType folderType = folderName == null ? null : ResourceFolderType.getFolderType(folderName);
+        boolean dependsOnContents =
+            folderType == VALUES || folderType != null && FolderTypeRelationship.isIdGeneratingFolderType(folderType);
+        byte[] hash = dependsOnContents ? FileTimeStampLengthHasher.hash(file) : null;
+        sections.add(new IndexedResourceCacheFile.Section(relativePath, hash, content.toByteArray()));
+      }
+      return sections;
+    }
+
     private void scanResFolder() {
       try {
         for (VirtualFile subDir : myResourceDir.getChildren()) {
@@ -2394,6 +2674,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                 }
 
                 PathString pathString = FileExtensions.toPathString(file);
+                if (myParallelLoading && folderInfo.resourceType != null && isParsableFile(file, folderInfo)) {
+                  if (myRepository.checkResourceFilename(pathString, folderInfo.folderType)) {
+                    loadInParallel(new FileToLoad(file, pathString, folderInfo, configuration));
+                  }
+                  continue;
+                }
                 myLastVirtualFile = file;
                 myLastPathString = pathString;
                 try {
@@ -2411,6 +2697,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             }
           }
         }
+        mergeParallelLoads();
       }
       catch (ProcessCanceledException e) {
         throw e;
@@ -2449,13 +2736,75 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         }
       }
       else if (myRepository.checkResourceFilename(file, folderInfo.folderType)) {
-        if (isXmlFile(file) && folderInfo.isIdGenerating) {
-          parseIdGeneratingResourceFile(file, configuration);
+        loadFileResource(file, folderInfo, configuration);
+      }
+    }
+
+    private void loadFileResource(
+        @NotNull PathString file, @NotNull FolderInfo folderInfo, @NotNull RepositoryConfiguration configuration) {
+      assert folderInfo.resourceType != null;
+      if (isXmlFile(file) && folderInfo.isIdGenerating) {
+        parseIdGeneratingResourceFile(file, configuration);
+      }
+
+      BasicFileResourceItem item = createFileResourceItem(file, folderInfo.resourceType, configuration, folderInfo.isIdGenerating);
+      addResourceItem(item, (ResourceFolderRepository)item.getRepository());
+    }
+
+    /**
+     * Queues an XML file of an id-generating folder, e.g. a layout, to be parsed on a {@link ForkJoinPool} thread. Value resource
+     * files are always parsed on the calling thread because definitions of attr resources are reconciled across all of them by
+     * {@link RepositoryLoader#finishLoading}.
+     */
+    private void loadInParallel(@NotNull FileToLoad file) {
+      myPendingFiles.add(file);
+      if (myPendingFiles.size() >= PARALLEL_LOADING_BATCH_SIZE) {
+        submitPendingFiles();
+      }
+    }
+
+    private void submitPendingFiles() {
+      if (myPendingFiles.isEmpty()) {
+        return;
+      }
+      List<FileToLoad> files = myPendingFiles;
+      myPendingFiles = new ArrayList<>();
+      // Each batch is parsed by a loader of its own, so that parsers and string caches are not shared between threads.
+      myParallelLoads.add(ForkJoinPool.commonPool().submit(() -> {
+        Loader loader = new Loader(myRepository, null);
+        loader.loadFiles(files);
+        return loader;
+      }));
+    }
+
+    private void loadFiles(@NotNull List<FileToLoad> files) {
+      for (FileToLoad file : files) {
+        myLastVirtualFile = file.virtualFile;
+        myLastPathString = file.pathString;
+        try {
+          loadFileResource(file.pathString, file.folderInfo, file.configuration);
+          myNumFilesLoadedInParallel++;
         }
+        catch (ParsingException e) {
+          myFilesToReparseAsPsi.add(file.virtualFile);
+        }
+      }
+    }
 
-        BasicFileResourceItem item = createFileResourceItem(file, folderInfo.resourceType, configuration, folderInfo.isIdGenerating);
-        addResourceItem(item, (ResourceFolderRepository)item.getRepository());
+    /**
+     * Waits for the files queued by {@link #loadInParallel} to be parsed and merges their resources into this loader.
+     */
+    private void mergeParallelLoads() {
+      submitPendingFiles();
+      for (ForkJoinTask<Loader> task : myParallelLoads) {
+        Loader loader = task.join();
+        mySources.putAll(loader.mySources);
+        myFileResources.putAll(loader.myFileResources);
+        myFilesToReparseAsPsi.addAll(loader.myFilesToReparseAsPsi);
+        myRepository.myNumXmlFilesLoadedInitially += loader.myNumFilesLoadedInParallel;
+        myRepository.myNumXmlFilesLoadedInitiallyFromSources += loader.myNumFilesLoadedInParallel;
       }
+      myParallelLoads.clear();
     }
 
     private static boolean isParsableFile(@NotNull VirtualFile file, @NotNull FolderInfo folderInfo) {
@@ -2593,6 +2942,26 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       ++myRepository.myNumXmlFilesLoadedInitially;
       ++myRepository.myNumXmlFilesLoadedInitiallyFromSources;
     }
+
+    /**
+     * A resource file to be parsed by {@link #loadFiles}.
+     */
+    private static class FileToLoad {
+      @NotNull final VirtualFile virtualFile;
+      @NotNull final PathString pathString;
+      @NotNull final FolderInfo folderInfo;
+      @NotNull final RepositoryConfiguration configuration;
+
+      FileToLoad(@NotNull VirtualFile virtualFile,
+                 @NotNull PathString pathString,
+                 @NotNull FolderInfo folderInfo,
+                 @NotNull RepositoryConfiguration configuration) {
+        this.virtualFile = virtualFile;
+        this.pathString = pathString;
+        this.folderInfo = folderInfo;
+        this.configuration = configuration;
+      }
+    }
   }
 
   private static class ParsingException extends RuntimeException {
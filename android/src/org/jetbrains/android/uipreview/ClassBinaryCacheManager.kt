@@ -17,10 +17,16 @@ package org.jetbrains.android.uipreview
 
 import com.android.annotations.concurrency.AnyThread
 import com.android.annotations.concurrency.GuardedBy
+import com.android.tools.concurrency.AndroidIoManager
+import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.res.getAndroidPluginVersion
 import com.google.common.base.Ticker
 import com.google.common.cache.CacheBuilder
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.application.PathManager
 import com.intellij.openapi.module.Module
 import org.jetbrains.annotations.TestOnly
+import java.nio.file.Paths
 import java.time.Duration
 import java.util.WeakHashMap
 import java.util.concurrent.locks.ReentrantLock
@@ -28,10 +34,17 @@ import kotlin.concurrent.withLock
 
 private const val MAX_WEIGHT_BYTES = 100_000_000L // We will store no more than 100Mb of cached classes
 private const val EXPIRE_MINUTES = 30L // We will store cached classes for no longer than 30 minutes
+private const val MAX_DISK_BYTES = 500_000_000L // We will store no more than 500Mb of cached classes on disk
+private const val PREWARM_BYTES = 20_000_000L // We will read up to 20Mb of the most recently used classes from disk on startup
+private const val DISK_CACHE_DIRECTORY = "preview-class-cache"
 /**
- * A class binary representation cache.
+ * A class binary representation cache. Classes are kept in memory, and in the given [diskCache] if any, which keeps them across IDE
+ * sessions.
  */
-class ClassBinaryCacheManager private constructor(ticker: Ticker, maxWeight: Long, expireMinutes: Long) {
+class ClassBinaryCacheManager private constructor(ticker: Ticker,
+                                                  maxWeight: Long,
+                                                  expireMinutes: Long,
+                                                  private val diskCache: DiskClassBinaryCache?) {
   @GuardedBy("this")
   private val moduleCaches = WeakHashMap<Module, ModuleClassCache>()
   private var lock = ReentrantLock()
@@ -79,6 +92,13 @@ class ClassBinaryCacheManager private constructor(ticker: Ticker, maxWeight: Lon
     @GuardedBy("this")
     private var libraryPaths = setOf<String>()
 
+    /**
+     * A mapping from the content hashes of the [libraryPaths] known to the [diskCache] to their paths, and the
+     * [DiskClassBinaryCache.libraryHashGeneration] it was computed at.
+     */
+    @GuardedBy("this")
+    private var libraryPathsByHash: Pair<Map<String, String>, Int>? = null
+
     /**
      * Synchronously checks if there a library with [path] among the current module dependencies.
      */
@@ -94,16 +114,40 @@ class ClassBinaryCacheManager private constructor(ticker: Ticker, maxWeight: Lon
         libraryPath?.let {
           lock.withLock { libraryPath2ClassFqns.remove(libraryPath) }?.forEach { globalCache.invalidate(it) }
         }
-        return null
+        return getFromDisk(fqcn, transformationId)
       }
 
-      return globalCache.getIfPresent(key)
+      return globalCache.getIfPresent(key) ?: getFromDisk(fqcn, transformationId)
+    }
+
+    private fun getFromDisk(fqcn: String, transformationId: String): ByteArray? {
+      val diskCache = diskCache ?: return null
+      val pathsByHash = getLibraryPathsByHash(diskCache)
+      if (pathsByHash.isEmpty()) return null
+      val (libraryHash, data) = diskCache.get(fqcn, transformationId, pathsByHash.keys) ?: return null
+      // Keep the class in memory so that it is only read from disk once.
+      putInMemory(fqcn, transformationId, pathsByHash.getValue(libraryHash), data)
+      return data
+    }
+
+    @Synchronized
+    private fun getLibraryPathsByHash(diskCache: DiskClassBinaryCache): Map<String, String> {
+      val generation = diskCache.libraryHashGeneration
+      libraryPathsByHash?.let { (pathsByHash, computedGeneration) -> if (computedGeneration == generation) return pathsByHash }
+      val pathsByHash = libraryPaths.mapNotNull { path -> diskCache.getKnownLibraryHash(path)?.let { it to path } }.toMap()
+      libraryPathsByHash = pathsByHash to generation
+      return pathsByHash
     }
 
     private fun getCachingKey(fqcn: String, transformationId: String) = "$transformationId:$fqcn"
 
     // @LayoutlibRenderThread
     override fun put(fqcn: String, transformationId: String, libraryPath: String, data: ByteArray) {
+      putInMemory(fqcn, transformationId, libraryPath, data)
+      diskCache?.put(fqcn, transformationId, libraryPath, data)
+    }
+
+    private fun putInMemory(fqcn: String, transformationId: String, libraryPath: String, data: ByteArray) {
       val key = getCachingKey(fqcn, transformationId)
       lock.withLock {
         classFqn2LibraryPath[key] = libraryPath
@@ -116,16 +160,29 @@ class ClassBinaryCacheManager private constructor(ticker: Ticker, maxWeight: Lon
     @Synchronized
     override fun setDependencies(paths: Collection<String>) {
       libraryPaths = paths.toSet()
+      libraryPathsByHash = null
     }
   }
 
   companion object {
-    private val globalManager = ClassBinaryCacheManager(Ticker.systemTicker(), MAX_WEIGHT_BYTES, EXPIRE_MINUTES)
+    private val globalManager by lazy {
+      ClassBinaryCacheManager(Ticker.systemTicker(), MAX_WEIGHT_BYTES, EXPIRE_MINUTES, createDiskCache())
+    }
 
     @JvmStatic
     fun getInstance() = globalManager
 
     @TestOnly
-    fun getTestInstance(ticker: Ticker, maxWeight: Long, expireMinutes: Long) = ClassBinaryCacheManager(ticker, maxWeight, expireMinutes)
+    fun getTestInstance(ticker: Ticker, maxWeight: Long, expireMinutes: Long, diskCache: DiskClassBinaryCache? = null) =
+      ClassBinaryCacheManager(ticker, maxWeight, expireMinutes, diskCache)
+
+    private fun createDiskCache(): DiskClassBinaryCache? {
+      val application = ApplicationManager.getApplication()
+      // Don't create a persistent cache in tests to avoid unnecessary overhead.
+      if (application == null || application.isUnitTestMode || !StudioFlags.COMPOSE_PERSISTENT_CLASS_CACHE.get()) return null
+      val codeVersion = getAndroidPluginVersion() ?: return null
+      return DiskClassBinaryCache(Paths.get(PathManager.getSystemPath(), DISK_CACHE_DIRECTORY), codeVersion, MAX_DISK_BYTES, PREWARM_BYTES,
+                                  AndroidIoManager.getInstance().getBackgroundDiskIoExecutor())
+    }
   }
 }
\ No newline at end of file
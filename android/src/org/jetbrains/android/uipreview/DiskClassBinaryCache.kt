@@ -0,0 +1,588 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.uipreview
+
+import com.android.annotations.concurrency.AnyThread
+import com.android.annotations.concurrency.GuardedBy
+import com.google.common.hash.Hashing
+import com.google.common.io.ByteStreams
+import com.google.common.io.CountingInputStream
+import com.google.common.io.MoreFiles
+import com.google.common.util.concurrent.MoreExecutors
+import com.intellij.openapi.diagnostic.Logger
+import java.io.BufferedInputStream
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.ClosedByInterruptException
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.FileChannel
+import java.nio.channels.OverlappingFileLockException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+
+private const val PACK_FILE_NAME = "classes.pack"
+private const val LIBRARIES_FILE_NAME = "libraries.txt"
+private const val LOCK_FILE_NAME = "cache.lock"
+private const val PACK_MAGIC = 0x434c5043 // "CLPC"
+private const val PACK_VERSION = 1
+
+/**
+ * Persistent store for the transformed class binaries of [ClassBinaryCacheManager], so that previews rendered after an IDE restart do
+ * not need to transform all the library classes again.
+ *
+ * Classes are keyed by the content hash of the library they come from, their transformation id and their FQCN. They remain valid for as
+ * long as the library content does, and are shared by all the projects using the same library. Library hashes are computed when a class
+ * is first stored and remembered by library path, size and modification time, so looking a class up never reads the library itself.
+ *
+ * Entries are appended to a single pack file made of a header followed by records:
+ * ```
+ * header: magic (int), format version (int), code version (UTF)
+ * record: library hash (UTF), transformation id (UTF), FQCN (UTF), length (int), class binary (length bytes)
+ * ```
+ * Once entries take more than [maxBytes], the least recently used ones are evicted. The pack file is rewritten, in least recently used
+ * order, once evicted records take as much space as the live ones. On startup, the pack file index is read in the background along with
+ * the most recently used entries, up to [prewarmBytes]. Until then, lookups miss instead of waiting, so classes are read from their
+ * libraries.
+ *
+ * Entries are only reused by the same [codeVersion], since the transformations may change between versions. All writes happen on
+ * [executor], one at a time. Class binaries are read outside of the lock, so lookups are not blocked by writes or compaction.
+ *
+ * The directory is locked against other processes for as long as the cache is open. If another process, like another IDE instance,
+ * already holds it, nothing is cached. Caches of the same process share the lock.
+ */
+class DiskClassBinaryCache(private val directory: Path,
+                           private val codeVersion: String,
+                           private val maxBytes: Long,
+                           private val prewarmBytes: Long,
+                           executor: Executor) : Closeable {
+  private data class EntryKey(val libraryHash: String, val transformationId: String, val fqcn: String)
+  private class Entry(val offset: Long, val length: Int, val recordLength: Int)
+  private class LibraryHash(val size: Long, val lastModified: Long, val hash: String)
+
+  private val packFile = directory.resolve(PACK_FILE_NAME)
+  private val librariesFile = directory.resolve(LIBRARIES_FILE_NAME)
+
+  /**
+   * Runs the writes in order, one at a time, so that entries are only added, evicted and compacted by one thread.
+   */
+  private val writeExecutor = MoreExecutors.newSequentialExecutor(executor)
+
+  /**
+   * The open pack file, or null if it could not be opened or the cache is closed, in which case nothing is cached. It is replaced when the
+   * pack file is compacted.
+   */
+  @GuardedBy("this")
+  private var channel: FileChannel? = null
+  @GuardedBy("this")
+  private var isClosed = false
+  @GuardedBy("this")
+  private var holdsDirectoryLock = false
+  @GuardedBy("this")
+  private var packSize = 0L
+  @GuardedBy("this")
+  private var liveBytes = 0L
+  @GuardedBy("this")
+  private var liveRecordBytes = 0L
+
+  /**
+   * Entries of the pack file, from the least to the most recently used.
+   */
+  @GuardedBy("this")
+  private val entries = LinkedHashMap<EntryKey, Entry>(16, 0.75f, true)
+
+  /**
+   * A mapping from a `transformationId:fqcn` key to the hashes of the libraries it is stored for.
+   */
+  @GuardedBy("this")
+  private val libraryHashesByClass = HashMap<String, MutableSet<String>>()
+
+  /**
+   * Class binaries read on startup, dropped once requested since [ClassBinaryCacheManager] keeps them in memory from then on.
+   */
+  @GuardedBy("this")
+  private val prewarmed = HashMap<EntryKey, ByteArray>()
+
+  /**
+   * A mapping from a library path to its last known content hash.
+   */
+  @GuardedBy("this")
+  private val libraryHashes = HashMap<String, LibraryHash>()
+
+  /**
+   * Incremented every time the hash of a library is computed, and once the cache is loaded, so callers of [getKnownLibraryHash] know when
+   * to check again.
+   */
+  @Volatile
+  var libraryHashGeneration = 0
+    private set
+
+  private val loaded = CompletableFuture.runAsync(::load, writeExecutor)
+
+  /**
+   * Total size of the class binaries stored.
+   */
+  val size: Long
+    get() {
+      loaded.join()
+      return synchronized(this) { liveBytes }
+    }
+
+  /**
+   * Returns the content hash of the library at [libraryPath], if it was computed before and the library didn't change since. Returns null
+   * while the cache is loading.
+   */
+  @AnyThread
+  fun getKnownLibraryHash(libraryPath: String): String? {
+    if (!loaded.isDone) return null
+    val known = synchronized(this) { libraryHashes[libraryPath] } ?: return null
+    val attributes = readAttributes(libraryPath) ?: return null
+    return known.hash.takeIf { known.size == attributes.size() && known.lastModified == attributes.lastModifiedTime().toMillis() }
+  }
+
+  /**
+   * Returns the class binary data stored for a library with one of the given [libraryHashes], along with that hash, or null if unknown or
+   * if the cache is still loading.
+   */
+  @AnyThread
+  fun get(fqcn: String, transformationId: String, libraryHashes: Set<String>): Pair<String, ByteArray>? {
+    // Don't wait for the index to be read, the class can be read from its library meanwhile.
+    if (!loaded.isDone) return null
+    val libraryHash: String
+    val entry: Entry
+    val channel: FileChannel
+    synchronized(this) {
+      libraryHash = libraryHashesByClass[getClassKey(transformationId, fqcn)]?.firstOrNull { it in libraryHashes } ?: return null
+      val key = EntryKey(libraryHash, transformationId, fqcn)
+      entry = entries[key] ?: return null
+      prewarmed.remove(key)?.let { return libraryHash to it }
+      channel = this.channel ?: return null
+    }
+    return try {
+      libraryHash to read(channel, entry)
+    }
+    catch (e: ClosedByInterruptException) {
+      // Interrupting a thread while it reads from a FileChannel closes the channel.
+      reopen(channel)
+      null
+    }
+    catch (e: ClosedChannelException) {
+      // The pack file was compacted or closed in the meantime.
+      null
+    }
+    catch (e: IOException) {
+      LOG.warn("Unable to read $fqcn from the class cache", e)
+      null
+    }
+  }
+
+  /**
+   * Stores the class binary [data] of [fqcn], coming from the library at [libraryPath], in the background.
+   */
+  @AnyThread
+  fun put(fqcn: String, transformationId: String, libraryPath: String, data: ByteArray) {
+    loaded.thenRunAsync({ store(fqcn, transformationId, libraryPath, data) }, writeExecutor)
+  }
+
+  /**
+   * Closes the pack file. Nothing is read from or stored in the cache afterwards.
+   */
+  override fun close() {
+    synchronized(this) {
+      isClosed = true
+      channel?.close()
+      channel = null
+      clearEntries()
+      if (holdsDirectoryLock) {
+        holdsDirectoryLock = false
+        unlockDirectory(directory)
+      }
+    }
+  }
+
+  private fun store(fqcn: String, transformationId: String, libraryPath: String, data: ByteArray) {
+    try {
+      if (synchronized(this) { channel == null }) return
+      val key = EntryKey(getOrComputeLibraryHash(libraryPath) ?: return, transformationId, fqcn)
+      val record = encodeRecord(key, data)
+      val needsCompaction = synchronized(this) {
+        val channel = channel ?: return
+        if (entries.containsKey(key)) return
+        writeFully(channel, record, packSize)
+        add(key, Entry(packSize + record.size - data.size, data.size, record.size))
+        packSize += record.size
+        evict()
+        packSize > 2 * liveRecordBytes + encodeHeader().size
+      }
+      if (needsCompaction) {
+        compact()
+      }
+    }
+    catch (e: IOException) {
+      LOG.warn("Unable to store $fqcn in the class cache", e)
+    }
+  }
+
+  /**
+   * Opens the pack file again after [closedChannel] was closed by an interrupted reader, unless it was replaced in the meantime.
+   */
+  private fun reopen(closedChannel: FileChannel) {
+    synchronized(this) {
+      if (channel !== closedChannel) return
+      channel = try {
+        FileChannel.open(packFile, StandardOpenOption.READ, StandardOpenOption.WRITE)
+      }
+      catch (e: IOException) {
+        LOG.warn("Unable to reopen the class cache", e)
+        clearEntries()
+        null
+      }
+    }
+  }
+
+  private fun getOrComputeLibraryHash(libraryPath: String): String? {
+    val attributes = readAttributes(libraryPath) ?: return null
+    val size = attributes.size()
+    val lastModified = attributes.lastModifiedTime().toMillis()
+    synchronized(this) {
+      libraryHashes[libraryPath]?.let { if (it.size == size && it.lastModified == lastModified) return it.hash }
+    }
+    val hash = MoreFiles.asByteSource(Paths.get(libraryPath)).hash(Hashing.farmHashFingerprint64()).toString()
+    synchronized(this) {
+      val library = LibraryHash(size, lastModified, hash)
+      libraryHashes[libraryPath] = library
+      libraryHashGeneration++
+      Files.write(librariesFile, listOf(encodeLibrary(libraryPath, library)), StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+    }
+    return hash
+  }
+
+  private fun load() {
+    try {
+      Files.createDirectories(directory)
+      synchronized(this) {
+        if (isClosed) return
+        if (!lockDirectory(directory)) {
+          LOG.info("The class cache in $directory is in use by another process")
+          return
+        }
+        holdsDirectoryLock = true
+        loadLibraries()
+        val channel = FileChannel.open(packFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        this.channel = channel
+        if (!loadPack(channel)) {
+          // The pack file is new, or was written by another version.
+          clearEntries()
+          channel.truncate(0)
+          val header = encodeHeader()
+          writeFully(channel, header, 0)
+          packSize = header.size.toLong()
+        }
+        evict()
+        prewarm()
+      }
+    }
+    catch (e: IOException) {
+      LOG.warn("Unable to load the class cache from $directory", e)
+      synchronized(this) {
+        channel?.close()
+        channel = null
+        clearEntries()
+      }
+    }
+    finally {
+      // Library hashes looked up while loading were missing.
+      libraryHashGeneration++
+    }
+  }
+
+  @GuardedBy("this")
+  private fun loadLibraries() {
+    if (!Files.exists(librariesFile)) return
+    for (line in Files.readAllLines(librariesFile)) {
+      val fields = line.split('\t', limit = 4)
+      if (fields.size != 4) continue
+      libraryHashes[fields[3]] = LibraryHash(fields[1].toLongOrNull() ?: continue, fields[2].toLongOrNull() ?: continue, fields[0])
+    }
+  }
+
+  /**
+   * Reads the index of the pack file, dropping the last record if it was only partially written.
+   *
+   * @return false if the pack file is empty or its header doesn't match this version.
+   */
+  @GuardedBy("this")
+  private fun loadPack(channel: FileChannel): Boolean {
+    val counter = CountingInputStream(BufferedInputStream(Channels.newInputStream(channel.position(0))))
+    val input = DataInputStream(counter)
+    try {
+      if (input.readInt() != PACK_MAGIC || input.readInt() != PACK_VERSION || input.readUTF() != codeVersion) return false
+    }
+    catch (e: IOException) {
+      return false
+    }
+    var end = counter.count
+    val fileSize = channel.size()
+    try {
+      while (end < fileSize) {
+        val key = EntryKey(input.readUTF(), input.readUTF(), input.readUTF())
+        val length = input.readInt()
+        if (length < 0) throw IOException("Invalid class binary length $length")
+        val offset = counter.count
+        ByteStreams.skipFully(input, length.toLong())
+        add(key, Entry(offset, length, (counter.count - end).toInt()))
+        end = counter.count
+      }
+    }
+    catch (e: IOException) {
+      LOG.info("Dropping the incomplete end of the class cache", e)
+    }
+    channel.truncate(end)
+    packSize = end
+    return true
+  }
+
+  @GuardedBy("this")
+  private fun prewarm() {
+    var remainingBytes = prewarmBytes
+    for ((key, entry) in entries.entries.toList().asReversed()) {
+      if (entry.length > remainingBytes) break
+      prewarmed[key] = read(channel!!, entry)
+      remainingBytes -= entry.length
+    }
+  }
+
+  @GuardedBy("this")
+  private fun add(key: EntryKey, entry: Entry) {
+    entries.put(key, entry)?.let {
+      liveBytes -= it.length
+      liveRecordBytes -= it.recordLength
+    }
+    liveBytes += entry.length
+    liveRecordBytes += entry.recordLength
+    libraryHashesByClass.getOrPut(getClassKey(key.transformationId, key.fqcn)) { mutableSetOf() }.add(key.libraryHash)
+  }
+
+  @GuardedBy("this")
+  private fun evict() {
+    val iterator = entries.entries.iterator()
+    while (liveBytes > maxBytes && iterator.hasNext()) {
+      val (key, entry) = iterator.next()
+      iterator.remove()
+      liveBytes -= entry.length
+      liveRecordBytes -= entry.recordLength
+      prewarmed.remove(key)
+      val classKey = getClassKey(key.transformationId, key.fqcn)
+      libraryHashesByClass[classKey]?.let {
+        it.remove(key.libraryHash)
+        if (it.isEmpty()) libraryHashesByClass.remove(classKey)
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private fun clearEntries() {
+    entries.clear()
+    libraryHashesByClass.clear()
+    prewarmed.clear()
+    liveBytes = 0
+    liveRecordBytes = 0
+  }
+
+  /**
+   * Rewrites the pack file with only the live entries, from the least to the most recently used, along with the hashes of the libraries
+   * they come from.
+   *
+   * Records are copied to a new file without holding the lock, then the new file and its index replace the current ones at once. Only
+   * [writeExecutor] adds and evicts entries, so they don't change in the meantime.
+   */
+  private fun compact() {
+    val liveEntries = synchronized(this) {
+      if (channel == null) return
+      entries.entries.map { it.key to it.value }
+    }
+    val compactedFile = directory.resolve("$PACK_FILE_NAME.tmp")
+    val compactedEntries = HashMap<EntryKey, Entry>()
+    var compactedSize = 0L
+    // Read from a channel of our own, which readers on interrupted threads can't close.
+    val outputOptions = arrayOf(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+    FileChannel.open(packFile, StandardOpenOption.READ).use { input ->
+      FileChannel.open(compactedFile, *outputOptions).use { out ->
+        val header = encodeHeader()
+        writeFully(out, header, 0)
+        compactedSize = header.size.toLong()
+        for ((key, entry) in liveEntries) {
+          val record = encodeRecord(key, read(input, entry))
+          writeFully(out, record, compactedSize)
+          compactedEntries[key] = Entry(compactedSize + record.size - entry.length, entry.length, record.size)
+          compactedSize += record.size
+        }
+      }
+    }
+
+    synchronized(this) {
+      if (isClosed) {
+        Files.deleteIfExists(compactedFile)
+        return
+      }
+      try {
+        // The pack file can't be replaced while open on Windows.
+        channel?.close()
+        channel = null
+        Files.move(compactedFile, packFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        channel = FileChannel.open(packFile, StandardOpenOption.READ, StandardOpenOption.WRITE)
+      }
+      catch (e: IOException) {
+        // The entries may not match the pack file anymore.
+        channel?.close()
+        channel = null
+        clearEntries()
+        throw e
+      }
+      // Replacing the values keeps the entries in their current order, including lookups made while compacting.
+      entries.replaceAll { key, _ -> compactedEntries.getValue(key) }
+      packSize = compactedSize
+
+      val liveHashes = entries.keys.mapTo(HashSet()) { it.libraryHash }
+      libraryHashes.values.removeIf { it.hash !in liveHashes }
+      val compactedLibrariesFile = directory.resolve("$LIBRARIES_FILE_NAME.tmp")
+      Files.write(compactedLibrariesFile, libraryHashes.map { (path, library) -> encodeLibrary(path, library) })
+      Files.move(compactedLibrariesFile, librariesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+  }
+
+  private fun read(channel: FileChannel, entry: Entry): ByteArray {
+    val buffer = ByteBuffer.allocate(entry.length)
+    var position = entry.offset
+    while (buffer.hasRemaining()) {
+      val read = channel.read(buffer, position)
+      if (read < 0) throw EOFException()
+      position += read
+    }
+    return buffer.array()
+  }
+
+  private fun encodeHeader(): ByteArray = ByteArrayOutputStream().also {
+    DataOutputStream(it).apply {
+      writeInt(PACK_MAGIC)
+      writeInt(PACK_VERSION)
+      writeUTF(codeVersion)
+    }
+  }.toByteArray()
+
+  private fun encodeRecord(key: EntryKey, data: ByteArray): ByteArray = ByteArrayOutputStream(data.size + 256).also {
+    DataOutputStream(it).apply {
+      writeUTF(key.libraryHash)
+      writeUTF(key.transformationId)
+      writeUTF(key.fqcn)
+      writeInt(data.size)
+      write(data)
+    }
+  }.toByteArray()
+
+  /**
+   * Encodes a line of the libraries file: the hash of a library, its size, its modification time and its path.
+   */
+  private fun encodeLibrary(path: String, library: LibraryHash) = "${library.hash}\t${library.size}\t${library.lastModified}\t$path"
+
+  private fun writeFully(channel: FileChannel, data: ByteArray, position: Long) {
+    val buffer = ByteBuffer.wrap(data)
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position())
+    }
+  }
+
+  private fun getClassKey(transformationId: String, fqcn: String) = "$transformationId:$fqcn"
+
+  private fun readAttributes(path: String): BasicFileAttributes? = try {
+    Files.readAttributes(Paths.get(path), BasicFileAttributes::class.java)
+  }
+  catch (e: IOException) {
+    null
+  }
+
+  private class DirectoryLock(val channel: FileChannel) {
+    var users = 0
+  }
+
+  companion object {
+    private val LOG = Logger.getInstance(DiskClassBinaryCache::class.java)
+
+    /**
+     * The cache directories locked by this process, by normalized path.
+     */
+    @GuardedBy("directoryLocks")
+    private val directoryLocks = HashMap<Path, DirectoryLock>()
+
+    /**
+     * Locks [directory] against other processes, unless this process already holds it.
+     *
+     * @return false if the directory is locked by another process.
+     */
+    private fun lockDirectory(directory: Path): Boolean {
+      synchronized(directoryLocks) {
+        val key = directory.toAbsolutePath().normalize()
+        val lock = directoryLocks[key] ?: run {
+          val channel = FileChannel.open(key.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+          val fileLock = try {
+            channel.tryLock()
+          }
+          catch (e: OverlappingFileLockException) {
+            // Held through another channel of this process, which is as good as another process.
+            null
+          }
+          catch (e: IOException) {
+            channel.close()
+            throw e
+          }
+          if (fileLock == null) {
+            channel.close()
+            return false
+          }
+          DirectoryLock(channel).also { directoryLocks[key] = it }
+        }
+        lock.users++
+        return true
+      }
+    }
+
+    /**
+     * Releases a lock taken by [lockDirectory] once no cache of this process uses it anymore.
+     */
+    private fun unlockDirectory(directory: Path) {
+      synchronized(directoryLocks) {
+        val key = directory.toAbsolutePath().normalize()
+        val lock = directoryLocks[key] ?: return
+        if (--lock.users == 0) {
+          directoryLocks.remove(key)
+          // Closing the channel releases the lock.
+          lock.channel.close()
+        }
+      }
+    }
+  }
+}
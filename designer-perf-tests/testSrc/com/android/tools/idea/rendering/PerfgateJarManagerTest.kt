@@ -16,12 +16,24 @@
 package com.android.tools.idea.rendering
 
 import com.android.ide.common.util.PathString
+import com.android.tools.idea.rendering.classloading.ClassConverter
+import com.android.tools.idea.rendering.classloading.NopClassLocator
+import com.android.tools.idea.rendering.classloading.SdkIntReplacer
+import com.android.tools.idea.rendering.classloading.ThreadLocalTrackingTransform
+import com.android.tools.idea.rendering.classloading.VersionClassTransform
+import com.android.tools.idea.rendering.classloading.ViewMethodWrapperTransform
 import com.android.tools.idea.rendering.classloading.loaders.JarManager
 import com.android.tools.perflogger.Benchmark
 import com.android.tools.perflogger.Metric
 import com.android.tools.perflogger.Metric.MetricSample
+import com.android.tools.rendering.classloading.toClassTransform
 import com.google.common.base.Stopwatch
+import com.google.common.util.concurrent.MoreExecutors
+import com.intellij.openapi.util.io.FileUtil
 import com.intellij.util.io.outputStream
+import org.jetbrains.android.uipreview.DiskClassBinaryCache
+import org.jetbrains.org.objectweb.asm.ClassVisitor
+import org.jetbrains.org.objectweb.asm.ClassWriter
 import org.junit.Assert
 import org.junit.Test
 import java.net.URI
@@ -30,6 +42,8 @@ import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
 import java.nio.file.spi.FileSystemProvider
+import java.util.function.Function
+import java.util.zip.ZipFile
 import kotlin.random.Random
 
 private const val NUMBER_OF_SAMPLES = 40
@@ -40,6 +54,15 @@ private val benchmark =
     .setDescription("Base line for Jar file access (mean) after $NUMBER_OF_SAMPLES samples.")
     .build()
 
+/** The transformations applied to library classes by the preview class loader that don't depend on the project or flags. */
+private val LIBRARY_CLASS_TRANSFORMS =
+  toClassTransform(
+    Function<ClassVisitor, ClassVisitor> { ViewMethodWrapperTransform(it) },
+    Function<ClassVisitor, ClassVisitor> { VersionClassTransform(it, ClassConverter.getCurrentClassVersion(), 0) },
+    Function<ClassVisitor, ClassVisitor> { ThreadLocalTrackingTransform(it) },
+    Function<ClassVisitor, ClassVisitor> { SdkIntReplacer(it) },
+  )
+
 private fun createJarFile(outputJar: Path, fileCount: Int, fileSizeBytes: Int): String {
   Assert.assertTrue(FileSystemProvider.installedProviders().any { it.scheme == "jar" })
 
@@ -155,4 +178,69 @@ class PerfgateJarManagerTest {
 
     Files.deleteIfExists(Paths.get(jarFile))
   }
+
+  /**
+   * Measures what the persistent class cache saves when previews render after a restart: reading library classes from their jar and
+   * transforming them, as done the first time they are loaded, against reading the transformed classes from the cache. Storing the
+   * transformed classes in the cache is measured separately.
+   */
+  @Test
+  @Throws(Exception::class)
+  fun testPersistentClassCacheColdAndWarm() {
+    val outDirectory = Files.createTempDirectory("out")
+    // Real classes, so that the transformations have actual code to rewrite.
+    val library = Paths.get(ClassVisitor::class.java.protectionDomain.codeSource.location.toURI())
+    Assert.assertTrue("$library is not a jar", Files.isRegularFile(library))
+    val libraryUri = "jar:file:/${PathString(library).portablePath.removePrefix("/")}"
+    val classNames = ZipFile(library.toFile()).use { zip ->
+      zip.entries().asSequence().map { it.name }.filter { it.endsWith(".class") }.sorted().take(1000).toList()
+    }
+    val transformationId = LIBRARY_CLASS_TRANSFORMS.id
+    val transformSamples: MutableList<MetricSample> = ArrayList(NUMBER_OF_SAMPLES)
+    val storeSamples: MutableList<MetricSample> = ArrayList(NUMBER_OF_SAMPLES)
+    val warmSamples: MutableList<MetricSample> = ArrayList(NUMBER_OF_SAMPLES)
+    fun createCache(cacheDirectory: Path) =
+      DiskClassBinaryCache(cacheDirectory, "1.0", 100_000_000, 20_000_000, MoreExecutors.directExecutor())
+
+    try {
+      repeat(NUMBER_OF_SAMPLES) { sample ->
+        val cacheDirectory = outDirectory.resolve("cache$sample")
+        val jarManager = JarManager.withNoCache()
+        var stopWatch = Stopwatch.createStarted()
+        val transformedClasses = classNames.shuffled().associateWith { name ->
+          val data = jarManager.loadFileFromJar(URI("$libraryUri!/$name"))!!
+          ClassConverter.rewriteClass(data, LIBRARY_CLASS_TRANSFORMS, ClassWriter.COMPUTE_FRAMES, NopClassLocator)
+        }
+        transformSamples.add(MetricSample(System.currentTimeMillis(), stopWatch.elapsed().toMillis()))
+
+        stopWatch = Stopwatch.createStarted()
+        createCache(cacheDirectory).use { cache ->
+          transformedClasses.forEach { (name, data) -> cache.put(name, transformationId, library.toString(), data) }
+        }
+        storeSamples.add(MetricSample(System.currentTimeMillis(), stopWatch.elapsed().toMillis()))
+
+        stopWatch = Stopwatch.createStarted()
+        createCache(cacheDirectory).use { cache ->
+          val libraryHashes = setOf(cache.getKnownLibraryHash(library.toString())!!)
+          classNames.shuffled().forEach { cache.get(it, transformationId, libraryHashes)!! }
+        }
+        warmSamples.add(MetricSample(System.currentTimeMillis(), stopWatch.elapsed().toMillis()))
+      }
+
+      Metric("persistent_class_cache_jar_transform_time").apply {
+        addSamples(benchmark, *transformSamples.toTypedArray())
+        commit()
+      }
+      Metric("persistent_class_cache_store_time").apply {
+        addSamples(benchmark, *storeSamples.toTypedArray())
+        commit()
+      }
+      Metric("persistent_class_cache_warm_load_time").apply {
+        addSamples(benchmark, *warmSamples.toTypedArray())
+        commit()
+      }
+    } finally {
+      FileUtil.delete(outDirectory)
+    }
+  }
 }
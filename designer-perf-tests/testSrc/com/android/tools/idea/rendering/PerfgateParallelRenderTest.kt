@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering
+
+import com.android.tools.idea.compose.preview.SingleComposePreviewElementInstance
+import com.android.tools.idea.compose.preview.renderer.renderPreviewElementForResult
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import com.android.tools.rendering.RenderResult
+import com.android.tools.rendering.RenderService
+import org.junit.Assert
+import org.junit.Test
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+private const val NUMBER_OF_PREVIEWS = 8
+private const val NUMBER_OF_ISOLATED_THREADS = 4
+
+private val parallelRenderBenchmark = Benchmark.Builder("Compose Preview Parallel Render Benchmark")
+  .setProject("Design Tools")
+  .setDescription("Base line for rendering $NUMBER_OF_PREVIEWS Compose Previews at once.")
+  .build()
+
+/**
+ * A [MetricMeasurement] that measures the change of a render executor counter between [before] and [after].
+ */
+private class RenderExecutorCounterMeasurement<T>(metric: Metric, private val counter: () -> Long) : MetricMeasurementAdapter<T>(metric) {
+  private var initialValue = -1L
+
+  override fun before() {
+    initialValue = counter()
+  }
+
+  override fun after(result: T) = MetricSample(Instant.now().toEpochMilli(), counter() - initialValue)
+}
+
+/**
+ * Measures rendering several Compose Previews, each with its own class loader, at the same time, with all the render actions running on
+ * the same thread and with the actions of each class loader running on one of [NUMBER_OF_ISOLATED_THREADS] threads.
+ */
+class PerfgateParallelRenderTest : ComposeRenderTestBase() {
+  @Test
+  fun parallelRenderSingleThread() = measureParallelRender(0, "parallel_render_single_thread")
+
+  @Test
+  fun parallelRenderIsolatedThreads() = measureParallelRender(NUMBER_OF_ISOLATED_THREADS, "parallel_render_isolated_threads")
+
+  private fun measureParallelRender(isolatedThreads: Int, metricPrefix: String) {
+    RenderService.shutdownRenderExecutor(5)
+    RenderService.initializeRenderExecutor(isolatedThreads)
+    val executor = RenderService.getRenderAsyncActionExecutor()
+    parallelRenderBenchmark.measureOperation(listOf(
+      // Measures the time until all the previews are rendered.
+      ElapsedTimeMeasurement(Metric("${metricPrefix}_end_to_end_time")),
+      // Measures the time render actions wait before running.
+      RenderExecutorCounterMeasurement(Metric("${metricPrefix}_queue_wait_time")) { executor.totalQueueWaitTimeMs },
+      // Measures the render actions evicted because too many were waiting.
+      RenderExecutorCounterMeasurement(Metric("${metricPrefix}_evicted_actions")) { executor.evictedRenderActionCount }),
+                                             samplesCount = 10,
+                                             printSamples = true) {
+      renderPreviewsInParallel()
+    }
+  }
+
+  private fun renderPreviewsInParallel(): List<RenderResult> {
+    val futures = List(NUMBER_OF_PREVIEWS) {
+      renderPreviewElementForResult(projectRule.androidFacet(":app"),
+                                    SingleComposePreviewElementInstance.forTesting(
+                                      "google.simpleapplication.ComplexPreviewKt.ComplexPreview"),
+                                    privateClassLoader = true)
+    }
+    CompletableFuture.allOf(*futures.toTypedArray()).get(5, TimeUnit.MINUTES)
+    return futures.map { future ->
+      future.get()!!.also {
+        val image = it.renderedImage
+        Assert.assertTrue("Valid result image is expected to be bigger than 10x10. It's ${image.width}x${image.height}",
+                          image.width > 10 && image.height > 10)
+      }
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res
+
+import com.android.ide.common.rendering.api.ResourceNamespace
+import com.android.resources.ResourceType
+import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.idea.rendering.MetricMeasurementAdapter
+import com.android.tools.idea.rendering.measureOperation
+import com.android.tools.idea.testing.AndroidProjectRule
+import com.android.tools.idea.testing.waitForUpdates
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiFile
+import org.jetbrains.android.facet.AndroidFacet
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import java.time.Instant
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+private const val NUMBER_OF_STRINGS = 2000
+private const val NUMBER_OF_READERS = 4
+private const val NUMBER_OF_EDITS = 100
+
+private val resourceContentionBenchmark = Benchmark.Builder("Resource Repository Contention Benchmark")
+  .setProject("Design Tools")
+  .setDescription("Resource lookups by $NUMBER_OF_READERS threads in a resource folder with $NUMBER_OF_STRINGS strings while " +
+                  "$NUMBER_OF_EDITS edits of the values file are applied.")
+  .build()
+
+/**
+ * A measurement recording the number of lookups per second returned by the measured operation.
+ */
+private class ReadThroughputMeasurement(metric: Metric) : MetricMeasurementAdapter<Long>(metric) {
+  override fun before() {}
+
+  override fun after(result: Long) = MetricSample(Instant.now().toEpochMilli(), result)
+}
+
+/**
+ * Measures the read throughput of a [ResourceFolderRepository] while a values file is being edited, with lookups holding the global
+ * resource lock and with lookups served from the snapshot enabled by [StudioFlags.RESOURCE_REPOSITORY_LOCK_FREE_READS].
+ */
+class PerfgateResourceRepositoryContentionTest {
+  @get:Rule
+  val projectRule = AndroidProjectRule.onDisk()
+
+  private lateinit var stringsFile: PsiFile
+
+  @Before
+  fun setUp() {
+    val strings = (0 until NUMBER_OF_STRINGS).joinToString("\n") { """    <string name="string$it">String $it</string>""" }
+    stringsFile = projectRule.fixture.addFileToProject("res/values/strings.xml",
+                                                       "<resources>\n$strings\n    <string name=\"edited\">Edited</string>\n</resources>\n")
+  }
+
+  @After
+  fun tearDown() {
+    StudioFlags.RESOURCE_REPOSITORY_LOCK_FREE_READS.clearOverride()
+    ResourceFolderRegistry.getInstance(projectRule.project).reset()
+  }
+
+  @Test
+  fun lockedReads() {
+    StudioFlags.RESOURCE_REPOSITORY_LOCK_FREE_READS.override(false)
+    measureReadThroughput("resource_repository_locked_reads_per_second")
+  }
+
+  @Test
+  fun lockFreeReads() {
+    StudioFlags.RESOURCE_REPOSITORY_LOCK_FREE_READS.override(true)
+    measureReadThroughput("resource_repository_lock_free_reads_per_second")
+  }
+
+  private fun measureReadThroughput(metricName: String) {
+    val facet = AndroidFacet.getInstance(projectRule.module)!!
+    val registry = ResourceFolderRegistry.getInstance(projectRule.project)
+    registry.reset()
+    val repository = registry[facet, stringsFile.virtualFile.parent.parent, ResourceNamespace.RES_AUTO]
+    val readers = Executors.newFixedThreadPool(NUMBER_OF_READERS)
+    try {
+      resourceContentionBenchmark.measureOperation(listOf(ReadThroughputMeasurement(Metric(metricName))),
+                                                   samplesCount = 10,
+                                                   printSamples = true) {
+        val stop = AtomicBoolean()
+        val started = CountDownLatch(NUMBER_OF_READERS)
+        val reads = List(NUMBER_OF_READERS) { reader ->
+          readers.submit<Long> {
+            started.countDown()
+            var count = 0L
+            while (!stop.get()) {
+              val name = "string${(count * NUMBER_OF_READERS + reader) % NUMBER_OF_STRINGS}"
+              assertTrue(repository.hasResources(ResourceNamespace.RES_AUTO, ResourceType.STRING, name))
+              repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING, name)
+              count++
+            }
+            count
+          }
+        }
+        started.await()
+        val start = System.nanoTime()
+        editStringsFile()
+        waitForUpdates(repository, 1, TimeUnit.MINUTES)
+        stop.set(true)
+        val elapsedNanos = System.nanoTime() - start
+        reads.sumOf { it.get(1, TimeUnit.MINUTES) } * TimeUnit.SECONDS.toNanos(1) / elapsedNanos
+      }
+    }
+    finally {
+      readers.shutdownNow()
+    }
+  }
+
+  /**
+   * Renames the "edited" string back and forth, which is applied to the repository as an incremental update.
+   */
+  private fun editStringsFile() {
+    val documentManager = PsiDocumentManager.getInstance(projectRule.project)
+    val document = documentManager.getDocument(stringsFile)!!
+    repeat(NUMBER_OF_EDITS) {
+      WriteCommandAction.runWriteCommandAction(projectRule.project) {
+        val offset = document.text.indexOf("\"edited") + "\"edited".length
+        if (document.charsSequence[offset] == '"') {
+          document.insertString(offset, "_renamed")
+        }
+        else {
+          document.deleteString(offset, offset + "_renamed".length)
+        }
+        documentManager.commitDocument(document)
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res
+
+import com.android.ide.common.rendering.api.ResourceNamespace
+import com.android.resources.ResourceType
+import com.android.tools.concurrency.AndroidIoManager
+import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.idea.rendering.ElapsedTimeMeasurement
+import com.android.tools.idea.rendering.measureOperation
+import com.android.tools.idea.testing.AndroidProjectRule
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.intellij.openapi.vfs.LocalFileSystem
+import com.intellij.openapi.vfs.VfsUtil
+import com.intellij.openapi.vfs.VirtualFile
+import org.jetbrains.android.facet.AndroidFacet
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+private const val NUMBER_OF_MODULES = 100
+private const val STRINGS_PER_MODULE = 1500
+private const val LAYOUTS_PER_MODULE = 500
+private const val STRINGS_PER_FILE = 100
+
+private val resourceLoadingBenchmark = Benchmark.Builder("Resource Repository Loading Benchmark")
+  .setProject("Design Tools")
+  .setDescription("Creation of the resource repositories of $NUMBER_OF_MODULES modules with " +
+                  "${STRINGS_PER_MODULE + LAYOUTS_PER_MODULE} resources each.")
+  .build()
+
+/**
+ * Measures the initial scan of the resource folders of a generated project, one folder per module, with
+ * [StudioFlags.RESOURCE_REPOSITORY_PARALLEL_LOADING] disabled and enabled. In both cases the folders are loaded concurrently, like
+ * [ResourceFolderRegistry.PopulateCachesTask] does, so the two metrics differ only in how the files of each folder are parsed.
+ * The persistent resource cache is not used, so every XML file is parsed.
+ */
+class PerfgateResourceRepositoryLoadingTest {
+  @get:Rule
+  val projectRule = AndroidProjectRule.onDisk()
+
+  private lateinit var resourceDirs: List<VirtualFile>
+
+  @Before
+  fun setUp() {
+    val root = Path.of(projectRule.fixture.tempDirPath, "modules")
+    val dirs = List(NUMBER_OF_MODULES) { generateResourceDir(root.resolve("module$it").resolve("res"), "module$it") }
+    VfsUtil.markDirtyAndRefresh(false, true, true, LocalFileSystem.getInstance().refreshAndFindFileByNioFile(root)!!)
+    resourceDirs = dirs.map { LocalFileSystem.getInstance().findFileByNioFile(it)!! }
+  }
+
+  @After
+  fun tearDown() {
+    StudioFlags.RESOURCE_REPOSITORY_PARALLEL_LOADING.clearOverride()
+    ResourceFolderRegistry.getInstance(projectRule.project).reset()
+  }
+
+  @Test
+  fun serialFolderParsing() {
+    StudioFlags.RESOURCE_REPOSITORY_PARALLEL_LOADING.override(false)
+    measureLoading("resource_repository_serial_loading_time")
+  }
+
+  @Test
+  fun parallelFolderParsing() {
+    StudioFlags.RESOURCE_REPOSITORY_PARALLEL_LOADING.override(true)
+    measureLoading("resource_repository_parallel_loading_time")
+  }
+
+  private fun measureLoading(metricName: String) {
+    val facet = AndroidFacet.getInstance(projectRule.module)!!
+    val registry = ResourceFolderRegistry.getInstance(projectRule.project)
+    val executor = AndroidIoManager.getInstance().getBackgroundDiskIoExecutor()
+    resourceLoadingBenchmark.measureOperation(listOf(ElapsedTimeMeasurement(Metric(metricName))),
+                                              samplesCount = 10,
+                                              printSamples = true) {
+      registry.reset()
+      resourceDirs.map { dir -> executor.submit<ResourceFolderRepository> { registry[facet, dir, ResourceNamespace.RES_AUTO] } }
+        .map { it.get(5, TimeUnit.MINUTES) }
+        .onEach {
+          assertEquals(STRINGS_PER_MODULE, it.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING).size())
+          assertEquals(LAYOUTS_PER_MODULE, it.getResources(ResourceNamespace.RES_AUTO, ResourceType.LAYOUT).size())
+        }
+    }
+  }
+
+  /**
+   * Writes values files with [STRINGS_PER_MODULE] strings and [LAYOUTS_PER_MODULE] layouts, each declaring a couple of ids.
+   */
+  private fun generateResourceDir(dir: Path, prefix: String): Path {
+    val valuesDir = Files.createDirectories(dir.resolve("values"))
+    for (file in 0 until STRINGS_PER_MODULE / STRINGS_PER_FILE) {
+      val strings = (0 until STRINGS_PER_FILE).joinToString("\n") {
+        val index = file * STRINGS_PER_FILE + it
+        """    <string name="${prefix}_string$index">String $index of $prefix</string>"""
+      }
+      Files.writeString(valuesDir.resolve("strings$file.xml"), "<resources>\n$strings\n</resources>\n")
+    }
+    val layoutDir = Files.createDirectories(dir.resolve("layout"))
+    for (layout in 0 until LAYOUTS_PER_MODULE) {
+      Files.writeString(layoutDir.resolve("${prefix}_layout$layout.xml"), """
+        <LinearLayout xmlns:android="http://schemas.android.com/apk/res/android"
+            android:layout_width="match_parent"
+            android:layout_height="match_parent"
+            android:orientation="vertical">
+          <TextView
+              android:id="@+id/title$layout"
+              android:layout_width="wrap_content"
+              android:layout_height="wrap_content"
+              android:text="@string/${prefix}_string${layout % STRINGS_PER_MODULE}" />
+          <Button
+              android:id="@+id/button$layout"
+              android:layout_width="wrap_content"
+              android:layout_height="wrap_content" />
+        </LinearLayout>
+      """.trimIndent())
+    }
+    return dir
+  }
+}
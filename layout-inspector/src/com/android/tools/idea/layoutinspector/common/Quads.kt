@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.layoutinspector.common
+
+import java.awt.Polygon
+import java.awt.Rectangle
+import java.awt.Shape
+
+/**
+ * Create the [Shape] of the quadrilateral with the corners (x0, y0), (x1, y1), (x2, y2), (x3, y3).
+ *
+ * Most views are neither rotated nor skewed, so their quad is an axis aligned rectangle: return a
+ * [Rectangle] for those, which takes a fraction of the memory of a [Polygon] and is faster to hit
+ * test and draw.
+ */
+fun quadToShape(x0: Int, y0: Int, x1: Int, y1: Int, x2: Int, y2: Int, x3: Int, y3: Int): Shape {
+  val horizontalFirst = y0 == y1 && x1 == x2 && y2 == y3 && x3 == x0
+  val verticalFirst = x0 == x1 && y1 == y2 && x2 == x3 && y3 == y0
+  if (horizontalFirst || verticalFirst) {
+    val left = minOf(x0, x2)
+    val top = minOf(y0, y2)
+    return Rectangle(left, top, maxOf(x0, x2) - left, maxOf(y0, y2) - top)
+  }
+  return Polygon(intArrayOf(x0, x1, x2, x3), intArrayOf(y0, y1, y2, y3), 4)
+}
@@ -250,5 +250,16 @@ class ComposeViewNode(
     recompositions.reset()
   }
 
+  override fun attributeHash(): Long {
+    var hash = super.attributeHash()
+    hash = combineHash(hash, composeFilename.hashCode().toLong())
+    hash = combineHash(hash, composePackageHash.toLong())
+    hash = combineHash(hash, composeOffset.toLong())
+    hash = combineHash(hash, composeLineNumber.toLong())
+    hash = combineHash(hash, composeFlags.toLong())
+    hash = combineHash(hash, recompositions.count.toLong())
+    return combineHash(hash, recompositions.skips.toLong())
+  }
+
   @Suppress("NOTHING_TO_INLINE") inline fun Int.hasFlag(flag: Int) = flag and this == flag
 }
@@ -26,6 +26,8 @@ import com.android.tools.idea.util.ListenerCollection
 import com.google.wireless.android.sdk.stats.DynamicLayoutInspectorErrorInfo
 import com.intellij.openapi.project.Project
 import java.awt.Dimension
+import java.util.Collections
+import java.util.IdentityHashMap
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executors.newSingleThreadExecutor
 import java.util.concurrent.ScheduledExecutorService
@@ -53,6 +55,49 @@ fun interface InspectorModelModificationListener {
     newWindow: AndroidWindow?,
     isStructuralChange: Boolean
   )
+
+  /**
+   * Called by the [InspectorModel] with the [changes] made to the nodes of [newWindow]. Listeners
+   * can override this to skip work for the parts of the model that didn't change.
+   */
+  fun onModification(
+    oldWindow: AndroidWindow?,
+    newWindow: AndroidWindow?,
+    changes: InspectorModelChanges
+  ) {
+    onModification(oldWindow, newWindow, changes.isStructuralChange)
+  }
+}
+
+/**
+ * The changes made to the nodes of a window by an [InspectorModel] update.
+ *
+ * @param addedNodes the nodes added to the window, including all nodes of added subtrees
+ * @param removedNodes the nodes removed from the window, including all nodes of removed subtrees
+ * @param modifiedNodes the nodes that remained in the window but got different attributes
+ * @param isStructuralChange true if the hierarchy of the nodes or windows changed
+ * @param isUnspecified true if the changes are not known in detail, i.e. any node may have changed
+ */
+class InspectorModelChanges(
+  val addedNodes: Collection<ViewNode>,
+  val removedNodes: Collection<ViewNode>,
+  val modifiedNodes: Collection<ViewNode>,
+  val isStructuralChange: Boolean,
+  val isUnspecified: Boolean = false
+) {
+  /** True if no node is known to have changed. */
+  val isEmpty: Boolean
+    get() =
+      !isUnspecified &&
+        !isStructuralChange &&
+        addedNodes.isEmpty() &&
+        removedNodes.isEmpty() &&
+        modifiedNodes.isEmpty()
+
+  companion object {
+    fun unspecified(isStructuralChange: Boolean) =
+      InspectorModelChanges(emptyList(), emptyList(), emptyList(), isStructuralChange, true)
+  }
 }
 
 class InspectorModel(
@@ -258,7 +303,13 @@ class InspectorModel(
   private fun resetRecompositionCounters() {
     maxRecomposition.reset()
     maxHighlight = 0f
-    updateAll { node -> (node as? ComposeViewNode)?.resetRecomposeCounts() }
+    ViewNode.writeAccess {
+      root.flatten().forEach { node ->
+        (node as? ComposeViewNode)?.resetRecomposeCounts()
+        // The counts no longer match the ones received from the device.
+        node.fingerprint = NO_FINGERPRINT
+      }
+    }
   }
 
   fun updatePropertiesPanel() {
@@ -273,6 +324,10 @@ class InspectorModel(
    * Replaces all subtrees with differing root IDs. Existing views are updated. This removes
    * drawChildren from all existing [ViewNode]s. [AndroidWindow.refreshImages] must be called on
    * newWindow after to regenerate them.
+   *
+   * When [newWindow] replaces a window with the same root, only the subtrees whose fingerprints
+   * differ are updated, and the listeners are notified of the nodes that were added, removed, or
+   * modified.
    */
   fun update(
     newWindow: AndroidWindow?,
@@ -284,8 +339,11 @@ class InspectorModel(
       // Reset the recomposition counters if this is a new connection:
       resetRecompositionCounters()
     }
-    var structuralChange: Boolean = windows.keys.retainAll(allIds)
+    val windowsRemoved = windows.keys.retainAll(allIds)
+    var structuralChange: Boolean = windowsRemoved
     val oldWindow = if (newWindow != null) windows[newWindow.id] else null
+    // The changes made by an Updater, if the tree of an existing window was updated
+    var treeChanges: InspectorModelChanges? = null
     updating = true
     try {
       ViewNode.writeAccess {
@@ -293,6 +351,7 @@ class InspectorModel(
           // changes in DIM_BEHIND will cause a structural change
           structuralChange = structuralChange || (newWindow.isDimBehind != oldWindow?.isDimBehind)
           if (newWindow == oldWindow && !structuralChange) {
+            root.calculateTransitiveBounds()
             return@writeAccess
           } else if (
             newWindow.root.drawId != oldWindow?.root?.drawId ||
@@ -310,8 +369,19 @@ class InspectorModel(
             }
           } else {
             oldWindow.copyFrom(newWindow)
-            val updater = Updater(oldWindow.root, newWindow.root, this)
-            structuralChange = updater.update() || structuralChange
+            if (idLookup.isEmpty()) {
+              root.flatten().forEach { idLookup[it.drawId] = it }
+            }
+            val updater = Updater(oldWindow.root, newWindow.root, idLookup, this)
+            val treeStructureChanged = updater.update()
+            structuralChange = treeStructureChanged || structuralChange
+            treeChanges =
+              InspectorModelChanges(
+                updater.addedNodes,
+                updater.removedNodes,
+                updater.modifiedNodes,
+                treeStructureChanged
+              )
           }
         }
 
@@ -323,9 +393,25 @@ class InspectorModel(
           hoveredNode = null
         }
         lastGeneration = generation
-        idLookup.clear()
-        val allNodes = root.flatten().toSet()
-        hiddenNodes.removeIf { !allNodes.contains(it) }
+        val changes = treeChanges
+        if (changes == null || windowsRemoved) {
+          idLookup.clear()
+          val allNodes = root.flatten().toSet()
+          hiddenNodes.removeIf { !allNodes.contains(it) }
+        } else {
+          // The Updater keeps idLookup up to date.
+          changes.removedNodes.forEach { hiddenNodes.remove(it) }
+        }
+        if (changes == null) {
+          root.calculateTransitiveBounds()
+        } else {
+          // The Updater recalculated the transitive bounds of the changed subtrees.
+          root.updateTransitiveBounds()
+          if (changes.isEmpty && !structuralChange) {
+            // Nothing changed that could affect the recomposition counts.
+            return@writeAccess
+          }
+        }
         maxRecomposition.reset()
         root.flatten().forEach { maxRecomposition.maxOf(it) }
         if (
@@ -339,14 +425,18 @@ class InspectorModel(
           maxHighlight = maxRecomposition.highlightCount
         }
       }
-      root.calculateTransitiveBounds()
     } finally {
       updating = false
     }
 
     notifyUpdateCompleted()
     val window = if (newWindow != null) windows[newWindow.id] else null
-    modificationListeners.forEach { it.onModification(oldWindow, window, structuralChange) }
+    val changes =
+      treeChanges?.let {
+        InspectorModelChanges(it.addedNodes, it.removedNodes, it.modifiedNodes, structuralChange)
+      }
+        ?: InspectorModelChanges.unspecified(structuralChange)
+    modificationListeners.forEach { it.onModification(oldWindow, window, changes) }
   }
 
   private fun decreaseHighlights() {
@@ -362,8 +452,9 @@ class InspectorModel(
         maxHighlight = 0f
       }
     }
+    val changes = InspectorModelChanges.unspecified(false)
     windows.values.forEach { window ->
-      modificationListeners.forEach { it.onModification(window, window, false) }
+      modificationListeners.forEach { it.onModification(window, window, changes) }
     }
   }
 
@@ -377,11 +468,11 @@ class InspectorModel(
   }
 
   fun notifyModified(structuralChange: Boolean = false) {
-    if (windows.isEmpty())
-      modificationListeners.forEach { it.onModification(null, null, structuralChange) }
+    val changes = InspectorModelChanges.unspecified(structuralChange)
+    if (windows.isEmpty()) modificationListeners.forEach { it.onModification(null, null, changes) }
     else
       windows.values.forEach { window ->
-        modificationListeners.forEach { it.onModification(window, window, structuralChange) }
+        modificationListeners.forEach { it.onModification(window, window, changes) }
       }
   }
 
@@ -427,21 +518,38 @@ class InspectorModel(
 
   fun hasHiddenNodes() = hiddenNodes.isNotEmpty()
 
-  /** Used to update the model when the view changes on the device. */
+  /**
+   * Used to update the model when the view changes on the device.
+   *
+   * Subtrees with the same [ViewNode.ReadAccess.fingerprint] in the old and the new tree are
+   * skipped. [idLookup] is used for finding the old nodes that moved, and is kept up to date.
+   */
   private class Updater(
     private val oldRoot: ViewNode,
     private val newRoot: ViewNode,
+    private val idLookup: MutableMap<Long, ViewNode>,
     private val access: ViewNode.WriteAccess
   ) {
-    private val oldNodes =
-      access.run {
-        oldRoot.flatten().filter { it.drawId != 0L }.associateByTo(mutableMapOf()) { it.drawId }
-      }
+    /** The old nodes that remain in the tree. */
+    private val reused: MutableSet<ViewNode> = Collections.newSetFromMap(IdentityHashMap())
+    /** The old nodes that were children of updated nodes. Those not [reused] were removed. */
+    private val formerChildren = mutableListOf<ViewNode>()
+
+    val addedNodes = mutableListOf<ViewNode>()
+    val removedNodes = mutableListOf<ViewNode>()
+    val modifiedNodes = mutableListOf<ViewNode>()
 
+    /** Updates the old tree and returns true if its structure changed. */
     fun update(): Boolean {
       return access.run {
-        val modified = update(oldRoot, oldRoot.parent, newRoot)
-        oldNodes.values.forEach { it.parent = null }
+        newRoot.computeFingerprints()
+        var modified = update(oldRoot, oldRoot.parent, newRoot)
+        for (node in formerChildren) {
+          if (node !in reused) {
+            modified = true
+            removeSubtree(node)
+          }
+        }
         modified
       }
     }
@@ -455,7 +563,20 @@ class InspectorModel(
       parent: ViewNode?,
       newNode: ViewNode
     ): Boolean {
-      var modified = (parent != oldNode.parent) || !sameChildren(oldNode, newNode)
+      reused.add(oldNode)
+      var modified = (parent != oldNode.parent)
+      oldNode.parent = parent
+      if (
+        oldNode === newNode ||
+          oldNode.fingerprint != NO_FINGERPRINT && oldNode.fingerprint == newNode.fingerprint
+      ) {
+        // Nothing changed in this subtree.
+        return modified
+      }
+      modified = modified || !sameChildren(oldNode, newNode)
+      if (oldNode.attributeHash() != newNode.attributeHash()) {
+        modifiedNodes.add(oldNode)
+      }
       // TODO: should changes below cause modified to be set to true?
       // Maybe each view should have its own modification listener that can listen for such changes?
       oldNode.layoutBounds = newNode.layoutBounds
@@ -463,7 +584,7 @@ class InspectorModel(
       oldNode.layout = newNode.layout
       oldNode.renderBounds = newNode.renderBounds
       oldNode.layoutFlags = newNode.layoutFlags
-      oldNode.parent = parent
+      oldNode.fingerprint = newNode.fingerprint
       if (oldNode is ComposeViewNode && newNode is ComposeViewNode) {
         oldNode.composeFilename = newNode.composeFilename
         oldNode.composePackageHash = newNode.composePackageHash
@@ -473,26 +594,50 @@ class InspectorModel(
         oldNode.recompositions.update(newNode.recompositions)
       }
 
+      formerChildren.addAll(oldNode.children)
       oldNode.children.clear()
       // Don't update or clear the drawChildren at this point. They will be refreshed by a listener
       // after the update is complete,
       // and we can continue using the old ones for view sizing calculations until that happens.
 
       for (newChild in newNode.children) {
-        val oldChild = oldNodes[newChild.drawId]
-        if (oldChild != null && oldChild.javaClass == newChild.javaClass) {
+        val oldChild = if (newChild.drawId != 0L) idLookup[newChild.drawId] else null
+        if (
+          oldChild != null && oldChild !in reused && oldChild.javaClass == newChild.javaClass
+        ) {
           modified = update(oldChild, oldNode, newChild) || modified
           oldNode.children.add(oldChild)
-          oldNodes.remove(newChild.drawId)
         } else {
           modified = true
           oldNode.children.add(newChild)
           newChild.parent = oldNode
+          addSubtree(newChild)
         }
       }
+      oldNode.updateTransitiveBounds()
       return modified
     }
 
+    private fun ViewNode.WriteAccess.addSubtree(subtreeRoot: ViewNode) {
+      subtreeRoot.calculateTransitiveBounds()
+      for (node in subtreeRoot.flatten()) {
+        idLookup[node.drawId] = node
+        addedNodes.add(node)
+      }
+    }
+
+    private fun ViewNode.WriteAccess.removeSubtree(subtreeRoot: ViewNode) {
+      val pending = mutableListOf(subtreeRoot)
+      while (pending.isNotEmpty()) {
+        val node = pending.removeLast()
+        node.parent = null
+        idLookup.remove(node.drawId, node)
+        removedNodes.add(node)
+        // Children that were moved elsewhere are not removed.
+        node.children.filterTo(pending) { it !in reused }
+      }
+    }
+
     private fun ViewNode.WriteAccess.sameChildren(oldNode: ViewNode?, newNode: ViewNode?): Boolean {
       if (oldNode?.children?.size != newNode?.children?.size) {
         return false
@@ -24,6 +24,7 @@ import com.intellij.psi.SmartPointerManager
 import com.intellij.psi.SmartPsiElementPointer
 import com.intellij.psi.xml.XmlTag
 import org.jetbrains.annotations.TestOnly
+import java.awt.Polygon
 import java.awt.Rectangle
 import java.awt.Shape
 import java.util.concurrent.locks.ReentrantReadWriteLock
@@ -36,6 +37,25 @@ import kotlin.concurrent.write
 private val systemPackagePrefixes =
   setOf("android.", "androidx.", "com.android.", "com.google.android.")
 
+/** The [ViewNode.ReadAccess.fingerprint] of nodes whose subtree fingerprint is not known. */
+internal const val NO_FINGERPRINT = 0L
+
+/** Combines [value] into [hash]. Used for computing [ViewNode.ReadAccess.fingerprint]s. */
+internal fun combineHash(hash: Long, value: Long): Long {
+  val mixed = (hash xor value) * -0x61c8864680b583ebL
+  return mixed xor (mixed ushr 32)
+}
+
+private fun Shape.contentHash(): Long =
+  when (this) {
+    is Rectangle -> hashCode().toLong()
+    is Polygon ->
+      (0 until npoints).fold(npoints.toLong()) { hash, i ->
+        combineHash(combineHash(hash, xpoints[i].toLong()), ypoints[i].toLong())
+      }
+    else -> bounds2D.hashCode().toLong()
+  }
+
 /**
  * A view node represents a view in the view hierarchy as seen on the device.
  *
@@ -141,6 +161,13 @@ open class ViewNode(
 
   private var tagPointer: SmartPsiElementPointer<XmlTag>? = null
 
+  /**
+   * A hash of the [attributeHash]es of all nodes in the subtree starting with this node, or
+   * [NO_FINGERPRINT] if not known. Two subtrees with the same fingerprint are considered identical
+   * by [InspectorModel.update].
+   */
+  private var fingerprint = NO_FINGERPRINT
+
   private val children = mutableListOf<ViewNode>()
   private var parent: ViewNode? = null
 
@@ -168,6 +195,19 @@ open class ViewNode(
   val isDimBehind: Boolean
     get() = (layoutFlags and WINDOW_MANAGER_FLAG_DIM_BEHIND) > 0
 
+  /**
+   * Returns a hash of the attributes of this node that [InspectorModel.update] copies from the
+   * nodes received from the device.
+   */
+  internal open fun attributeHash(): Long {
+    var hash = combineHash(javaClass.name.hashCode().toLong(), drawId)
+    hash = combineHash(hash, qualifiedName.hashCode().toLong())
+    hash = combineHash(hash, layout.hashCode().toLong())
+    hash = combineHash(hash, layoutBounds.hashCode().toLong())
+    hash = combineHash(hash, renderBounds.contentHash())
+    return combineHash(hash, layoutFlags.toLong())
+  }
+
   /**
    * Create a sequence of the sub tree starting with the current ViewNode (Post-order, LRN, or order
    * doesn't matter)
@@ -208,14 +248,25 @@ open class ViewNode(
    * once after the ViewNode tree is built.
    */
   fun calculateTransitiveBounds() {
-    readAccess {
-      flatten().forEach {
-        it.transitiveBounds =
-          it.children.map(ViewNode::transitiveBounds).plus(it.renderBounds.bounds).reduce { r1, r2
-            ->
-            r1.union(r2)
-          }
+    readAccess { flatten().forEach { it.updateTransitiveBounds() } }
+  }
+
+  /** Calculate the transitive bounds of this node from the transitive bounds of its children. */
+  private fun updateTransitiveBounds() {
+    transitiveBounds =
+      children.map(ViewNode::transitiveBounds).plus(renderBounds.bounds).reduce { r1, r2 ->
+        r1.union(r2)
       }
+  }
+
+  /** Compute the [fingerprint]s of all nodes in the subtree starting with this node. */
+  private fun computeFingerprints() {
+    flattenedList().forEach { node ->
+      val hash =
+        node.children.fold(node.attributeHash()) { combined, child ->
+          combineHash(combined, child.fingerprint)
+        }
+      node.fingerprint = if (hash == NO_FINGERPRINT) 1L else hash
     }
   }
 
@@ -233,6 +284,8 @@ open class ViewNode(
       get() = drawChildren
     val ViewNode.parentSequence: Sequence<ViewNode>
       get() = parentSequence
+    val ViewNode.fingerprint: Long
+      get() = fingerprint
     fun ViewNode.flatten(): Sequence<ViewNode> = flatten()
     fun ViewNode.preOrderFlatten(): Sequence<ViewNode> = preOrderFlatten()
   }
@@ -244,6 +297,13 @@ open class ViewNode(
       set(value) {
         parent = value
       }
+    override var ViewNode.fingerprint: Long
+      get() = fingerprint
+      set(value) {
+        fingerprint = value
+      }
+    fun ViewNode.updateTransitiveBounds() = updateTransitiveBounds()
+    fun ViewNode.computeFingerprints() = computeFingerprints()
   }
 
   companion object {
@@ -28,6 +28,10 @@ import java.util.concurrent.ConcurrentHashMap
  *
  * This class also encapsulates the idea of fetching data from the device if it's not found locally.
  *
+ * Data received in bulk can be added with a generator, which is only run when the data of a view is
+ * first requested: most views of a large layout are never selected, so converting all of their data
+ * up front would only cost time and memory.
+ *
  * @param D The type of cached data.
  */
 abstract class ViewNodeCache<D>(protected val model: InspectorModel) {
@@ -40,9 +44,9 @@ abstract class ViewNodeCache<D>(protected val model: InspectorModel) {
    */
   var allowFetching = false
 
-  // Specifically, this is a Map<RootId, Map<ViewId, Data>>()
+  // Specifically, this is a Map<RootId, Map<ViewId, Lazy<Data>>>()
   // Occasionally, roots are discarded, so we can drop whole branches of cached data in that case.
-  private val cache: MutableMap<Long, ConcurrentHashMap<Long, D>> = ConcurrentHashMap()
+  private val cache: MutableMap<Long, ConcurrentHashMap<Long, Lazy<D>>> = ConcurrentHashMap()
 
   /** Remove all nested data for views that are children to [rootId]. */
   fun clearFor(rootId: Long) {
@@ -68,7 +72,7 @@ abstract class ViewNodeCache<D>(protected val model: InspectorModel) {
    */
   suspend fun getDataFor(node: ViewNode): D? {
     val root = model.rootFor(node) ?: return null // Unrooted nodes are not supported
-    val cached = cache[root.drawId]?.get(node.drawId)
+    val cached = cache[root.drawId]?.get(node.drawId)?.value
     if (cached != null) {
       return cached
     }
@@ -86,11 +90,20 @@ abstract class ViewNodeCache<D>(protected val model: InspectorModel) {
     }
   }
 
-  fun getCachedDataFor(rootId: Long, composeId: Long): D? = cache[rootId]?.get(composeId)
+  fun getCachedDataFor(rootId: Long, composeId: Long): D? = cache[rootId]?.get(composeId)?.value
 
   protected abstract suspend fun fetchDataFor(root: ViewNode, node: ViewNode): D?
 
   protected fun setDataFor(rootId: Long, viewId: Long, data: D) {
+    setLazyDataFor(rootId, viewId, lazyOf(data))
+  }
+
+  /** Set the data for [viewId] to the result of [generate], which is run on first access. */
+  protected fun setDataFor(rootId: Long, viewId: Long, generate: () -> D) {
+    setLazyDataFor(rootId, viewId, lazy(generate))
+  }
+
+  private fun setLazyDataFor(rootId: Long, viewId: Long, data: Lazy<D>) {
     val innerMap = cache.computeIfAbsent(rootId) { ConcurrentHashMap() }
     innerMap[viewId] = data
   }
@@ -72,11 +72,9 @@ class ComposeParametersCache(
     val stringTable = StringTableImpl(response.stringsList)
     for (group in response.parameterGroupsList) {
       val rootId = response.rootViewId
-      setDataFor(
-        rootId,
-        group.composableId,
+      setDataFor(rootId, group.composableId) {
         ComposeParametersDataGenerator(stringTable, this).generate(rootId, group)
-      )
+      }
     }
   }
 
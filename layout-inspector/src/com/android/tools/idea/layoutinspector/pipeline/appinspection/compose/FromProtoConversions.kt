@@ -15,15 +15,15 @@
  */
 package com.android.tools.idea.layoutinspector.pipeline.appinspection.compose
 
+import com.android.tools.idea.layoutinspector.common.quadToShape
 import com.android.tools.idea.layoutinspector.properties.PropertyType
 import layoutinspector.compose.inspection.LayoutInspectorComposeProtocol
 import layoutinspector.compose.inspection.LayoutInspectorComposeProtocol.ComposableNode
 import layoutinspector.compose.inspection.LayoutInspectorComposeProtocol.GetComposablesResponse
-import java.awt.Polygon
 import java.awt.Shape
 
 fun LayoutInspectorComposeProtocol.Quad.toShape(): Shape {
-  return Polygon(intArrayOf(x0, x1, x2, x3), intArrayOf(y0, y1, y2, y3), 4)
+  return quadToShape(x0, y0, x1, y1, x2, y2, x3, y3)
 }
 
 fun LayoutInspectorComposeProtocol.Parameter.Type.convert(): PropertyType {
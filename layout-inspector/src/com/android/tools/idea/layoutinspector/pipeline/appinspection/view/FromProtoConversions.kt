@@ -54,6 +54,7 @@ import com.android.resources.ScreenSize
 import com.android.resources.TouchScreen
 import com.android.resources.UiMode
 import com.android.resources.WideGamutColor
+import com.android.tools.idea.layoutinspector.common.quadToShape
 import com.android.tools.idea.layoutinspector.model.AndroidWindow
 import com.android.tools.idea.layoutinspector.model.InspectorModel
 import com.android.tools.idea.layoutinspector.properties.PropertyType
@@ -111,7 +112,6 @@ import com.android.tools.idea.layoutinspector.view.inspection.LayoutInspectorVie
 import com.google.wireless.android.sdk.stats.DynamicLayoutInspectorErrorInfo.AttachErrorCode
 import com.google.wireless.android.sdk.stats.DynamicLayoutInspectorErrorInfo.AttachErrorState
 import java.awt.Dimension
-import java.awt.Polygon
 import java.awt.Shape
 
 // TODO(b/275714274) Remove these constants when android U / 34 is merged into prebuilts, and use
@@ -204,7 +204,7 @@ fun LayoutInspectorViewProtocol.ErrorCode.toAttachErrorCode() =
   }
 
 fun LayoutInspectorViewProtocol.Quad.toShape(): Shape {
-  return Polygon(intArrayOf(x0, x1, x2, x3), intArrayOf(y0, y1, y2, y3), 4)
+  return quadToShape(x0, y0, x1, y1, x2, y2, x3, y3)
 }
 
 /**
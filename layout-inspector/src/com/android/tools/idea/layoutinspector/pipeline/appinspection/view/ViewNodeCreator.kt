@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.layoutinspector.pipeline.appinspection.view
 
+import com.android.ide.common.rendering.api.ResourceReference
 import com.android.tools.idea.layoutinspector.common.StringTable
 import com.android.tools.idea.layoutinspector.model.ComposeViewNode
 import com.android.tools.idea.layoutinspector.model.ViewNode
@@ -41,6 +42,11 @@ class ViewNodeCreator(
   private val rootView = layoutEvent.rootView
   private val composeNodeCreator = composeResult?.let { ComposeViewNodeCreator(it) }
 
+  // Large layouts consist of many views of a few classes with a few layouts, so share the
+  // qualified names and resource references between the nodes rather than creating them per view.
+  private val qualifiedNames = mutableMapOf<Long, String>()
+  private val resources = mutableMapOf<LayoutInspectorViewProtocol.Resource, ResourceReference?>()
+
   /** The collected capabilities based on the loaded data. */
   val dynamicCapabilities: Set<Capability>
     get() = composeNodeCreator?.dynamicCapabilities ?: emptySet()
@@ -63,9 +69,11 @@ class ViewNodeCreator(
 
     val view = this
 
-    val qualifiedName = "${strings[view.packageName]}.${strings[view.className]}"
-    val resource = view.resource.convert().createReference(strings)
-    val layoutResource = view.layoutResource.convert().createReference(strings)
+    val nameKey = view.packageName.toLong() shl 32 or view.className.toUInt().toLong()
+    val qualifiedName =
+      qualifiedNames.getOrPut(nameKey) { "${strings[view.packageName]}.${strings[view.className]}" }
+    val resource = view.resource.toReference()
+    val layoutResource = view.layoutResource.toReference()
     val textValue = strings[view.textValue]
     val layoutBounds = view.bounds.layout.let { Rectangle(it.x, it.y, it.w, it.h) }
     val renderBounds =
@@ -122,4 +130,7 @@ class ViewNodeCreator(
     }
     return node
   }
+
+  private fun LayoutInspectorViewProtocol.Resource.toReference(): ResourceReference? =
+    resources.getOrPut(this) { convert().createReference(strings) }
 }
@@ -26,11 +26,9 @@ sealed class ViewPropertiesCache(model: InspectorModel) : ViewNodeCache<ViewProp
   fun setAllFrom(event: PropertiesEvent) {
     val stringTable = StringTableImpl(event.stringsList)
     for (propertyGroup in event.propertyGroupsList) {
-      setDataFor(
-        event.rootId,
-        propertyGroup.viewId,
+      setDataFor(event.rootId, propertyGroup.viewId) {
         ViewPropertiesDataGenerator(stringTable, propertyGroup, model).generate()
-      )
+      }
     }
   }
 }
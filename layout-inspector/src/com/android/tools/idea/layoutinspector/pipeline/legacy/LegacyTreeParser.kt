@@ -38,6 +38,8 @@ object LegacyTreeParser {
     var lastNodeAndHash: Pair<ViewNode, String>? = null
     var lastWhitespaceCount = Integer.MIN_VALUE
     val stack = Stack<ViewNode>()
+    // Share the class names between the nodes rather than keeping a substring per node
+    val names = mutableMapOf<String, String>()
 
     val input = BufferedReader(InputStreamReader(ByteArrayInputStream(bytes), Charsets.UTF_8))
 
@@ -65,7 +67,7 @@ object LegacyTreeParser {
       if (!stack.isEmpty()) {
         parent = stack.peek()
       }
-      lastNodeAndHash = createViewNode(parent, line.trim(), propertyUpdater)
+      lastNodeAndHash = createViewNode(parent, line.trim(), names, propertyUpdater)
       if (rootNodeAndHash == null) {
         rootNodeAndHash = lastNodeAndHash
       }
@@ -77,12 +79,16 @@ object LegacyTreeParser {
   private fun createViewNode(
     parent: ViewNode?,
     data: String,
+    names: MutableMap<String, String>,
     propertyLoader: LegacyPropertiesProvider.Updater
   ): Pair<ViewNode, String> {
-    val (name, dataWithoutName) = data.split('@', limit = 2)
+    val (rawName, dataWithoutName) = data.split('@', limit = 2)
+    val name = names.getOrPut(rawName) { rawName }
     val (hash, properties) = dataWithoutName.split(' ', limit = 2)
     val hashId = hash.toLongOrNull(16) ?: 0
-    val view = ViewNode(hashId, name, null, Rectangle(), Rectangle(), null, "", 0)
+    // The render bounds are set to the layout bounds when the properties are parsed
+    val bounds = Rectangle()
+    val view = ViewNode(hashId, name, null, bounds, bounds, null, "", 0)
     ViewNode.writeAccess {
       view.parent = parent
       parent?.children?.add(view)
@@ -67,7 +67,7 @@ class AppInspectionSnapshotLoader : SnapshotLoader {
     propertiesProvider =
       AppInspectionPropertiesProvider(viewPropertiesCache, composeParametersCache, model)
     // TODO: error handling
-    ObjectInputStream(Files.newInputStream(file)).use { input ->
+    ObjectInputStream(Files.newInputStream(file).buffered()).use { input ->
       val options = LayoutInspectorCaptureOptions().apply { parse(input.readUTF()) }
       if (options.version != APP_INSPECTION_SNAPSHOT_VERSION) {
         val message =
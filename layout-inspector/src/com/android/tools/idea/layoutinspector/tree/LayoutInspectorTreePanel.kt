@@ -29,6 +29,7 @@ import com.android.tools.idea.layoutinspector.model.AndroidWindow
 import com.android.tools.idea.layoutinspector.model.ComposeViewNode
 import com.android.tools.idea.layoutinspector.model.IconProvider
 import com.android.tools.idea.layoutinspector.model.InspectorModel
+import com.android.tools.idea.layoutinspector.model.InspectorModelChanges
 import com.android.tools.idea.layoutinspector.model.InspectorModelModificationListener
 import com.android.tools.idea.layoutinspector.model.SelectionOrigin
 import com.android.tools.idea.layoutinspector.model.ViewNode
@@ -111,9 +112,26 @@ class LayoutInspectorTreePanel(parentDisposable: Disposable) : ToolContent<Layou
   private var toolWindowCallback: ToolWindowCallback? = null
   private var filter = ""
   private val modelModifiedListener =
-    InspectorModelModificationListener { oldWindow, newWindow, isStructuralChange ->
-      modelModified(oldWindow, newWindow, isStructuralChange)
-      componentTreePanel.repaint()
+    object : InspectorModelModificationListener {
+      override fun onModification(
+        oldWindow: AndroidWindow?,
+        newWindow: AndroidWindow?,
+        isStructuralChange: Boolean
+      ) {
+        modelModified(oldWindow, newWindow, isStructuralChange)
+        componentTreePanel.repaint()
+      }
+
+      override fun onModification(
+        oldWindow: AndroidWindow?,
+        newWindow: AndroidWindow?,
+        changes: InspectorModelChanges
+      ) {
+        // An update that didn't change any node, e.g. a new screenshot, doesn't affect the tree.
+        if (!changes.isEmpty) {
+          onModification(oldWindow, newWindow, changes.isStructuralChange)
+        }
+      }
     }
   private val selectionChangedListener: (ViewNode?, ViewNode?, SelectionOrigin) -> Unit =
     { oldView, newView, origin ->
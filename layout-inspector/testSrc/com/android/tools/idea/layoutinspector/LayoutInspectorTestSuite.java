@@ -17,10 +17,19 @@ package com.android.tools.idea.layoutinspector;
 
 import com.android.testutils.JarTestSuiteRunner;
 import com.android.tools.adtui.swing.IconLoaderRule;
+import com.android.tools.idea.layoutinspector.model.InspectorModelBenchmarkTest;
+import com.android.tools.idea.layoutinspector.snapshots.SnapshotLoadBenchmarkTest;
 import com.android.tools.tests.IdeaTestSuiteBase;
 import org.junit.runner.RunWith;
 
 @RunWith(JarTestSuiteRunner.class)
+@JarTestSuiteRunner.ExcludeClasses({
+  LayoutInspectorTestSuite.class,  // a suite mustn't contain itself
+  // Benchmarks run in their own target, see intellij.android.layout-inspector.performance in layout-inspector/BUILD.
+  LayoutInspectorPerformanceTestSuite.class,
+  InspectorModelBenchmarkTest.class,
+  SnapshotLoadBenchmarkTest.class,
+})
 public class LayoutInspectorTestSuite extends IdeaTestSuiteBase {
   static {
     IconLoaderRule.enableIconLoading();
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.layoutinspector.common
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.awt.Polygon
+import java.awt.Rectangle
+
+class QuadsTest {
+  @Test
+  fun axisAlignedQuadIsRectangle() {
+    assertThat(quadToShape(10, 20, 40, 20, 40, 70, 10, 70)).isEqualTo(Rectangle(10, 20, 30, 50))
+    assertThat(quadToShape(40, 70, 40, 20, 10, 20, 10, 70)).isEqualTo(Rectangle(10, 20, 30, 50))
+    assertThat(quadToShape(10, 20, 10, 20, 10, 20, 10, 20)).isEqualTo(Rectangle(10, 20, 0, 0))
+  }
+
+  @Test
+  fun transformedQuadIsPolygon() {
+    val shape = quadToShape(25, 125, 75, 127, 78, 253, 23, 250)
+    assertThat(shape).isInstanceOf(Polygon::class.java)
+    assertThat((shape as Polygon).xpoints).isEqualTo(intArrayOf(25, 75, 78, 23))
+    assertThat(shape.ypoints).isEqualTo(intArrayOf(125, 127, 253, 250))
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.layoutinspector.model
+
+import com.android.tools.idea.layoutinspector.InspectorViewDescriptor
+import com.android.tools.idea.layoutinspector.model
+import com.android.tools.idea.layoutinspector.window
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import org.junit.Test
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+private const val ITEMS = 200
+private const val ITEM_DEPTH = 4
+private const val ITEM_FAN_OUT = 2
+private const val UPDATES = 200
+private const val RECOMPOSED_ITEMS_PER_UPDATE = 3
+private const val UPDATES_PER_SCROLL = 10
+
+/**
+ * Measures how long [InspectorModel.update] takes for a live Compose hierarchy of about 12,400
+ * nodes: a lazy list of [ITEMS] items of 62 composables each.
+ *
+ * The updates replay what the device sends while the app is running: each recomposes a few items,
+ * and every [UPDATES_PER_SCROLL]th update scrolls the list by an item. Only the time spent in
+ * [InspectorModel.update] is measured, not the time for building the trees of the updates.
+ * For comparison, the time of an update that can't skip any unchanged subtree is measured as well.
+ */
+class InspectorModelBenchmarkTest {
+  private val benchmark =
+    Benchmark.Builder("Layout Inspector Model Update Time (Micros)")
+      .setProject("Android Studio Layout Inspector")
+      .build()
+
+  private val random = Random(17)
+  /** The ids of the items in the list, in order. */
+  private val items = ArrayDeque((0 until ITEMS).toList())
+  /** The recomposition counts of the items by item id. */
+  private val recompositions = mutableMapOf<Int, Int>()
+
+  @Test
+  fun updateTime() {
+    val model = model { view(ROOT, 0, 0, 1080, 2400, qualifiedName = "rootType") }
+
+    measure("inspector_model_first_update") { model.update(nextWindow(), listOf(ROOT), 0) }
+
+    val times = LongArray(UPDATES)
+    for (generation in 1..UPDATES) {
+      if (generation % UPDATES_PER_SCROLL == 0) {
+        items.removeFirst()
+        items.addLast(items.last() + 1)
+      }
+      repeat(RECOMPOSED_ITEMS_PER_UPDATE) {
+        val item = items[random.nextInt(items.size)]
+        recompositions[item] = (recompositions[item] ?: 0) + 1
+      }
+      val window = nextWindow()
+      val start = System.nanoTime()
+      model.update(window, listOf(ROOT), generation)
+      times[generation - 1] = System.nanoTime() - start
+    }
+    times.sort()
+    record("inspector_model_update_median", times[UPDATES / 2])
+    record("inspector_model_update_p90", times[UPDATES * 9 / 10])
+
+    // For comparison, an update that can't skip any subtree.
+    model.resetRecompositionCounts()
+    val window = nextWindow()
+    measure("inspector_model_update_all_nodes") { model.update(window, listOf(ROOT), UPDATES + 1) }
+  }
+
+  private fun nextWindow(): AndroidWindow =
+    window(ROOT, ROOT, 0, 0, 1080, 2400, rootViewQualifiedName = "rootType") {
+      view(VIEW1, 0, 0, 1080, 2400, qualifiedName = "androidx.compose.ui.platform.ComposeView") {
+        compose(COMPOSE1, "LazyColumn", "list.kt", 1, width = 1080, height = 2400) {
+          items.forEachIndexed { index, item -> item(item, index * 100) }
+        }
+      }
+    }
+
+  /** Adds the composables of the list [item] at [y]. */
+  private fun InspectorViewDescriptor.item(item: Int, y: Int) {
+    val count = recompositions[item] ?: 0
+    // Give every item a range of ids that is large enough for its subtree.
+    var nextId = -1000L - item * 100L
+    fun InspectorViewDescriptor.subtree(depth: Int) {
+      val id = nextId--
+      compose(id, "Node$depth", "item.kt", 2, composeCount = count, y = y, height = 100) {
+        if (depth < ITEM_DEPTH) {
+          repeat(ITEM_FAN_OUT) { subtree(depth + 1) }
+        }
+      }
+    }
+    repeat(ITEM_FAN_OUT) { subtree(0) }
+  }
+
+  private fun measure(metricName: String, operation: () -> Unit) {
+    val start = System.nanoTime()
+    operation()
+    record(metricName, System.nanoTime() - start)
+  }
+
+  private fun record(metricName: String, nanos: Long) {
+    Metric(metricName).apply {
+      addSamples(
+        benchmark,
+        MetricSample(Instant.now().toEpochMilli(), TimeUnit.NANOSECONDS.toMicros(nanos))
+      )
+      commit()
+    }
+  }
+}
@@ -209,6 +209,71 @@ class InspectorModelTest {
     assertSingleRoot(model, FakeTreeSettings())
   }
 
+  @Test
+  fun testUpdateSkipsUnchangedSubtrees() {
+    fun window(count: Int, withText: Boolean = true) =
+      window(ROOT, ROOT, 2, 4, 6, 8, rootViewQualifiedName = "rootType") {
+        view(VIEW1, 8, 6, 4, 2, qualifiedName = "v1Type") {
+          compose(COMPOSE1, "Column", "column.kt", 123, composeCount = 1) {
+            compose(COMPOSE2, "Button", "button.kt", 234, composeCount = count)
+            if (withText) {
+              compose(COMPOSE3, "Text", "text.kt", 345, composeCount = 1)
+            }
+          }
+        }
+        view(VIEW2, 6, 7, 8, 9, qualifiedName = "v2Type")
+      }
+    val model = model {
+      view(ROOT, 2, 4, 6, 8, qualifiedName = "rootType") { view(VIEW1, 8, 6, 4, 2) }
+    }
+    var lastChanges: InspectorModelChanges? = null
+    model.modificationListeners.add(
+      object : InspectorModelModificationListener {
+        override fun onModification(
+          oldWindow: AndroidWindow?,
+          newWindow: AndroidWindow?,
+          isStructuralChange: Boolean
+        ) {}
+
+        override fun onModification(
+          oldWindow: AndroidWindow?,
+          newWindow: AndroidWindow?,
+          changes: InspectorModelChanges
+        ) {
+          lastChanges = changes
+        }
+      }
+    )
+    model.update(window(1), listOf(ROOT), 0)
+    assertThat(lastChanges!!.isStructuralChange).isTrue()
+    assertThat(lastChanges!!.addedNodes.map { it.drawId })
+      .containsExactly(COMPOSE1, COMPOSE2, COMPOSE3, VIEW2)
+    val origNodes = model.root.flattenedList().associateBy { it.drawId }
+
+    // Nothing changed
+    model.update(window(1), listOf(ROOT), 1)
+    assertThat(lastChanges!!.isEmpty).isTrue()
+
+    // A single composable recomposed
+    model.update(window(2), listOf(ROOT), 2)
+    assertThat(lastChanges!!.isStructuralChange).isFalse()
+    assertThat(lastChanges!!.addedNodes).isEmpty()
+    assertThat(lastChanges!!.removedNodes).isEmpty()
+    assertThat(lastChanges!!.modifiedNodes).containsExactly(origNodes[COMPOSE2])
+    assertThat((model[COMPOSE2] as ComposeViewNode).recompositions.count).isEqualTo(2)
+    assertThat(model.maxRecomposition.count).isEqualTo(2)
+
+    // A composable was removed
+    model.update(window(2, withText = false), listOf(ROOT), 3)
+    assertThat(lastChanges!!.isStructuralChange).isTrue()
+    assertThat(lastChanges!!.removedNodes).containsExactly(origNodes[COMPOSE3])
+    assertThat(model[COMPOSE3]).isNull()
+    assertThat(children(model[COMPOSE1]!!)).containsExactly(origNodes[COMPOSE2])
+    for (id in listOf(ROOT, VIEW1, COMPOSE1, COMPOSE2, VIEW2)) {
+      assertThat(model[id]).isSameAs(origNodes[id])
+    }
+  }
+
   @Test
   fun testWindows() {
     val model = InspectorModel(mock())
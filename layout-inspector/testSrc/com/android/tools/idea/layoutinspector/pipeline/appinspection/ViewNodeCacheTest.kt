@@ -117,6 +117,42 @@ class ViewNodeCacheTest {
     exception?.let { throw it }
   }
 
+  @Test
+  fun testDataIsGeneratedOnFirstAccess() {
+    val model = model {
+      view(ROOT, qualifiedName = "root") {
+        view(VIEW1, qualifiedName = "v1Type")
+        view(VIEW2, qualifiedName = "v2Type")
+      }
+    }
+    val generated = mutableListOf<Long>()
+    val cache =
+      object : ViewNodeCache<Int>(model) {
+        override suspend fun fetchDataFor(root: ViewNode, node: ViewNode): Int? = null
+
+        fun setAll(values: Map<Long, Int>) {
+          values.forEach { (id, value) ->
+            setDataFor(ROOT, id) {
+              generated.add(id)
+              value
+            }
+          }
+        }
+      }
+    cache.setAll(mapOf(VIEW1 to 1, VIEW2 to 2))
+    assertThat(generated).isEmpty()
+
+    assertThat(runBlocking { cache.getDataFor(model[VIEW2]!!) }).isEqualTo(2)
+    assertThat(cache.getCachedDataFor(ROOT, VIEW2)).isEqualTo(2)
+    assertThat(generated).containsExactly(VIEW2)
+
+    assertThat(cache.getCachedDataFor(ROOT, VIEW1)).isEqualTo(1)
+    assertThat(generated).containsExactly(VIEW2, VIEW1).inOrder()
+
+    cache.clearFor(ROOT)
+    assertThat(cache.getCachedDataFor(ROOT, VIEW1)).isNull()
+  }
+
   private fun window1() =
     window(ROOT, ROOT, 2, 4, 6, 8, rootViewQualifiedName = "rootType") {
       view(VIEW1, 8, 6, 4, 2, qualifiedName = "v1Type") {
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.layoutinspector.snapshots
+
+import com.android.testutils.file.createInMemoryFileSystemAndFolder
+import com.android.tools.idea.layoutinspector.LEGACY_DEVICE
+import com.android.tools.idea.layoutinspector.createProcess
+import com.android.tools.idea.layoutinspector.metrics.statistics.SessionStatisticsImpl
+import com.android.tools.idea.layoutinspector.model.InspectorModel
+import com.android.tools.idea.layoutinspector.model.NotificationModel
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.Property
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.PropertyGroup
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.Root
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.ViewBounds
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.ViewNode
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.ViewQuad
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.ViewRect
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.ViewResource
+import com.android.tools.idea.layoutinspector.pipeline.appinspection.dsl.ViewString
+import com.android.tools.idea.layoutinspector.view.inspection.LayoutInspectorViewProtocol
+import com.android.tools.idea.layoutinspector.view.inspection.LayoutInspectorViewProtocol.CaptureSnapshotResponse.WindowSnapshot
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import com.google.common.truth.Truth.assertThat
+import com.google.wireless.android.sdk.stats.DynamicLayoutInspectorAttachToProcess.ClientType.SNAPSHOT_CLIENT
+import com.intellij.testFramework.ProjectRule
+import org.junit.Rule
+import org.junit.Test
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.lang.ref.Reference
+import java.nio.file.Path
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+import javax.imageio.ImageIO
+
+private const val ROOT_ID = 1L
+private const val CONTAINERS = 100
+private const val VIEWS_PER_CONTAINER = 200
+private const val LOADS = 5
+private const val VIEW_HEIGHT = 20
+
+/** The properties of every view, named as in a legacy view dump. */
+private val PROPERTIES =
+  listOf(
+    "getBaseline()",
+    "getContentHeight()",
+    "getContentWidth()",
+    "layout_bottomMargin",
+    "layout_endMargin",
+    "layout_leftMargin",
+    "layout_rightMargin",
+    "layout_startMargin",
+    "layout_topMargin",
+    "mFirstPosition",
+    "mItemCount",
+    "mMeasuredHeight",
+    "mMeasuredWidth",
+    "mMinHeight",
+    "mMinWidth",
+    "mPaddingBottom",
+    "mPaddingLeft",
+    "mPaddingRight",
+    "mPaddingTop",
+    "mSelectedPosition"
+  )
+
+/**
+ * Measures the time it takes to load a snapshot of a complex screen, and the heap retained by the
+ * loaded model and properties.
+ *
+ * The snapshots contain a window of about 20,000 views: [CONTAINERS] layouts of
+ * [VIEWS_PER_CONTAINER] views each, where every view has the 20 [PROPERTIES]. Both an app
+ * inspection snapshot and a legacy snapshot are measured. The retained heap is the increase of the
+ * used heap after garbage collection, so run the benchmark on its own.
+ */
+class SnapshotLoadBenchmarkTest {
+  @get:Rule val projectRule = ProjectRule()
+
+  private val benchmark =
+    Benchmark.Builder("Layout Inspector Snapshot Load")
+      .setProject("Android Studio Layout Inspector")
+      .build()
+
+  private val folder = createInMemoryFileSystemAndFolder("snapshots")
+
+  @Test
+  fun appInspectionSnapshot() {
+    val file = folder.resolve("app-inspection.li")
+    saveAppInspectorSnapshot(
+      file,
+      createSnapshot(),
+      emptyMap(),
+      SnapshotMetadata(APP_INSPECTION_SNAPSHOT_VERSION, apiLevel = 33, processName = "com.example"),
+      null
+    )
+    measure("app_inspection", file)
+  }
+
+  @Test
+  fun legacySnapshot() {
+    val file = folder.resolve("legacy.li")
+    val image = ByteArrayOutputStream()
+    ImageIO.write(BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), "png", image)
+    saveLegacySnapshot(
+      file,
+      mapOf("window" to createLegacyTree()),
+      mapOf("window" to image.toByteArray()),
+      "",
+      "",
+      LEGACY_DEVICE.createProcess(),
+      InspectorModel(projectRule.project)
+    )
+    measure("legacy", file)
+  }
+
+  private fun measure(prefix: String, file: Path) {
+    val times = LongArray(LOADS)
+    var retained = 0L
+    for (i in 0 until LOADS) {
+      val usedBefore = usedHeap()
+      val model = InspectorModel(projectRule.project)
+      val loader = SnapshotLoader.createSnapshotLoader(file)!!
+      val start = System.nanoTime()
+      loader.loadFile(
+        file,
+        model,
+        NotificationModel(projectRule.project),
+        SessionStatisticsImpl(SNAPSHOT_CLIENT)
+      )
+      times[i] = System.nanoTime() - start
+      assertThat(model.root.flattenedList()).hasSize(1 + CONTAINERS * (1 + VIEWS_PER_CONTAINER) + 1)
+      retained = usedHeap() - usedBefore
+      Reference.reachabilityFence(model)
+      Reference.reachabilityFence(loader)
+    }
+    times.sort()
+    record("snapshot_load_${prefix}_median_ms", TimeUnit.NANOSECONDS.toMillis(times[LOADS / 2]))
+    record("snapshot_retained_heap_${prefix}_kb", retained / 1024)
+  }
+
+  private fun createSnapshot(): LayoutInspectorViewProtocol.CaptureSnapshotResponse {
+    val layout =
+      LayoutInspectorViewProtocol.LayoutEvent.newBuilder()
+        .apply {
+          ViewString(1, "com.android.internal.policy")
+          ViewString(2, "DecorView")
+          ViewString(3, "android.widget")
+          ViewString(4, "LinearLayout")
+          ViewString(5, "TextView")
+          ViewString(6, "layout")
+          ViewString(7, "com.example")
+          ViewString(8, "item")
+          Root {
+            id = ROOT_ID
+            packageName = 1
+            className = 2
+            bounds = viewBounds(0, CONTAINERS * (1 + VIEWS_PER_CONTAINER))
+            var nextId = ROOT_ID + 1
+            var row = 0
+            repeat(CONTAINERS) {
+              ViewNode {
+                id = nextId++
+                packageName = 3
+                className = 4
+                bounds = viewBounds(row++, VIEWS_PER_CONTAINER)
+                repeat(VIEWS_PER_CONTAINER) {
+                  ViewNode {
+                    id = nextId++
+                    packageName = 3
+                    className = 5
+                    layoutResource = ViewResource(6, 7, 8)
+                    bounds = viewBounds(row++, 1)
+                  }
+                }
+              }
+            }
+          }
+        }
+        .build()
+
+    val properties =
+      LayoutInspectorViewProtocol.PropertiesEvent.newBuilder()
+        .apply {
+          rootId = ROOT_ID
+          addStrings(ViewString(1, "android"))
+          PROPERTIES.forEachIndexed { i, name -> addStrings(ViewString(2 + i, name)) }
+          val viewCount = 1 + CONTAINERS * (1 + VIEWS_PER_CONTAINER)
+          for (viewId in ROOT_ID until ROOT_ID + viewCount) {
+            addPropertyGroups(
+              PropertyGroup {
+                this.viewId = viewId
+                for (i in PROPERTIES.indices) {
+                  Property {
+                    type = LayoutInspectorViewProtocol.Property.Type.INT32
+                    namespace = 1
+                    name = 2 + i
+                    int32Value = (viewId * PROPERTIES.size + i).toInt()
+                  }
+                }
+              }
+            )
+          }
+        }
+        .build()
+
+    return LayoutInspectorViewProtocol.CaptureSnapshotResponse.newBuilder()
+      .apply {
+        addWindowSnapshots(
+          WindowSnapshot.newBuilder().apply {
+            this.layout = layout
+            this.properties = properties
+          }
+        )
+        windowRoots =
+          LayoutInspectorViewProtocol.WindowRootsEvent.newBuilder().addIds(ROOT_ID).build()
+      }
+      .build()
+  }
+
+  /** The bounds of a view that starts at [row] and is [rows] high, as sent by the device. */
+  private fun viewBounds(row: Int, rows: Int): LayoutInspectorViewProtocol.Bounds {
+    val top = row * VIEW_HEIGHT
+    val bottom = top + rows * VIEW_HEIGHT
+    return ViewBounds(
+      ViewRect(0, top, 1080, bottom - top),
+      ViewQuad(0, top, 1080, top, 1080, bottom, 0, bottom)
+    )
+  }
+
+  private fun createLegacyTree(): ByteArray {
+    val tree = StringBuilder()
+    var nextId = 0x1000
+    var row = 0
+    fun addView(indent: Int, className: String, rows: Int) {
+      tree.append(" ".repeat(indent)).append(className).append('@').append(nextId++.toString(16))
+      tree.append(" mID=5,NO_ID")
+      property(tree, "layout:getLocationOnScreen_x()", "0")
+      property(tree, "layout:getLocationOnScreen_y()", "${row * VIEW_HEIGHT}")
+      property(tree, "layout:getWidth()", "1080")
+      property(tree, "layout:getHeight()", "${rows * VIEW_HEIGHT}")
+      PROPERTIES.forEachIndexed { i, name ->
+        property(tree, "layout:$name", "${nextId * PROPERTIES.size + i}")
+      }
+      tree.append('\n')
+      row++
+    }
+    addView(0, "com.android.internal.policy.DecorView", CONTAINERS * (1 + VIEWS_PER_CONTAINER))
+    row = 0
+    repeat(CONTAINERS) {
+      addView(1, "android.widget.LinearLayout", VIEWS_PER_CONTAINER)
+      repeat(VIEWS_PER_CONTAINER) { addView(2, "android.widget.TextView", 1) }
+    }
+    tree.append("DONE.\n")
+    return tree.toString().toByteArray()
+  }
+
+  private fun property(tree: StringBuilder, name: String, value: String) {
+    tree.append(' ').append(name).append('=').append(value.length).append(',').append(value)
+  }
+
+  private fun usedHeap(): Long {
+    val runtime = Runtime.getRuntime()
+    repeat(3) { System.gc() }
+    return runtime.totalMemory() - runtime.freeMemory()
+  }
+
+  private fun record(metricName: String, value: Long) {
+    Metric(metricName).apply {
+      addSamples(benchmark, MetricSample(Instant.now().toEpochMilli(), value))
+      commit()
+    }
+  }
+}
@@ -73,6 +73,7 @@ import com.android.tools.idea.logcat.messages.LogcatColors
 import com.android.tools.idea.logcat.messages.MessageBacklog
 import com.android.tools.idea.logcat.messages.MessageFormatter
 import com.android.tools.idea.logcat.messages.MessageProcessor
+import com.android.tools.idea.logcat.messages.MessageReloader
 import com.android.tools.idea.logcat.messages.ProcessThreadFormat
 import com.android.tools.idea.logcat.messages.TextAccumulator
 import com.android.tools.idea.logcat.messages.TimestampFormat
@@ -141,10 +142,12 @@ import com.intellij.util.ui.JBUI.Borders
 import com.intellij.util.ui.JBUI.CurrentTheme.Banner
 import com.intellij.util.ui.UIUtil
 import com.intellij.util.ui.components.BorderLayoutPanel
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.channels.consumeEach
+import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.flow.merge
 import kotlinx.coroutines.flow.transform
 import kotlinx.coroutines.isActive
@@ -169,6 +172,7 @@ import javax.swing.GroupLayout
 import javax.swing.Icon
 import javax.swing.JComponent
 import javax.swing.JPanel
+import kotlin.io.path.fileSize
 import kotlin.io.path.pathString
 import kotlin.math.max
 
@@ -274,6 +278,7 @@ internal class LogcatMainPanel @TestOnly constructor(
     }
 
   private val messageFormatter = MessageFormatter(logcatColors, zoneId)
+  private val messageReloader = MessageReloader(this, ::formatMessagesAfter)
 
   @VisibleForTesting
   internal val messageBacklog = AtomicReference(MessageBacklog(logcatSettings.bufferSize))
@@ -313,6 +318,9 @@ internal class LogcatMainPanel @TestOnly constructor(
 
   @VisibleForTesting
   internal var logcatServiceJob: Job? = null
+  @VisibleForTesting
+  internal var fileLoadJob: Job? = null
+  private var reloadJob: Job? = null
   private var editorWidth = 0
 
   init {
@@ -342,7 +350,7 @@ internal class LogcatMainPanel @TestOnly constructor(
         val column = editor.xyToLogicalPosition(Point(width, 0)).column
         if (editorWidth != column) {
           editorWidth = column
-          if (messageBacklog.get().messages.isNotEmpty()) {
+          if (!messageBacklog.get().isEmpty()) {
             reloadMessages()
           }
         }
@@ -437,19 +445,7 @@ internal class LogcatMainPanel @TestOnly constructor(
         }
         else if (item is FileItem) {
           logcatServiceChannel.send(StopLogcat)
-          val data = withContext(Dispatchers.IO) {
-            try {
-              LogcatFileIo().readLogcat(item.path)
-            }
-            catch (e: Exception) {
-              LOGGER.warn("Failed to load Logcat from file ${item.path}", e)
-              withContext(uiThread) {
-                deviceComboBox.handleItemError(item, LogcatBundle.message("logcat.device.combo.error.load.file", item.path))
-              }
-              null
-            }
-          }
-          logcatServiceChannel.send(LoadLogcatFile(data))
+          logcatServiceChannel.send(LoadLogcatFile(item))
         }
       }
     }
@@ -457,11 +453,15 @@ internal class LogcatMainPanel @TestOnly constructor(
     coroutineScope.launch {
       logcatServiceChannel.consumeEach {
         logcatServiceJob?.cancel()
+        // Pausing only stops receiving messages from a device. It doesn't cancel loading a file.
+        if (it != PauseLogcat) {
+          fileLoadJob?.cancel()
+        }
         logcatServiceJob = when (it) {
           is StartLogcat -> startLogcat(it.device).also { isLogcatPaused = false }
           StopLogcat -> connectedDevice.set(null).let { null }
           PauseLogcat -> null.also { isLogcatPaused = true }
-          is LoadLogcatFile -> loadLogcatFile(it.logcatFileData).let { null }
+          is LoadLogcatFile -> null.also { fileLoadJob = loadLogcatFile(it.item) }
         }
       }
     }
@@ -540,13 +540,21 @@ internal class LogcatMainPanel @TestOnly constructor(
 
   override suspend fun processMessages(messages: List<LogcatMessage>) {
     messageBacklog.get().addAll(messages)
+    addMessageFields(messages)
+    messageProcessor.appendMessages(messages)
+  }
+
+  private fun addMessageFields(messages: List<LogcatMessage>) {
     messages.forEach {
       val (_, _, _, applicationId, processName, tag, _) = it.header
-      tags.add(tag)
-      packages.add(applicationId)
-      processNames.add(processName)
+      addMessageFields(applicationId, processName, tag)
     }
-    messageProcessor.appendMessages(messages)
+  }
+
+  private fun addMessageFields(applicationId: String, processName: String, tag: String) {
+    tags.add(tag)
+    packages.add(applicationId)
+    processNames.add(processName)
   }
 
   override fun getState(): String {
@@ -586,6 +594,27 @@ internal class LogcatMainPanel @TestOnly constructor(
     }
   }
 
+  override suspend fun prependMessages(textAccumulator: TextAccumulator): Boolean = withContext(uiThread(ModalityState.any())) {
+    LOGGER.debug { "Prepending ${textAccumulator.text.length} bytes. isActive=$isActive" }
+    if (!isActive) {
+      return@withContext false
+    }
+    val shouldStickToEnd = !ignoreCaretAtBottom && isCaretAtBottom()
+    val lineCount = document.lineCount
+
+    val result = documentAppender.prependToDocument(textAccumulator)
+    noLogsBanner.isVisible = isLogsMissing()
+
+    val endLine = max(0, document.lineCount - lineCount)
+    hyperlinkDetector.detectHyperlinks(0, endLine, deviceComboBox.getSelectedDevice()?.sdk)
+    foldingDetector.detectFoldings(0, endLine)
+
+    if (shouldStickToEnd) {
+      scrollToEnd()
+    }
+    result
+  }
+
   override fun dispose() {
     EditorFactory.getInstance().releaseEditor(editor)
   }
@@ -618,16 +647,28 @@ internal class LogcatMainPanel @TestOnly constructor(
 
   private fun isLogsMissing(): Boolean {
     return document.immutableCharSequence.isEmpty()
-           && messageBacklog.get().messages.isNotEmpty()
+           && !messageBacklog.get().isEmpty()
            && !isMissingApplicationIds()
            && headerPanel.filter.isNotEmpty()
   }
 
   @UiThread
   override fun reloadMessages() {
+    reloadJob?.cancel()
     document.setText("")
+    if (StudioFlags.LOGCAT_PARALLEL_RELOAD.get()) {
+      documentAppender.reset()
+      val filterTasks = messageBacklog.get().getFilterTasks(LogcatMasterFilter(messageProcessor.logcatFilter))
+      reloadJob = coroutineScope.launch(workerThread) {
+        messageReloader.reload(filterTasks)
+        withContext(uiThread) {
+          noLogsBanner.isVisible = isLogsMissing()
+        }
+      }
+      return
+    }
     coroutineScope.launch(workerThread) {
-      messageProcessor.appendMessages(messageBacklog.get().messages)
+      messageProcessor.appendMessages(messageBacklog.get())
       withContext(uiThread) {
         noLogsBanner.isVisible = isLogsMissing()
       }
@@ -639,7 +680,7 @@ internal class LogcatMainPanel @TestOnly constructor(
   override fun getSelectedDevice() = deviceComboBox.getSelectedDevice()
 
   override fun countFilterMatches(filter: LogcatFilter?): Int {
-    return LogcatMasterFilter(filter).filter(messageBacklog.get().messages).filter { it.header != SYSTEM_HEADER }.size
+    return messageBacklog.get().filter(LogcatMasterFilter(filter)).count { it.header != SYSTEM_HEADER }
   }
 
   override fun getTags(): Set<String> = tags
@@ -758,7 +799,7 @@ internal class LogcatMainPanel @TestOnly constructor(
     }
   }
 
-  override fun isLogcatEmpty() = messageBacklog.get().messages.isEmpty()
+  override fun isLogcatEmpty() = messageBacklog.get().isEmpty()
 
   override fun isShowing(): Boolean {
     // Return true in tests, so we can test the LogcatEvent flow
@@ -817,17 +858,64 @@ internal class LogcatMainPanel @TestOnly constructor(
     }
   }
 
-  private suspend fun loadLogcatFile(data: LogcatFileData?) {
-    val filter = data.safeGetFilter()
+  /**
+   * Loads a Logcat file without reading all of it into memory.
+   *
+   * The end of the file is read and shown first. Since the buffer can't hold more than the end of the file, only the tags and packages of
+   * the rest of a larger file are then read. If no messages could be found at the end of the file, all of it is read into a new backlog,
+   * which retains as many messages as the buffer allows, and the messages are reloaded from it.
+   */
+  private fun loadLogcatFile(item: FileItem): Job = coroutineScope.launch(Dispatchers.IO) {
+    val path = item.path
+    val bufferSize = logcatSettings.bufferSize
+    val logcatFileIo = LogcatFileIo()
+    try {
+      showLogcatFile(logcatFileIo.readMetadata(path))
+      val tail = logcatFileIo.readLogcatTail(path, bufferSize.toLong())
+      processMessages(tail)
+      if (path.fileSize() > bufferSize) {
+        if (tail.isNotEmpty()) {
+          // The tail holds the messages that fit in the backlog, so the rest of the file is only needed for the tags and packages.
+          logcatFileIo.readMessageFields(path) { applicationId, processName, tag ->
+            ensureActive()
+            addMessageFields(applicationId, processName, tag)
+          }
+        }
+        else {
+          // The messages of some JSON files can't be found in their tail, so all of the file has to be read.
+          val backlog = MessageBacklog(bufferSize)
+          logcatFileIo.readLogcat(path) {
+            ensureActive()
+            backlog.addAll(it)
+            addMessageFields(it)
+          }
+          messageBacklog.set(backlog)
+          withContext(uiThread) {
+            reloadMessages()
+          }
+        }
+      }
+    }
+    catch (e: CancellationException) {
+      throw e
+    }
+    catch (e: Exception) {
+      LOGGER.warn("Failed to load Logcat from file $path", e)
+      withContext(uiThread) {
+        deviceComboBox.handleItemError(item, LogcatBundle.message("logcat.device.combo.error.load.file", path))
+      }
+      showLogcatFile(null)
+    }
+  }
+
+  private suspend fun showLogcatFile(metadata: LogcatFileData.Metadata?) {
+    val filter = metadata.safeGetFilter()
     withContext(uiThread) {
       document.setText("")
       setFilter(filter)
       messageBacklog.get().clear()
       applyFilter(logcatFilterParser.parse(filter, headerPanel.filterMatchCase))
     }
-    if (data != null) {
-      processMessages(data.logcatMessages)
-    }
   }
 
   private fun scrollToEnd() {
@@ -840,6 +928,11 @@ internal class LogcatMainPanel @TestOnly constructor(
     messageFormatter.formatMessages(formattingOptions, textAccumulator, messages, if (isSoftWrapEnabled) editorWidth else null)
   }
 
+  private fun formatMessagesAfter(textAccumulator: TextAccumulator, previousMessage: LogcatMessage?, messages: List<LogcatMessage>) {
+    messageFormatter.formatMessagesAfter(
+      previousMessage, formattingOptions, textAccumulator, messages, if (isSoftWrapEnabled) editorWidth else null)
+  }
+
   private fun MouseEvent.getFilterHint(): FilterHint? {
     val position = editor.xyToLogicalPosition(Point(x, y))
     val offset = editor.logicalPositionToOffset(position)
@@ -892,7 +985,7 @@ internal class LogcatMainPanel @TestOnly constructor(
     class StartLogcat(val device: Device) : LogcatServiceEvent()
     object StopLogcat : LogcatServiceEvent()
     object PauseLogcat : LogcatServiceEvent()
-    class LoadLogcatFile(val logcatFileData: LogcatFileData?) : LogcatServiceEvent()
+    class LoadLogcatFile(val item: FileItem) : LogcatServiceEvent()
   }
 
   private fun isCaretAtBottom(): Boolean {
@@ -921,12 +1014,12 @@ private fun LogcatPanelConfig.getInitialItem(): DeviceComboBox.DeviceComboItem?
   }
 }
 
-private fun LogcatFileData?.safeGetFilter(): String {
-  val filter = this?.metadata?.filter ?: return ""
-  if (!filter.contains(MY_PACKAGE) || metadata.projectApplicationIds.isEmpty()) {
+private fun LogcatFileData.Metadata?.safeGetFilter(): String {
+  val filter = this?.filter ?: return ""
+  if (!filter.contains(MY_PACKAGE) || projectApplicationIds.isEmpty()) {
     return filter
   }
-  val packages = metadata.projectApplicationIds.joinToString(" ") { "package:$it" }
+  val packages = projectApplicationIds.joinToString(" ") { "package:$it" }
   return if (filter == MY_PACKAGE) packages else filter.replace(MY_PACKAGE, "(${packages})")
 }
 
@@ -68,6 +68,12 @@ internal interface LogcatPresenter : TagsProvider, PackageNamesProvider, Process
    */
   suspend fun appendMessages(textAccumulator: TextAccumulator)
 
+  /**
+   * Emits formatted text of messages older than the ones in the message view to the start of the view. Returns false if the view is full
+   * and more text wouldn't be kept.
+   */
+  suspend fun prependMessages(textAccumulator: TextAccumulator): Boolean
+
   /**
    * Returns the connected device or null if not connected
    */
@@ -20,15 +20,31 @@ import com.android.tools.idea.logcat.files.LogcatFileData.Metadata
 import com.android.tools.idea.logcat.files.LogcatFileIo.LogcatFileType.JSON
 import com.android.tools.idea.logcat.files.LogcatFileIo.LogcatFileType.UNKNOWN
 import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.util.LOGGER
 import com.google.gson.GsonBuilder
+import com.google.gson.JsonParseException
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.MalformedJsonException
+import java.io.InputStream
+import java.io.SequenceInputStream
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
 import java.nio.file.Path
 import java.time.ZoneId
 import kotlin.io.path.bufferedReader
+import kotlin.io.path.fileSize
 import kotlin.io.path.reader
 import kotlin.io.path.writer
+import kotlin.system.measureTimeMillis
 
 
 private const val MAX_LOGCAT_ENTRY = 4000
+private const val BATCH_SIZE = 1000
+
+// In files written by writeLogcat, only the objects in the logcatMessages array start on a line of their own with this indentation.
+// Strings can't contain it because newlines in them are escaped.
+private val JSON_MESSAGE_START = "\n    {\n".toByteArray()
+private val TEXT_LINE_START = "\n".toByteArray()
 
 private val gson = GsonBuilder()
   .setPrettyPrinting()
@@ -67,12 +83,197 @@ internal class LogcatFileIo(
     }
   }
 
+  /**
+   * Reads the metadata of a Logcat file without reading its messages. Only JSON files have metadata.
+   */
+  fun readMetadata(path: Path): Metadata? {
+    if (getValidLogcatFileType(path) != JSON) {
+      return null
+    }
+    return JsonReader(path.bufferedReader()).use { reader ->
+      reader.beginObject()
+      while (reader.hasNext()) {
+        if (reader.nextName() == "metadata") {
+          return@use gson.fromJson<Metadata>(reader, Metadata::class.java)
+        }
+        reader.skipValue()
+      }
+      null
+    }
+  }
+
+  /**
+   * Reads the messages of a Logcat file in batches of up to [batchSize] messages, so that only a batch is held in memory at a time,
+   * regardless of the size of the file.
+   */
+  fun readLogcat(path: Path, batchSize: Int = BATCH_SIZE, onBatch: (List<LogcatMessage>) -> Unit) {
+    val type = getValidLogcatFileType(path)
+    var count = 0
+    val onCountedBatch: (List<LogcatMessage>) -> Unit = {
+      count += it.size
+      onBatch(it)
+    }
+    val elapsedMs = measureTimeMillis {
+      path.bufferedReader().use {
+        when (type) {
+          JSON -> readJsonMessages(JsonReader(it), batchSize, onCountedBatch)
+          else -> LogcatFileParser(type.headerRegex, zoneId = zoneId).parseLogcat(path, it, batchSize, onCountedBatch)
+        }
+      }
+    }
+    val size = path.fileSize()
+    LOGGER.info("Read $count messages (${size / 1024} KB) from ${path.fileName} in $elapsedMs ms " +
+                "(${size * 1000 / 1024 / 1024 / elapsedMs.coerceAtLeast(1)} MB/s)")
+  }
+
+  /**
+   * Reads the application id, process name and tag of the messages of a Logcat file without building the messages, which is much cheaper
+   * than [readLogcat] when the messages themselves are not needed. The fields of a message can be passed to [onFields] more than once.
+   */
+  fun readMessageFields(path: Path, onFields: (applicationId: String, processName: String, tag: String) -> Unit) {
+    val type = getValidLogcatFileType(path)
+    path.bufferedReader().use {
+      when (type) {
+        JSON -> readJsonMessageFields(JsonReader(it), onFields)
+        else -> LogcatFileParser(type.headerRegex, zoneId = zoneId).parseMessageFields(path, it, onFields)
+      }
+    }
+  }
+
+  /**
+   * Reads the messages in the last [maxBytes] bytes of a Logcat file, so that the end of a large file can be shown before all of it is
+   * read. The first message can be incomplete if it starts before the last [maxBytes] bytes. If the file is not larger than [maxBytes],
+   * all of its messages are returned.
+   *
+   * The messages of a larger JSON file can only be found in its tail if the file is laid out the way [writeLogcat] writes it. For other
+   * JSON files, no messages are returned, and they have to be read with [readLogcat].
+   */
+  fun readLogcatTail(path: Path, maxBytes: Long): List<LogcatMessage> {
+    val type = getValidLogcatFileType(path)
+    val messages = mutableListOf<LogcatMessage>()
+    val size = path.fileSize()
+    if (size <= maxBytes) {
+      readLogcat(path, onBatch = messages::addAll)
+      return messages
+    }
+    FileChannel.open(path).use { channel ->
+      val input = Channels.newInputStream(channel.position(size - maxBytes)).buffered()
+      when (type) {
+        JSON -> {
+          if (input.skipPast(JSON_MESSAGE_START)) {
+            // Restore the start of the object and read the rest of the messages as an array.
+            val reader = JsonReader(SequenceInputStream("[{".byteInputStream(), input).bufferedReader())
+            try {
+              readJsonMessageArray(reader, BATCH_SIZE, messages::addAll)
+            }
+            catch (e: JsonParseException) {
+              return unreadableJsonTail(path, e)
+            }
+            catch (e: MalformedJsonException) {
+              return unreadableJsonTail(path, e)
+            }
+            catch (e: IllegalStateException) {
+              return unreadableJsonTail(path, e)
+            }
+          }
+        }
+        else -> {
+          if (input.skipPast(TEXT_LINE_START)) {
+            LogcatFileParser(type.headerRegex, zoneId = zoneId).parseLogcat(path, input.bufferedReader(), onBatch = messages::addAll)
+          }
+        }
+      }
+    }
+    return messages
+  }
+
+  private fun unreadableJsonTail(path: Path, e: Exception): List<LogcatMessage> {
+    LOGGER.info("Messages at the end of ${path.fileName} can't be read without reading the whole file: $e")
+    return emptyList()
+  }
+
+  private fun readJsonMessages(reader: JsonReader, batchSize: Int, onBatch: (List<LogcatMessage>) -> Unit) {
+    reader.beginObject()
+    while (reader.hasNext()) {
+      if (reader.nextName() == "logcatMessages") {
+        readJsonMessageArray(reader, batchSize, onBatch)
+      }
+      else {
+        reader.skipValue()
+      }
+    }
+    reader.endObject()
+  }
+
+  private fun readJsonMessageArray(reader: JsonReader, batchSize: Int, onBatch: (List<LogcatMessage>) -> Unit) {
+    var batch = ArrayList<LogcatMessage>(batchSize)
+    reader.beginArray()
+    while (reader.hasNext()) {
+      batch.add(gson.fromJson(reader, LogcatMessage::class.java))
+      if (batch.size >= batchSize) {
+        onBatch(batch)
+        batch = ArrayList(batchSize)
+      }
+    }
+    reader.endArray()
+    if (batch.isNotEmpty()) {
+      onBatch(batch)
+    }
+  }
+
+  private fun readJsonMessageFields(reader: JsonReader, onFields: (applicationId: String, processName: String, tag: String) -> Unit) {
+    reader.beginObject()
+    while (reader.hasNext()) {
+      if (reader.nextName() == "logcatMessages") {
+        reader.beginArray()
+        while (reader.hasNext()) {
+          reader.beginObject()
+          while (reader.hasNext()) {
+            if (reader.nextName() == "header") {
+              readJsonHeaderFields(reader, onFields)
+            }
+            else {
+              reader.skipValue()
+            }
+          }
+          reader.endObject()
+        }
+        reader.endArray()
+      }
+      else {
+        reader.skipValue()
+      }
+    }
+    reader.endObject()
+  }
+
+  private fun readJsonHeaderFields(reader: JsonReader, onFields: (applicationId: String, processName: String, tag: String) -> Unit) {
+    var applicationId = ""
+    var processName = ""
+    var tag = ""
+    reader.beginObject()
+    while (reader.hasNext()) {
+      when (reader.nextName()) {
+        "applicationId" -> applicationId = reader.nextString()
+        "processName" -> processName = reader.nextString()
+        "tag" -> tag = reader.nextString()
+        else -> reader.skipValue()
+      }
+    }
+    reader.endObject()
+    onFields(applicationId, processName, tag)
+  }
+
   private fun readJsonFile(path: Path): LogcatFileData {
     return path.reader().use {
       gson.fromJson(it, LogcatFileData::class.java)
     }
   }
 
+  private fun getValidLogcatFileType(path: Path): LogcatFileType {
+    return getLogcatFileType(path).takeIf { it != UNKNOWN } ?: throw IllegalArgumentException("File '$path' is not a valid Logcat file")
+  }
+
   private fun getLogcatFileType(path: Path): LogcatFileType {
     path.bufferedReader().use { reader ->
       val chars = CharArray(MAX_LOGCAT_ENTRY)
@@ -83,3 +284,24 @@ internal class LogcatFileIo(
     }
   }
 }
+
+/**
+ * Skips past the first occurrence of the [pattern] and returns true, or returns false if there is none.
+ *
+ * The matching does not backtrack, which is correct for patterns whose first byte only reappears as their last byte.
+ */
+private fun InputStream.skipPast(pattern: ByteArray): Boolean {
+  var matched = 0
+  while (matched < pattern.size) {
+    val b = read()
+    if (b < 0) {
+      return false
+    }
+    matched = when (b.toByte()) {
+      pattern[matched] -> matched + 1
+      pattern[0] -> 1
+      else -> 0
+    }
+  }
+  return true
+}
@@ -21,6 +21,7 @@ import com.android.tools.idea.logcat.message.LogcatHeader
 import com.android.tools.idea.logcat.message.LogcatMessage
 import com.android.tools.idea.logcat.messages.MessageBacklog
 import com.android.tools.idea.logcat.settings.AndroidLogcatSettings
+import java.io.BufferedReader
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.attribute.BasicFileAttributes
@@ -44,6 +45,8 @@ private const val TAG_THREADTIME = "(?<tag>.+?(?=: ))"
 private const val TAG_FIREBASE = "(?<tag>.+?(?=\\())"
 private const val MESSAGE = "(?<message>.*)"
 
+private const val DEFAULT_BATCH_SIZE = 1000
+
 internal class LogcatFileParser(
   private val headerRegex: Regex,
   private val maxBufferSize: Int = AndroidLogcatSettings.getInstance().bufferSize,
@@ -51,34 +54,75 @@ internal class LogcatFileParser(
 ) {
 
   fun parseLogcatFile(path: Path): List<LogcatMessage> {
-    val messageBacklog = MessageBacklog(maxBufferSize)
-    path.bufferedReader().use { reader ->
-      var currentHeader: LogcatHeader? = null
-      val currentMessage = StringBuilder()
-      while (true) {
-        val line = reader.readLine() ?: break
-        if (line.startsWith(SYSTEM_LOG_PREFIX)) {
-          messageBacklog.addAll(listOf(LogcatMessage(SYSTEM_HEADER, line)))
-          currentHeader = null
-          currentMessage.clear()
-          continue
-        }
-        val result = headerRegex.find(line) ?: throw IllegalArgumentException("Error parsing $path. Invalid logcat line: $line")
-        val header = result.toLogcatHeader(path.creationYear())
-        if (header != currentHeader) {
-          if (currentHeader != null) {
-            messageBacklog.addAll(listOf(LogcatMessage(currentHeader, currentMessage.toString())))
-          }
-          currentHeader = header
-          currentMessage.clear()
-        }
-        if (currentMessage.isNotEmpty()) {
-          currentMessage.append('\n')
+    val messageBacklog = MessageBacklog(maxBufferSize, offHeap = false)
+    path.bufferedReader().use { parseLogcat(path, it, onBatch = messageBacklog::addAll) }
+    return messageBacklog.messages
+  }
+
+  /**
+   * Parses the lines of [reader], which reads [path] or a part of it, and passes the messages to [onBatch] in batches of up to [batchSize]
+   * messages, so that only a batch is held in memory at a time.
+   */
+  fun parseLogcat(
+    path: Path,
+    reader: BufferedReader,
+    batchSize: Int = DEFAULT_BATCH_SIZE,
+    onBatch: (List<LogcatMessage>) -> Unit,
+  ) {
+    var batch = ArrayList<LogcatMessage>(batchSize)
+    fun add(message: LogcatMessage) {
+      batch.add(message)
+      if (batch.size >= batchSize) {
+        onBatch(batch)
+        batch = ArrayList(batchSize)
+      }
+    }
+
+    val year = path.creationYear()
+    var currentHeader: LogcatHeader? = null
+    val currentMessage = StringBuilder()
+    while (true) {
+      val line = reader.readLine() ?: break
+      if (line.startsWith(SYSTEM_LOG_PREFIX)) {
+        add(LogcatMessage(SYSTEM_HEADER, line))
+        currentHeader = null
+        currentMessage.clear()
+        continue
+      }
+      val result = headerRegex.find(line) ?: throw IllegalArgumentException("Error parsing $path. Invalid logcat line: $line")
+      val header = result.toLogcatHeader(year)
+      if (header != currentHeader) {
+        if (currentHeader != null) {
+          add(LogcatMessage(currentHeader, currentMessage.toString()))
         }
-        currentMessage.append(result.getGroup("message"))
+        currentHeader = header
+        currentMessage.clear()
+      }
+      if (currentMessage.isNotEmpty()) {
+        currentMessage.append('\n')
       }
+      currentMessage.append(result.getGroup("message"))
+    }
+    if (batch.isNotEmpty()) {
+      onBatch(batch)
+    }
+  }
+
+  /**
+   * Passes the application id, process name and tag of every line of [reader], which reads [path], to [onFields] without building
+   * messages. Lines that continue a message repeat its fields.
+   */
+  fun parseMessageFields(path: Path, reader: BufferedReader, onFields: (applicationId: String, processName: String, tag: String) -> Unit) {
+    while (true) {
+      val line = reader.readLine() ?: break
+      if (line.startsWith(SYSTEM_LOG_PREFIX)) {
+        onFields(SYSTEM_HEADER.applicationId, SYSTEM_HEADER.processName, SYSTEM_HEADER.tag)
+        continue
+      }
+      val result = headerRegex.find(line) ?: throw IllegalArgumentException("Error parsing $path. Invalid logcat line: $line")
+      val processName = "pid-${result.getGroup("pid").toInt()}"
+      onFields(processName, processName, result.getGroup("tag").trim())
     }
-    return messageBacklog.messages
   }
 
   companion object {
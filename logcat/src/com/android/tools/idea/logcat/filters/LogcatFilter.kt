@@ -23,6 +23,8 @@ import com.android.tools.idea.logcat.message.LogLevel
 import com.android.tools.idea.logcat.message.LogLevel.ASSERT
 import com.android.tools.idea.logcat.message.LogLevel.ERROR
 import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.messages.LogcatMessageStore
+import com.android.tools.idea.logcat.messages.MessageChunkIndex
 import com.android.tools.idea.logcat.settings.AndroidLogcatSettings
 import com.android.tools.idea.projectsystem.ProjectApplicationIdsProvider
 import com.intellij.openapi.util.TextRange
@@ -48,17 +50,54 @@ internal class LogcatMasterFilter(private val logcatFilter: LogcatFilter?) {
   private val ignoreSpam = StudioFlags.LOGCAT_IGNORE_STUDIO_TAGS.get()
 
   fun filter(messages: List<LogcatMessage>, zoneId: ZoneId = ZoneId.systemDefault()): List<LogcatMessage> {
+    logcatFilter?.prepare()
+    return filterPrepared(messages, zoneId)
+  }
+
+  /**
+   * Filters the messages of a [LogcatMessageStore]. Chunks of the store are only decoded if their [MessageChunkIndex] shows that they
+   * may contain a matching message.
+   */
+  fun filter(store: LogcatMessageStore, zoneId: ZoneId = ZoneId.systemDefault()): List<LogcatMessage> =
+    getFilterTasks(store, zoneId).flatMap { it() }
+
+  /**
+   * Splits filtering of the [messages] into tasks filtering consecutive chunks of [chunkSize] messages, oldest first. The tasks may run
+   * concurrently.
+   */
+  fun getFilterTasks(
+    messages: List<LogcatMessage>,
+    chunkSize: Int,
+    zoneId: ZoneId = ZoneId.systemDefault(),
+  ): List<() -> List<LogcatMessage>> {
+    logcatFilter?.prepare()
+    return messages.chunked(chunkSize).map { chunk -> { filterPrepared(chunk, zoneId) } }
+  }
+
+  /**
+   * Splits filtering of the messages of a [LogcatMessageStore] into tasks filtering a chunk of the store each, oldest first. The tasks
+   * may run concurrently.
+   */
+  fun getFilterTasks(store: LogcatMessageStore, zoneId: ZoneId = ZoneId.systemDefault()): List<() -> List<LogcatMessage>> {
+    logcatFilter?.prepare()
+    return store.getChunks().map { chunk -> { if (canMatch(chunk.index)) filterPrepared(chunk.getMessages(), zoneId) else emptyList() } }
+  }
+
+  private fun filterPrepared(messages: List<LogcatMessage>, zoneId: ZoneId): List<LogcatMessage> {
     if (logcatFilter == null) {
       return messages.filter { !it.isSpam() }
     }
-    logcatFilter.prepare()
     return messages.filter {
       it.header === SYSTEM_HEADER || (logcatFilter.matches(LogcatMessageWrapper(it, zoneId)) && !it.isSpam())
     }
   }
 
-  private fun LogcatMessage.isSpam() =
-    settings.ignoredTags.contains(header.tag) || (ignoreSpam && header.tag.startsWith(STUDIO_SPAM_PREFIX))
+  private fun canMatch(index: MessageChunkIndex) =
+    index.hasSystemMessages || (!index.tags.all { it.isSpamTag() } && logcatFilter?.canMatch(index) != false)
+
+  private fun LogcatMessage.isSpam() = header.tag.isSpamTag()
+
+  private fun String.isSpamTag() = settings.ignoredTags.contains(this) || (ignoreSpam && startsWith(STUDIO_SPAM_PREFIX))
 }
 
 /**
@@ -79,6 +118,12 @@ internal abstract class LogcatFilter(open val textRange: TextRange) {
 
   abstract fun matches(message: LogcatMessageWrapper): Boolean
 
+  /**
+   * Returns false if none of the messages summarized by the [index] can match the filter, so they don't have to be decoded. Filters
+   * that can't tell from the index return true.
+   */
+  open fun canMatch(index: MessageChunkIndex): Boolean = true
+
   open fun findFilterForOffset(offset: Int): LogcatFilter? {
     return if (textRange.contains(offset)) this else null
   }
@@ -109,12 +154,16 @@ internal data class AndLogcatFilter(override val filters: List<LogcatFilter>) :
   constructor(vararg filters: LogcatFilter) : this(filters.asList())
 
   override fun matches(message: LogcatMessageWrapper) = filters.all { it.matches(message) }
+
+  override fun canMatch(index: MessageChunkIndex) = filters.all { it.canMatch(index) }
 }
 
 internal data class OrLogcatFilter(override val filters: List<LogcatFilter>) : ParentFilter(filters) {
   constructor(vararg filters: LogcatFilter) : this(filters.asList())
 
   override fun matches(message: LogcatMessageWrapper) = filters.any { it.matches(message) }
+
+  override fun canMatch(index: MessageChunkIndex) = filters.any { it.canMatch(index) }
 }
 
 internal enum class LogcatFilterField(val displayName: String) {
@@ -149,47 +198,62 @@ internal abstract class FieldFilter(
 ) : LogcatFilter(textRange) {
   override val displayText: String = message(stringResource, field.displayName, "'${string}'")
 
+  abstract val field: LogcatFilterField
+
+  abstract fun matchesValue(value: String): Boolean
+
+  override fun matches(message: LogcatMessageWrapper) = matchesValue(field.getValue(message))
+
+  override fun canMatch(index: MessageChunkIndex): Boolean {
+    val values = when (field) {
+      LogcatFilterField.TAG -> index.tags
+      LogcatFilterField.APP -> index.applicationIds
+      LogcatFilterField.PROCESS -> index.processNames
+      LogcatFilterField.MESSAGE, LogcatFilterField.LINE, LogcatFilterField.IMPLICIT_LINE -> return true
+    }
+    return values.any(::matchesValue)
+  }
 }
 
 internal data class StringFilter(
   val string: String,
-  val field: LogcatFilterField,
+  override val field: LogcatFilterField,
   val matchCase: Boolean,
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key") {
-  override fun matches(message: LogcatMessageWrapper) = field.getValue(message).contains(string, ignoreCase = !matchCase)
+  override fun matchesValue(value: String) = value.contains(string, ignoreCase = !matchCase)
 }
 
 internal data class NegatedStringFilter(
   val string: String,
-  val field: LogcatFilterField,
+  override val field: LogcatFilterField,
   val matchCase: Boolean,
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key.negated") {
-  override fun matches(message: LogcatMessageWrapper) = !field.getValue(message).contains(string, ignoreCase = !matchCase)
+  override fun matchesValue(value: String) = !value.contains(string, ignoreCase = !matchCase)
 }
 
 internal data class ExactStringFilter(
   val string: String,
-  val field: LogcatFilterField,
+  override val field: LogcatFilterField,
   val matchCase: Boolean,
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key.exact") {
-  override fun matches(message: LogcatMessageWrapper) = field.getValue(message).equals(string, !matchCase)
+  override fun matchesValue(value: String) = value.equals(string, !matchCase)
 }
 
 internal data class NegatedExactStringFilter(
   val string: String,
-  val field: LogcatFilterField,
+  override val field: LogcatFilterField,
   val matchCase: Boolean,
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key.exact.negated") {
-  override fun matches(message: LogcatMessageWrapper) = !field.getValue(message).equals(string, !matchCase)
+  override fun matchesValue(value: String) = !value.equals(string, !matchCase)
 }
 
 internal data class RegexFilter(
   val string: String,
-  val field: LogcatFilterField,
+  override val field: LogcatFilterField,
   val matchCase: Boolean,
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key.regex") {
@@ -200,12 +264,12 @@ internal data class RegexFilter(
     throw LogcatFilterParseException(PsiErrorElementImpl("Invalid regular expression: $string"))
   }
 
-  override fun matches(message: LogcatMessageWrapper) = regex.containsMatchIn(field.getValue(message))
+  override fun matchesValue(value: String) = regex.containsMatchIn(value)
 }
 
 internal data class NegatedRegexFilter(
   val string: String,
-  val field: LogcatFilterField,
+  override val field: LogcatFilterField,
   val matchCase: Boolean,
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key.regex.negated") {
@@ -216,7 +280,7 @@ internal data class NegatedRegexFilter(
     throw LogcatFilterParseException(PsiErrorElementImpl("Invalid regular expression: $string"))
   }
 
-  override fun matches(message: LogcatMessageWrapper) = !regex.containsMatchIn(field.getValue(message))
+  override fun matchesValue(value: String) = !regex.containsMatchIn(value)
 }
 
 internal data class LevelFilter(
@@ -225,6 +289,8 @@ internal data class LevelFilter(
 ) : LogcatFilter(textRange) {
   override val displayText: String = message("logcat.filter.completion.hint.level.value", level.name)
   override fun matches(message: LogcatMessageWrapper) = message.logcatMessage.header.logLevel >= level
+
+  override fun canMatch(index: MessageChunkIndex) = index.levels.any { it >= level }
 }
 
 internal data class AgeFilter(
@@ -263,6 +329,8 @@ internal data class AgeFilter(
 
   override fun matches(message: LogcatMessageWrapper) =
     clock.millis() - message.logcatMessage.header.timestamp.toEpochMilli() <= age.toMillis()
+
+  override fun canMatch(index: MessageChunkIndex) = clock.millis() - index.maxTimestamp <= age.toMillis()
 }
 
 /**
@@ -294,6 +362,12 @@ internal class ProjectAppFilter(
            || (header.logLevel >= ERROR && packageNamesRegex?.containsMatchIn(message.logcatMessage.message) == true)
   }
 
+  override fun canMatch(index: MessageChunkIndex): Boolean {
+    // The app name is the application id, or the process name if there is no application id.
+    return packageNames.any { index.applicationIds.contains(it) || index.processNames.contains(it) }
+           || (packageNamesRegex != null && index.levels.any { it >= ERROR })
+  }
+
   override fun equals(other: Any?) = other is ProjectAppFilter && projectApplicationIdsProvider == other.projectApplicationIdsProvider
 
   override fun hashCode() = projectApplicationIdsProvider.hashCode()
@@ -329,6 +403,12 @@ internal data class CrashFilter(override val textRange: TextRange) : LogcatFilte
     return (level == ERROR && tag == "AndroidRuntime" && message.logcatMessage.message.startsWith("FATAL EXCEPTION"))
            || (level == ASSERT && (tag == "DEBUG" || tag == "libc"))
   }
+
+  override fun canMatch(index: MessageChunkIndex): Boolean {
+    val tags = index.tags
+    return (index.levels.contains(ERROR) && tags.contains("AndroidRuntime"))
+           || (index.levels.contains(ASSERT) && (tags.contains("DEBUG") || tags.contains("libc")))
+  }
 }
 
 internal data class NameFilter(
@@ -86,6 +86,48 @@ internal class DocumentAppender(project: Project, private val document: Document
     }
   }
 
+  /**
+   * Inserts text before the text of the document, used when older messages are loaded after newer ones.
+   *
+   * Only the lines at the end of the text that fit into the document are inserted. Returns false if the document is full, so that there is
+   * no point in prepending more text.
+   */
+  @UiThread
+  fun prependToDocument(buffer: TextAccumulator): Boolean {
+    val text = buffer.text
+    val available = maxDocumentSize - document.textLength
+    val start = if (text.length <= available) 0 else text.indexOf('\n', text.length - available - 1) + 1
+    if (available <= 0 || (start == 0 && text.length > available) || start >= text.length) {
+      return false
+    }
+    LOGGER.debug { "Prepending ${text.length - start} bytes to document" }
+    document.insertString(0, text.substring(start))
+
+    val offset = -start
+    for (range in buffer.textAttributesRanges) {
+      range.applyRange(offset) { rangeStart, rangeEnd, textAttributes ->
+        markupModel.addRangeHighlighter(rangeStart, rangeEnd, HighlighterLayer.SYNTAX, textAttributes, HighlighterTargetArea.EXACT_RANGE)
+      }
+    }
+    for (range in buffer.textAttributesKeyRanges) {
+      range.applyRange(offset) { rangeStart, rangeEnd, textAttributesKey ->
+        markupModel.addRangeHighlighter(textAttributesKey, rangeStart, rangeEnd, HighlighterLayer.SYNTAX, HighlighterTargetArea.EXACT_RANGE)
+      }
+    }
+    val messageRanges = mutableListOf<RangeMarker>()
+    for (range in buffer.messageRanges) {
+      range.applyRange(offset) { rangeStart, rangeEnd, message ->
+        messageRanges.add(document.createRangeMarker(rangeStart, rangeEnd).apply {
+          putUserData(LOGCAT_MESSAGE_KEY, message)
+        })
+      }
+    }
+    // The ranges are kept in document order, so that the ones trimmed by the cyclic buffer are at the start.
+    ranges.addAll(0, messageRanges)
+
+    return start == 0 && document.textLength < maxDocumentSize
+  }
+
   fun setMaxDocumentSize(size: Int) {
     maxDocumentSize = size
     trimToSize()
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.messages
+
+import com.android.tools.idea.logcat.SYSTEM_HEADER
+import com.android.tools.idea.logcat.message.LogLevel
+import com.android.tools.idea.logcat.message.LogcatHeader
+import com.android.tools.idea.logcat.message.LogcatMessage
+import java.nio.ByteBuffer
+import java.time.Instant
+import java.util.EnumSet
+
+internal const val DEFAULT_CHUNK_SIZE = 1024 * 1024
+
+private const val SYSTEM_MESSAGE_FLAG = 0x80
+private const val LEVEL_MASK = 0x7F
+
+// flags (1) | pid (4) | tid (4) | timestamp (8) | tag (4) | application id (4) | process name (4) | message length (4) | byte count (4)
+private const val RECORD_HEADER_SIZE = 37
+private const val MESSAGE_LENGTH_OFFSET = 29
+private const val BYTE_COUNT_OFFSET = 33
+
+/**
+ * An append-only store of [LogcatMessage]s that keeps the messages outside the Java heap.
+ *
+ * Like [MessageBacklog], the store is limited by the size of the payload of the messages, and the oldest messages are evicted when
+ * new messages are added. The messages are serialized into chunks backed by direct [ByteBuffer]s. Each chunk has a [MessageChunkIndex]
+ * of the levels, tags, application ids, process names and timestamps of its messages, so that filters can rule out whole chunks without
+ * decoding them.
+ *
+ * Messages are never modified once they are written to a chunk. [getChunks] returns a snapshot of the chunks that can be decoded without
+ * blocking threads that add messages to the store.
+ */
+internal class LogcatMessageStore(private var maxSize: Int, private val chunkSize: Int = DEFAULT_CHUNK_SIZE) {
+  private val lock = Any()
+
+  // Guarded by lock
+  private val chunks = ArrayDeque<Chunk>()
+
+  // Guarded by lock
+  private var size = 0
+
+  init {
+    assert(maxSize > 0)
+  }
+
+  fun addAll(messages: List<LogcatMessage>) {
+    synchronized(lock) {
+      // Messages that would be evicted by the same call are not written at all.
+      var addedSize = messages.sumOf { it.message.length }
+      var first = 0
+      while (addedSize > maxSize) {
+        addedSize -= messages[first++].message.length
+      }
+      for (i in first until messages.size) {
+        append(messages[i])
+      }
+      size += addedSize
+      trim(maxSize)
+    }
+  }
+
+  fun setMaxSize(newSize: Int) {
+    synchronized(lock) {
+      trim(newSize)
+      maxSize = newSize
+    }
+  }
+
+  fun clear() {
+    synchronized(lock) {
+      chunks.clear()
+      size = 0
+    }
+  }
+
+  fun isEmpty(): Boolean = synchronized(lock) { chunks.isEmpty() }
+
+  /**
+   * Returns a snapshot of the chunks of the store, oldest first. Messages added to the store later are not part of the snapshot.
+   */
+  fun getChunks(): List<MessageChunk> = synchronized(lock) { chunks.map { it.snapshot() } }
+
+  /**
+   * Decodes all messages in the store.
+   */
+  fun getMessages(): List<LogcatMessage> = getChunks().flatMap { it.getMessages() }
+
+  private fun append(message: LogcatMessage) {
+    val bytes = message.message.toByteArray(Charsets.UTF_8)
+    val chunk = chunks.lastOrNull()
+    if (chunk == null || !chunk.append(message, bytes)) {
+      chunk?.seal()
+      val newChunk = Chunk(maxOf(chunkSize, RECORD_HEADER_SIZE + bytes.size))
+      chunks.addLast(newChunk)
+      newChunk.append(message, bytes)
+    }
+  }
+
+  private fun trim(newSize: Int) {
+    while (size > newSize) {
+      val chunk = chunks.first()
+      size -= chunk.evictFirst()
+      if (chunk.isEmpty()) {
+        chunks.removeFirst()
+      }
+    }
+  }
+
+  /**
+   * A chunk of messages serialized into a direct [ByteBuffer].
+   *
+   * The tags, application ids and process names are kept in a table of strings of the chunk and the records only refer to them by
+   * their position in the table. The table and the index only grow until the chunk is sealed. Evicted messages stay in the index.
+   */
+  private class Chunk(capacity: Int) {
+    private val buffer = ByteBuffer.allocateDirect(capacity)
+    private val strings = ArrayList<String>()
+    private val stringIds = HashMap<String, Int>()
+    private val index = MessageChunkIndex()
+    private var start = 0
+    private var sealed = false
+
+    fun append(message: LogcatMessage, bytes: ByteArray): Boolean {
+      if (sealed || buffer.remaining() < RECORD_HEADER_SIZE + bytes.size) {
+        return false
+      }
+      val header = message.header
+      val isSystemMessage = header === SYSTEM_HEADER
+      buffer.put((header.logLevel.ordinal or (if (isSystemMessage) SYSTEM_MESSAGE_FLAG else 0)).toByte())
+      buffer.putInt(header.pid)
+      buffer.putInt(header.tid)
+      buffer.putLong(header.timestamp.toEpochMilli())
+      buffer.putInt(getStringId(header.tag))
+      buffer.putInt(getStringId(header.applicationId))
+      buffer.putInt(getStringId(header.processName))
+      buffer.putInt(message.message.length)
+      buffer.putInt(bytes.size)
+      buffer.put(bytes)
+      index.add(header, isSystemMessage)
+      return true
+    }
+
+    /**
+     * Marks the chunk as full, after which its string table and index are shared by snapshots without being copied.
+     */
+    fun seal() {
+      sealed = true
+    }
+
+    /**
+     * Evicts the oldest message of the chunk and returns its length.
+     */
+    fun evictFirst(): Int {
+      val length = buffer.getInt(start + MESSAGE_LENGTH_OFFSET)
+      start += RECORD_HEADER_SIZE + buffer.getInt(start + BYTE_COUNT_OFFSET)
+      return length
+    }
+
+    fun isEmpty() = start == buffer.position()
+
+    fun snapshot(): MessageChunk {
+      return if (sealed) MessageChunk(buffer, start, buffer.position(), strings, index)
+      else MessageChunk(buffer, start, buffer.position(), strings.toList(), index.copy())
+    }
+
+    private fun getStringId(string: String): Int {
+      return stringIds.getOrPut(string) {
+        strings.add(string)
+        strings.size - 1
+      }
+    }
+  }
+}
+
+/**
+ * An immutable range of messages of a [LogcatMessageStore] and the index of the chunk containing them.
+ */
+internal class MessageChunk(
+  private val buffer: ByteBuffer,
+  private val start: Int,
+  private val end: Int,
+  private val strings: List<String>,
+  val index: MessageChunkIndex,
+) {
+  fun getMessages(): List<LogcatMessage> {
+    val messages = ArrayList<LogcatMessage>()
+    var position = start
+    while (position < end) {
+      val flags = buffer.get(position).toInt()
+      val byteCount = buffer.getInt(position + BYTE_COUNT_OFFSET)
+      val bytes = ByteArray(byteCount)
+      buffer.get(position + RECORD_HEADER_SIZE, bytes)
+      val header = if ((flags and SYSTEM_MESSAGE_FLAG) != 0) {
+        SYSTEM_HEADER
+      }
+      else {
+        LogcatHeader(
+          LogLevel.values()[flags and LEVEL_MASK],
+          pid = buffer.getInt(position + 1),
+          tid = buffer.getInt(position + 5),
+          tag = strings[buffer.getInt(position + 17)],
+          applicationId = strings[buffer.getInt(position + 21)],
+          processName = strings[buffer.getInt(position + 25)],
+          timestamp = Instant.ofEpochMilli(buffer.getLong(position + 9)),
+        )
+      }
+      messages.add(LogcatMessage(header, String(bytes, Charsets.UTF_8)))
+      position += RECORD_HEADER_SIZE + byteCount
+    }
+    return messages
+  }
+}
+
+/**
+ * A summary of the messages in a chunk of a [LogcatMessageStore].
+ *
+ * The index may include values of messages that were already evicted from the chunk, so it can only be used to rule out chunks that
+ * don't contain a matching message.
+ */
+internal class MessageChunkIndex private constructor(
+  private val _levels: EnumSet<LogLevel>,
+  private val _tags: MutableSet<String>,
+  private val _applicationIds: MutableSet<String>,
+  private val _processNames: MutableSet<String>,
+) {
+  constructor() : this(EnumSet.noneOf(LogLevel::class.java), HashSet(), HashSet(), HashSet())
+
+  val levels: Set<LogLevel>
+    get() = _levels
+  val tags: Set<String>
+    get() = _tags
+  val applicationIds: Set<String>
+    get() = _applicationIds
+  val processNames: Set<String>
+    get() = _processNames
+
+  /**
+   * The timestamp of the newest message in milliseconds since the epoch. System messages are not taken into account.
+   */
+  var maxTimestamp = 0L
+    private set
+
+  var hasSystemMessages = false
+    private set
+
+  fun add(header: LogcatHeader, isSystemMessage: Boolean) {
+    if (isSystemMessage) {
+      hasSystemMessages = true
+      return
+    }
+    _levels.add(header.logLevel)
+    _tags.add(header.tag)
+    _applicationIds.add(header.applicationId)
+    _processNames.add(header.processName)
+    maxTimestamp = maxOf(maxTimestamp, header.timestamp.toEpochMilli())
+  }
+
+  fun copy(): MessageChunkIndex {
+    val copy = MessageChunkIndex(EnumSet.copyOf(_levels), HashSet(_tags), HashSet(_applicationIds), HashSet(_processNames))
+    copy.maxTimestamp = maxTimestamp
+    copy.hasSystemMessages = hasSystemMessages
+    return copy
+  }
+}
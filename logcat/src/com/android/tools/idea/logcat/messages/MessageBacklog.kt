@@ -15,9 +15,13 @@
  */
 package com.android.tools.idea.logcat.messages
 
+import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.idea.logcat.filters.LogcatMasterFilter
 import com.android.tools.idea.logcat.message.LogcatMessage
 import java.util.Collections
 
+private const val FILTER_CHUNK_SIZE = 5000
+
 /**
  * Manages a cyclic collection of [LogcatMessage]s that is limited by the size in bytes of the payload.
  *
@@ -29,14 +33,23 @@ import java.util.Collections
  * than the minimal size required to render a message. Therefore, the backlog will contain more messages than the actual displayed window,
  * even if no filters are applied and the formatting options are at their minimum.
  *
+ * If [offHeap] is true, the messages are kept in a [LogcatMessageStore] outside the Java heap rather than in a collection, and [filter]
+ * only decodes the chunks of the store that may contain matching messages.
+ *
  * TODO(aalbert): Maybe pass in the current formatting options setting and calculate the size more accurately.
  */
-internal class MessageBacklog(private var maxSize: Int) {
+internal class MessageBacklog(private var maxSize: Int, offHeap: Boolean = StudioFlags.LOGCAT_OFF_HEAP_BACKLOG.get()) {
 
   // The internal messages collection is exposed as a read-only list
   private val _messages = ArrayDeque<LogcatMessage>()
+  private val store = if (offHeap) LogcatMessageStore(maxSize) else null
+
+  /**
+   * The messages in the backlog. If the backlog is off-heap, each access decodes all messages, so [filter] and [isEmpty] should be
+   * preferred where possible.
+   */
   val messages: List<LogcatMessage>
-    get() = Collections.unmodifiableList(_messages)
+    get() = store?.getMessages() ?: Collections.unmodifiableList(_messages)
 
   private var size = 0
 
@@ -45,6 +58,10 @@ internal class MessageBacklog(private var maxSize: Int) {
   }
 
   fun addAll(collection: List<LogcatMessage>) {
+    if (store != null) {
+      store.addAll(collection)
+      return
+    }
     val addedSize = collection.sumOf { it.message.length }
 
     // We split into 2 flows.
@@ -71,6 +88,7 @@ internal class MessageBacklog(private var maxSize: Int) {
   }
 
   fun setMaxSize(newSize: Int) {
+    store?.setMaxSize(newSize)
     if (newSize < maxSize) {
       while (size > newSize) {
         size -= _messages.removeFirst().message.length
@@ -81,7 +99,18 @@ internal class MessageBacklog(private var maxSize: Int) {
   }
 
   fun clear() {
+    store?.clear()
     _messages.clear()
     size = 0
   }
+
+  fun isEmpty(): Boolean = store?.isEmpty() ?: _messages.isEmpty()
+
+  fun filter(filter: LogcatMasterFilter): List<LogcatMessage> = if (store != null) filter.filter(store) else filter.filter(_messages)
+
+  /**
+   * Returns tasks filtering consecutive chunks of the backlog, oldest first. See [LogcatMasterFilter.getFilterTasks].
+   */
+  fun getFilterTasks(filter: LogcatMasterFilter): List<() -> List<LogcatMessage>> =
+    if (store != null) filter.getFilterTasks(store) else filter.getFilterTasks(_messages.toList(), FILTER_CHUNK_SIZE)
 }
\ No newline at end of file
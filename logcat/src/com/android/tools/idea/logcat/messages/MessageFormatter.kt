@@ -41,6 +41,41 @@ internal class MessageFormatter(private val logcatColors: LogcatColors, private
     messages: List<LogcatMessage>,
     softWrapWidth: Int? = null,
   ) {
+    val last = format(formattingOptions, textAccumulator, messages, softWrapWidth, previousTag, previousPid)
+    if (last != null) {
+      previousTag = last.header.tag
+      previousPid = last.header.pid
+    }
+  }
+
+  /**
+   * Formats messages like [formatMessages] as if they were formatted right after [previousMessage], without using or updating the state
+   * kept between calls to [formatMessages]. This allows consecutive chunks of messages to be formatted concurrently.
+   */
+  fun formatMessagesAfter(
+    previousMessage: LogcatMessage?,
+    formattingOptions: FormattingOptions,
+    textAccumulator: TextAccumulator,
+    messages: List<LogcatMessage>,
+    softWrapWidth: Int? = null,
+  ) {
+    format(formattingOptions, textAccumulator, messages, softWrapWidth, previousMessage?.header?.tag, previousMessage?.header?.pid)
+  }
+
+  /**
+   * Formats the messages and returns the last message that the next message is compared to, or null if there is no such message.
+   */
+  private fun format(
+    formattingOptions: FormattingOptions,
+    textAccumulator: TextAccumulator,
+    messages: List<LogcatMessage>,
+    softWrapWidth: Int?,
+    initialTag: String?,
+    initialPid: Int?,
+  ): LogcatMessage? {
+    var previousTag = initialTag
+    var previousPid = initialPid
+    var last: LogcatMessage? = null
     // Replace each newline with a newline followed by the indentation of the message portion
     val headerWidth = formattingOptions.getHeaderWidth()
     val newline = "\n".padEnd(headerWidth + 1)
@@ -80,11 +115,13 @@ internal class MessageFormatter(private val logcatColors: LogcatColors, private
           textAttributesKey = logcatColors.getMessageKey(header.logLevel))
         previousTag = tag
         previousPid = header.pid
+        last = message
       }
       textAccumulator.accumulate("\n")
       val end = textAccumulator.getTextLength()
       textAccumulator.addMessageRange(start, end - 1, message)
     }
+    return last
   }
 
   private fun insertStudioBotText(message: String): String {
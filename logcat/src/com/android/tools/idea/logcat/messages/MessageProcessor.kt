@@ -68,8 +68,17 @@ internal class MessageProcessor @TestOnly constructor(
     }
   }
 
-  internal suspend fun appendMessages(messages: List<LogcatMessage>): List<LogcatMessage> {
-    val filteredMessages = LogcatMasterFilter(logcatFilter).filter(messages)
+  internal suspend fun appendMessages(messages: List<LogcatMessage>): List<LogcatMessage> =
+    sendMessages(LogcatMasterFilter(logcatFilter).filter(messages))
+
+  /**
+   * Appends the messages of the [backlog] that match the filter. Unlike passing [MessageBacklog.messages], this only decodes the messages
+   * of an off-heap backlog that may match.
+   */
+  internal suspend fun appendMessages(backlog: MessageBacklog): List<LogcatMessage> =
+    sendMessages(backlog.filter(LogcatMasterFilter(logcatFilter)))
+
+  private suspend fun sendMessages(filteredMessages: List<LogcatMessage>): List<LogcatMessage> {
     if (filteredMessages.isNotEmpty()) {
       LOGGER.debug { "Sending ${filteredMessages.size} messages to messageChannel" }
       messageChannel.send(filteredMessages)
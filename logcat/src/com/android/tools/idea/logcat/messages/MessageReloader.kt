@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.messages
+
+import com.android.tools.idea.logcat.LogcatPresenter
+import com.android.tools.idea.logcat.SYSTEM_HEADER
+import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.util.LOGGER
+import com.intellij.openapi.diagnostic.debug
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.coroutineScope
+import kotlin.math.max
+
+/**
+ * Reloads the messages of a [MessageBacklog] into the message view, for example after the filter changed.
+ *
+ * The backlog is split into chunks by [MessageBacklog.getFilterTasks], which are filtered and formatted concurrently, [parallelism]
+ * chunks at a time. The formatted chunks are prepended to the message view newest first, so the end of the view, which is usually
+ * visible, is populated by the first chunk.
+ * Reloading stops once the view is full, since older messages would be trimmed from it anyway.
+ *
+ * Chunks are filtered and formatted in the context of the caller of [reload], and a reload is cancelled by cancelling the calling
+ * coroutine, for example when the filter changes again.
+ */
+internal class MessageReloader(
+  private val logcatPresenter: LogcatPresenter,
+  private val formatMessagesInto: (TextAccumulator, LogcatMessage?, List<LogcatMessage>) -> Unit,
+  private val parallelism: Int = Runtime.getRuntime().availableProcessors(),
+) {
+  suspend fun reload(tasks: List<() -> List<LogcatMessage>>) {
+    coroutineScope {
+      LOGGER.debug { "Reloading ${tasks.size} chunks of messages" }
+      val filteredChunks = FilteredChunks(this, tasks)
+      var end = tasks.size
+      while (end > 0) {
+        val start = max(0, end - parallelism)
+        // The chunks before the window provide the previous message of the oldest chunk in the window, so they are filtered as well.
+        filteredChunks.start(max(0, start - parallelism), end)
+        val formattedChunks = (start until end).map { i ->
+          async {
+            val messages = filteredChunks.await(i)
+            val previousMessage = if (messages.isEmpty()) null else filteredChunks.getPreviousMessage(i)
+            TextAccumulator().also { formatMessagesInto(it, previousMessage, messages) }
+          }
+        }
+        for (i in end - 1 downTo start) {
+          val textAccumulator = formattedChunks[i - start].await()
+          if (textAccumulator.getTextLength() > 0 && !logcatPresenter.prependMessages(textAccumulator)) {
+            LOGGER.debug { "Message view is full, skipping $i older chunks" }
+            coroutineContext.cancelChildren()
+            return@coroutineScope
+          }
+        }
+        filteredChunks.release(start, end)
+        end = start
+      }
+    }
+  }
+
+  /**
+   * Filtered chunks of the backlog, filtered on demand in the [scope].
+   */
+  private class FilteredChunks(private val scope: CoroutineScope, private val tasks: List<() -> List<LogcatMessage>>) {
+    // Guarded by this
+    private val chunks = arrayOfNulls<Deferred<List<LogcatMessage>>>(tasks.size)
+
+    fun start(start: Int, end: Int) {
+      for (i in start until end) {
+        get(i)
+      }
+    }
+
+    suspend fun await(index: Int): List<LogcatMessage> = get(index).await()
+
+    /**
+     * Returns the last message before the chunk with the given index that the formatter compares the first message of the chunk to.
+     */
+    suspend fun getPreviousMessage(index: Int): LogcatMessage? {
+      for (i in index - 1 downTo 0) {
+        val message = await(i).lastOrNull { it.header !== SYSTEM_HEADER }
+        if (message != null) {
+          return message
+        }
+      }
+      return null
+    }
+
+    /**
+     * Releases chunks that were prepended to the message view. Only older chunks are needed to format the remaining ones.
+     */
+    @Synchronized
+    fun release(start: Int, end: Int) {
+      chunks.fill(null, start, end)
+    }
+
+    @Synchronized
+    private fun get(index: Int): Deferred<List<LogcatMessage>> =
+      chunks[index] ?: scope.async { tasks[index]() }.also { chunks[index] = it }
+  }
+}
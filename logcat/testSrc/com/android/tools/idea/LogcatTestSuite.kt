@@ -16,8 +16,15 @@
 package com.android.tools.idea
 
 import com.android.testutils.JarTestSuiteRunner
+import com.android.tools.idea.logcat.performance.LogcatFilterBenchmarkTest
 import com.android.tools.tests.IdeaTestSuiteBase
 import org.junit.runner.RunWith
 
 @RunWith(JarTestSuiteRunner::class)
+@JarTestSuiteRunner.ExcludeClasses(
+  LogcatTestSuite::class,  // a suite mustn't contain itself
+  // Benchmarks run in their own target, see intellij.android.logcat.performance in logcat/BUILD.
+  LogcatPerformanceTestSuite::class,
+  LogcatFilterBenchmarkTest::class,
+)
 class LogcatTestSuite : IdeaTestSuiteBase()
\ No newline at end of file
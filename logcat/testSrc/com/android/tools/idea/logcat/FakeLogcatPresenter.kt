@@ -50,6 +50,7 @@ internal class FakeLogcatPresenter : LogcatPresenter {
   val lineBatches = mutableListOf<List<String>>()
   val tagSet = mutableSetOf<String>()
   var showing = true
+  var maxPrependedBatches = Int.MAX_VALUE
 
   override var formattingOptions: FormattingOptions = FormattingOptions()
 
@@ -76,6 +77,12 @@ internal class FakeLogcatPresenter : LogcatPresenter {
     lineBatches.add(list)
   }
 
+  override suspend fun prependMessages(textAccumulator: TextAccumulator): Boolean {
+    val list: List<String> = textAccumulator.text.trim().split("\n")
+    lineBatches.add(0, list)
+    return lineBatches.size < maxPrependedBatches
+  }
+
   override fun getConnectedDevice() = attachedDevice
 
   override fun isShowing() = showing
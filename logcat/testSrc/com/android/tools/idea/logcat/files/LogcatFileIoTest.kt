@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.files
+
+import com.android.testutils.TestResources
+import com.android.tools.idea.logcat.devices.Device
+import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.settings.AndroidLogcatSettings
+import com.android.tools.idea.logcat.util.logcatMessage
+import com.android.tools.idea.testing.ApplicationServiceRule
+import com.google.common.truth.Truth.assertThat
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import com.intellij.testFramework.ApplicationRule
+import com.intellij.testFramework.RuleChain
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributeView
+import java.nio.file.attribute.FileTime
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZonedDateTime
+import kotlin.io.path.writeText
+
+private val zoneId = ZoneId.of("Asia/Yerevan")
+
+/**
+ * Tests for [LogcatFileIo]
+ */
+class LogcatFileIoTest {
+  private val temporaryFolder = TemporaryFolder()
+
+  @get:Rule
+  val rule = RuleChain(
+    ApplicationRule(),
+    ApplicationServiceRule(AndroidLogcatSettings::class.java, AndroidLogcatSettings()),
+    temporaryFolder,
+  )
+
+  private val device = Device.createPhysical("device", true, "10", 30, "Google", "Pixel")
+
+  @Test
+  fun readLogcat_threadTime_batches() {
+    val path = getResourcePathWithExpectedTimestamp("/logcatFiles/logcat-threadtime-api-25.txt")
+    val batches = mutableListOf<List<LogcatMessage>>()
+
+    LogcatFileIo(zoneId).readLogcat(path, batchSize = 100, batches::add)
+
+    assertThat(batches.dropLast(1).map { it.size }.toSet()).containsExactly(100)
+    val expectedMessages = loadExpectedLogcat("/logcatFiles/logcat-threadtime-api-25-expected.txt")
+    assertThat(batches.flatten()).containsExactlyElementsIn(expectedMessages).inOrder()
+  }
+
+  @Test
+  fun readLogcat_json_batches() {
+    val path = temporaryFolder.newFile("file.logcat").toPath()
+    val messages = (1..10).map { logcatMessage(message = "message$it") }
+    LogcatFileIo(zoneId).writeLogcat(path, messages, device, "filter", setOf("appId"))
+    val batches = mutableListOf<List<LogcatMessage>>()
+
+    LogcatFileIo(zoneId).readLogcat(path, batchSize = 3, batches::add)
+
+    assertThat(batches.map { it.size }).containsExactly(3, 3, 3, 1).inOrder()
+    assertThat(batches.flatten()).containsExactlyElementsIn(messages).inOrder()
+  }
+
+  @Test
+  fun readMetadata_json() {
+    val path = temporaryFolder.newFile("file.logcat").toPath()
+    LogcatFileIo(zoneId).writeLogcat(path, listOf(logcatMessage()), device, "filter", setOf("appId"))
+
+    val metadata = LogcatFileIo(zoneId).readMetadata(path)
+
+    assertThat(metadata?.device).isEqualTo(device)
+    assertThat(metadata?.filter).isEqualTo("filter")
+    assertThat(metadata?.projectApplicationIds).containsExactly("appId")
+  }
+
+  @Test
+  fun readMetadata_threadTime() {
+    val path = getResourcePathWithExpectedTimestamp("/logcatFiles/logcat-threadtime-api-25.txt")
+
+    assertThat(LogcatFileIo(zoneId).readMetadata(path)).isNull()
+  }
+
+  @Test
+  fun readMessageFields_json() {
+    val path = temporaryFolder.newFile("file.logcat").toPath()
+    val messages = listOf(
+      logcatMessage(appId = "app1", processName = "process1", tag = "tag1", message = "{\"tag\": \"notATag\"}"),
+      logcatMessage(appId = "app2", processName = "process2", tag = "tag2"),
+    )
+    LogcatFileIo(zoneId).writeLogcat(path, messages, device, "filter", setOf("appId"))
+    val fields = mutableListOf<Triple<String, String, String>>()
+
+    LogcatFileIo(zoneId).readMessageFields(path) { applicationId, processName, tag -> fields.add(Triple(applicationId, processName, tag)) }
+
+    assertThat(fields).containsExactly(Triple("app1", "process1", "tag1"), Triple("app2", "process2", "tag2")).inOrder()
+  }
+
+  @Test
+  fun readMessageFields_threadTime() {
+    val path = getResourcePathWithExpectedTimestamp("/logcatFiles/logcat-threadtime-api-25.txt")
+    val fields = mutableSetOf<Triple<String, String, String>>()
+
+    LogcatFileIo(zoneId).readMessageFields(path) { applicationId, processName, tag -> fields.add(Triple(applicationId, processName, tag)) }
+
+    val expectedMessages = loadExpectedLogcat("/logcatFiles/logcat-threadtime-api-25-expected.txt")
+    val expectedFields = expectedMessages.map { Triple(it.header.applicationId, it.header.processName, it.header.tag) }.toSet()
+    assertThat(fields).containsExactlyElementsIn(expectedFields)
+  }
+
+  @Test
+  fun readLogcatTail_threadTime() {
+    val path = getResourcePathWithExpectedTimestamp("/logcatFiles/logcat-threadtime-api-25.txt")
+
+    val messages = LogcatFileIo(zoneId).readLogcatTail(path, maxBytes = 2000)
+
+    // The first message can start before the tail, so it may be incomplete.
+    assertThat(messages.size).isGreaterThan(1)
+    val expectedMessages = loadExpectedLogcat("/logcatFiles/logcat-threadtime-api-25-expected.txt")
+    assertThat(messages.drop(1)).containsExactlyElementsIn(expectedMessages.takeLast(messages.size - 1)).inOrder()
+  }
+
+  @Test
+  fun readLogcatTail_json() {
+    val path = temporaryFolder.newFile("file.logcat").toPath()
+    val messages = (1..100).map { logcatMessage(message = "message$it") }
+    LogcatFileIo(zoneId).writeLogcat(path, messages, device, "filter", setOf("appId"))
+
+    val tail = LogcatFileIo(zoneId).readLogcatTail(path, maxBytes = 2000)
+
+    assertThat(tail).isNotEmpty()
+    assertThat(tail).containsExactlyElementsIn(messages.takeLast(tail.size)).inOrder()
+  }
+
+  @Test
+  fun readLogcatTail_smallFile() {
+    val path = getResourcePathWithExpectedTimestamp("/logcatFiles/logcat-firebase.txt")
+
+    val messages = LogcatFileIo(zoneId).readLogcatTail(path, maxBytes = Long.MAX_VALUE)
+
+    val expectedMessages = loadExpectedLogcat("/logcatFiles/logcat-firebase-expected.txt")
+    assertThat(messages).containsExactlyElementsIn(expectedMessages).inOrder()
+  }
+
+  @Test
+  fun readLogcatTail_jsonNotWrittenByStudio() {
+    val path = temporaryFolder.newFile("file.logcat").toPath()
+    val messages = (1..100).map { logcatMessage(message = "message$it") }
+    path.writeText(Gson().toJson(LogcatFileData(LogcatFileData.Metadata(device, "filter", setOf("appId")), messages)))
+
+    // Without the layout written by writeLogcat, the messages can't be found in the tail, but the whole file can still be read.
+    assertThat(LogcatFileIo(zoneId).readLogcatTail(path, maxBytes = 2000)).isEmpty()
+    val allMessages = mutableListOf<LogcatMessage>()
+    LogcatFileIo(zoneId).readLogcat(path, onBatch = allMessages::addAll)
+    assertThat(allMessages).containsExactlyElementsIn(messages).inOrder()
+  }
+}
+
+private fun loadExpectedLogcat(filename: String): List<LogcatMessage> {
+  return TestResources.getFile(filename).reader().use {
+    Gson().fromJson(it, object : TypeToken<List<LogcatMessage>>() {})
+  }
+}
+
+private fun getResourcePathWithExpectedTimestamp(filename: String): Path {
+  val path = TestResources.getFile(filename).toPath()
+  val time = FileTime.from(Instant.from(ZonedDateTime.of(2023, 5, 17, 16, 8, 0, 0, zoneId)))
+  Files.getFileAttributeView(path, BasicFileAttributeView::class.java).setTimes(time, time, time)
+  return path
+}
@@ -33,6 +33,8 @@ import com.android.tools.idea.logcat.message.LogLevel.INFO
 import com.android.tools.idea.logcat.message.LogLevel.VERBOSE
 import com.android.tools.idea.logcat.message.LogLevel.WARN
 import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.messages.LogcatMessageStore
+import com.android.tools.idea.logcat.messages.MessageChunkIndex
 import com.android.tools.idea.logcat.settings.AndroidLogcatSettings
 import com.android.tools.idea.logcat.util.logcatMessage
 import com.google.common.truth.Truth.assertThat
@@ -150,6 +152,46 @@ class LogcatFilterTest {
     assertThat(LogcatMasterFilter(null).filter(messages)).isEqualTo(listOf(MESSAGE2))
   }
 
+  @Test
+  fun logcatMasterFilter_store_skipsChunks() {
+    // Each chunk holds a single message.
+    val store = LogcatMessageStore(1000, chunkSize = 50)
+    val error = logcatMessage(ERROR, message = "error")
+    store.addAll(listOf(MESSAGE1, MESSAGE2, error))
+    var decoded = 0
+    val filter = object : LogcatFilter(EMPTY_RANGE) {
+      override val displayText: String = ""
+
+      override fun matches(message: LogcatMessageWrapper): Boolean {
+        decoded++
+        return true
+      }
+
+      override fun canMatch(index: MessageChunkIndex) = index.levels.contains(ERROR)
+    }
+
+    assertThat(LogcatMasterFilter(filter).filter(store)).containsExactly(error)
+    assertThat(decoded).isEqualTo(1)
+  }
+
+  @Test
+  fun logcatMasterFilter_store_systemMessages() {
+    val store = LogcatMessageStore(1000)
+    val systemMessage = LogcatMessage(SYSTEM_HEADER, "message")
+    store.addAll(listOf(MESSAGE1, systemMessage))
+
+    assertThat(LogcatMasterFilter(FalseFilter()).filter(store)).containsExactly(systemMessage)
+  }
+
+  @Test
+  fun logcatMasterFilter_store_ignoreTags() {
+    val store = LogcatMessageStore(1000)
+    store.addAll(listOf(MESSAGE1, MESSAGE2))
+    logcatSettings.ignoredTags = setOf(MESSAGE1.header.tag)
+
+    assertThat(LogcatMasterFilter(null).filter(store)).containsExactly(MESSAGE2)
+  }
+
   @Test
   fun andLogcatFilter_allTrue() {
     assertThat(
@@ -281,6 +323,38 @@ class LogcatFilterTest {
     }
   }
 
+  @Test
+  fun levelFilter_canMatch() {
+    val index = index(logcatMessage(DEBUG), logcatMessage(INFO))
+
+    assertThat(LevelFilter(INFO, EMPTY_RANGE).canMatch(index)).isTrue()
+    assertThat(LevelFilter(WARN, EMPTY_RANGE).canMatch(index)).isFalse()
+  }
+
+  @Test
+  fun fieldFilter_canMatch() {
+    val index = index(MESSAGE1, MESSAGE2)
+
+    assertThat(StringFilter("tag", TAG, matchCase = false, EMPTY_RANGE).canMatch(index)).isTrue()
+    assertThat(StringFilter("tag", TAG, matchCase = true, EMPTY_RANGE).canMatch(index)).isFalse()
+    assertThat(ExactStringFilter("app2", APP, matchCase = true, EMPTY_RANGE).canMatch(index)).isTrue()
+    assertThat(ExactStringFilter("app3", APP, matchCase = true, EMPTY_RANGE).canMatch(index)).isFalse()
+    assertThat(NegatedExactStringFilter("app1", APP, matchCase = true, EMPTY_RANGE).canMatch(index)).isTrue()
+    assertThat(NegatedStringFilter("Tag", TAG, matchCase = true, EMPTY_RANGE).canMatch(index)).isFalse()
+    assertThat(RegexFilter("Tag[3-9]", TAG, matchCase = true, EMPTY_RANGE).canMatch(index)).isFalse()
+    assertThat(StringFilter("not in index", MESSAGE, matchCase = true, EMPTY_RANGE).canMatch(index)).isTrue()
+  }
+
+  @Test
+  fun compoundFilter_canMatch() {
+    val index = index(MESSAGE1, MESSAGE2)
+    val matchingFilter = ExactStringFilter("Tag1", TAG, matchCase = true, EMPTY_RANGE)
+    val nonMatchingFilter = LevelFilter(ERROR, EMPTY_RANGE)
+
+    assertThat(AndLogcatFilter(matchingFilter, nonMatchingFilter).canMatch(index)).isFalse()
+    assertThat(OrLogcatFilter(matchingFilter, nonMatchingFilter).canMatch(index)).isTrue()
+  }
+
   @Test
   fun ageFilter_parsing() {
     val clock = Clock.fixed(Instant.EPOCH, ZONE_ID)
@@ -299,6 +373,15 @@ class LogcatFilterTest {
     assertThat(AgeFilter("10s", Clock.offset(clock, Duration.ofSeconds(15)), EMPTY_RANGE).matches(message)).isFalse()
   }
 
+  @Test
+  fun ageFilter_canMatch() {
+    val clock = Clock.fixed(Instant.EPOCH, ZONE_ID)
+    val index = index(logcatMessage(timestamp = clock.instant()))
+
+    assertThat(AgeFilter("10s", Clock.offset(clock, Duration.ofSeconds(5)), EMPTY_RANGE).canMatch(index)).isTrue()
+    assertThat(AgeFilter("10s", Clock.offset(clock, Duration.ofSeconds(15)), EMPTY_RANGE).canMatch(index)).isFalse()
+  }
+
   @Test
   fun appFilter_matches() {
     val message1 = logcatMessage(appId = "foo")
@@ -339,6 +422,17 @@ class LogcatFilterTest {
       ).inOrder()
   }
 
+  @Test
+  fun appFilter_canMatch() {
+    val filter = ProjectAppFilter(FakeProjectApplicationIdsProvider(project, "foo"), EMPTY_RANGE)
+    filter.prepare()
+
+    assertThat(filter.canMatch(index(logcatMessage(appId = "foo")))).isTrue()
+    assertThat(filter.canMatch(index(logcatMessage(appId = "", processName = "foo")))).isTrue()
+    assertThat(filter.canMatch(index(logcatMessage(appId = "bar", logLevel = ERROR)))).isTrue()
+    assertThat(filter.canMatch(index(logcatMessage(appId = "bar", logLevel = WARN)))).isFalse()
+  }
+
   @Test
   fun stackTraceFilter() {
     val message = """
@@ -382,6 +476,13 @@ class LogcatFilterTest {
       ).inOrder()
   }
 
+  @Test
+  fun crashFilter_canMatch() {
+    assertThat(CrashFilter(EMPTY_RANGE).canMatch(index(logcatMessage(tag = "AndroidRuntime", logLevel = ERROR)))).isTrue()
+    assertThat(CrashFilter(EMPTY_RANGE).canMatch(index(logcatMessage(tag = "libc", logLevel = ASSERT)))).isTrue()
+    assertThat(CrashFilter(EMPTY_RANGE).canMatch(index(logcatMessage(tag = "libc", logLevel = ERROR)))).isFalse()
+  }
+
   @Test
   fun nameFilter_matches() {
     assertThat(NameFilter("name", EMPTY_RANGE).matches(logcatMessage(message = "whatever"))).isTrue()
@@ -554,4 +655,6 @@ private class FalseFilter : LogcatFilter(EMPTY_RANGE) {
 
 private fun LogcatFilter.filter(messages: List<LogcatMessage>) = LogcatMasterFilter(this).filter(messages)
 
-private fun LogcatFilter.matches(logcatMessage: LogcatMessage) = matches(LogcatMessageWrapper(logcatMessage))
\ No newline at end of file
+private fun LogcatFilter.matches(logcatMessage: LogcatMessage) = matches(LogcatMessageWrapper(logcatMessage))
+
+private fun index(vararg messages: LogcatMessage) = MessageChunkIndex().apply { messages.forEach { add(it.header, isSystemMessage = false) } }
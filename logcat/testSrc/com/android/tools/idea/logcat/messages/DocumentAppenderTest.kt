@@ -227,6 +227,64 @@ class DocumentAppenderTest {
     )
   }
 
+  @Test
+  fun prependToDocument_prependsText() {
+    val documentAppender = documentAppender(document)
+    document.setText("End\n")
+
+    val result = documentAppender.prependToDocument(TextAccumulator().apply { accumulate("Line 1\nLine 2\n") })
+
+    assertThat(document.text).isEqualTo("""
+      Line 1
+      Line 2
+      End
+
+    """.trimIndent())
+    assertThat(result).isTrue()
+  }
+
+  @Test
+  fun prependToDocument_insertsLinesThatFit() {
+    val documentAppender = documentAppender(document, 20)
+    document.setText("End\n")
+
+    val result = documentAppender.prependToDocument(TextAccumulator().apply { accumulate("Added Line 1\nAdded Line 2\n") })
+
+    assertThat(document.text).isEqualTo("""
+      Added Line 2
+      End
+
+    """.trimIndent())
+    assertThat(result).isFalse()
+  }
+
+  @Test
+  fun prependToDocument_documentFull() {
+    val documentAppender = documentAppender(document, 4)
+    document.setText("End\n")
+
+    val result = documentAppender.prependToDocument(TextAccumulator().apply { accumulate("Line 1\n") })
+
+    assertThat(document.text).isEqualTo("End\n")
+    assertThat(result).isFalse()
+  }
+
+  @Test
+  fun prependToDocument_setsTextAttributesRanges_ignoresRangesThatDoNotFit() {
+    val documentAppender = documentAppender(document, 10)
+
+    documentAppender.prependToDocument(TextAccumulator().apply {
+      accumulate("abcd\n", textAttributes = blue)
+      accumulate("efgh\n", textAttributes = red)
+      accumulate("ijkl\n", textAttributes = blue)
+    })
+
+    assertThat(markupModel.allHighlighters.map(RangeHighlighter::toTextAttributesRange)).containsExactly(
+      getRangeForText("efgh\n", red),
+      getRangeForText("ijkl\n", blue),
+    )
+  }
+
   private fun <T> getRangeForText(text: String, data: T): TextAccumulator.Range<T>? {
     val start = document.text.indexOf(text)
     if (start < 0) {
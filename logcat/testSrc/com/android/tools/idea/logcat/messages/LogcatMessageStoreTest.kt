@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.messages
+
+import com.android.tools.idea.logcat.SYSTEM_HEADER
+import com.android.tools.idea.logcat.message.LogLevel.ERROR
+import com.android.tools.idea.logcat.message.LogLevel.INFO
+import com.android.tools.idea.logcat.message.LogLevel.WARN
+import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.util.logcatMessage
+import com.google.common.truth.Truth.assertThat
+import com.intellij.testFramework.UsefulTestCase.assertThrows
+import org.junit.Test
+import java.time.Instant
+
+/**
+ * Tests for [LogcatMessageStore]
+ */
+class LogcatMessageStoreTest {
+  private val message1 = logcatMessage(WARN, pid = 1, tid = 2, "app1", "process1", "Tag1", Instant.ofEpochMilli(1000), "Message 1")
+  private val message2 = logcatMessage(INFO, pid = 3, tid = 4, "app2", "process2", "Tag2", Instant.ofEpochMilli(2000), "Message 2")
+  private val message3 = logcatMessage(ERROR, pid = 5, tid = 6, "app3", "process3", "Tag3", Instant.ofEpochMilli(3000), "Message 3")
+
+  @Test
+  fun create_smallSize() {
+    assertThrows(AssertionError::class.java) { LogcatMessageStore(0) }
+  }
+
+  @Test
+  fun addAll_decodesMessages() {
+    val store = LogcatMessageStore(100)
+    val unicodeMessage = logcatMessage(message = "Unicode: é中😀")
+
+    store.addAll(listOf(message1, message2, unicodeMessage))
+
+    assertThat(store.getMessages()).containsExactly(message1, message2, unicodeMessage).inOrder()
+  }
+
+  @Test
+  fun addAll_systemMessage_keepsIdentity() {
+    val store = LogcatMessageStore(100)
+
+    store.addAll(listOf(LogcatMessage(SYSTEM_HEADER, "System")))
+
+    assertThat(store.getMessages().single().header).isSameAs(SYSTEM_HEADER)
+    assertThat(store.getChunks().single().index.hasSystemMessages).isTrue()
+  }
+
+  @Test
+  fun addAll_oneBatch() {
+    val store = LogcatMessageStore(20)
+
+    store.addAll(listOf(message1, message2, message3))
+
+    assertThat(store.getMessages()).containsExactly(message2, message3).inOrder()
+  }
+
+  @Test
+  fun addAll_multipleBatches() {
+    val store = LogcatMessageStore(20)
+
+    store.addAll(listOf(message1))
+    store.addAll(listOf(message2))
+    store.addAll(listOf(message3))
+
+    assertThat(store.getMessages()).containsExactly(message2, message3).inOrder()
+  }
+
+  @Test
+  fun addAll_splitsIntoChunks() {
+    // Each record takes 46 bytes, so a chunk holds two messages.
+    val store = LogcatMessageStore(100, chunkSize = 100)
+
+    store.addAll(listOf(message1, message2, message3))
+
+    val chunks = store.getChunks()
+    assertThat(chunks.map { it.getMessages() }).containsExactly(listOf(message1, message2), listOf(message3)).inOrder()
+    assertThat(chunks[0].index.levels).containsExactly(WARN, INFO)
+    assertThat(chunks[0].index.tags).containsExactly("Tag1", "Tag2")
+    assertThat(chunks[0].index.applicationIds).containsExactly("app1", "app2")
+    assertThat(chunks[0].index.processNames).containsExactly("process1", "process2")
+    assertThat(chunks[0].index.maxTimestamp).isEqualTo(2000)
+    assertThat(chunks[1].index.tags).containsExactly("Tag3")
+  }
+
+  @Test
+  fun addAll_messageLargerThanChunk() {
+    val store = LogcatMessageStore(1000, chunkSize = 100)
+    val largeMessage = logcatMessage(message = "x".repeat(500))
+
+    store.addAll(listOf(message1, largeMessage, message2))
+
+    assertThat(store.getMessages()).containsExactly(message1, largeMessage, message2).inOrder()
+  }
+
+  @Test
+  fun addAll_evictsChunks() {
+    val store = LogcatMessageStore(20, chunkSize = 100)
+
+    store.addAll(listOf(message1, message2))
+    store.addAll(listOf(message3))
+    store.addAll(listOf(message1))
+
+    assertThat(store.getChunks()).hasSize(1)
+    assertThat(store.getMessages()).containsExactly(message3, message1).inOrder()
+  }
+
+  @Test
+  fun getChunks_isNotAffectedByLaterChanges() {
+    val store = LogcatMessageStore(20)
+    store.addAll(listOf(message1))
+    val chunks = store.getChunks()
+
+    store.addAll(listOf(message2, message3))
+
+    assertThat(chunks.single().getMessages()).containsExactly(message1)
+    assertThat(chunks.single().index.tags).containsExactly("Tag1")
+  }
+
+  @Test
+  fun setMaxSize() {
+    val store = LogcatMessageStore(100)
+    store.addAll(listOf(message1, message2, message3))
+
+    store.setMaxSize(10)
+    store.addAll(listOf(message1))
+
+    assertThat(store.getMessages()).containsExactly(message1)
+  }
+
+  @Test
+  fun clear() {
+    val store = LogcatMessageStore(20)
+    store.addAll(listOf(message1, message2))
+
+    store.clear()
+    store.addAll(listOf(message1, message2))
+
+    assertThat(store.getMessages()).containsExactly(message1, message2).inOrder()
+  }
+
+  @Test
+  fun isEmpty() {
+    val store = LogcatMessageStore(20)
+    assertThat(store.isEmpty()).isTrue()
+
+    store.addAll(listOf(message1))
+
+    assertThat(store.isEmpty()).isFalse()
+  }
+}
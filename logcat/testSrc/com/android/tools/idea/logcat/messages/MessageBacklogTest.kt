@@ -95,6 +95,40 @@ class MessageBacklogTest {
     assertThat(messageBacklog.messages).containsExactly(message2, message3)
   }
 
+  @Test
+  fun addAll_offHeap() {
+    val messageBacklog = MessageBacklog(20, offHeap = true)
+
+    messageBacklog.addAll(listOf(message1))
+    messageBacklog.addAll(listOf(message2, message3))
+
+    assertThat(messageBacklog.messages).containsExactly(message2, message3).inOrder()
+  }
+
+  @Test
+  fun setMaxSize_offHeap() {
+    val messageBacklog = MessageBacklog(20, offHeap = true)
+    messageBacklog.addAll(listOf(message1, message2))
+
+    messageBacklog.setMaxSize(10)
+
+    assertThat(messageBacklog.messages).containsExactly(message2)
+  }
+
+  @Test
+  fun isEmpty() {
+    for (offHeap in listOf(false, true)) {
+      val messageBacklog = MessageBacklog(20, offHeap)
+      assertThat(messageBacklog.isEmpty()).isTrue()
+
+      messageBacklog.addAll(listOf(message1))
+      assertThat(messageBacklog.isEmpty()).isFalse()
+
+      messageBacklog.clear()
+      assertThat(messageBacklog.isEmpty()).isTrue()
+    }
+  }
+
   @Test
   fun messages_isUnmodifiable() {
     val mutableList = MessageBacklog(20).messages as MutableList<LogcatMessage>
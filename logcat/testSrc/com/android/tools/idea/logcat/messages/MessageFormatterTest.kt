@@ -233,6 +233,27 @@ class MessageFormatterTest {
     """.trimIndent())
   }
 
+  @Test
+  fun formatMessagesAfter_hideDuplicateTags() {
+    val textAccumulator = TextAccumulator()
+    formattingOptions.tagFormat = TagFormat(hideDuplicates = true)
+
+    messageFormatter.formatMessagesAfter(
+      LogcatMessage(LogcatHeader(WARN, 1, 2, "com.example.app1", "", "Tag1", TIMESTAMP), "message"),
+      formattingOptions,
+      textAccumulator,
+      listOf(
+        LogcatMessage(LogcatHeader(WARN, 1, 2, "com.example.app1", "", "Tag1", TIMESTAMP), "message"),
+        LogcatMessage(LogcatHeader(WARN, 1, 2, "com.example.app1", "", "Tag2", TIMESTAMP), "message"),
+      ))
+
+    assertThat(textAccumulator.text).isEqualTo("""
+      1970-01-01 04:00:01.000     1-2                             com.example.app1                     W  message
+      1970-01-01 04:00:01.000     1-2     Tag2                    com.example.app1                     W  message
+
+    """.trimIndent())
+  }
+
   @Test
   fun formatMessages_noTags() {
     val textAccumulator = TextAccumulator()
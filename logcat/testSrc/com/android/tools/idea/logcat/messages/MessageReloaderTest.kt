@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.messages
+
+import com.android.tools.idea.logcat.FakeLogcatPresenter
+import com.android.tools.idea.logcat.SYSTEM_HEADER
+import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.util.logcatMessage
+import com.google.common.truth.Truth.assertThat
+import com.intellij.openapi.util.Disposer
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Test
+
+private val message1 = logcatMessage(message = "message1")
+private val message2 = logcatMessage(message = "message2")
+private val message3 = logcatMessage(message = "message3")
+private val message4 = logcatMessage(message = "message4")
+private val message5 = logcatMessage(message = "message5")
+
+/**
+ * Tests for [MessageReloader]
+ */
+class MessageReloaderTest {
+  private val fakeLogcatPresenter = FakeLogcatPresenter()
+
+  @After
+  fun tearDown() {
+    Disposer.dispose(fakeLogcatPresenter)
+  }
+
+  @Test
+  fun reload_prependsNewestChunkFirst(): Unit = runBlocking {
+    val reloader = MessageReloader(fakeLogcatPresenter, ::formatMessages, parallelism = 2)
+
+    reloader.reload(tasks(listOf(message1, message2), listOf(message3), listOf(message4, message5)))
+
+    // Each chunk is prepended to the batches, so the oldest chunk is first only if it was prepended last.
+    @Suppress("ConvertLambdaToReference") // Calling inOrder() confuses IDEA.
+    assertThat(fakeLogcatPresenter.lineBatches).containsExactly(
+      listOf("message1", "message2"),
+      listOf("message3"),
+      listOf("message4", "message5"),
+    ).inOrder()
+  }
+
+  @Test
+  fun reload_skipsEmptyChunks(): Unit = runBlocking {
+    val reloader = MessageReloader(fakeLogcatPresenter, ::formatMessages, parallelism = 2)
+
+    reloader.reload(tasks(listOf(message1), emptyList(), listOf(message3)))
+
+    @Suppress("ConvertLambdaToReference") // Calling inOrder() confuses IDEA.
+    assertThat(fakeLogcatPresenter.lineBatches).containsExactly(listOf("message1"), listOf("message3")).inOrder()
+  }
+
+  @Test
+  fun reload_formatsChunksAfterPreviousMessage(): Unit = runBlocking {
+    val reloader = MessageReloader(fakeLogcatPresenter, ::formatMessagesWithPrevious, parallelism = 1)
+
+    reloader.reload(tasks(listOf(message1), emptyList(), listOf(LogcatMessage(SYSTEM_HEADER, "system")), listOf(message4, message5)))
+
+    assertThat(fakeLogcatPresenter.lineBatches.flatten())
+      .containsExactly("null -> message1", "message1 -> system", "message1 -> message4").inOrder()
+  }
+
+  @Test
+  fun reload_stopsWhenMessageViewIsFull(): Unit = runBlocking {
+    fakeLogcatPresenter.maxPrependedBatches = 2
+    val reloader = MessageReloader(fakeLogcatPresenter, ::formatMessages, parallelism = 1)
+
+    reloader.reload(tasks(listOf(message1), listOf(message2), listOf(message3), listOf(message4)))
+
+    @Suppress("ConvertLambdaToReference") // Calling inOrder() confuses IDEA.
+    assertThat(fakeLogcatPresenter.lineBatches).containsExactly(listOf("message3"), listOf("message4")).inOrder()
+  }
+}
+
+private fun tasks(vararg chunks: List<LogcatMessage>): List<() -> List<LogcatMessage>> = chunks.map { { it } }
+
+private fun formatMessages(textAccumulator: TextAccumulator, @Suppress("UNUSED_PARAMETER") previousMessage: LogcatMessage?,
+                           messages: List<LogcatMessage>) {
+  messages.forEach { textAccumulator.accumulate("${it.message}\n") }
+}
+
+private fun formatMessagesWithPrevious(textAccumulator: TextAccumulator, previousMessage: LogcatMessage?, messages: List<LogcatMessage>) {
+  val message = messages.firstOrNull() ?: return
+  textAccumulator.accumulate("${previousMessage?.message} -> ${message.message}\n")
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.performance
+
+import com.android.tools.idea.logcat.filters.AgeFilter
+import com.android.tools.idea.logcat.filters.ExactStringFilter
+import com.android.tools.idea.logcat.filters.LevelFilter
+import com.android.tools.idea.logcat.filters.LogcatFilter
+import com.android.tools.idea.logcat.filters.LogcatFilterField.IMPLICIT_LINE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.TAG
+import com.android.tools.idea.logcat.filters.LogcatMasterFilter
+import com.android.tools.idea.logcat.filters.StringFilter
+import com.android.tools.idea.logcat.message.LogLevel
+import com.android.tools.idea.logcat.message.LogcatHeader
+import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.messages.MessageBacklog
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import com.intellij.openapi.util.TextRange.EMPTY_RANGE
+import com.intellij.testFramework.ApplicationRule
+import org.junit.Rule
+import org.junit.Test
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneId
+import java.util.concurrent.TimeUnit
+
+private const val MESSAGE_LENGTH = 100
+private const val NUMBER_OF_TAGS = 20
+private const val NUMBER_OF_APPS = 5
+private const val RARE_MESSAGE_INTERVAL = 100_000
+private const val RARE_TAG = "RareTag"
+private const val SAMPLES = 5
+
+private val BACKLOG_SIZES = listOf(1_000_000, 10_000_000, 50_000_000)
+private val START_TIME = Instant.ofEpochSecond(1_700_000_000)
+
+/**
+ * Measures how long it takes to filter backlogs of different sizes, kept on the heap and in an off-heap [MessageBacklog].
+ *
+ * Messages are generated one millisecond apart, with a rare error message every [RARE_MESSAGE_INTERVAL] messages, so that the level,
+ * tag and age filters only match a small part of the backlog. Free text filters have to decode every message regardless of the backlog
+ * implementation.
+ */
+class LogcatFilterBenchmarkTest {
+  @get:Rule
+  val applicationRule = ApplicationRule()
+
+  private val benchmark = Benchmark.Builder("Logcat Filter Latency (Millis)").setProject("Android Studio Logcat").build()
+
+  @Test
+  fun filterLatency() {
+    for (size in BACKLOG_SIZES) {
+      val messageCount = size / MESSAGE_LENGTH
+      val clock = Clock.fixed(START_TIME.plusMillis(messageCount.toLong()), ZoneId.of("UTC"))
+      val filters = mapOf(
+        "level" to LevelFilter(LogLevel.ERROR, EMPTY_RANGE),
+        "tag" to ExactStringFilter(RARE_TAG, TAG, matchCase = true, EMPTY_RANGE),
+        "age" to AgeFilter("10s", clock, EMPTY_RANGE),
+        "text" to StringFilter("needle", IMPLICIT_LINE, matchCase = false, EMPTY_RANGE),
+      )
+      for (offHeap in listOf(false, true)) {
+        val backlog = MessageBacklog(size, offHeap)
+        generateMessages(messageCount).chunked(1000).forEach(backlog::addAll)
+        for ((name, filter) in filters) {
+          measure("logcat_filter_${name}_${size / 1_000_000}M_${if (offHeap) "off_heap" else "on_heap"}", backlog, filter)
+        }
+      }
+    }
+  }
+
+  private fun measure(metricName: String, backlog: MessageBacklog, filter: LogcatFilter) {
+    val masterFilter = LogcatMasterFilter(filter)
+    // The first run warms up the filter and the decoder.
+    backlog.filter(masterFilter)
+    val metric = Metric(metricName)
+    repeat(SAMPLES) {
+      val start = System.nanoTime()
+      backlog.filter(masterFilter)
+      val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+      metric.addSamples(benchmark, MetricSample(Instant.now().toEpochMilli(), elapsed))
+    }
+    metric.commit()
+  }
+
+  private fun generateMessages(count: Int): Sequence<LogcatMessage> = sequence {
+    val padding = "x".repeat(MESSAGE_LENGTH)
+    for (i in 0 until count) {
+      val rare = i % RARE_MESSAGE_INTERVAL == 0
+      val app = "com.example.app${i % NUMBER_OF_APPS}"
+      val header = LogcatHeader(
+        if (rare) LogLevel.ERROR else LogLevel.values()[i % LogLevel.WARN.ordinal],
+        pid = 1000 + i % NUMBER_OF_APPS,
+        tid = 1000 + i % NUMBER_OF_APPS,
+        applicationId = app,
+        processName = app,
+        tag = if (rare) RARE_TAG else "Tag${i % NUMBER_OF_TAGS}",
+        timestamp = START_TIME.plusMillis(i.toLong()),
+      )
+      yield(LogcatMessage(header, "Message $i $padding".take(MESSAGE_LENGTH)))
+    }
+  }
+}
@@ -21,12 +21,12 @@ import java.io.File
 import java.io.IOException
 import java.io.InputStreamReader
 import java.io.OutputStreamWriter
-import java.util.concurrent.Callable
 import java.util.concurrent.ExecutionException
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * Implementation of NativeSymbolizer that uses llvm-symbolizer.
@@ -46,10 +46,12 @@ import java.util.concurrent.TimeoutException
  */
 class LlvmSymbolizer(private val symbolizerExe: String,
                      private val symLocator: SymbolFilesLocator,
-                     private val timeoutMsc: Long = 5000) : NativeSymbolizer {
+                     private val timeoutMsc: Long = 5000,
+                     private val symbolCache: SymbolCache = SymbolCache()) : NativeSymbolizer {
 
   private var procHolder : ProcessHolder? = null
-  private val executor : ExecutorService = Executors.newSingleThreadExecutor()
+  // One thread writes the requests of a batch while the other one reads the responses, so that neither side blocks on a full pipe.
+  private val executor : ExecutorService = Executors.newFixedThreadPool(2)
 
   /**
    * @param abiArch - The cpu architecture of the symbol.
@@ -57,46 +59,114 @@ class LlvmSymbolizer(private val symbolizerExe: String,
    * @param offset - The starting byte address in the module of the symbol.
    */
   override fun symbolize(abiArch: String, module: File, offset: Long): Symbol? {
-    val symFiles = symLocator.getFiles(abiArch)
-
-    for (symFile in symFiles.filter { it.nameWithoutExtension == module.nameWithoutExtension }) {
-      val request = formatRequest(symFile, offset)
+    val request = SymbolRequest(module, offset)
+    return symbolizeAll(abiArch, listOf(request))[request]
+  }
 
-      val holder = getProcHolder()
-      val future = executor.submit( Callable<List<String>> {
-        holder.stdin.write(request)
-        holder.stdin.flush()
+  /**
+   * Each distinct offset is only symbolized once per symbol file, and results are taken from the [symbolCache] where possible. The
+   * remaining offsets of a symbol file are written to llvm-symbolizer in one go while its responses are read, rather than waiting for
+   * the response to each request before sending the next one.
+   */
+  override fun symbolizeAll(abiArch: String, requests: Collection<SymbolRequest>): Map<SymbolRequest, Symbol> {
+    val symbols = mutableMapOf<SymbolRequest, Symbol>()
+    if (requests.isEmpty()) {
+      return symbols
+    }
+    val symFiles = symLocator.getFiles(abiArch)
 
-        val response: MutableList<String> = mutableListOf()
-        var responseLine: String?
-        while (true) {
-          responseLine = holder.stdout.readLine()
-          if (responseLine.isNullOrEmpty()) {
-            break
+    for ((module, moduleRequests) in requests.groupBy { it.module }) {
+      var offsets: Collection<Long> = moduleRequests.mapTo(LinkedHashSet()) { it.offset }
+      for (symFile in symFiles.filter { it.nameWithoutExtension == module.nameWithoutExtension }) {
+        val results = symbolizeOffsets(symFile, offsets)
+        for ((offset, result) in results) {
+          if (result.isFound()) {
+            symbols[SymbolRequest(module, offset)] = result.toSymbol(module)
           }
-          response.add(responseLine)
         }
-        response
-      })
-      val response : List<String>
+        // Offsets that are not found in this symbol file might be in another one.
+        offsets = offsets.filter { results[it]?.isFound() != true }
+        if (offsets.isEmpty()) {
+          break
+        }
+      }
+    }
+
+    return symbols
+  }
+
+  private fun symbolizeOffsets(symFile: File, offsets: Collection<Long>): Map<Long, CachedSymbol> {
+    val cached = symbolCache.getAll(symFile, offsets)
+    val missing = offsets.filter { it !in cached }
+    if (missing.isEmpty()) {
+      return cached
+    }
+    val results = runSymbolizer(symFile, missing)
+    symbolCache.putAll(symFile, results)
+    return cached + results
+  }
+
+  /**
+   * Sends the [offsets] to llvm-symbolizer and returns the results it responded with. If llvm-symbolizer does not respond in time or
+   * fails, the results of the offsets it responded to so far are returned.
+   */
+  @Synchronized
+  private fun runSymbolizer(symFile: File, offsets: List<Long>): Map<Long, CachedSymbol> {
+    val holder = getProcHolder()
+    val results = arrayOfNulls<CachedSymbol>(offsets.size)
+    val responseCount = AtomicInteger()
+    val writer = executor.submit {
+      for (offset in offsets) {
+        holder.stdin.write(formatRequest(symFile, offset))
+      }
+      holder.stdin.flush()
+    }
+    val reader = executor.submit {
+      for (i in offsets.indices) {
+        results[i] = parseResponse(readResponse(holder.stdout) ?: break)
+        responseCount.incrementAndGet()
+      }
+    }
+
+    // Wait as long as llvm-symbolizer keeps responding, allowing it timeoutMsc for each response.
+    var lastResponseCount = 0
+    while (true) {
       try {
-        response = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
+        reader.get(timeoutMsc, TimeUnit.MILLISECONDS)
+        break
       } catch (e: TimeoutException) {
-        getLogger().warn("llvm-symbolizer timed out", e)
-        stop()
-        continue
+        val count = responseCount.get()
+        if (count == lastResponseCount) {
+          getLogger().warn("llvm-symbolizer timed out", e)
+          stop()
+          break
+        }
+        lastResponseCount = count
       } catch (e: ExecutionException) {
         getLogger().warn("llvm-symbolizer communication failed", e)
         stop()
-        continue
+        break
       }
+    }
 
-      val result = parseResponse(response, module)
-      if (result != null)
-        return result
+    // The writer has finished once all responses are read, and fails soon after llvm-symbolizer is stopped or exits.
+    try {
+      writer.get(timeoutMsc, TimeUnit.MILLISECONDS)
+    } catch (e: TimeoutException) {
+      getLogger().warn("Sending requests to llvm-symbolizer timed out", e)
+      writer.cancel(true)
+      stop()
+    } catch (e: ExecutionException) {
+      getLogger().warn("Sending requests to llvm-symbolizer failed", e)
+      stop()
     }
 
-    return null
+    val count = responseCount.get()
+    if (count < offsets.size && holder.process.isAlive) {
+      // The responses to the remaining requests would be read as responses to later ones.
+      stop()
+    }
+    return (0 until count).associate { offsets[it] to results[it]!! }
   }
 
   private fun getProcHolder() : ProcessHolder {
@@ -113,31 +183,45 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     return java.lang.String.format("\"%s\" 0x%x\n", escapedPath, offset)
   }
 
-  private fun parseResponse(response: List<String>, module: File): Symbol? {
+  /**
+   * Reads the lines of a response up to the empty line that ends it, or returns null if there are no more responses.
+   */
+  private fun readResponse(stdout: BufferedReader): List<String>? {
+    val response: MutableList<String> = mutableListOf()
+    while (true) {
+      val responseLine = stdout.readLine() ?: return response.takeIf { it.isNotEmpty() }
+      if (responseLine.isEmpty()) {
+        return response
+      }
+      response.add(responseLine)
+    }
+  }
+
+  private fun parseResponse(response: List<String>): CachedSymbol {
     if (response.isEmpty())
-      return null
+      return CachedSymbol.NOT_FOUND
 
     val name = response.first().trim()
     if (name.isEmpty() || name == "??") {
-      return null
+      return CachedSymbol.NOT_FOUND
     }
     if (response.size < 2)
-      return Symbol(name, module.absolutePath)
+      return CachedSymbol(name)
 
     // Location line looks like this: <path to source file>:<line number>:<column number>
     val locationLine = response[1].trim()
     val indexBeforeColumn = locationLine.lastIndexOf(':')
     if (indexBeforeColumn < 2)
-      return Symbol(name, module.absolutePath)
+      return CachedSymbol(name)
 
     val indexBeforeLine = locationLine.lastIndexOf(':', indexBeforeColumn - 1)
     if (indexBeforeColumn < 1)
-      return Symbol(name, module.absolutePath)
+      return CachedSymbol(name)
 
     val sourceFile = locationLine.substring(0, indexBeforeLine)
     val lineNumber = locationLine.substring(indexBeforeLine + 1, indexBeforeColumn).toIntOrNull() ?: 0
 
-    return Symbol(name, module.absolutePath, sourceFile, lineNumber)
+    return CachedSymbol(name, sourceFile, lineNumber)
   }
 
   private fun start() {
@@ -155,6 +239,7 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     procHolder = ProcessHolder(process, stdout, stdin)
   }
 
+  @Synchronized
   override fun stop() {
     procHolder?.dispose()
     procHolder = null
@@ -33,6 +33,12 @@ import java.nio.file.Paths
  */
 data class Symbol(val name: String, val module: String, val sourceFile: String = "", val lineNumber: Int = 0)
 
+/**
+ * @param module - path to a native module (on the device or host)
+ * @param offset - offset in the native module that needs to be symbolized
+ */
+data class SymbolRequest(val module: File, val offset: Long)
+
 /**
  * Components that can fetch information about native symbols by a module and an offset.
  */
@@ -47,13 +53,35 @@ interface NativeSymbolizer {
    */
   @Throws(IOException::class)
   fun symbolize(abiArch: String, module: File, offset: Long): Symbol?
+
+  /**
+   * Obtains information about the functions located at many offsets at once, e.g. all the frames of a capture. Implementations can
+   * resolve them more efficiently than one at a time.
+   * @param abiArch - CPU architecture of the modules (e.g x86, arm, arm64 and so on)
+   * @param requests - the modules and offsets that need to be symbolized, possibly with duplicates
+   * @return symbols info of the requests for which it can be found
+   */
+  @Throws(IOException::class)
+  fun symbolizeAll(abiArch: String, requests: Collection<SymbolRequest>): Map<SymbolRequest, Symbol> {
+    val symbols = mutableMapOf<SymbolRequest, Symbol>()
+    for (request in requests.toSet()) {
+      symbolize(abiArch, request.module, request.offset)?.let { symbols[request] = it }
+    }
+    return symbols
+  }
+
   fun stop()
 }
 
+/**
+ * The symbolization results shared by all native symbolizers, which are also kept on disk across restarts.
+ */
+private val symbolCache by lazy { SymbolCache(Paths.get(PathManager.getSystemPath(), "native-symbolizer")) }
+
 fun createNativeSymbolizer(locator:SymbolFilesLocator): NativeSymbolizer {
   val symbolizerPath = getLlvmSymbolizerPath()
   getLogger().info("Creating a native symbolizer. Executable path: $symbolizerPath")
-  return LlvmSymbolizer(symbolizerPath, locator)
+  return LlvmSymbolizer(symbolizerPath, locator, symbolCache = symbolCache)
 }
 
 /**
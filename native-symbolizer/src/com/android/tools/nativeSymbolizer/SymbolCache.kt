@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.APPEND
+import java.nio.file.StandardOpenOption.CREATE
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.attribute.FileTime
+
+private const val DEFAULT_MAX_MEMORY_ENTRIES = 100_000
+private const val DEFAULT_MAX_DIRECTORY_BYTES = 64L * 1024 * 1024
+private const val SEPARATOR = '\t'
+
+// ELF constants, see https://refspecs.linuxfoundation.org/elf/gabi4+/ch4.sheader.html
+private const val ELF_MAGIC = 0x7f454c46
+private const val SHT_NOTE = 7
+private const val NT_GNU_BUILD_ID = 3
+private val GNU_NOTE_NAME = "GNU\u0000".toByteArray(StandardCharsets.US_ASCII)
+private const val MAX_ELF_READ = 1024 * 1024
+
+/**
+ * The result of symbolizing an offset in a symbol file. Unlike [Symbol], it is not specific to the module that was symbolized, since
+ * many modules can share a symbol file. An empty [name] means that the offset could not be symbolized.
+ */
+internal data class CachedSymbol(val name: String, val sourceFile: String = "", val lineNumber: Int = 0) {
+  fun isFound() = name.isNotEmpty()
+
+  fun hasSourceInfo() = sourceFile.isNotEmpty()
+
+  fun toSymbol(module: File) = Symbol(name, module.absolutePath, sourceFile, lineNumber)
+
+  companion object {
+    val NOT_FOUND = CachedSymbol("")
+  }
+}
+
+/**
+ * Caches the results of symbolizing offsets in symbol files, so that each offset is only sent to the symbolizer once.
+ *
+ * Results are kept in memory, limited to the [maxMemoryEntries] most recently used ones. If [directory] is not null, the symbols with a
+ * source file that are found in symbol files with a GNU build id are also appended to a file per build id in [directory], so they are
+ * reused after a restart and by other copies of the same symbol file. Each offset is written to a file at most once. The least recently
+ * used files are deleted when [directory] grows larger than [maxDirectoryBytes].
+ *
+ * Other results, that is offsets that could not be symbolized and symbols without a source file, are keyed by the path, size and
+ * modification time of the symbol file and are only kept in memory, like all results for symbol files without a build id. A stripped
+ * library has the same build id as its unstripped copy, so what is missing in one of them must not hide the symbols of the other.
+ */
+class SymbolCache(
+  private val directory: Path? = null,
+  private val maxMemoryEntries: Int = DEFAULT_MAX_MEMORY_ENTRIES,
+  private val maxDirectoryBytes: Long = DEFAULT_MAX_DIRECTORY_BYTES,
+) {
+  private data class Key(val fileId: String, val offset: Long)
+
+  private data class FileStamp(val path: String, val length: Long, val lastModified: Long)
+
+  /** [stampId] identifies this copy of the symbol file, [id] all copies of it if it has a build id. */
+  private class FileId(val stampId: String, val buildId: String?) {
+    val id = buildId ?: stampId
+  }
+
+  // Guarded by this
+  private val symbols = object : LinkedHashMap<Key, CachedSymbol>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, CachedSymbol>) = size > maxMemoryEntries
+  }
+
+  // Guarded by this
+  private val fileIds = mutableMapOf<FileStamp, FileId>()
+
+  // The offsets in the cache file of each build id that has been loaded. Guarded by this
+  private val storedOffsets = mutableMapOf<String, MutableSet<Long>>()
+
+  // Guarded by this
+  private var isDirectoryTrimmed = false
+
+  /**
+   * Returns the cached results for the [offsets] in the [symbolFile]. Offsets without a result are not in the map.
+   */
+  @Synchronized
+  internal fun getAll(symbolFile: File, offsets: Collection<Long>): Map<Long, CachedSymbol> {
+    val fileId = getFileId(symbolFile)
+    if (fileId.buildId != null && fileId.buildId !in storedOffsets) {
+      load(fileId.buildId)
+    }
+    val result = mutableMapOf<Long, CachedSymbol>()
+    for (offset in offsets) {
+      (symbols[Key(fileId.id, offset)] ?: symbols[Key(fileId.stampId, offset)])?.let { result[offset] = it }
+    }
+    return result
+  }
+
+  @Synchronized
+  internal fun putAll(symbolFile: File, results: Map<Long, CachedSymbol>) {
+    val fileId = getFileId(symbolFile)
+    for ((offset, symbol) in results) {
+      symbols[Key(if (symbol.hasSourceInfo()) fileId.id else fileId.stampId, offset)] = symbol
+    }
+    if (fileId.buildId != null) {
+      if (fileId.buildId !in storedOffsets) {
+        load(fileId.buildId)
+      }
+      store(fileId.buildId, results.filterValues { it.hasSourceInfo() })
+    }
+  }
+
+  private fun getFileId(symbolFile: File): FileId =
+    fileIds.getOrPut(FileStamp(symbolFile.absolutePath, symbolFile.length(), symbolFile.lastModified())) {
+      FileId("${symbolFile.absolutePath}:${symbolFile.length()}:${symbolFile.lastModified()}", readBuildId(symbolFile))
+    }
+
+  private fun getCacheFile(buildId: String): Path? = directory?.resolve("$buildId.txt")
+
+  private fun load(buildId: String) {
+    val offsets = storedOffsets.getOrPut(buildId) { mutableSetOf() }
+    val cacheFile = getCacheFile(buildId) ?: return
+    if (!Files.exists(cacheFile)) {
+      return
+    }
+    try {
+      // The modification time tells which files were used least recently when the directory is trimmed.
+      Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()))
+      Files.newBufferedReader(cacheFile).useLines { lines ->
+        for (line in lines) {
+          // Each line looks like this: <hex offset>\t<name>\t<source file>\t<line number>
+          val parts = line.split(SEPARATOR)
+          // Files written by older versions can contain misses, which have an empty name, and symbols without a source file.
+          if (parts.size != 4 || parts[1].isEmpty() || parts[2].isEmpty()) {
+            continue
+          }
+          val offset = parts[0].toLongOrNull(16) ?: continue
+          symbols[Key(buildId, offset)] = CachedSymbol(parts[1], parts[2], parts[3].toIntOrNull() ?: 0)
+          offsets.add(offset)
+        }
+      }
+    }
+    catch (e: IOException) {
+      getLogger().warn("Failed to read symbol cache $cacheFile", e)
+    }
+  }
+
+  private fun store(buildId: String, results: Map<Long, CachedSymbol>) {
+    val cacheFile = getCacheFile(buildId) ?: return
+    val offsets = storedOffsets.getValue(buildId)
+    val newResults = results.filterKeys { it !in offsets }
+    if (newResults.isEmpty()) {
+      return
+    }
+    try {
+      Files.createDirectories(cacheFile.parent)
+      if (!isDirectoryTrimmed) {
+        isDirectoryTrimmed = true
+        trimDirectory(cacheFile.parent)
+      }
+      Files.newBufferedWriter(cacheFile, CREATE, APPEND).use { writer ->
+        for ((offset, symbol) in newResults) {
+          offsets.add(offset)
+          if (symbol.name.contains(SEPARATOR) || symbol.sourceFile.contains(SEPARATOR)) {
+            continue
+          }
+          writer.write("${offset.toString(16)}$SEPARATOR${symbol.name}$SEPARATOR${symbol.sourceFile}$SEPARATOR${symbol.lineNumber}\n")
+        }
+      }
+    }
+    catch (e: IOException) {
+      getLogger().warn("Failed to write symbol cache $cacheFile", e)
+    }
+  }
+
+  /**
+   * Deletes the least recently used cache files until the files in the [directory] take at most [maxDirectoryBytes]. Called once, before
+   * the first results are stored, so that the cost of listing the directory is not paid for each symbolization.
+   */
+  private fun trimDirectory(directory: Path) {
+    val files = try {
+      Files.newDirectoryStream(directory, "*.txt").use { paths ->
+        paths.map { it to Files.readAttributes(it, BasicFileAttributes::class.java) }
+      }
+    }
+    catch (e: IOException) {
+      getLogger().warn("Failed to list symbol caches in $directory", e)
+      return
+    }
+    var totalBytes = files.sumOf { (_, attributes) -> attributes.size() }
+    for ((file, attributes) in files.sortedBy { (_, attributes) -> attributes.lastModifiedTime() }) {
+      if (totalBytes <= maxDirectoryBytes) {
+        break
+      }
+      try {
+        Files.delete(file)
+        totalBytes -= attributes.size()
+      }
+      catch (e: IOException) {
+        getLogger().warn("Failed to delete symbol cache $file", e)
+      }
+    }
+  }
+}
+
+/**
+ * Reads the GNU build id of an ELF file, or returns null if the file is not an ELF file or has no build id.
+ */
+internal fun readBuildId(file: File): String? {
+  return try {
+    FileChannel.open(file.toPath()).use { readBuildId(it) }
+  }
+  catch (e: IOException) {
+    getLogger().warn("Failed to read build id of $file", e)
+    null
+  }
+}
+
+private fun readBuildId(channel: FileChannel): String? {
+  val ident = channel.readBuffer(0, 16, ByteOrder.BIG_ENDIAN) ?: return null
+  if (ident.getInt(0) != ELF_MAGIC) {
+    return null
+  }
+  val is64Bit = when (ident.get(4).toInt()) {
+    1 -> false
+    2 -> true
+    else -> return null
+  }
+  val order = when (ident.get(5).toInt()) {
+    1 -> ByteOrder.LITTLE_ENDIAN
+    2 -> ByteOrder.BIG_ENDIAN
+    else -> return null
+  }
+  val header = channel.readBuffer(0, if (is64Bit) 64 else 52, order) ?: return null
+  val sectionHeadersOffset = if (is64Bit) header.getLong(0x28) else header.getUnsignedInt(0x20)
+  val sectionHeaderSize = header.getUnsignedShort(if (is64Bit) 0x3A else 0x2E)
+  val sectionCount = header.getUnsignedShort(if (is64Bit) 0x3C else 0x30)
+  if (sectionHeaderSize < if (is64Bit) 0x40 else 0x28) {
+    return null
+  }
+  val sectionHeaders = channel.readBuffer(sectionHeadersOffset, sectionHeaderSize * sectionCount, order) ?: return null
+  for (i in 0 until sectionCount) {
+    val base = i * sectionHeaderSize
+    if (sectionHeaders.getInt(base + 4) != SHT_NOTE) {
+      continue
+    }
+    val offset = if (is64Bit) sectionHeaders.getLong(base + 0x18) else sectionHeaders.getUnsignedInt(base + 0x10)
+    val size = if (is64Bit) sectionHeaders.getLong(base + 0x20) else sectionHeaders.getUnsignedInt(base + 0x14)
+    val notes = channel.readBuffer(offset, size.coerceAtMost(MAX_ELF_READ + 1L).toInt(), order) ?: continue
+    findBuildId(notes)?.let { return it }
+  }
+  return null
+}
+
+/**
+ * Finds the build id in the notes of a SHT_NOTE section. Each note is a header of three 32-bit values, the name size, the descriptor
+ * size and the type, followed by the name and the descriptor, each padded to 4 bytes.
+ */
+private fun findBuildId(notes: ByteBuffer): String? {
+  var position = 0
+  while (position + 12 <= notes.limit()) {
+    val nameSize = notes.getInt(position)
+    val descriptorSize = notes.getInt(position + 4)
+    val type = notes.getInt(position + 8)
+    val nameStart = position + 12
+    val descriptorStart = nameStart + nameSize.alignTo4()
+    if (nameSize < 0 || descriptorSize < 0 || descriptorStart + descriptorSize > notes.limit()) {
+      return null
+    }
+    val isGnuNote = nameSize == GNU_NOTE_NAME.size && GNU_NOTE_NAME.indices.all { notes.get(nameStart + it) == GNU_NOTE_NAME[it] }
+    if (type == NT_GNU_BUILD_ID && isGnuNote) {
+      return (0 until descriptorSize).joinToString("") { "%02x".format(notes.get(descriptorStart + it)) }
+    }
+    position = descriptorStart + descriptorSize.alignTo4()
+  }
+  return null
+}
+
+private fun FileChannel.readBuffer(position: Long, size: Int, order: ByteOrder): ByteBuffer? {
+  if (position < 0 || size < 0 || size > MAX_ELF_READ || position + size > size()) {
+    return null
+  }
+  val buffer = ByteBuffer.allocate(size).order(order)
+  while (buffer.hasRemaining()) {
+    if (read(buffer, position + buffer.position()) < 0) {
+      return null
+    }
+  }
+  return buffer
+}
+
+private fun ByteBuffer.getUnsignedInt(index: Int): Long = getInt(index).toLong() and 0xffffffffL
+
+private fun ByteBuffer.getUnsignedShort(index: Int): Int = getShort(index).toInt() and 0xffff
+
+private fun Int.alignTo4() = (this + 3) and 3.inv()
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.android.testutils.TestUtils.resolveWorkspacePath
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import com.intellij.openapi.util.SystemInfo
+import org.junit.Assume
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+private const val ARCH = "arm"
+private const val DISTINCT_OFFSETS = 5_000
+private const val REQUESTS = 20_000
+
+/**
+ * Measures how long it takes to symbolize a capture of [REQUESTS] frames at [DISTINCT_OFFSETS] distinct offsets, one frame at a time and
+ * in batches with a cold, a warm in-memory and a warm on-disk cache.
+ *
+ * The symbolizer process is a shell script that answers each request with a made up symbol, so the results measure the protocol and the
+ * caching rather than llvm-symbolizer itself.
+ */
+class LlvmSymbolizerBenchmarkTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private val benchmark = Benchmark.Builder("Native Symbolization Time (Millis)").setProject("Android Studio Profilers").build()
+  private val module = File("/data/app/com.example-1/lib/arm/libnative-lib.so")
+  private val requests = (0 until REQUESTS).map { SymbolRequest(module, 0x1000L + (it * 7919L) % DISTINCT_OFFSETS) }
+
+  private lateinit var fakeSymbolizer: File
+  private lateinit var symLocator: SymbolFilesLocator
+
+  @Before
+  fun setUp() {
+    Assume.assumeFalse(SystemInfo.isWindows) // The fake symbolizer is a shell script.
+    fakeSymbolizer = temporaryFolder.newFile("fake-symbolizer").apply {
+      writeText("#!/bin/sh\nwhile IFS= read -r line; do printf 'fake_%s\\n/src/fake.cpp:1:1\\n\\n' \"\${line##* }\"; done\n")
+      setExecutable(true)
+    }
+    // A copy of a real library, so that results are cached on disk by its build id.
+    val symbolDir = temporaryFolder.newFolder("symbols")
+    resolveWorkspacePath("tools/adt/idea/native-symbolizer/testData/bin/arm/libnative-lib.so").toFile()
+      .copyTo(symbolDir.resolve("libnative-lib.so"))
+    symLocator = SymbolFilesLocator(DynamicSymbolSource().add(ARCH, symbolDir))
+  }
+
+  @Test
+  fun symbolizationTime() {
+    val cacheDir = temporaryFolder.newFolder("cache").toPath()
+
+    val singleSymbolizer = LlvmSymbolizer(fakeSymbolizer.path, symLocator)
+    measure("native_symbolizer_one_at_a_time") {
+      for (request in requests.distinct()) {
+        singleSymbolizer.symbolize(ARCH, request.module, request.offset)
+      }
+    }
+    singleSymbolizer.stop()
+
+    val batchSymbolizer = LlvmSymbolizer(fakeSymbolizer.path, symLocator, symbolCache = SymbolCache(cacheDir))
+    measure("native_symbolizer_batch_cold") { batchSymbolizer.symbolizeAll(ARCH, requests) }
+    measure("native_symbolizer_batch_warm_memory") { batchSymbolizer.symbolizeAll(ARCH, requests) }
+    batchSymbolizer.stop()
+
+    val restartedSymbolizer = LlvmSymbolizer(fakeSymbolizer.path, symLocator, symbolCache = SymbolCache(cacheDir))
+    measure("native_symbolizer_batch_warm_disk") { restartedSymbolizer.symbolizeAll(ARCH, requests) }
+    restartedSymbolizer.stop()
+  }
+
+  private fun measure(metricName: String, symbolize: () -> Unit) {
+    val start = System.nanoTime()
+    symbolize()
+    val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+    Metric(metricName).apply {
+      addSamples(benchmark, MetricSample(Instant.now().toEpochMilli(), elapsed))
+      commit()
+    }
+  }
+}
@@ -64,6 +64,29 @@ class LlvmSymbolizerTest {
     }
   }
 
+  @Test
+  fun testSymbolizeBatch() {
+    val symbolizer = createSymbolizer()
+    for (arch in architectures) {
+      val expectedSymbolsFile = getTestPath(arch, EXPECTED_SYMBOLS_FILE_NAME)
+      val expectedSymbols = expectedSymbolsFile.readLines().associate { line ->
+        val symParts = line.split('|')
+        // +1 to get an address within the function, rather than function start address
+        SymbolRequest(modulePath, symParts[0].toLong(16) + 1) to symParts[1]
+      }
+      val missingRequest = SymbolRequest(modulePath, 0xffffffffff)
+
+      // Duplicate requests are only symbolized once.
+      val symbols = symbolizer.symbolizeAll(arch, expectedSymbols.keys.toList() + expectedSymbols.keys.reversed() + missingRequest)
+
+      Assert.assertEquals(expectedSymbols, symbols.mapValues { it.value.name })
+      val uncachedSymbolizer = createSymbolizer()
+      for ((request, symbol) in symbols) {
+        Assert.assertEquals(uncachedSymbolizer.symbolize(arch, request.module, request.offset), symbol)
+      }
+    }
+  }
+
   @Test
   fun testSymbolizeBinariesBuiltOnWindows() {
     val arch = "arm64"
@@ -20,6 +20,12 @@ import com.android.tools.tests.IdeaTestSuiteBase;
 import org.junit.runner.RunWith;
 
 @RunWith(JarTestSuiteRunner.class)
+@JarTestSuiteRunner.ExcludeClasses({
+  NativeSymbolizerTestSuite.class,  // a suite mustn't contain itself
+  // Benchmarks run in their own target, see native-symbolizer.performance in native-symbolizer/BUILD.
+  NativeSymbolizerPerformanceTestSuite.class,
+  LlvmSymbolizerBenchmarkTest.class,
+})
 public class NativeSymbolizerTestSuite extends IdeaTestSuiteBase {
 
 }
\ No newline at end of file
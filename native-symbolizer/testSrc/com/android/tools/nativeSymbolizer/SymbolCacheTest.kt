@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.android.testutils.TestUtils.resolveWorkspacePath
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+private val symbol1 = CachedSymbol("function1", "/src/file1.cpp", 10)
+private val symbol2 = CachedSymbol("function2", "/src/file2.cpp", 20)
+
+/**
+ * Tests for [SymbolCache]
+ */
+class SymbolCacheTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun readBuildId() {
+    assertThat(readBuildId(getTestPath("arm", "libnative-lib.so"))).isEqualTo("463de9a467d1bc1453c0e1f494308df8a8616b48")
+    assertThat(readBuildId(getTestPath("arm64", "libnative-lib.so"))).isEqualTo("9b3ea9b018209bd554c02186a62cf2c7cca3e915")
+    assertThat(readBuildId(getTestPath("x86", "libnative-lib.so"))).isEqualTo("77d9de6b9746662e7da8225fedd7533b57ded517")
+    assertThat(readBuildId(getTestPath("x86_64", "libnative-lib.so"))).isEqualTo("415446799bd7b2495e1056857fc6dfc724ffc002")
+  }
+
+  @Test
+  fun readBuildId_notElf() {
+    assertThat(readBuildId(getTestPath("no_libraries", "not_a_library.txt"))).isNull()
+  }
+
+  @Test
+  fun getAll_returnsCachedOffsetsOnly() {
+    val cache = SymbolCache()
+    val symbolFile = getTestPath("arm", "libnative-lib.so")
+
+    cache.putAll(symbolFile, mapOf(1L to symbol1, 2L to CachedSymbol.NOT_FOUND))
+
+    assertThat(cache.getAll(symbolFile, listOf(1, 2, 3))).containsExactly(1L, symbol1, 2L, CachedSymbol.NOT_FOUND)
+    assertThat(cache.getAll(getTestPath("arm64", "libnative-lib.so"), listOf(1, 2, 3))).isEmpty()
+  }
+
+  @Test
+  fun putAll_evictsLeastRecentlyUsed() {
+    val cache = SymbolCache(maxMemoryEntries = 2)
+    val symbolFile = getTestPath("arm", "libnative-lib.so")
+    cache.putAll(symbolFile, mapOf(1L to symbol1, 2L to symbol2))
+    cache.getAll(symbolFile, listOf(1))
+
+    cache.putAll(symbolFile, mapOf(3L to symbol1))
+
+    assertThat(cache.getAll(symbolFile, listOf(1, 2, 3))).containsExactly(1L, symbol1, 3L, symbol1)
+  }
+
+  @Test
+  fun directory_sharedByBuildId() {
+    val directory = temporaryFolder.newFolder("cache").toPath()
+    val symbolFile = getTestPath("arm", "libnative-lib.so")
+    val copy = symbolFile.copyTo(temporaryFolder.root.resolve("copy/libnative-lib.so"))
+    SymbolCache(directory).putAll(symbolFile, mapOf(1L to symbol1, 2L to CachedSymbol.NOT_FOUND))
+
+    val symbols = SymbolCache(directory).getAll(copy, listOf(1, 2, 3))
+
+    // Misses are not stored, since the copy could be an unstripped library with the same build id.
+    assertThat(symbols).containsExactly(1L, symbol1)
+    assertThat(directory.toFile().list()).asList().containsExactly("463de9a467d1bc1453c0e1f494308df8a8616b48.txt")
+  }
+
+  @Test
+  fun getAll_missesNotSharedByBuildId() {
+    val cache = SymbolCache()
+    val symbolFile = getTestPath("arm", "libnative-lib.so")
+    val copy = symbolFile.copyTo(temporaryFolder.root.resolve("copy/libnative-lib.so"))
+    cache.putAll(symbolFile, mapOf(1L to CachedSymbol.NOT_FOUND))
+
+    assertThat(cache.getAll(symbolFile, listOf(1))).containsExactly(1L, CachedSymbol.NOT_FOUND)
+    assertThat(cache.getAll(copy, listOf(1))).isEmpty()
+
+    cache.putAll(copy, mapOf(1L to symbol1))
+
+    assertThat(cache.getAll(symbolFile, listOf(1))).containsExactly(1L, symbol1)
+  }
+
+  @Test
+  fun getAll_symbolsWithoutSourceFileNotSharedByBuildId() {
+    val directory = temporaryFolder.newFolder("cache").toPath()
+    val cache = SymbolCache(directory)
+    val strippedFile = getTestPath("arm", "libnative-lib.so")
+    val debugFile = strippedFile.copyTo(temporaryFolder.root.resolve("copy/libnative-lib.so"))
+    val strippedSymbol = CachedSymbol("function1")
+    cache.putAll(strippedFile, mapOf(1L to strippedSymbol))
+
+    assertThat(cache.getAll(strippedFile, listOf(1))).containsExactly(1L, strippedSymbol)
+    assertThat(cache.getAll(debugFile, listOf(1))).isEmpty()
+    assertThat(SymbolCache(directory).getAll(strippedFile, listOf(1))).isEmpty()
+
+    cache.putAll(debugFile, mapOf(1L to symbol1))
+
+    assertThat(cache.getAll(strippedFile, listOf(1))).containsExactly(1L, symbol1)
+  }
+
+  @Test
+  fun directory_offsetsStoredOnce() {
+    val directory = temporaryFolder.newFolder("cache").toPath()
+    val symbolFile = getTestPath("arm", "libnative-lib.so")
+    SymbolCache(directory).putAll(symbolFile, mapOf(1L to symbol1))
+    val cache = SymbolCache(directory)
+
+    cache.putAll(symbolFile, mapOf(1L to symbol1, 2L to symbol2))
+    cache.putAll(symbolFile, mapOf(2L to symbol2))
+
+    assertThat(directory.resolve("463de9a467d1bc1453c0e1f494308df8a8616b48.txt").toFile().readLines()).hasSize(2)
+    assertThat(SymbolCache(directory).getAll(symbolFile, listOf(1, 2))).containsExactly(1L, symbol1, 2L, symbol2)
+  }
+
+  @Test
+  fun directory_trimmedToMaxSize() {
+    val directory = temporaryFolder.newFolder("cache").toPath()
+    val oldFile = directory.resolve("0123.txt").toFile().apply { writeText("x".repeat(100)) }
+    oldFile.setLastModified(0)
+    val recentFile = directory.resolve("4567.txt").toFile().apply { writeText("x".repeat(100)) }
+
+    SymbolCache(directory, maxDirectoryBytes = 150).putAll(getTestPath("arm", "libnative-lib.so"), mapOf(1L to symbol1))
+
+    assertThat(oldFile.exists()).isFalse()
+    assertThat(recentFile.exists()).isTrue()
+    assertThat(directory.toFile().list()).asList().contains("463de9a467d1bc1453c0e1f494308df8a8616b48.txt")
+  }
+
+  @Test
+  fun directory_notUsedWithoutBuildId() {
+    val directory = temporaryFolder.newFolder("cache").toPath()
+    val symbolFile = temporaryFolder.newFile("libnative-lib.so")
+    SymbolCache(directory).putAll(symbolFile, mapOf(1L to symbol1))
+
+    assertThat(SymbolCache(directory).getAll(symbolFile, listOf(1))).isEmpty()
+    assertThat(directory.toFile().list()).isEmpty()
+  }
+
+  private fun getTestPath(vararg parts: String): File =
+    parts.fold(resolveWorkspacePath("tools/adt/idea/native-symbolizer/testData/bin/")) { path, part -> path.resolve(part) }.toFile()
+}
@@ -376,16 +376,36 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
       return StudioFlags.PROFILER_ENERGY_PROFILER_ENABLED.get();
     }
 
+    @Override
+    public boolean isHeapDumpDominatorTreeEnabled() {
+      return StudioFlags.PROFILER_HEAP_DUMP_DOMINATOR_TREE.get();
+    }
+
     @Override
     public boolean isJankDetectionUiEnabled() {
       return StudioFlags.PROFILER_JANK_DETECTION_UI.get();
     }
 
+    @Override
+    public boolean isLiveAllocationCheckpointsEnabled() {
+      return StudioFlags.PROFILER_LIVE_ALLOCATION_CHECKPOINTS.get();
+    }
+
     @Override
     public boolean isMemoryCSVExportEnabled() {
       return StudioFlags.PROFILER_MEMORY_CSV_EXPORT.get();
     }
 
+    @Override
+    public boolean isMemoryMappedHeapDumpLoadingEnabled() {
+      return StudioFlags.PROFILER_MEMORY_MAPPED_HEAP_DUMP_LOADING.get();
+    }
+
+    @Override
+    public boolean isParallelHeapDumpLoadingEnabled() {
+      return StudioFlags.PROFILER_PARALLEL_HEAP_DUMP_LOADING.get();
+    }
+
     @Override
     public boolean isPerformanceMonitoringEnabled() {
       return StudioFlags.PROFILER_PERFORMANCE_MONITORING.get();
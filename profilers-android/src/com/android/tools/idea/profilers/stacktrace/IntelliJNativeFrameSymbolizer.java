@@ -17,12 +17,19 @@ package com.android.tools.idea.profilers.stacktrace;
 
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.Symbol;
+import com.android.tools.nativeSymbolizer.SymbolRequest;
 import com.android.tools.profiler.proto.Memory.NativeCallStack;
 import com.android.tools.profilers.stacktrace.NativeFrameSymbolizer;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.containers.ContainerUtil;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Wrapper for {@link NativeSymbolizer} to return a NativeCallStack.NativeFrame instead of the Symbol class which profilers don't have a
@@ -55,7 +62,34 @@ public class IntelliJNativeFrameSymbolizer implements NativeFrameSymbolizer {
     catch (IOException | RuntimeException e) {
       getLogger().warn(e);
     }
+    return toSymbolizedFrame(unsymbolizedFrame, instructionOffset, symbol);
+  }
 
+  @NotNull
+  @Override
+  public List<NativeCallStack.NativeFrame> symbolizeAll(String abi, @NotNull List<NativeCallStack.NativeFrame> unsymbolizedFrames) {
+    List<SymbolRequest> requests = ContainerUtil.map(unsymbolizedFrames, frame -> new SymbolRequest(
+      new File(frame.getModuleName()), getOffsetOfPreviousInstruction(frame.getModuleOffset())));
+    Map<SymbolRequest, Symbol> symbols = Collections.emptyMap();
+    try {
+      symbols = mySymbolizer.symbolizeAll(abi, requests);
+    }
+    catch (IOException | RuntimeException e) {
+      getLogger().warn(e);
+    }
+
+    List<NativeCallStack.NativeFrame> symbolizedFrames = new ArrayList<>(unsymbolizedFrames.size());
+    for (int i = 0; i < unsymbolizedFrames.size(); i++) {
+      SymbolRequest request = requests.get(i);
+      symbolizedFrames.add(toSymbolizedFrame(unsymbolizedFrames.get(i), request.getOffset(), symbols.get(request)));
+    }
+    return symbolizedFrames;
+  }
+
+  @NotNull
+  private static NativeCallStack.NativeFrame toSymbolizedFrame(@NotNull NativeCallStack.NativeFrame unsymbolizedFrame,
+                                                               long instructionOffset,
+                                                               @Nullable Symbol symbol) {
     NativeCallStack.NativeFrame.Builder builder = unsymbolizedFrame.toBuilder();
     if (symbol == null) {
       String unfoundSymbolName = String.format("0x%x", instructionOffset);
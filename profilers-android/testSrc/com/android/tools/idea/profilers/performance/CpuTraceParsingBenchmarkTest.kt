@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.profilers.performance
+
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profiler.proto.SimpleperfReport
+import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.CpuThreadInfo
+import com.android.tools.profilers.cpu.TraceParser
+import com.android.tools.profilers.cpu.art.ArtTraceParser
+import com.android.tools.profilers.cpu.simpleperf.SimpleperfTraceParser
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.DataOutputStream
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.CancellationException
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Measures how long it takes to parse synthetic ART and simpleperf traces of increasing size, both until the first thread is reported
+ * to a [TraceParser.Listener] and until the whole capture is built.
+ */
+class CpuTraceParsingBenchmarkTest {
+  private val firstThreadBenchmark = Benchmark.Builder("CPU Trace Parsing Time To First Thread (millis)")
+    .setProject("Android Studio Profilers")
+    .build()
+  private val totalTimeBenchmark = Benchmark.Builder("CPU Trace Parsing Total Time (millis)")
+    .setProject("Android Studio Profilers")
+    .build()
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun benchmarkArt_100kEvents() = benchmark("Art-100k", writeArtTrace(100_000)) { ArtTraceParser() }
+
+  @Test
+  fun benchmarkArt_1mEvents() = benchmark("Art-1m", writeArtTrace(1_000_000)) { ArtTraceParser() }
+
+  @Test
+  fun benchmarkArt_5mEvents() = benchmark("Art-5m", writeArtTrace(5_000_000)) { ArtTraceParser() }
+
+  @Test
+  fun benchmarkSimpleperf_10kSamples() = benchmark("Simpleperf-10k", writeSimpleperfTrace(10_000)) { SimpleperfTraceParser() }
+
+  @Test
+  fun benchmarkSimpleperf_100kSamples() = benchmark("Simpleperf-100k", writeSimpleperfTrace(100_000)) { SimpleperfTraceParser() }
+
+  @Test
+  fun benchmarkSimpleperf_500kSamples() = benchmark("Simpleperf-500k", writeSimpleperfTrace(500_000)) { SimpleperfTraceParser() }
+
+  @Test
+  fun cancelledParsingStops() {
+    val trace = writeSimpleperfTrace(100_000)
+    val listener = object : TraceParser.Listener {
+      override fun isCancelled() = true
+    }
+    val result = runCatching { SimpleperfTraceParser().parse(trace, 1, listener) }
+    assertThat(result.exceptionOrNull()).isInstanceOf(CancellationException::class.java)
+  }
+
+  private fun benchmark(name: String, trace: File, createParser: () -> TraceParser) {
+    val listener = RecordingListener()
+    val startNs = System.nanoTime()
+    val capture = createParser().parse(trace, 1, listener)
+    val totalNs = System.nanoTime() - startNs
+
+    assertThat(listener.threadCount).isEqualTo(THREAD_COUNT)
+    assertThat(capture.threads).hasSize(THREAD_COUNT)
+    firstThreadBenchmark.log(name, TimeUnit.NANOSECONDS.toMillis(listener.firstThreadNs - startNs))
+    totalTimeBenchmark.log(name, TimeUnit.NANOSECONDS.toMillis(totalNs))
+  }
+
+  /**
+   * Writes an ART dual clock trace in which [THREAD_COUNT] threads take turns entering and exiting methods of random stacks.
+   */
+  private fun writeArtTrace(eventCount: Int): File {
+    val file = temporaryFolder.newFile()
+    DataOutputStream(file.outputStream().buffered()).use { out ->
+      val header = buildString {
+        append("*version\n3\n")
+        append("data-file-overflow=false\nclock=dual\n")
+        append("elapsed-time-usec=${eventCount + 1}\nnum-method-calls=$eventCount\n")
+        append("clock-call-overhead-nsec=0\nvm=art\npid=$PID\n")
+        append("*threads\n")
+        for (tid in 1..THREAD_COUNT) append("$tid\tthread-$tid\n")
+        append("*methods\n")
+        for (method in 1..METHOD_COUNT) append("0x${(method * 4).toString(16)}\tcom/example/Class${method % 50}\tmethod$method\t()V\tFile.java\t1\n")
+        append("*end\n")
+      }
+      out.write(header.toByteArray())
+
+      val dataHeader = ByteBuffer.allocate(ART_DATA_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+        .putInt(ART_MAGIC)
+        .putShort(3)
+        .putShort(ART_DATA_HEADER_SIZE.toShort())
+        .putLong(START_TIME_US)
+        .putShort(ART_RECORD_SIZE.toShort())
+      out.write(dataHeader.array())
+
+      val record = ByteBuffer.allocate(ART_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+      val random = Random(1)
+      val stacks = List(THREAD_COUNT) { ArrayDeque<Int>() }
+      var time = 0
+      fun writeAction(tid: Int, method: Int, action: Int) {
+        record.clear()
+        record.putShort(tid.toShort()).putInt(method * 4 or action).putInt(time).putInt(time)
+        out.write(record.array())
+        time++
+      }
+
+      repeat(eventCount) { i ->
+        val tid = i % THREAD_COUNT + 1
+        val stack = stacks[tid - 1]
+        if (stack.isEmpty() || (stack.size < MAX_DEPTH && random.nextBoolean())) {
+          val method = random.nextInt(1, METHOD_COUNT + 1)
+          stack.addLast(method)
+          writeAction(tid, method, ART_METHOD_ENTER)
+        }
+        else {
+          writeAction(tid, stack.removeLast(), ART_METHOD_EXIT)
+        }
+      }
+      stacks.forEachIndexed { index, stack ->
+        while (stack.isNotEmpty()) writeAction(index + 1, stack.removeLast(), ART_METHOD_EXIT)
+      }
+    }
+    return file
+  }
+
+  /**
+   * Writes a simpleperf trace in which [THREAD_COUNT] threads are sampled in turn, each sample having a random call chain.
+   */
+  private fun writeSimpleperfTrace(sampleCount: Int): File {
+    val file = temporaryFolder.newFile()
+    DataOutputStream(file.outputStream().buffered()).use { out ->
+      fun writeRecord(record: SimpleperfReport.Record) {
+        val bytes = record.toByteArray()
+        out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.size).array())
+        out.write(bytes)
+      }
+
+      out.write("SIMPLEPERF".toByteArray())
+      out.write(ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort(1).array())
+      writeRecord(SimpleperfReport.Record.newBuilder()
+                    .setMetaInfo(SimpleperfReport.MetaInfo.newBuilder().addEventType("cpu-clock").setAppPackageName("com.example"))
+                    .build())
+      writeRecord(SimpleperfReport.Record.newBuilder()
+                    .setFile(SimpleperfReport.File.newBuilder()
+                               .setId(0)
+                               .setPath("/data/app/com.example-1/lib/libexample.so")
+                               .addAllSymbol((1..METHOD_COUNT).map { "example::function$it()" }))
+                    .build())
+      for (tid in 1..THREAD_COUNT) {
+        writeRecord(SimpleperfReport.Record.newBuilder()
+                      .setThread(SimpleperfReport.Thread.newBuilder().setThreadId(tid).setProcessId(PID).setThreadName("thread-$tid"))
+                      .build())
+      }
+
+      val random = Random(1)
+      val stacks = List(THREAD_COUNT) { mutableListOf<Int>() }
+      repeat(sampleCount) { i ->
+        val tid = i % THREAD_COUNT + 1
+        // Mutate the previous call chain of the thread a little, like a real program would.
+        val stack = stacks[tid - 1]
+        repeat(random.nextInt(0, 3)) { if (stack.isNotEmpty()) stack.removeAt(stack.size - 1) }
+        while (stack.size < random.nextInt(1, MAX_DEPTH)) stack.add(random.nextInt(0, METHOD_COUNT))
+        val sample = SimpleperfReport.Sample.newBuilder()
+          .setTime(TimeUnit.MICROSECONDS.toNanos(START_TIME_US) + i * 1000L)
+          .setThreadId(tid)
+          .setEventCount(1000)
+          .setEventTypeId(0)
+        // Call chains are ordered from leaf to root.
+        stack.asReversed().forEach { symbol ->
+          sample.addCallchain(SimpleperfReport.Sample.CallChainEntry.newBuilder().setFileId(0).setSymbolId(symbol).setVaddrInFile(symbol * 16L))
+        }
+        writeRecord(SimpleperfReport.Record.newBuilder().setSample(sample).build())
+      }
+      writeRecord(SimpleperfReport.Record.newBuilder()
+                    .setLost(SimpleperfReport.LostSituation.newBuilder().setSampleCount(sampleCount.toLong()).setLostCount(0))
+                    .build())
+      out.write(ByteArray(4))
+    }
+    return file
+  }
+
+  private class RecordingListener : TraceParser.Listener {
+    var threadCount = 0
+    var firstThreadNs = 0L
+
+    override fun onThreadParsed(thread: CpuThreadInfo, root: CaptureNode) {
+      if (threadCount++ == 0) {
+        firstThreadNs = System.nanoTime()
+      }
+    }
+  }
+
+  companion object {
+    private const val PID = 1
+    private const val THREAD_COUNT = 16
+    private const val METHOD_COUNT = 2_000
+    private const val MAX_DEPTH = 30
+    private const val START_TIME_US = 1_000_000L
+
+    private const val ART_MAGIC = 0x574f4c53
+    private const val ART_DATA_HEADER_SIZE = 32
+    private const val ART_RECORD_SIZE = 14
+    private const val ART_METHOD_ENTER = 0
+    private const val ART_METHOD_EXIT = 1
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.profilers.performance
+
+import com.android.tools.perflib.heap.Snapshot
+import com.android.tools.perflib.heap.SnapshotBuilder
+import com.android.tools.perflib.heap.io.InMemoryBuffer
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profilers.memory.adapters.HeapDominatorTree
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares computing the retained sizes of generated heap dumps with perflib and with [HeapDominatorTree].
+ */
+class HeapDominatorTreeBenchmarkTest {
+  private val benchmark = Benchmark.Builder("Heap Dump Retained Size Time (millis)")
+    .setProject("Android Studio Profilers")
+    .build()
+
+  @Test
+  fun benchmark_50kInstances() = benchmark("50k", 50_000)
+
+  @Test
+  fun benchmark_200kInstances() = benchmark("200k", 200_000)
+
+  @Test
+  fun benchmark_500kInstances() = benchmark("500k", 500_000)
+
+  private fun benchmark(name: String, instanceCount: Int) {
+    val hprof = generateHeapDump(instanceCount)
+    val perflibSnapshot = parse(hprof)
+    time("$name-Perflib") { perflibSnapshot.computeRetainedSizes() }
+    val root = perflibSnapshot.findInstance(1)!!
+    val expectedRetainedSize = root.totalRetainedSize
+
+    for (offHeap in listOf(false, true)) {
+      val snapshot = parse(hprof)
+      val tree = time("$name-DominatorTree" + if (offHeap) "-OffHeap" else "") { HeapDominatorTree.compute(snapshot, offHeap) }
+      assertThat(tree.getRetainedSize(snapshot.findInstance(1)!!)).isEqualTo(expectedRetainedSize)
+    }
+  }
+
+  private fun parse(hprof: ByteArray) = Snapshot.createSnapshot(InMemoryBuffer(ByteBuffer.wrap(hprof)))
+
+  private fun <T> time(name: String, block: () -> T): T {
+    ensureGc()
+    val startNs = System.nanoTime()
+    val result = block()
+    benchmark.log(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs))
+    return result
+  }
+
+  /**
+   * Generates a heap dump in which the instances form a binary tree rooted at the first one.
+   */
+  private fun generateHeapDump(instanceCount: Int): ByteArray {
+    val builder = SnapshotBuilder(instanceCount, 0, 0).addRoot(1)
+    for (node in 1..instanceCount / 2) {
+      val children = listOf(node * 2, node * 2 + 1).filter { it <= instanceCount }
+      builder.addReferences(node, *children.toIntArray())
+    }
+    return builder.byteBuffer
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.profilers.performance
+
+import com.android.tools.adtui.model.FakeTimer
+import com.android.tools.idea.transport.faketransport.FakeGrpcChannel
+import com.android.tools.idea.transport.faketransport.FakeTransportService
+import com.android.tools.perflib.heap.SnapshotBuilder
+import com.android.tools.perflib.heap.io.InMemoryBuffer
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Memory.HeapDumpInfo
+import com.android.tools.profilers.FakeIdeProfilerServices
+import com.android.tools.profilers.ProfilerClient
+import com.android.tools.profilers.memory.adapters.HeapDumpCaptureObject
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures loading generated heap dumps of increasing size with and without parallel indexing, along with the time spent in each
+ * [HeapDumpCaptureObject.LoadingPhase].
+ */
+class HeapDumpLoadingBenchmarkTest {
+  private val totalTimeBenchmark = Benchmark.Builder("Heap Dump Loading Time (millis)")
+    .setProject("Android Studio Profilers")
+    .build()
+  private val phaseTimeBenchmark = Benchmark.Builder("Heap Dump Loading Phase Time (millis)")
+    .setProject("Android Studio Profilers")
+    .build()
+  private val ideServices = FakeIdeProfilerServices()
+  private val transportService = FakeTransportService(FakeTimer())
+
+  @get:Rule
+  val grpcChannel = FakeGrpcChannel(javaClass.simpleName, transportService)
+
+  @Test
+  fun benchmark_50kInstances() = benchmark("50k", 50_000)
+
+  @Test
+  fun benchmark_200kInstances() = benchmark("200k", 200_000)
+
+  @Test
+  fun benchmark_500kInstances() = benchmark("500k", 500_000)
+
+  private fun benchmark(name: String, instanceCount: Int) {
+    val hprof = generateHeapDump(instanceCount)
+    val sequentialCount = load("$name-Sequential", hprof, parallel = false)
+    val parallelCount = load("$name-Parallel", hprof, parallel = true)
+    assertThat(parallelCount).isEqualTo(sequentialCount)
+  }
+
+  private fun load(name: String, hprof: ByteArray, parallel: Boolean): Long {
+    ideServices.enableParallelHeapDumpLoading(parallel)
+    val capture = HeapDumpCaptureObject(ProfilerClient(grpcChannel.channel), Common.Session.getDefaultInstance(),
+                                        HeapDumpInfo.getDefaultInstance(), null, ideServices.featureTracker, ideServices)
+    ensureGc()
+    val startNs = System.nanoTime()
+    capture.load(InMemoryBuffer(ByteBuffer.wrap(hprof)))
+    totalTimeBenchmark.log(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs))
+    capture.loadingPhaseTimesNs.forEach { (phase, timeNs) -> phaseTimeBenchmark.log("$name-$phase", TimeUnit.NANOSECONDS.toMillis(timeNs)) }
+    assertThat(capture.getLoadingProgress()).isEqualTo(1.0)
+    return capture.instances.count()
+  }
+
+  /**
+   * Generates a heap dump in which the instances form a binary tree rooted at the first one.
+   */
+  private fun generateHeapDump(instanceCount: Int): ByteArray {
+    val builder = SnapshotBuilder(instanceCount, 0, 0).addRoot(1)
+    for (node in 1..instanceCount / 2) {
+      val children = listOf(node * 2, node * 2 + 1).filter { it <= instanceCount }
+      builder.addReferences(node, *children.toIntArray())
+    }
+    return builder.byteBuffer
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.profilers.performance
+
+import com.android.tools.adtui.model.FakeTimer
+import com.android.tools.adtui.model.Range
+import com.android.tools.idea.transport.faketransport.FakeGrpcChannel
+import com.android.tools.idea.transport.faketransport.FakeTransportService
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Memory
+import com.android.tools.profiler.proto.Memory.AllocationEvent
+import com.android.tools.profilers.FakeIdeProfilerServices
+import com.android.tools.profilers.ProfilerClient
+import com.android.tools.profilers.ProfilersTestData
+import com.android.tools.profilers.StudioProfilers
+import com.android.tools.profilers.memory.MainMemoryProfilerStage
+import com.android.tools.profilers.memory.adapters.LiveAllocationCaptureObject
+import com.google.common.util.concurrent.MoreExecutors
+import org.junit.Rule
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures jumping the selection of a live allocation capture to the end of sessions of increasing length, with and without
+ * checkpoints of the live instances.
+ */
+class LiveAllocationRangeQueryBenchmarkTest {
+  private val timeBenchmark = Benchmark.Builder("Live Allocation Range Query Time (millis)")
+    .setProject("Android Studio Profilers")
+    .build()
+  private val eventCountBenchmark = Benchmark.Builder("Live Allocation Range Query Replayed Events")
+    .setProject("Android Studio Profilers")
+    .build()
+  private val timer = FakeTimer()
+  private val ideServices = FakeIdeProfilerServices()
+  private val transportService = FakeTransportService(timer)
+
+  @get:Rule
+  val grpcChannel = FakeGrpcChannel(javaClass.simpleName, transportService)
+
+  @Test
+  fun benchmark_1MinuteSession() = benchmark("1min", 60)
+
+  @Test
+  fun benchmark_5MinuteSession() = benchmark("5min", 300)
+
+  @Test
+  fun benchmark_15MinuteSession() = benchmark("15min", 900)
+
+  private fun benchmark(name: String, sessionSeconds: Int) {
+    addEvents(sessionSeconds)
+    query("$name-Replay", sessionSeconds, checkpoints = false)
+    query("$name-Checkpoints", sessionSeconds, checkpoints = true)
+  }
+
+  private fun query(name: String, sessionSeconds: Int, checkpoints: Boolean) {
+    ideServices.enableLiveAllocationCheckpoints(checkpoints)
+    val stage = MainMemoryProfilerStage(StudioProfilers(ProfilerClient(grpcChannel.channel), ideServices, timer))
+    val capture = LiveAllocationCaptureObject(ProfilerClient(grpcChannel.channel), ProfilersTestData.SESSION_DATA, 0,
+                                              MoreExecutors.newDirectExecutorService(), stage)
+    val start = Range(0.0, TimeUnit.SECONDS.toMicros(1).toDouble())
+    val end = Range(TimeUnit.SECONDS.toMicros(sessionSeconds - 2L).toDouble(), TimeUnit.SECONDS.toMicros(sessionSeconds - 1L).toDouble())
+    val selection = Range(start)
+    capture.load(selection, MoreExecutors.directExecutor())
+    // The first jump to the end takes the checkpoints, the second one uses them.
+    repeat(2) {
+      selection.set(end)
+      selection.set(start)
+    }
+    ensureGc()
+    selection.set(end)
+    val timing = capture.lastRangeQueryTiming!!
+    timeBenchmark.log(name, TimeUnit.NANOSECONDS.toMillis(timing.elapsedNs))
+    eventCountBenchmark.log(name, timing.snapshotEventCount.toLong())
+    capture.unload()
+  }
+
+  /**
+   * Adds batches of allocations every second, each freed [LIVE_SECONDS] later.
+   */
+  private fun addEvents(sessionSeconds: Int) {
+    val streamId = ProfilersTestData.SESSION_DATA.streamId
+    val pid = ProfilersTestData.SESSION_DATA.pid
+    ProfilersTestData.generateMemoryAllocContext(0, TimeUnit.SECONDS.toNanos(sessionSeconds.toLong())).forEach {
+      transportService.addEventToStream(streamId, Common.Event.newBuilder()
+        .setPid(pid)
+        .setKind(Common.Event.Kind.MEMORY_ALLOC_CONTEXTS)
+        .setTimestamp(it.timestamp)
+        .setMemoryAllocContexts(Memory.MemoryAllocContextsData.newBuilder().setContexts(it))
+        .build())
+    }
+    for (second in 0 until sessionSeconds) {
+      val timestamp = TimeUnit.SECONDS.toNanos(second.toLong())
+      val batch = Memory.BatchAllocationEvents.newBuilder().setTimestamp(timestamp)
+      for (i in 0 until ALLOCATIONS_PER_SECOND) {
+        val contextId = i % ProfilersTestData.ALLOC_CONTEXT_NUM + 1
+        batch.addEvents(AllocationEvent.newBuilder().setTimestamp(timestamp).setAllocData(
+          AllocationEvent.Allocation.newBuilder()
+            .setTag(second * ALLOCATIONS_PER_SECOND + i)
+            .setSize(ProfilersTestData.ALLOC_SIZE.toLong())
+            .setClassTag(contextId)
+            .setStackId(contextId)))
+        if (second >= LIVE_SECONDS) {
+          batch.addEvents(AllocationEvent.newBuilder().setTimestamp(timestamp).setFreeData(
+            AllocationEvent.Deallocation.newBuilder().setTag((second - LIVE_SECONDS) * ALLOCATIONS_PER_SECOND + i)))
+        }
+      }
+      transportService.addEventToStream(streamId, Common.Event.newBuilder()
+        .setPid(pid)
+        .setKind(Common.Event.Kind.MEMORY_ALLOC_EVENTS)
+        .setTimestamp(timestamp)
+        .setMemoryAllocEvents(Memory.MemoryAllocEventsData.newBuilder().setEvents(batch))
+        .build())
+    }
+  }
+
+  companion object {
+    private const val ALLOCATIONS_PER_SECOND = 1_000
+    private const val LIVE_SECONDS = 30
+  }
+}
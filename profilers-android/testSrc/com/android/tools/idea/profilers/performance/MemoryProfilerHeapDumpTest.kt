@@ -23,6 +23,7 @@ import com.android.tools.idea.transport.faketransport.FakeGrpcChannel
 import com.android.tools.idea.transport.faketransport.FakeTransportService
 import com.android.tools.idea.transport.faketransport.TransportServiceTestImpl
 import com.android.tools.perflib.heap.io.InMemoryBuffer
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer
 import com.android.tools.profilers.FakeIdeProfilerServices
 import com.android.tools.profilers.ProfilerClient
 import com.android.tools.profilers.StudioProfilers
@@ -38,6 +39,7 @@ import org.junit.Test
 
 class MemoryProfilerHeapDumpTest {
   private val benchmark = benchmarkMemoryAndTime("Heap Dump", "Load-Capture")
+  private val mappedBenchmark = benchmarkMemoryAndTime("Heap Dump", "Load-Mapped-Capture")
   private val ideServices = FakeIdeProfilerServices()
   private val timer = FakeTimer()
   private val transportService = FakeTransportService(timer)
@@ -63,12 +65,33 @@ class MemoryProfilerHeapDumpTest {
     testFile("sunflower")
   }
 
-  private fun testFile(name: String) {
+  @Test
+  fun `measure memory-mapped loading of github heap dump`() {
+    testFile("github", mapped = true)
+  }
+
+  @Test
+  fun `measure memory-mapped loading of sunflower heap dump`() {
+    testFile("sunflower", mapped = true)
+  }
+
+  private fun testFile(name: String, mapped: Boolean = false) {
     val file = resolveWorkspacePath("tools/adt/idea/profilers/testData/hprofs/performance/$name.hprof").toFile()
     val profilers = StudioProfilers(ProfilerClient(grpcChannel.channel), ideServices, timer)
     assertThat(profilers.sessionsManager.importSessionFromFile(file)).isTrue()
     val dumpInfo = MemoryProfiler.getHeapDumpsForSession(profilers.client, profilers.session, Range(Double.MIN_VALUE, Double.MAX_VALUE))[0]
     val capture = HeapDumpCaptureObject(profilers.client, profilers.session, dumpInfo, null, ideServices.featureTracker, ideServices)
-    benchmark(name) { capture.load(InMemoryBuffer(file.readBytes())) }
+    if (mapped) {
+      val buffer = MemoryMappedFileBuffer(file)
+      try {
+        mappedBenchmark(name) { capture.load(buffer) }
+      }
+      finally {
+        buffer.dispose()
+      }
+    }
+    else {
+      benchmark(name) { capture.load(InMemoryBuffer(file.readBytes())) }
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.profilers.performance
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.datastore.database.BatchedInsertQueue
+import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import kotlin.system.measureNanoTime
+import kotlin.system.measureTimeMillis
+
+/**
+ * Compares answering event group queries from SQLite with answering them from the in-memory partitioned store, while scrubbing a
+ * selection range over a session with many events.
+ */
+class UnifiedEventsQueryBenchmarkTest {
+  private val queryTimeBenchmark = Benchmark.Builder("Unified Events Query Time (micros)")
+    .setProject("Android Studio Profilers")
+    .build()
+  private val insertTimeBenchmark = Benchmark.Builder("Unified Events Insert Time (millis)")
+    .setProject("Android Studio Profilers")
+    .build()
+
+  private val databases = mutableListOf<DataStoreDatabase>()
+
+  @After
+  fun tearDown() {
+    databases.forEach(DataStoreDatabase::disconnect)
+  }
+
+  @Test
+  fun benchmarkSqlite_100kEvents() {
+    runBenchmark("Sqlite-100k", usePartitionedStore = false, groupCount = 100, eventsPerGroup = 1_000)
+  }
+
+  @Test
+  fun benchmarkPartitioned_100kEvents() {
+    runBenchmark("Partitioned-100k", usePartitionedStore = true, groupCount = 100, eventsPerGroup = 1_000)
+  }
+
+  @Test
+  fun benchmarkSqlite_1mEvents() {
+    runBenchmark("Sqlite-1m", usePartitionedStore = false, groupCount = 1_000, eventsPerGroup = 1_000)
+  }
+
+  @Test
+  fun benchmarkPartitioned_1mEvents() {
+    runBenchmark("Partitioned-1m", usePartitionedStore = true, groupCount = 1_000, eventsPerGroup = 1_000)
+  }
+
+  private fun runBenchmark(name: String, usePartitionedStore: Boolean, groupCount: Int, eventsPerGroup: Int) {
+    val database = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    databases.add(database)
+    val table = UnifiedEventsTable(BATCH_SIZE, BatchedInsertQueue.Stats(), usePartitionedStore)
+    table.initialize(database.connection)
+
+    insertTimeBenchmark.log(name, measureTimeMillis {
+      // Events of all groups are interleaved in time, as they would be coming from the device.
+      for (i in 0 until eventsPerGroup) {
+        for (group in 1..groupCount) {
+          table.insertUnifiedEvent(STREAM_ID, Common.Event.newBuilder()
+            .setKind(Common.Event.Kind.MEMORY_ALLOC_CONTEXTS)
+            .setPid(PID)
+            .setGroupId(group.toLong())
+            .setTimestamp(i * TIMESTAMP_STEP + group)
+            .build())
+        }
+      }
+      table.flushPendingEvents()
+    })
+
+    // Slide a window covering 5% of the session from start to end, like dragging the range selection over the timeline.
+    val sessionLength = eventsPerGroup * TIMESTAMP_STEP
+    val windowLength = sessionLength / 20
+    val stepCount = 100
+    var totalQueryNs = 0L
+    for (step in 0 until stepCount) {
+      val from = step * (sessionLength - windowLength) / stepCount + 1
+      val request = GetEventGroupsRequest.newBuilder()
+        .setKind(Common.Event.Kind.MEMORY_ALLOC_CONTEXTS)
+        .setStreamId(STREAM_ID)
+        .setPid(PID)
+        .setFromTimestamp(from)
+        .setToTimestamp(from + windowLength)
+        .build()
+      totalQueryNs += measureNanoTime {
+        assertThat(table.queryUnifiedEventGroups(request)).hasSize(groupCount)
+      }
+    }
+    queryTimeBenchmark.log(name, TimeUnit.NANOSECONDS.toMicros(totalQueryNs / stepCount))
+  }
+
+  companion object {
+    private const val STREAM_ID = 1L
+    private const val PID = 1
+    private const val BATCH_SIZE = 1000
+    private const val TIMESTAMP_STEP = 10_000L
+  }
+}
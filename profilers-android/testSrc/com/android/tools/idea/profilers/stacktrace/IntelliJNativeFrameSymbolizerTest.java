@@ -20,9 +20,15 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.Symbol;
+import com.android.tools.nativeSymbolizer.SymbolRequest;
 import com.android.tools.profiler.proto.Memory.NativeCallStack;
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Test;
@@ -60,6 +66,31 @@ public class IntelliJNativeFrameSymbolizerTest {
     assertThat(symbolizedFrame2).isEqualTo(expectedSymbolizedFrame2);
   }
 
+  @Test
+  public void testSymbolizeAll() {
+    IntelliJNativeFrameSymbolizer frameSymbolizer = new IntelliJNativeFrameSymbolizer(new FakeNativeSymbolizer());
+
+    NativeCallStack.NativeFrame frame1 = NativeCallStack.NativeFrame.newBuilder().setModuleName("test1").setModuleOffset(100).build();
+    NativeCallStack.NativeFrame frame2 = NativeCallStack.NativeFrame.newBuilder().setModuleName("test2").setModuleOffset(200).build();
+    List<NativeCallStack.NativeFrame> symbolizedFrames = frameSymbolizer.symbolizeAll("arm", Arrays.asList(frame1, frame2, frame1));
+
+    NativeCallStack.NativeFrame expectedSymbolizedFrame1 = frame1.toBuilder()
+      .setSymbolName("arm_frame")
+      .setModuleName("test1_symbolized")
+      .setFileName("symbols.java")
+      .setLineNumber(1000 + 100 + PREVIOUS_INSTRUCTION_OFFSET).build();
+    NativeCallStack.NativeFrame expectedSymbolizedFrame2 = frame2.toBuilder()
+      .setSymbolName("arm_frame")
+      .setModuleName("test2_symbolized")
+      .setFileName("symbols.java")
+      .setLineNumber(1000 + 200 + PREVIOUS_INSTRUCTION_OFFSET).build();
+    assertThat(symbolizedFrames).containsExactly(expectedSymbolizedFrame1, expectedSymbolizedFrame2, expectedSymbolizedFrame1).inOrder();
+
+    // verify unfound symbols
+    assertThat(frameSymbolizer.symbolizeAll("arm64", Collections.singletonList(frame1)).get(0).getSymbolName())
+      .isEqualTo(String.format("0x%x", 100 - 1));
+  }
+
   private static class FakeNativeSymbolizer implements NativeSymbolizer {
     private final HashSet<String> supportedArch = new HashSet<>();
 
@@ -83,6 +114,12 @@ public class IntelliJNativeFrameSymbolizerTest {
                         1000 + (int)offset);
     }
 
+    @NotNull
+    @Override
+    public Map<SymbolRequest, Symbol> symbolizeAll(@NotNull String abiArch, @NotNull Collection<SymbolRequest> requests) {
+      return NativeSymbolizer.DefaultImpls.symbolizeAll(this, abiArch, requests);
+    }
+
     @Override
     public void stop() {
     }
@@ -60,6 +60,7 @@ import com.android.tools.profilers.event.UserEventTooltip;
 import com.android.tools.profilers.event.UserEventTooltipView;
 import com.google.common.annotations.VisibleForTesting;
 import com.intellij.ui.JBSplitter;
+import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.components.labels.LinkLabel;
@@ -74,11 +75,13 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
+import javax.swing.DefaultListModel;
 import javax.swing.InputMap;
 import javax.swing.JButton;
 import javax.swing.JComponent;
@@ -90,6 +93,7 @@ import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingConstants;
 import kotlin.Unit;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class represents the view of a capture taken from within the {@link CpuProfilerStageView}.
@@ -140,6 +144,17 @@ public class CpuCaptureStageView extends StageView<CpuCaptureStage> {
    */
   private boolean myIsPanningMode = false;
 
+  /**
+   * Shown while parsing. Once the parser reports the capture range, also contains the minimap and the list of threads parsed so far.
+   */
+  private final JPanel myParsingPanel = new JPanel(new BorderLayout());
+  private final DefaultListModel<String> myParsedThreadsModel = new DefaultListModel<>();
+  /**
+   * The partial capture the parsing panel currently shows. The stage replaces it whenever the parser reports a range or a thread.
+   */
+  @Nullable private CpuCapture myShownPartialCapture;
+  @Nullable private JComponent myPartialMinimap;
+
   public CpuCaptureStageView(@NotNull StudioProfilersView view, @NotNull CpuCaptureStage stage) {
     super(view, stage);
     myTrackRendererFactory = new ProfilerTrackRendererFactory(getProfilersView(), myVsyncBackgroundCheckBox::isSelected);
@@ -176,7 +191,9 @@ public class CpuCaptureStageView extends StageView<CpuCaptureStage> {
     myTrackGroupList.getTooltipBinder().bind(AndroidFrameEventTooltip.class, AndroidFrameEventTooltipView::new);
     myTrackGroupList.getTooltipBinder().bind(AndroidFrameTimelineTooltip.class, AndroidFrameTimelineTooltipView::new);
 
-    stage.getAspect().addDependency(this).onChange(CpuCaptureStage.Aspect.STATE, this::updateComponents);
+    stage.getAspect().addDependency(this)
+      .onChange(CpuCaptureStage.Aspect.STATE, this::updateComponents)
+      .onChange(CpuCaptureStage.Aspect.PARTIAL_CAPTURE_UPDATED, this::updatePartialCapture);
     stage.getMultiSelectionModel().addDependency(this)
       .onChange(MultiSelectionModel.Aspect.SELECTIONS_CHANGED, this::onTrackGroupSelectionChange)
       .onChange(MultiSelectionModel.Aspect.ACTIVE_SELECTION_CHANGED, this::updateTrackGroupList);
@@ -203,9 +220,14 @@ public class CpuCaptureStageView extends StageView<CpuCaptureStage> {
   private void updateComponents() {
     getComponent().removeAll();
     if (getStage().getState() == CpuCaptureStage.State.PARSING) {
-      getComponent().add(new StatusPanel(getStage().getCaptureHandler(), "Parsing", "Abort"));
+      myParsingPanel.removeAll();
+      myParsingPanel.add(new StatusPanel(getStage().getCaptureHandler(), "Parsing", "Abort"), BorderLayout.CENTER);
+      myShownPartialCapture = null;
+      myPartialMinimap = null;
+      getComponent().add(myParsingPanel);
       myCollapseFrameButton.setVisible(false);
       myVsyncBackgroundCheckBox.setVisible(false);
+      updatePartialCapture();
     }
     else {
       // If we had any previously registered analyzing events we unregister them first.
@@ -222,6 +244,35 @@ public class CpuCaptureStageView extends StageView<CpuCaptureStage> {
     }
   }
 
+  /**
+   * Shows the minimap and thread names of the threads parsed so far, for parsers that report them before parsing completes.
+   */
+  private void updatePartialCapture() {
+    CpuCapture partialCapture = getStage().getPartialCapture();
+    if (partialCapture == null || partialCapture.getRange().isEmpty() || partialCapture == myShownPartialCapture) {
+      return;
+    }
+    if (myShownPartialCapture == null) {
+      JBList<String> threadList = new JBList<>(myParsedThreadsModel);
+      threadList.setEmptyText("Parsing threads...");
+      myParsingPanel.add(new JBScrollPane(threadList), BorderLayout.WEST);
+    }
+    myShownPartialCapture = partialCapture;
+    // The minimap model copies the capture range and threads when it is created, so rebuild it to show the latest capture.
+    if (myPartialMinimap != null) {
+      myParsingPanel.remove(myPartialMinimap);
+    }
+    CpuCaptureMinimapModel minimapModel = new CpuCaptureMinimapModel(getStage().getStudioProfilers(), partialCapture, new Range());
+    myPartialMinimap = new CpuCaptureMinimapView(minimapModel).getComponent();
+    myParsingPanel.add(myPartialMinimap, BorderLayout.NORTH);
+    myParsedThreadsModel.clear();
+    partialCapture.getThreads().stream()
+      .sorted(Comparator.comparing(CpuThreadInfo::getName))
+      .forEach(thread -> myParsedThreadsModel.addElement(thread.getName()));
+    myParsingPanel.revalidate();
+    myParsingPanel.repaint();
+  }
+
   /**
    * Helper function for registering listeners on objects that may not be initialized until the capture has been parsed.
    */
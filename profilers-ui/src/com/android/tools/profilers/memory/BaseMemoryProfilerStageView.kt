@@ -23,6 +23,11 @@ abstract class BaseMemoryProfilerStageView<T: BaseMemoryProfilerStage>(profilers
       : StageView<T>(profilersView, stage) {
 
   fun makeLoadingPanel() = profilersView.ideProfilerComponents.createLoadingPanel(-1).apply {
-    setLoadingText("Fetching results")
+    setLoadingText(loadingText(-1.0))
   }
+
+  /**
+   * Text of the loading panel for a capture that has loaded [progress] of its data, as reported by its `getLoadingProgress`.
+   */
+  fun loadingText(progress: Double) = if (progress < 0) "Fetching results" else "Fetching results (${(progress * 100).toInt()}%)"
 }
\ No newline at end of file
@@ -114,7 +114,8 @@ public class MainMemoryProfilerStageView extends BaseStreamingMemoryProfilerStag
     getStage().getCaptureSelection().getAspect().addDependency(this)
       .onChange(CaptureSelectionAspect.CURRENT_LOADING_CAPTURE, this::captureObjectChanged)
       .onChange(CaptureSelectionAspect.CURRENT_LOADED_CAPTURE, this::captureObjectFinishedLoading)
-      .onChange(CaptureSelectionAspect.CURRENT_CAPTURE_ELAPSED_TIME, this::updateCaptureElapsedTime);
+      .onChange(CaptureSelectionAspect.CURRENT_CAPTURE_ELAPSED_TIME, this::updateCaptureElapsedTime)
+      .onChange(CaptureSelectionAspect.CURRENT_CAPTURE_LOADING_PROGRESS, this::updateCaptureLoadingProgress);
 
     Runnable onSessionChanged = () -> {
       myRecordingOptionsView.setEnabled(getStage().getStudioProfilers().getSessionsManager().isSessionAlive());
@@ -263,6 +264,13 @@ public class MainMemoryProfilerStageView extends BaseStreamingMemoryProfilerStag
     }
   }
 
+  private void updateCaptureLoadingProgress() {
+    CaptureObject capture = getStage().getCaptureSelection().getSelectedCapture();
+    if (capture != null && !capture.isDoneLoading()) {
+      myLayout.setLoadingText(loadingText(capture.getLoadingProgress()));
+    }
+  }
+
   private void buildContextMenu() {
     if (myTimelineComponent == null) {
       return;
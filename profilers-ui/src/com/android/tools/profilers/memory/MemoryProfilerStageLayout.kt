@@ -54,6 +54,13 @@ class MemoryProfilerStageLayout(private val timelineView: JComponent?,
       }
     }
 
+  /**
+   * Updates the text of the loading panel, if it is shown.
+   */
+  fun setLoadingText(text: String) {
+    loadingPanel?.setLoadingText(text)
+  }
+
   private val instanceDetailsSplitter = JBSplitter(true).apply {
     border = DEFAULT_VERTICAL_BORDERS
     isOpaque = true
@@ -25,8 +25,12 @@ public interface FeatureConfig {
   boolean isComposeTracingNavigateToSourceEnabled();
   boolean isCustomEventVisualizationEnabled();
   boolean isEnergyProfilerEnabled();
+  boolean isHeapDumpDominatorTreeEnabled();
   boolean isJankDetectionUiEnabled();
+  boolean isLiveAllocationCheckpointsEnabled();
   boolean isMemoryCSVExportEnabled();
+  boolean isMemoryMappedHeapDumpLoadingEnabled();
+  boolean isParallelHeapDumpLoadingEnabled();
   boolean isPerformanceMonitoringEnabled();
   boolean isProfileableBuildsEnabled();
   boolean isTestingModeEnabled();
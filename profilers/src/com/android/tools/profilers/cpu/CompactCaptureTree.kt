@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu
+
+import com.android.tools.adtui.model.HNode
+import com.android.tools.adtui.model.Range
+import com.android.tools.adtui.model.filter.Filter
+import com.android.tools.adtui.model.filter.FilterResult
+import com.android.tools.perflib.vmtrace.ClockType
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel
+import java.util.IdentityHashMap
+
+/**
+ * A call tree stored as parallel primitive arrays instead of one [CaptureNode] per call, for traces with millions of calls.
+ *
+ * Nodes are identified by their index, and are stored in pre-order: a node's descendants are the nodes right after it, up to
+ * [subtreeEnd]. [CaptureNodeModel]s are interned, so each call only stores the id of its model.
+ *
+ * [Node] is a short-lived view of a single index implementing [HNode], so the tree can be walked like a [CaptureNode] tree without
+ * allocating an object per call. The top-down and bottom-up aggregations, and therefore the tree models and the flame chart, work on
+ * the indices directly, see [com.android.tools.profilers.cpu.capturedetails.Aggregate.TopDown.rootAt]. Code that needs real
+ * [CaptureNode]s can materialize a subtree, optionally limited to the calls intersecting a range, with [toCaptureNode].
+ *
+ * Use [Builder] to create a tree, or [fromCaptureNode] and [fromCaptureNodes] to compact existing ones.
+ */
+class CompactCaptureTree private constructor(private val models: List<CaptureNodeModel>,
+                                             private val modelIds: IntArray,
+                                             private val startGlobal: LongArray,
+                                             private val endGlobal: LongArray,
+                                             private val startThread: LongArray,
+                                             private val endThread: LongArray,
+                                             private val depths: IntArray,
+                                             private val parents: IntArray,
+                                             private val firstChildren: IntArray,
+                                             private val nextSiblings: IntArray,
+                                             private val subtreeEnds: IntArray,
+                                             private val childCounts: IntArray,
+                                             /**
+                                              * Per node [CaptureNode.FilterType] ordinal, updated by [applyFilter].
+                                              */
+                                             private val filterTypes: ByteArray,
+                                             val size: Int,
+                                             /**
+                                              * Whether the first node only groups the nodes below it, like a [VisualNodeCaptureNode]. It is
+                                              * then not considered their parent in bottom-up call paths.
+                                              */
+                                             val hasVisualRoot: Boolean) {
+  /**
+   * Children of each node by index, computed on the first call to [Node.getChildAt] of a node with more than one child. Sibling lists
+   * are enough to iterate over children, but [HNode] users such as the flame chart look them up by index.
+   */
+  private var childIndices: IntArray? = null
+  private var childOffsets: IntArray? = null
+
+  var clockType = ClockType.GLOBAL
+
+  fun model(node: Int) = models[modelIds[node]]
+  fun startGlobal(node: Int) = startGlobal[node]
+  fun endGlobal(node: Int) = endGlobal[node]
+  fun startThread(node: Int) = startThread[node]
+  fun endThread(node: Int) = endThread[node]
+  fun start(node: Int) = start(node, clockType)
+  fun end(node: Int) = end(node, clockType)
+  fun start(node: Int, clockType: ClockType) = if (clockType == ClockType.THREAD) startThread[node] else startGlobal[node]
+  fun end(node: Int, clockType: ClockType) = if (clockType == ClockType.THREAD) endThread[node] else endGlobal[node]
+  fun depth(node: Int) = depths[node]
+
+  /**
+   * @return the index of the parent of [node], or -1 for the root.
+   */
+  fun parent(node: Int) = parents[node]
+
+  /**
+   * @return the index of the first child of [node], or -1 if it has none.
+   */
+  fun firstChild(node: Int) = firstChildren[node]
+
+  /**
+   * @return the index of the next sibling of [node], or -1 if it is the last child of its parent.
+   */
+  fun nextSibling(node: Int) = nextSiblings[node]
+  fun childCount(node: Int) = childCounts[node]
+
+  /**
+   * @return the index right after the last descendant of [node].
+   */
+  fun subtreeEnd(node: Int) = subtreeEnds[node]
+
+  fun filterType(node: Int) = FILTER_TYPES[filterTypes[node].toInt()]
+  fun isUnmatched(node: Int) = filterTypes[node] == UNMATCH
+
+  /**
+   * @return the number of distinct [CaptureNodeModel]s in the tree.
+   */
+  val modelCount get() = models.size
+
+  fun node(index: Int) = Node(index)
+
+  val root get() = Node(0)
+
+  /**
+   * Same as [CaptureNode.applyFilter], without recursion.
+   */
+  fun applyFilter(filter: Filter): FilterResult {
+    if (size == 0) {
+      return FilterResult(0, 0, !filter.isEmpty)
+    }
+    // Evaluate the filter once per model instead of once per call.
+    val modelMatches = BooleanArray(models.size) { filter.matches(models[it].fullName) }
+    var matchCount = 0
+    // Whether the node or one of its ancestors exactly matches. Parents come before children, so one forward pass is enough.
+    val matchesFromAbove = BooleanArray(size)
+    for (node in 0 until size) {
+      val exactMatch = modelMatches[modelIds[node]]
+      if (exactMatch) matchCount++
+      val parent = parents[node]
+      matchesFromAbove[node] = exactMatch || (parent >= 0 && matchesFromAbove[parent])
+    }
+    // A node is unmatched if neither it, its ancestors nor its descendants match. Children come after parents, so walk backwards.
+    val hasMatchBelow = BooleanArray(size)
+    for (node in size - 1 downTo 0) {
+      val matches = matchesFromAbove[node] || hasMatchBelow[node]
+      val type = when {
+        !matches -> CaptureNode.FilterType.UNMATCH
+        modelMatches[modelIds[node]] && !filter.isEmpty -> CaptureNode.FilterType.EXACT_MATCH
+        else -> CaptureNode.FilterType.MATCH
+      }
+      filterTypes[node] = type.ordinal.toByte()
+      val parent = parents[node]
+      if (parent >= 0 && type != CaptureNode.FilterType.UNMATCH) {
+        hasMatchBelow[parent] = true
+      }
+    }
+    return FilterResult(matchCount, size, !filter.isEmpty)
+  }
+
+  /**
+   * Creates a [CaptureNode] tree with the same content as the subtree of [node].
+   *
+   * @param range if not null, only calls intersecting it (with the current [clockType]) are copied.
+   * @param maxDepth the number of levels below [node] to copy.
+   */
+  @JvmOverloads
+  fun toCaptureNode(node: Int = 0, range: Range? = null, maxDepth: Int = Int.MAX_VALUE): CaptureNode {
+    // Copies of the nodes of the subtree, by index relative to node.
+    val copies = arrayOfNulls<CaptureNode>(subtreeEnds[node] - node)
+    var index = node
+    val endIndex = subtreeEnds[node]
+    while (index < endIndex) {
+      val outsideRange = range != null && (end(index) < range.min || start(index) > range.max)
+      if (index != node && (outsideRange || depths[index] - depths[node] > maxDepth)) {
+        // Children are contained in their parent and are deeper, so none of them is copied either.
+        index = subtreeEnds[index]
+        continue
+      }
+      val copy = CaptureNode(models[modelIds[index]], clockType)
+      copy.startGlobal = startGlobal[index]
+      copy.endGlobal = endGlobal[index]
+      copy.startThread = startThread[index]
+      copy.endThread = endThread[index]
+      copy.setDepth(depths[index])
+      copy.filterType = filterType(index)
+      if (index != node) {
+        copies[parents[index] - node]!!.addChild(copy)
+      }
+      copies[index - node] = copy
+      index++
+    }
+    return copies[0]!!
+  }
+
+  private fun childAt(node: Int, childIndex: Int): Int {
+    if (childIndex == 0) {
+      return firstChildren[node]
+    }
+    val offsets = childOffsets ?: computeChildIndices()
+    return childIndices!![offsets[node] + childIndex]
+  }
+
+  private fun computeChildIndices(): IntArray {
+    val offsets = IntArray(size + 1)
+    for (node in 0 until size) {
+      offsets[node + 1] = offsets[node] + childCounts[node]
+    }
+    val indices = IntArray(offsets[size])
+    for (node in 0 until size) {
+      var child = firstChildren[node]
+      var i = offsets[node]
+      while (child >= 0) {
+        indices[i++] = child
+        child = nextSiblings[child]
+      }
+    }
+    childIndices = indices
+    childOffsets = offsets
+    return offsets
+  }
+
+  /**
+   * A view of a single node of the tree. Two views of the same node are equal.
+   */
+  inner class Node(val index: Int) : HNode<Node> {
+    val tree get() = this@CompactCaptureTree
+    val data get() = model(index)
+    val filterType get() = filterType(index)
+    val isUnmatched get() = filterType == CaptureNode.FilterType.UNMATCH
+
+    override fun getChildCount() = childCounts[index]
+    override fun getChildAt(index: Int) = Node(childAt(this.index, index))
+    override fun getParent() = parents[index].let { if (it < 0) null else Node(it) }
+    override fun getStart() = start(index)
+    override fun getEnd() = end(index)
+    override fun getDepth() = depths[index]
+    override fun getFirstChild() = firstChildren[index].let { if (it < 0) null else Node(it) }
+
+    override fun equals(other: Any?) = other is Node && other.tree === tree && other.index == index
+    override fun hashCode() = index
+    override fun toString() = "Node($index, ${data.name})"
+  }
+
+  /**
+   * Appends calls in pre-order, e.g. while reading enter/exit events of a single thread.
+   */
+  class Builder(initialCapacity: Int = 1024) {
+    private val models = mutableListOf<CaptureNodeModel>()
+    private val modelIdsByModel = IdentityHashMap<CaptureNodeModel, Int>()
+    private var capacity = maxOf(initialCapacity, 1)
+    private var modelIds = IntArray(capacity)
+    private var startGlobal = LongArray(capacity)
+    private var endGlobal = LongArray(capacity)
+    private var startThread = LongArray(capacity)
+    private var endThread = LongArray(capacity)
+    private var depths = IntArray(capacity)
+    private var parents = IntArray(capacity)
+    private var firstChildren = IntArray(capacity)
+    private var nextSiblings = IntArray(capacity)
+    private var lastChildren = IntArray(capacity)
+    private var subtreeEnds = IntArray(capacity)
+    private var childCounts = IntArray(capacity)
+    private var filterTypes = ByteArray(capacity)
+
+    /**
+     * The node most recently added, and its ancestors. Nodes can only be added as children of these.
+     */
+    private val openPath = ArrayDeque<Int>()
+
+    var size = 0
+      private set
+
+    /**
+     * Adds a call as the last child of [parent], or as the root if [parent] is -1.
+     *
+     * @return the index of the new node.
+     */
+    fun add(parent: Int, model: CaptureNodeModel, startGlobalTime: Long, startThreadTime: Long): Int {
+      require(if (parent < 0) size == 0 else parent < size) { "Invalid parent $parent" }
+      // Close the subtrees that are done, so nodes stay in pre-order.
+      while (openPath.isNotEmpty() && openPath.last() != parent) {
+        subtreeEnds[openPath.removeLast()] = size
+      }
+      require(parent < 0 || openPath.isNotEmpty()) { "Nodes must be added in pre-order" }
+
+      ensureCapacity(size + 1)
+      val node = size++
+      modelIds[node] = modelIdsByModel.getOrPut(model) { models.add(model); models.size - 1 }
+      startGlobal[node] = startGlobalTime
+      startThread[node] = startThreadTime
+      parents[node] = parent
+      firstChildren[node] = -1
+      nextSiblings[node] = -1
+      lastChildren[node] = -1
+      filterTypes[node] = MATCH
+      if (parent >= 0) {
+        depths[node] = depths[parent] + 1
+        if (lastChildren[parent] < 0) firstChildren[parent] = node else nextSiblings[lastChildren[parent]] = node
+        lastChildren[parent] = node
+        childCounts[parent]++
+      }
+      openPath.addLast(node)
+      return node
+    }
+
+    fun setEnd(node: Int, endGlobalTime: Long, endThreadTime: Long) {
+      endGlobal[node] = endGlobalTime
+      endThread[node] = endThreadTime
+    }
+
+    fun setFilterType(node: Int, filterType: CaptureNode.FilterType) {
+      filterTypes[node] = filterType.ordinal.toByte()
+    }
+
+    fun build(hasVisualRoot: Boolean = false): CompactCaptureTree {
+      while (openPath.isNotEmpty()) {
+        subtreeEnds[openPath.removeLast()] = size
+      }
+      return CompactCaptureTree(models.toList(), modelIds.copyOf(size), startGlobal.copyOf(size), endGlobal.copyOf(size),
+                                startThread.copyOf(size), endThread.copyOf(size), depths.copyOf(size), parents.copyOf(size),
+                                firstChildren.copyOf(size), nextSiblings.copyOf(size), subtreeEnds.copyOf(size), childCounts.copyOf(size),
+                                filterTypes.copyOf(size), size, hasVisualRoot)
+    }
+
+    private fun ensureCapacity(required: Int) {
+      if (required <= capacity) {
+        return
+      }
+      capacity = maxOf(required, capacity + capacity / 2)
+      modelIds = modelIds.copyOf(capacity)
+      startGlobal = startGlobal.copyOf(capacity)
+      endGlobal = endGlobal.copyOf(capacity)
+      startThread = startThread.copyOf(capacity)
+      endThread = endThread.copyOf(capacity)
+      depths = depths.copyOf(capacity)
+      parents = parents.copyOf(capacity)
+      firstChildren = firstChildren.copyOf(capacity)
+      nextSiblings = nextSiblings.copyOf(capacity)
+      lastChildren = lastChildren.copyOf(capacity)
+      subtreeEnds = subtreeEnds.copyOf(capacity)
+      childCounts = childCounts.copyOf(capacity)
+      filterTypes = filterTypes.copyOf(capacity)
+    }
+  }
+
+  companion object {
+    private val FILTER_TYPES = CaptureNode.FilterType.values()
+    private val MATCH = CaptureNode.FilterType.MATCH.ordinal.toByte()
+    private val UNMATCH = CaptureNode.FilterType.UNMATCH.ordinal.toByte()
+
+    /**
+     * Creates a compact copy of the tree rooted at [root], including filter results. Depths are recomputed from the root, which gets
+     * depth 0.
+     */
+    @JvmStatic
+    fun fromCaptureNode(root: CaptureNode): CompactCaptureTree =
+      Builder().also { it.addSubtree(-1, root) }.build().also { it.clockType = root.clockType }
+
+    /**
+     * Creates a compact copy of [nodes] and their subtrees, under a root with an empty id spanning all of them. This is the compact
+     * equivalent of the [VisualNodeCaptureNode] used to aggregate several selected nodes.
+     */
+    @JvmStatic
+    fun fromCaptureNodes(nodes: List<CaptureNode>, clockType: ClockType): CompactCaptureTree {
+      require(nodes.isNotEmpty()) { "No nodes to compact" }
+      val builder = Builder()
+      val root = builder.add(-1, SingleNameModel(""), nodes.minOf(CaptureNode::startGlobal), nodes.minOf(CaptureNode::startThread))
+      builder.setEnd(root, nodes.maxOf(CaptureNode::endGlobal), nodes.maxOf(CaptureNode::endThread))
+      nodes.forEach { builder.addSubtree(root, it) }
+      return builder.build(hasVisualRoot = true).also { it.clockType = clockType }
+    }
+
+    private fun Builder.addSubtree(parent: Int, root: CaptureNode) {
+      // Pairs of (node, index of its parent in the compact tree), visited in pre-order.
+      val stack = ArrayDeque<Pair<CaptureNode, Int>>()
+      stack.addLast(root to parent)
+      while (stack.isNotEmpty()) {
+        val (node, nodeParent) = stack.removeLast()
+        val index = add(nodeParent, node.data, node.startGlobal, node.startThread)
+        setEnd(index, node.endGlobal, node.endThread)
+        setFilterType(index, node.filterType)
+        for (i in node.childCount - 1 downTo 0) {
+          stack.addLast(node.getChildAt(i) to index)
+        }
+      }
+    }
+  }
+}
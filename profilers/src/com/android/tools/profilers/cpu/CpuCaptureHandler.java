@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.updater.Updatable;
 import com.android.tools.profilers.IdeProfilerServices;
 import com.android.tools.profilers.cpu.config.ProfilingConfiguration;
+import com.android.tools.profilers.cpu.config.ProfilingConfiguration.TraceType;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
 import java.util.concurrent.CompletableFuture;
@@ -74,6 +75,15 @@ public class CpuCaptureHandler implements Updatable, StatusPanelModel {
     myCaptureParser.trackCaptureMetadata(traceId, metadata);
   }
 
+  public long getTraceId() {
+    return myTraceId;
+  }
+
+  @NotNull
+  public TraceType getTraceType() {
+    return myConfiguration.getTraceType();
+  }
+
   /**
    * {@link StatusPanelModel} interface override.
    * Returns the range that represents the amount of time parsing has taken so far.
@@ -121,10 +131,18 @@ public class CpuCaptureHandler implements Updatable, StatusPanelModel {
    *                         will be passed a null {@link CpuCapture}.
    */
   public void parse(Consumer<CpuCapture> captureCompleted) {
+    parse(TraceParser.Listener.NONE, captureCompleted);
+  }
+
+  /**
+   * Same as {@link #parse(Consumer)}, but also reports the parts of the capture that are complete before parsing finishes to
+   * {@code partialCaptureListener}, on the main executor.
+   */
+  public void parse(@NotNull TraceParser.Listener partialCaptureListener, Consumer<CpuCapture> captureCompleted) {
     myIsParsing = true;
     myParseRange.set(0, 0);
     CompletableFuture<CpuCapture> capture = myCaptureParser.parse(
-      myCaptureFile, myTraceId, myConfiguration.getTraceType(), myCaptureProcessIdHint, myCaptureProcessNameHint);
+      myCaptureFile, myTraceId, myConfiguration.getTraceType(), myCaptureProcessIdHint, myCaptureProcessNameHint, partialCaptureListener);
 
     // Parsing is in progress. Handle it asynchronously and set the capture afterwards using the main executor.
     capture.handleAsync((parsedCapture, exception) -> {
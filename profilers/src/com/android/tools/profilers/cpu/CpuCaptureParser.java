@@ -51,6 +51,7 @@ import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -193,6 +194,21 @@ public class CpuCaptureParser {
   public CompletableFuture<CpuCapture> parse(
     // Consider passing a CompletableFuture<File> instead of a File here, so we can chain all of them properly.
     @NotNull File traceFile, long traceId, @NotNull TraceType preferredProfilerType, int processIdHint, String processNameHint) {
+    return parse(traceFile, traceId, preferredProfilerType, processIdHint, processNameHint, TraceParser.Listener.NONE);
+  }
+
+  /**
+   * Same as {@link #parse(File, long, TraceType, int, String)}, but also reports the parts of the capture that are complete before parsing
+   * finishes to {@code partialCaptureListener}, on the main executor. Cancelling the returned future, e.g. via {@link #abortParsing()},
+   * stops parsers that support incremental parsing instead of letting them run to completion in the background.
+   */
+  @NotNull
+  public CompletableFuture<CpuCapture> parse(@NotNull File traceFile,
+                                             long traceId,
+                                             @NotNull TraceType preferredProfilerType,
+                                             int processIdHint,
+                                             String processNameHint,
+                                             @NotNull TraceParser.Listener partialCaptureListener) {
     if (myCaptures.containsKey(traceId)) {
       return myCaptures.get(traceId);
     }
@@ -200,13 +216,16 @@ public class CpuCaptureParser {
     // If we don't have a hint for the process id, we assume it was an imported trace as we have no extra information.
     boolean isImportedTrace = (processIdHint == 0);
 
+    AtomicBoolean isCancelled = new AtomicBoolean();
+    TraceParser.Listener listener = new MainExecutorListener(partialCaptureListener, isCancelled);
     CompletableFuture<CpuCapture> cpuCapture =
       CompletableFuture.runAsync(new TraceFileValidationAction(traceFile), myServices.getPoolExecutor())
         .thenRunAsync(new ParsingStartAction(traceFile), myServices.getMainExecutor())
         .thenApplyAsync(
-          new ProcessTraceAction(traceFile, traceId, preferredProfilerType, processIdHint, processNameHint, myServices),
+          new ProcessTraceAction(traceFile, traceId, preferredProfilerType, processIdHint, processNameHint, myServices, listener),
           myServices.getPoolExecutor())
         .whenCompleteAsync(new TraceResultHandler(traceFile, traceId, isImportedTrace), myServices.getMainExecutor());
+    cpuCapture.whenComplete((capture, throwable) -> isCancelled.set(cpuCapture.isCancelled()));
     myCaptures.put(traceId, cpuCapture);
     return cpuCapture;
   }
@@ -267,6 +286,38 @@ public class CpuCaptureParser {
     }
   }
 
+  /**
+   * Forwards the partial results of a parser to the main executor, and lets the parser know when the parsing future has been cancelled.
+   */
+  private final class MainExecutorListener implements TraceParser.Listener {
+    @NotNull
+    private final TraceParser.Listener delegate;
+
+    @NotNull
+    private final AtomicBoolean isCancelled;
+
+    private MainExecutorListener(@NotNull TraceParser.Listener delegate, @NotNull AtomicBoolean isCancelled) {
+      this.delegate = delegate;
+      this.isCancelled = isCancelled;
+    }
+
+    @Override
+    public void onRangeParsed(@NotNull Range range) {
+      Range copy = new Range(range);
+      myServices.getMainExecutor().execute(() -> delegate.onRangeParsed(copy));
+    }
+
+    @Override
+    public void onThreadParsed(@NotNull CpuThreadInfo thread, @NotNull CaptureNode root) {
+      myServices.getMainExecutor().execute(() -> delegate.onThreadParsed(thread, root));
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return isCancelled.get() || delegate.isCancelled();
+    }
+  }
+
   /**
    * Performs basic checks on the trace file to be parsed:
    * <ul>
@@ -375,6 +426,9 @@ public class CpuCaptureParser {
     @NotNull
     private final IdeProfilerServices services;
 
+    @NotNull
+    private final TraceParser.Listener listener;
+
     // Parsers used by parseToCapture
     private static final Supplier<TraceParser> ART_PARSER_SUPPLIER = () -> new ArtTraceParser();
     private static final Supplier<TraceParser> SIMPLEPERF_PARSER_SUPPLIER = () -> new SimpleperfTraceParser();
@@ -394,6 +448,12 @@ public class CpuCaptureParser {
     ProcessTraceAction(
       @NotNull File traceFile, long traceId, @NotNull TraceType preferredProfilerType,
       int processIdHint, @Nullable String processNameHint, @NotNull IdeProfilerServices services) {
+      this(traceFile, traceId, preferredProfilerType, processIdHint, processNameHint, services, TraceParser.Listener.NONE);
+    }
+
+    private ProcessTraceAction(
+      @NotNull File traceFile, long traceId, @NotNull TraceType preferredProfilerType,
+      int processIdHint, @Nullable String processNameHint, @NotNull IdeProfilerServices services, @NotNull TraceParser.Listener listener) {
 
       this.traceFile = traceFile;
       this.traceId = traceId;
@@ -401,6 +461,7 @@ public class CpuCaptureParser {
       this.processIdHint = processIdHint;
       this.processNameHint = processNameHint != null ? processNameHint : "";
       this.services = services;
+      this.listener = listener;
     }
 
     @Override
@@ -480,11 +541,15 @@ public class CpuCaptureParser {
       Supplier<TraceParser> parserSupplier = getParserSupplier(type);
       TraceParser parser = parserSupplier.get();
       try {
-        return parser.parse(traceFile, traceId);
+        return parser.parse(traceFile, traceId, listener);
       }
       catch (ProcessSelectorDialogAbortedException e) {
         throw new CancellationException("User aborted process choice dialog.");
       }
+      catch (CancellationException e) {
+        // Parsing was aborted through the listener.
+        throw e;
+      }
       catch (Throwable e) {
           throw new CpuCaptureParser.ParsingFailureException(
             String.format("Trace file '%s' failed to be parsed as %s.", traceFile.getAbsolutePath(), type), e);
@@ -23,6 +23,7 @@ import com.android.tools.adtui.model.AspectModel;
 import com.android.tools.adtui.model.BoxSelectionModel;
 import com.android.tools.adtui.model.DefaultTimeline;
 import com.android.tools.adtui.model.MultiSelectionModel;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedSeries;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.model.Timeline;
@@ -32,6 +33,7 @@ import com.android.tools.adtui.model.event.UserEvent;
 import com.android.tools.adtui.model.trackgroup.TrackGroupActionListener;
 import com.android.tools.adtui.model.trackgroup.TrackGroupModel;
 import com.android.tools.adtui.model.trackgroup.TrackModel;
+import com.android.tools.adtui.model.updater.Updatable;
 import com.android.tools.idea.flags.enums.PowerProfilerDisplayMode;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.idea.transport.EventStreamServer;
@@ -95,6 +97,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -120,6 +123,12 @@ public class CpuCaptureStage extends Stage<Timeline> {
 
   private static final String POWER_RAILS_HELP_LINK = "https://d.android.com/r/studio-ui/profiler/power-profiler";
 
+  /**
+   * Minimum time between two {@link Aspect#PARTIAL_CAPTURE_UPDATED} events. Parsers report threads one by one, and every update rebuilds
+   * the partial capture and its views, so firing on each thread would take time quadratic in the number of threads.
+   */
+  @VisibleForTesting static final long PARTIAL_CAPTURE_UPDATE_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
   public enum Aspect {
     /**
      * Triggered when the stage changes state from parsing to analyzing. This can also be viewed as capture parsing completed.
@@ -130,6 +139,11 @@ public class CpuCaptureStage extends Stage<Timeline> {
      * Triggered when a new analysis model is added / removed.
      */
     ANALYSIS_MODEL_UPDATED,
+    /**
+     * Triggered while parsing, at most every {@link #PARTIAL_CAPTURE_UPDATE_INTERVAL_NS}, when the parser reported the capture range
+     * or new threads since the last time. See {@link #getPartialCapture()}.
+     */
+    PARTIAL_CAPTURE_UPDATED,
   }
 
   public enum State {
@@ -190,6 +204,12 @@ public class CpuCaptureStage extends Stage<Timeline> {
   // Accessible only when in state analyzing
   private CpuCapture myCapture;
 
+  // Parts of the capture reported by the parser while in state parsing
+  @Nullable private Range myPartialCaptureRange;
+  private final Map<CpuThreadInfo, CaptureNode> myPartialCaptureTrees = new HashMap<>();
+  @Nullable private CpuCapture myPartialCapture;
+  private final PartialCaptureListener myPartialCaptureListener = new PartialCaptureListener();
+
   /**
    * The track groups share a timeline based on the minimap selection.
    * <p>
@@ -338,12 +358,34 @@ public class CpuCaptureStage extends Stage<Timeline> {
     return myCapture;
   }
 
+  /**
+   * @return a capture made of the threads parsed so far, so the thread list and minimap can be shown before parsing completes. Null if
+   * the parser hasn't reported the capture range yet, or if parsing has completed.
+   */
+  @Nullable
+  public CpuCapture getPartialCapture() {
+    if (myState != State.PARSING || myPartialCaptureRange == null) {
+      return null;
+    }
+    if (myPartialCapture == null) {
+      // Whether the trace supports dual clock is only known once parsing completes.
+      myPartialCapture = new BaseCpuCapture(myCpuCaptureHandler.getTraceId(), myCpuCaptureHandler.getTraceType(), false, null,
+                                            myPartialCaptureRange, new HashMap<>(myPartialCaptureTrees));
+    }
+    return myPartialCapture;
+  }
+
   @Override
   public void enter() {
     logEnterStage();
     getStudioProfilers().getUpdater().register(myCpuCaptureHandler);
+    getStudioProfilers().getUpdater().register(myPartialCaptureListener);
     getStudioProfilers().getIdeServices().getFeatureTracker().trackEnterStage(getStageType());
-    myCpuCaptureHandler.parse(capture -> {
+    myCpuCaptureHandler.parse(myPartialCaptureListener, capture -> {
+      myPartialCaptureRange = null;
+      myPartialCaptureTrees.clear();
+      myPartialCapture = null;
+      myPartialCaptureListener.myHasChanges = false;
       try {
         if (capture == null) {
           // Generic catch all for capture failing to load, this happens for both import and live captures.
@@ -378,9 +420,43 @@ public class CpuCaptureStage extends Stage<Timeline> {
     });
   }
 
+  /**
+   * Collects the parts of the capture reported by the parser, called on the main executor. Updates are batched and announced from
+   * {@link #update(long)}, which runs on the same thread.
+   */
+  private final class PartialCaptureListener implements TraceParser.Listener, Updatable {
+    private boolean myHasChanges;
+    private long myNsSinceLastUpdate = PARTIAL_CAPTURE_UPDATE_INTERVAL_NS;
+
+    @Override
+    public void onRangeParsed(@NotNull Range range) {
+      myPartialCaptureRange = range;
+      myPartialCapture = null;
+      myHasChanges = true;
+    }
+
+    @Override
+    public void onThreadParsed(@NotNull CpuThreadInfo thread, @NotNull CaptureNode root) {
+      myPartialCaptureTrees.put(thread, root);
+      myPartialCapture = null;
+      myHasChanges = true;
+    }
+
+    @Override
+    public void update(long elapsedNs) {
+      myNsSinceLastUpdate += elapsedNs;
+      if (myHasChanges && myNsSinceLastUpdate >= PARTIAL_CAPTURE_UPDATE_INTERVAL_NS) {
+        myHasChanges = false;
+        myNsSinceLastUpdate = 0;
+        myAspect.changed(Aspect.PARTIAL_CAPTURE_UPDATED);
+      }
+    }
+  }
+
   @Override
   public void exit() {
     getStudioProfilers().getUpdater().unregister(myCpuCaptureHandler);
+    getStudioProfilers().getUpdater().unregister(myPartialCaptureListener);
   }
 
   @Override
@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.cpu;
 
+import com.android.tools.adtui.model.Range;
 import java.io.File;
 import java.io.IOException;
 import org.jetbrains.annotations.NotNull;
@@ -25,4 +26,40 @@ import org.jetbrains.annotations.NotNull;
 public interface TraceParser {
 
   CpuCapture parse(@NotNull File file, long traceId) throws IOException;
+
+  /**
+   * Same as {@link #parse(File, long)}, but reports the capture range and each thread's call tree to {@code listener} as soon as they are
+   * known, and stops with a {@link java.util.concurrent.CancellationException} once {@link Listener#isCancelled()} returns true.
+   * <p>
+   * Parsers that don't support incremental parsing ignore the listener.
+   */
+  default CpuCapture parse(@NotNull File file, long traceId, @NotNull Listener listener) throws IOException {
+    return parse(file, traceId);
+  }
+
+  /**
+   * Receives the parts of a capture that are complete before the whole trace has been parsed. Called from the parsing thread.
+   * <p>
+   * The reported {@link CaptureNode} trees are the ones of the final {@link CpuCapture} and must not be modified.
+   */
+  interface Listener {
+    Listener NONE = new Listener() {};
+
+    /**
+     * Called at most once, with the range the whole capture will have.
+     */
+    default void onRangeParsed(@NotNull Range range) {}
+
+    /**
+     * Called once per thread, when {@code root} and its descendants won't change anymore.
+     */
+    default void onThreadParsed(@NotNull CpuThreadInfo thread, @NotNull CaptureNode root) {}
+
+    /**
+     * Polled by the parser. Returning true aborts parsing.
+     */
+    default boolean isCancelled() {
+      return false;
+    }
+  }
 }
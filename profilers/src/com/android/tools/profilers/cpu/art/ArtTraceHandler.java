@@ -15,11 +15,13 @@
  */
 package com.android.tools.profilers.cpu.art;
 
+import com.android.tools.adtui.model.Range;
 import com.android.tools.perflib.vmtrace.MethodInfo;
 import com.android.tools.perflib.vmtrace.TraceAction;
 import com.android.tools.perflib.vmtrace.VmTraceHandler;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.TraceParser;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
@@ -27,12 +29,21 @@ import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class ArtTraceHandler implements VmTraceHandler {
   private static final String MAIN_THREAD_NAME = "main";
   private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
+
+  /**
+   * Number of method actions between two checks of {@link TraceParser.Listener#isCancelled()}.
+   */
+  private static final int CANCELLATION_CHECK_INTERVAL = 1 << 16;
+
+  @NotNull private final TraceParser.Listener myListener;
+  private long myMethodActionCount;
   private long myStartTimeUs;
   private long myElapsedTimeUs;
 
@@ -54,6 +65,14 @@ public class ArtTraceHandler implements VmTraceHandler {
   @Nullable
   private Map<CpuThreadInfo, CaptureNode> myThreadsGraph;
 
+  public ArtTraceHandler() {
+    this(TraceParser.Listener.NONE);
+  }
+
+  public ArtTraceHandler(@NotNull TraceParser.Listener listener) {
+    myListener = listener;
+  }
+
   @Override
   public void addThread(int id, String name) {
     myThreads.put(id, name);
@@ -67,6 +86,16 @@ public class ArtTraceHandler implements VmTraceHandler {
   @Override
   public void addMethodAction(int threadId, long methodId, TraceAction methodAction,
                               int threadTime, int globalTime) {
+    if (myMethodActionCount++ % CANCELLATION_CHECK_INTERVAL == 0) {
+      if (myListener.isCancelled()) {
+        throw new CancellationException("ART trace parsing was cancelled.");
+      }
+      if (myMethodActionCount == 1) {
+        // The header, which contains the start time and duration of the trace, has been parsed by now.
+        myListener.onRangeParsed(new Range(myStartTimeUs, myStartTimeUs + myElapsedTimeUs));
+      }
+    }
+
     // create thread info if it doesn't exist
     if (!myThreads.containsKey(threadId)) {
       myThreads.put(threadId, String.format("Thread id: %1$d", threadId));
@@ -123,6 +152,7 @@ public class ArtTraceHandler implements VmTraceHandler {
       adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart);
 
       threadsGraph.put(info, topLevelCall);
+      myListener.onThreadParsed(info, topLevelCall);
     }
 
     return threadsGraph;
@@ -30,17 +30,25 @@ import org.jetbrains.annotations.NotNull;
  */
 public class ArtTraceParser implements TraceParser {
 
-  private final ArtTraceHandler myTraceHandler = new ArtTraceHandler();
-
   @Override
   public CpuCapture parse(@NotNull File trace, long traceId) throws IOException {
-    VmTraceParser parser = new VmTraceParser(trace, myTraceHandler);
+    return parse(trace, traceId, Listener.NONE);
+  }
+
+  /**
+   * The method actions of all threads are interleaved in ART traces, so thread trees are only reported once the whole file has been read.
+   * The capture range is reported as soon as the header has been parsed.
+   */
+  @Override
+  public CpuCapture parse(@NotNull File trace, long traceId, @NotNull Listener listener) throws IOException {
+    ArtTraceHandler traceHandler = new ArtTraceHandler(listener);
+    VmTraceParser parser = new VmTraceParser(trace, traceHandler);
     parser.parse();
     Range range = new Range(
-      myTraceHandler.getStartTimeUs(),
-      myTraceHandler.getStartTimeUs() + myTraceHandler.getElapsedTimeUs());
+      traceHandler.getStartTimeUs(),
+      traceHandler.getStartTimeUs() + traceHandler.getElapsedTimeUs());
     // ART traces always support dual clock mode.
-    return new BaseCpuCapture(traceId, TraceType.ART, true, null, range, myTraceHandler.getThreadsGraph());
+    return new BaseCpuCapture(traceId, TraceType.ART, true, null, range, traceHandler.getThreadsGraph());
   }
 
   public static boolean verifyFileHasArtHeader(@NotNull File trace) {
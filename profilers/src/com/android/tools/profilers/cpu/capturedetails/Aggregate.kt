@@ -18,52 +18,96 @@ package com.android.tools.profilers.cpu.capturedetails
 import com.android.tools.adtui.model.Range
 import com.android.tools.perflib.vmtrace.ClockType
 import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.CompactCaptureTree
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap
+import it.unimi.dsi.fastutil.ints.IntArrayList
 import java.util.IdentityHashMap
 import java.util.Stack
 
 /**
  * The full aggregation (e.g. top-down/bottom-up) not restricted to any range,
  * that expands lazily
+ *
+ * Aggregations are built either over [CaptureNode]s or over the calls of a [CompactCaptureTree], in which case they keep
+ * call indices in int arrays instead of node references.
  */
 abstract class Aggregate<T: Aggregate<T>> {
   abstract val id: String
-  abstract val nodes: List<CaptureNode>
   abstract val children: List<T>
   abstract val methodModel: CaptureNodeModel
   abstract val filterType: CaptureNode.FilterType
   val isUnmatched get() = filterType == CaptureNode.FilterType.UNMATCH
   abstract fun totalOver(clockType: ClockType, range: Range): Summary
-  fun overlapsWith(range: Range) = nodes.any { it.start < range.max && range.min < it.end }
+  abstract fun overlapsWith(range: Range): Boolean
   data class Summary(val total: Double, val childrenTotal: Double)
 
-  class TopDown private constructor(override val id: String, override val nodes: List<CaptureNode>): Aggregate<TopDown>() {
-    override val methodModel: CaptureNodeModel get() = nodes[0].data
-    override val filterType: CaptureNode.FilterType get() = nodes[0].filterType
-    override val children: List<TopDown> = lazyList(
-      { nodes.asSequence()
-        .flatMap(CaptureNode::children)
-        .groupBy { it.isUnmatched to it.data.id }
-        .map { (key, nodes) -> TopDown(key.second, nodes) }
-      },
-      { nodes.all { it.childCount == 0 } }
-    )
-
-    override fun totalOver(clockType: ClockType, range: Range): Summary {
-      var total = 0.0
-      var childrenTotal = 0.0
-      for (node in nodes) {
-        total += getIntersection(range, node, clockType)
-        for (child in node.children) {
-          childrenTotal += getIntersection(range, child, clockType)
+  sealed class TopDown(override val id: String): Aggregate<TopDown>() {
+    private class OfNodes(id: String, private val nodes: List<CaptureNode>): TopDown(id) {
+      override val methodModel: CaptureNodeModel get() = nodes[0].data
+      override val filterType: CaptureNode.FilterType get() = nodes[0].filterType
+      override val children: List<TopDown> = lazyList(
+        { nodes.asSequence()
+          .flatMap(CaptureNode::children)
+          .groupBy { it.isUnmatched to it.data.id }
+          .map { (key, nodes) -> OfNodes(key.second, nodes) }
+        },
+        { nodes.all { it.childCount == 0 } }
+      )
+
+      override fun overlapsWith(range: Range) = nodes.any { it.start < range.max && range.min < it.end }
+
+      override fun totalOver(clockType: ClockType, range: Range): Summary {
+        var total = 0.0
+        var childrenTotal = 0.0
+        for (node in nodes) {
+          total += getIntersection(range, node, clockType)
+          for (child in node.children) {
+            childrenTotal += getIntersection(range, child, clockType)
+          }
+        }
+        return Summary(total, childrenTotal)
+      }
+    }
+
+    private class OfCompactTree(id: String, private val tree: CompactCaptureTree, private val calls: IntArray): TopDown(id) {
+      override val methodModel: CaptureNodeModel get() = tree.model(calls[0])
+      override val filterType: CaptureNode.FilterType get() = tree.filterType(calls[0])
+      override val children: List<TopDown> = lazyList(
+        { CompactCallGroups(tree).apply {
+            for (call in calls) {
+              var child = tree.firstChild(call)
+              while (child >= 0) {
+                add(child, child)
+                child = tree.nextSibling(child)
+              }
+            }
+          }.map { id, childCalls, _ -> OfCompactTree(id, tree, childCalls) }
+        },
+        { calls.all { tree.childCount(it) == 0 } }
+      )
+
+      override fun overlapsWith(range: Range) = tree.overlapsWith(calls, range)
+
+      override fun totalOver(clockType: ClockType, range: Range): Summary {
+        var total = 0.0
+        var childrenTotal = 0.0
+        for (call in calls) {
+          total += getIntersection(range, tree, call, clockType)
+          childrenTotal += getChildrenIntersection(range, tree, call, clockType)
         }
+        return Summary(total, childrenTotal)
       }
-      return Summary(total, childrenTotal)
     }
 
     companion object {
-      @JvmStatic fun rootAt(node: CaptureNode) = TopDown(node.data.id, listOf(node))
+      @JvmStatic fun rootAt(node: CaptureNode): TopDown = OfNodes(node.data.id, listOf(node))
+
+      /**
+       * Creates a top-down aggregation of the whole [tree], rooted at its first node.
+       */
+      @JvmStatic fun rootAt(tree: CompactCaptureTree): TopDown = OfCompactTree(tree.model(0).id, tree, intArrayOf(0))
     }
   }
 
@@ -73,12 +117,14 @@ abstract class Aggregate<T: Aggregate<T>> {
    */
   sealed class BottomUp private constructor(override val id: String): Aggregate<BottomUp>() {
     class Root(node: CaptureNode): BottomUp("Root") {
-      override val nodes = listOf(node)
+      val nodes = listOf(node)
       override val children = buildChildren(node.preOrderTraversal().map { it to it })
       override val methodModel = SingleNameModel("") // sample entry for the root
       override val filterType get() = CaptureNode.FilterType.MATCH
+      override fun overlapsWith(range: Range) = nodes.overlapsWith(range)
+      override fun totalOver(clockType: ClockType, range: Range) = totalOverNodes(nodes, clockType, range)
     }
-    class Child(id: String, private val pathNodes: List<CaptureNode>, override val nodes: List<CaptureNode>): BottomUp(id) {
+    class Child(id: String, private val pathNodes: List<CaptureNode>, val nodes: List<CaptureNode>): BottomUp(id) {
       override val methodModel get() = pathNodes[0].data
       override val filterType get() = pathNodes[0].filterType
       override val children: List<Child> = lazyList(
@@ -87,51 +133,56 @@ abstract class Aggregate<T: Aggregate<T>> {
         },
         { pathNodes.all { it.parent == null } }
       )
+      override fun overlapsWith(range: Range) = nodes.overlapsWith(range)
+      override fun totalOver(clockType: ClockType, range: Range) = totalOverNodes(nodes, clockType, range)
     }
 
-    override fun totalOver(clockType: ClockType, range: Range): Summary {
-      // how much time was spent in this call stack path, and in the functions it called
-      var total = 0.0
-
-      // The node that is at the top of the call stack, e.g if the call stack looks like B [0..30] -> B [1..20],
-      // then the second method can't be outerSoFarByParent.
-      // It's used to exclude nodes which aren't at the top of the
-      // call stack from the total time calculation.
-      // When multiple threads with the same ID are selected, the nodes are merged. When this happens nodes may be interlaced between
-      // each of the threads. As such we keep a mapping of outer so far by parents to keep the book keeping done properly.
-      val outerSoFarByParent = IdentityHashMap<CaptureNode, CaptureNode>()
-
-      // how much time was spent doing work directly in this call stack path
-      var self = 0.0
-      // myNodes is sorted by CaptureNode#getStart() in increasing order,
-      // if they are equal then ancestor comes first
-      for (node in nodes) {
-        // We use the root node to distinguish if two nodes share the same tree. In the event of multi-select we want to compute the bottom
-        // up calculation independently for each tree then sum them after the fact.
-        // TODO(153306735): Cache the root calculation, otherwise our update algorithm is going to be O(n*depth) instead of O(n)
-        val root = node.findRootNode()
-        val outerSoFar = outerSoFarByParent[root]
-        if (outerSoFar == null || node.end > outerSoFar.end) {
-          if (outerSoFar != null) {
-            // |outerSoFarByParent| is at the top of the call stack
-            total += getIntersection(range, outerSoFar, clockType)
-          }
-          outerSoFarByParent[root] = node
+    private class CompactRoot(private val tree: CompactCaptureTree): BottomUp("Root") {
+      override val children: List<BottomUp> = CompactCallGroups(tree).apply {
+        // Same as Root, calls without an id are not added as children.
+        for (call in 0 until tree.size) {
+          if (tree.model(call).id.isNotEmpty()) add(call, call)
         }
-        self += getIntersection(range, node, clockType) -
-                node.children.sumOf { getIntersection(range, it, clockType) }
-      }
-      for (outerSoFar in outerSoFarByParent.values) {
-        // |outerSoFarByParent| is at the top of the call stack
-        total += getIntersection(range, outerSoFar, clockType)
-      }
-      val childrenTotal = total - self
-      return Summary(total, childrenTotal)
+      }.map { id, keyCalls, childCalls -> CompactChild(id, tree, keyCalls, childCalls) }
+      override val methodModel = SingleNameModel("") // sample entry for the root
+      override val filterType get() = CaptureNode.FilterType.MATCH
+      override fun overlapsWith(range: Range) = tree.overlapsWith(ROOT_CALLS, range)
+      override fun totalOver(clockType: ClockType, range: Range) = totalOverCalls(tree, ROOT_CALLS, clockType, range)
+    }
+
+    /**
+     * Same as [Child], with [pathCalls] and [calls] being indices of [tree] instead of nodes.
+     */
+    private class CompactChild(id: String,
+                               private val tree: CompactCaptureTree,
+                               private val pathCalls: IntArray,
+                               private val calls: IntArray): BottomUp(id) {
+      override val methodModel get() = tree.model(pathCalls[0])
+      override val filterType get() = tree.filterType(pathCalls[0])
+      override val children: List<BottomUp> = lazyList(
+        { CompactCallGroups(tree).apply {
+            for (i in pathCalls.indices) {
+              val parent = tree.pathParent(pathCalls[i])
+              if (parent >= 0) add(parent, calls[i])
+            }
+          }.map { id, keyCalls, childCalls -> CompactChild(id, tree, keyCalls, childCalls) }
+        },
+        { pathCalls.all { tree.pathParent(it) < 0 } }
+      )
+      override fun overlapsWith(range: Range) = tree.overlapsWith(calls, range)
+      override fun totalOver(clockType: ClockType, range: Range) = totalOverCalls(tree, calls, clockType, range)
     }
 
     companion object {
+      private val ROOT_CALLS = intArrayOf(0)
+
       @JvmStatic fun rootAt(node: CaptureNode): BottomUp = Root(node)
 
+      /**
+       * Creates a bottom-up aggregation of the whole [tree].
+       */
+      @JvmStatic fun rootAt(tree: CompactCaptureTree): BottomUp = CompactRoot(tree)
+
       protected fun buildChildren(pathNodesAndNodes: Sequence<Pair<CaptureNode, CaptureNode>>): List<Child> =
         pathNodesAndNodes
           // We use a separate map for unmatched children, because we can not merge unmatched with matched,
@@ -142,6 +193,93 @@ abstract class Aggregate<T: Aggregate<T>> {
             Child(key.second, pathNodes, nodes)
           }
 
+      private fun totalOverNodes(nodes: List<CaptureNode>, clockType: ClockType, range: Range): Summary {
+        // how much time was spent in this call stack path, and in the functions it called
+        var total = 0.0
+
+        // The node that is at the top of the call stack, e.g if the call stack looks like B [0..30] -> B [1..20],
+        // then the second method can't be outerSoFarByParent.
+        // It's used to exclude nodes which aren't at the top of the
+        // call stack from the total time calculation.
+        // When multiple threads with the same ID are selected, the nodes are merged. When this happens nodes may be interlaced between
+        // each of the threads. As such we keep a mapping of outer so far by parents to keep the book keeping done properly.
+        val outerSoFarByParent = IdentityHashMap<CaptureNode, CaptureNode>()
+
+        // how much time was spent doing work directly in this call stack path
+        var self = 0.0
+        // myNodes is sorted by CaptureNode#getStart() in increasing order,
+        // if they are equal then ancestor comes first
+        for (node in nodes) {
+          // We use the root node to distinguish if two nodes share the same tree. In the event of multi-select we want to compute the
+          // bottom up calculation independently for each tree then sum them after the fact.
+          // TODO(153306735): Cache the root calculation, otherwise our update algorithm is going to be O(n*depth) instead of O(n)
+          val root = node.findRootNode()
+          val outerSoFar = outerSoFarByParent[root]
+          if (outerSoFar == null || node.end > outerSoFar.end) {
+            if (outerSoFar != null) {
+              // |outerSoFarByParent| is at the top of the call stack
+              total += getIntersection(range, outerSoFar, clockType)
+            }
+            outerSoFarByParent[root] = node
+          }
+          self += getIntersection(range, node, clockType) -
+                  node.children.sumOf { getIntersection(range, it, clockType) }
+        }
+        for (outerSoFar in outerSoFarByParent.values) {
+          // |outerSoFarByParent| is at the top of the call stack
+          total += getIntersection(range, outerSoFar, clockType)
+        }
+        val childrenTotal = total - self
+        return Summary(total, childrenTotal)
+      }
+
+      /**
+       * Same as [totalOverNodes], with [calls] in pre-order, which is the same as increasing start with ancestors first.
+       */
+      private fun totalOverCalls(tree: CompactCaptureTree, calls: IntArray, clockType: ClockType, range: Range): Summary {
+        var total = 0.0
+        val outerSoFarByRoot = Int2IntOpenHashMap().apply { defaultReturnValue(-1) }
+        var self = 0.0
+        for (call in calls) {
+          val root = tree.pathRoot(call)
+          val outerSoFar = outerSoFarByRoot.get(root)
+          if (outerSoFar < 0 || tree.end(call) > tree.end(outerSoFar)) {
+            if (outerSoFar >= 0) {
+              total += getIntersection(range, tree, outerSoFar, clockType)
+            }
+            outerSoFarByRoot.put(root, call)
+          }
+          self += getIntersection(range, tree, call, clockType) - getChildrenIntersection(range, tree, call, clockType)
+        }
+        for (outerSoFar in outerSoFarByRoot.values) {
+          total += getIntersection(range, tree, outerSoFar, clockType)
+        }
+        return Summary(total, total - self)
+      }
+
+      /**
+       * @return the parent of [call] as seen by bottom-up paths, or -1 if it has none. Like a
+       * [com.android.tools.profilers.cpu.VisualNodeCaptureNode], a visual root is not the parent of the nodes below it.
+       */
+      private fun CompactCaptureTree.pathParent(call: Int): Int {
+        val parent = parent(call)
+        return if (parent == 0 && hasVisualRoot) -1 else parent
+      }
+
+      /**
+       * Same as [CaptureNode.findRootNode], the last call found by following [pathParent].
+       */
+      private fun CompactCaptureTree.pathRoot(call: Int): Int {
+        var root = call
+        while (true) {
+          val parent = pathParent(root)
+          if (parent < 0) return root
+          root = parent
+        }
+      }
+
+      private fun List<CaptureNode>.overlapsWith(range: Range) = any { it.start < range.max && range.min < it.end }
+
       private fun CaptureNode.preOrderTraversal() = sequence<CaptureNode> {
         val stack = Stack<CaptureNode>().also { it.add(this@preOrderTraversal) }
         while (stack.isNotEmpty()) {
@@ -160,9 +298,44 @@ abstract class Aggregate<T: Aggregate<T>> {
       ClockType.GLOBAL -> range.getIntersectionLength(node.startGlobal.toDouble(), node.endGlobal.toDouble())
       ClockType.THREAD -> range.getIntersectionLength(node.startThread.toDouble(), node.endThread.toDouble())
     }
+
+    internal fun getIntersection(range: Range, tree: CompactCaptureTree, call: Int, type: ClockType): Double =
+      range.getIntersectionLength(tree.start(call, type).toDouble(), tree.end(call, type).toDouble())
+
+    /**
+     * @return the sum of the intersections of the children of [call] with [range].
+     */
+    internal fun getChildrenIntersection(range: Range, tree: CompactCaptureTree, call: Int, type: ClockType): Double {
+      var total = 0.0
+      var child = tree.firstChild(call)
+      while (child >= 0) {
+        total += getIntersection(range, tree, child, type)
+        child = tree.nextSibling(child)
+      }
+      return total
+    }
+
+    private fun CompactCaptureTree.overlapsWith(calls: IntArray, range: Range) = calls.any { start(it) < range.max && range.min < end(it) }
   }
 }
 
+/**
+ * Groups calls of a [CompactCaptureTree] the same way the [CaptureNode] aggregations group nodes: by model id, keeping unmatched
+ * calls apart, in order of first appearance. Each call is added with the call it is grouped by, which differ in bottom-up paths.
+ */
+private class CompactCallGroups(private val tree: CompactCaptureTree) {
+  private val groups = LinkedHashMap<Pair<Boolean, String>, Pair<IntArrayList, IntArrayList>>()
+
+  fun add(keyCall: Int, call: Int) {
+    val (keyCalls, calls) = groups.getOrPut(tree.isUnmatched(keyCall) to tree.model(keyCall).id) { IntArrayList() to IntArrayList() }
+    keyCalls.add(keyCall)
+    calls.add(call)
+  }
+
+  fun <T> map(create: (id: String, keyCalls: IntArray, calls: IntArray) -> T): List<T> =
+    groups.map { (key, lists) -> create(key.second, lists.first.toIntArray(), lists.second.toIntArray()) }
+}
+
 /**
  * List whose content is generated lazily, and whose emptiness can be checked by
  * (trusted) external knowledge without computing the content
@@ -20,6 +20,7 @@ import com.android.tools.adtui.model.AsyncUpdater
 import com.android.tools.adtui.model.Range
 import com.android.tools.perflib.vmtrace.ClockType
 import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.CompactCaptureTree
 import com.android.tools.profilers.cpu.CpuCapture
 import com.android.tools.profilers.cpu.VisualNodeCaptureNode
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel
@@ -41,24 +42,11 @@ sealed class CaptureDetails(val clockType: ClockType, val capture: CpuCapture) {
    */
   sealed class Aggregate<A: AggregateTree<A>>(clockType: ClockType,
                                               range: Range,
-                                              nodes: List<CaptureNode>,
+                                              root: A?,
                                               cpuCapture: CpuCapture,
-                                              rootNode: (CaptureNode) -> A,
                                               runModelUpdate: (Runnable) -> Unit)
     : CaptureDetails(clockType, cpuCapture) {
-    val model: CpuTreeModel<A>? = when {
-      nodes.isEmpty() -> null
-      else -> {
-        val visual = VisualNodeCaptureNode(SingleNameModel(""), clockType).apply {
-          nodes.forEach(::addChild)
-          startGlobal = nodes.minOf(CaptureNode::startGlobal)
-          endGlobal = nodes.maxOf(CaptureNode::endGlobal)
-          startThread = nodes.minOf(CaptureNode::startThread)
-          endThread = nodes.maxOf(CaptureNode::endThread)
-        }
-        CpuTreeModel(clockType, range, rootNode(visual), runModelUpdate)
-      }
-    }
+    val model: CpuTreeModel<A>? = root?.let { CpuTreeModel(clockType, range, it, runModelUpdate) }
 
     fun onRemoved() {
       model?.onDestroyed()
@@ -69,21 +57,43 @@ sealed class CaptureDetails(val clockType: ClockType, val capture: CpuCapture) {
     }
   }
 
-  class TopDown internal constructor(clockType: ClockType,
+  class TopDown private constructor(clockType: ClockType,
+                                    range: Range,
+                                    root: TopDownTree?,
+                                    cpuCapture: CpuCapture,
+                                    runModelUpdate: (Runnable) -> Unit)
+    : Aggregate<TopDownTree>(clockType, range, root, cpuCapture, runModelUpdate) {
+    internal constructor(clockType: ClockType, range: Range, nodes: List<CaptureNode>, cpuCapture: CpuCapture,
+                         runModelUpdate: (Runnable) -> Unit)
+      : this(clockType, range, visualRoot(clockType, nodes)?.let { TopDownTree.rootAt(it) }, cpuCapture, runModelUpdate)
+
+    /**
+     * Top-down of [tree], whose first node is the root of the aggregation, see [CompactCaptureTree.fromCaptureNodes].
+     */
+    internal constructor(clockType: ClockType, range: Range, tree: CompactCaptureTree, cpuCapture: CpuCapture,
+                         runModelUpdate: (Runnable) -> Unit)
+      : this(clockType, range, TopDownTree.rootAt(tree.withClockType(clockType)), cpuCapture, runModelUpdate)
+
+    override val type get() = Type.TOP_DOWN
+  }
+
+  class BottomUp private constructor(clockType: ClockType,
                                      range: Range,
-                                     nodes: List<CaptureNode>,
+                                     root: BottomUpTree?,
                                      cpuCapture: CpuCapture,
                                      runModelUpdate: (Runnable) -> Unit)
-    : Aggregate<TopDownTree>(clockType, range, nodes, cpuCapture, TopDownTree::rootAt, runModelUpdate) {
-    override val type get() = Type.TOP_DOWN
-  }
+    : Aggregate<BottomUpTree>(clockType, range, root, cpuCapture, runModelUpdate) {
+    internal constructor(clockType: ClockType, range: Range, nodes: List<CaptureNode>, cpuCapture: CpuCapture,
+                         runModelUpdate: (Runnable) -> Unit)
+      : this(clockType, range, visualRoot(clockType, nodes)?.let { BottomUpTree.rootAt(it) }, cpuCapture, runModelUpdate)
+
+    /**
+     * Bottom-up of [tree], whose first node is the root of the aggregation, see [CompactCaptureTree.fromCaptureNodes].
+     */
+    internal constructor(clockType: ClockType, range: Range, tree: CompactCaptureTree, cpuCapture: CpuCapture,
+                         runModelUpdate: (Runnable) -> Unit)
+      : this(clockType, range, BottomUpTree.rootAt(tree.withClockType(clockType)), cpuCapture, runModelUpdate)
 
-  class BottomUp internal constructor(clockType: ClockType,
-                                      range: Range,
-                                      nodes: List<CaptureNode>,
-                                      cpuCapture: CpuCapture,
-                                      runModelUpdate: (Runnable) -> Unit)
-    : Aggregate<BottomUpTree>(clockType, range, nodes, cpuCapture, BottomUpTree::rootAt, runModelUpdate) {
     override val type get() = Type.BOTTOM_UP
   }
 
@@ -93,19 +103,36 @@ sealed class CaptureDetails(val clockType: ClockType, val capture: CpuCapture) {
     override val type get() = Type.CALL_CHART
   }
 
-  class FlameChart internal constructor(clockType: ClockType,
-                                        private val selectionRange: Range,
-                                        captureNodes: List<CaptureNode>,
-                                        cpuCapture: CpuCapture,
-                                        private val runModelUpdate: (Runnable) -> Unit)
+  class FlameChart private constructor(clockType: ClockType,
+                                       private val selectionRange: Range,
+                                       /**
+                                        * Creates the root node of the chart, whose children are the aggregated nodes, and the top-down
+                                        * aggregation of that root. Returns null if there is nothing to aggregate.
+                                        */
+                                       private val createRoot: () -> Pair<CaptureNode, TopDownTree>?,
+                                       cpuCapture: CpuCapture,
+                                       private val runModelUpdate: (Runnable) -> Unit)
     : ChartDetails(clockType, cpuCapture) {
+    internal constructor(clockType: ClockType, selectionRange: Range, captureNodes: List<CaptureNode>, cpuCapture: CpuCapture,
+                         runModelUpdate: (Runnable) -> Unit)
+      : this(clockType, selectionRange, { flameChartRoot(clockType, captureNodes) }, cpuCapture, runModelUpdate)
+
+    /**
+     * Flame chart of [tree], whose first node is the root of the aggregation, see [CompactCaptureTree.fromCaptureNodes]. Only the
+     * merged nodes of the chart are created, not one per call.
+     */
+    internal constructor(clockType: ClockType, selectionRange: Range, tree: CompactCaptureTree, cpuCapture: CpuCapture,
+                         runModelUpdate: (Runnable) -> Unit)
+      : this(clockType, selectionRange,
+             { tree.withClockType(clockType).let { it.toCaptureNode(maxDepth = 1) to TopDownTree.rootAt(it) } },
+             cpuCapture, runModelUpdate)
+
     override val type get() = Type.FLAME_CHART
 
     val range: Range = Range()
     override var node: CaptureNode? = null
       private set
     val aspect: AspectModel<Aspect> = AspectModel()
-    private val captureNodes = captureNodes.sortedWith(Comparator.comparingLong(CaptureNode::startGlobal))
 
     init {
       onReattached()
@@ -116,17 +143,11 @@ sealed class CaptureDetails(val clockType: ClockType, val capture: CpuCapture) {
     }
 
     fun onReattached() {
-      if (captureNodes.isNotEmpty()) {
-        val captureNodes = captureNodes.sortedWith(Comparator.comparingLong(CaptureNode::startGlobal))
-
-        val visual = VisualNodeCaptureNode(SingleNameModel(""), clockType)
-        captureNodes.forEach(visual::addChild)
-        // This needs to be the start of the earliest node to have an accurate range for multi-selected items.
-        visual.startGlobal = captureNodes[0].startGlobal
-        visual.startThread = captureNodes[0].startThread
-
+      val root = createRoot()
+      if (root != null) {
+        val (visual, topDown) = root
         val treeRange = Range(0.0, Double.MAX_VALUE)
-        var topDownNode = CpuTreeNode.of(TopDownTree.rootAt(visual), clockType, treeRange, null)
+        var topDownNode = CpuTreeNode.of(topDown, clockType, treeRange, null)
 
         // This gets mapped to the sum of all children. This assumes that this node has 0 self time,
         // which is true because we create it.
@@ -152,7 +173,7 @@ sealed class CaptureDetails(val clockType: ClockType, val capture: CpuCapture) {
               val node = when {
                 // If the new selection range intersects the root node, we should reconstruct the flame chart node.
                 topDownNode.total > 0 -> {
-                  val start = max(topDownNode.base.nodes[0].start.toDouble(), selectionRange.min)
+                  val start = max(visual.start.toDouble(), selectionRange.min)
                   val newNode = convertToFlameChart(topDownNode, start, 0)
                   // The intersection check (root.getTotal() > 0) may be a false positive because the root's global total is the
                   // sum of all its children for the purpose of mapping a multi-node tree to flame chart space. Thus we need to look at
@@ -191,10 +212,10 @@ sealed class CaptureDetails(val clockType: ClockType, val capture: CpuCapture) {
      * are combined into one wider bar. It converts it from [TopDownNode] as it's similar to FlameChart.
      */
     private fun convertToFlameChart(topDown: CpuTreeNode<TopDownTree>, start: Double, depth: Int): CaptureNode =
-      CaptureNode(topDown.base.nodes[0].data, clockType).apply {
+      CaptureNode(topDown.base.methodModel, clockType).apply {
         assert(topDown.total > 0)
 
-        filterType = topDown.base.nodes[0].filterType
+        filterType = topDown.base.filterType
         startGlobal = start.toLong()
         startThread = start.toLong()
         // TODO: One of the numbers below is garbage
@@ -219,6 +240,40 @@ sealed class CaptureDetails(val clockType: ClockType, val capture: CpuCapture) {
     }
   }
 
+  private companion object {
+    /**
+     * The root node the aggregations of several selected nodes start from. It does not become the parent of the nodes.
+     */
+    fun visualRoot(clockType: ClockType, nodes: List<CaptureNode>): CaptureNode? = when {
+      nodes.isEmpty() -> null
+      else -> VisualNodeCaptureNode(SingleNameModel(""), clockType).apply {
+        nodes.forEach(::addChild)
+        startGlobal = nodes.minOf(CaptureNode::startGlobal)
+        endGlobal = nodes.maxOf(CaptureNode::endGlobal)
+        startThread = nodes.minOf(CaptureNode::startThread)
+        endThread = nodes.maxOf(CaptureNode::endThread)
+      }
+    }
+
+    /**
+     * Same as [visualRoot], except that the end of the root is computed from the top-down aggregation by the flame chart.
+     */
+    fun flameChartRoot(clockType: ClockType, nodes: List<CaptureNode>): Pair<CaptureNode, TopDownTree>? = when {
+      nodes.isEmpty() -> null
+      else -> {
+        val captureNodes = nodes.sortedWith(Comparator.comparingLong(CaptureNode::startGlobal))
+        val visual = VisualNodeCaptureNode(SingleNameModel(""), clockType)
+        captureNodes.forEach(visual::addChild)
+        // This needs to be the start of the earliest node to have an accurate range for multi-selected items.
+        visual.startGlobal = captureNodes[0].startGlobal
+        visual.startThread = captureNodes[0].startThread
+        visual to TopDownTree.rootAt(visual)
+      }
+    }
+
+    fun CompactCaptureTree.withClockType(clockType: ClockType) = also { it.clockType = clockType }
+  }
+
   enum class Type(val build: (ClockType, Range, List<CaptureNode>, CpuCapture, (Runnable) -> Unit) -> CaptureDetails) {
     TOP_DOWN(::TopDown),
     BOTTOM_UP(::BottomUp),
@@ -45,6 +45,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 
@@ -86,6 +87,11 @@ public class SimpleperfTraceParser implements TraceParser {
     "This imported trace supports Wall Clock Time only.<p>" +
     "To view Thread Time, take a new recording using the latest version of Android Studio.";
 
+  /**
+   * Number of records read between two checks of {@link Listener#isCancelled()}.
+   */
+  private static final int CANCELLATION_CHECK_INTERVAL = 1 << 14;
+
   /**
    * Version of the trace file to be parsed. Should be obtained from the file itself.
    */
@@ -192,8 +198,17 @@ public class SimpleperfTraceParser implements TraceParser {
 
   @Override
   public CpuCapture parse(@NotNull File trace, long traceId) throws IOException {
-    parseTraceFile(trace);
-    parseSampleData();
+    return parse(trace, traceId, Listener.NONE);
+  }
+
+  /**
+   * Samples of all threads are interleaved in simpleperf traces, so the capture range is reported once all records have been read, and
+   * each thread tree as soon as it has been built from that thread's samples.
+   */
+  @Override
+  public CpuCapture parse(@NotNull File trace, long traceId, @NotNull Listener listener) throws IOException {
+    parseTraceFile(trace, listener);
+    parseSampleData(listener);
     return new BaseCpuCapture(traceId, TraceType.SIMPLEPERF,
                               isThreadTimeSupported(), isThreadTimeSupported() ? null : DUAL_CLOCK_DISABLED_MESSAGE,
                               myCaptureRange, getCaptureTrees(), myTags);
@@ -256,6 +271,10 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   @VisibleForTesting
   void parseTraceFile(File trace) throws IOException {
+    parseTraceFile(trace, Listener.NONE);
+  }
+
+  private void parseTraceFile(File trace, @NotNull Listener listener) throws IOException {
     ByteBuffer buffer = byteBufferFromFile(trace, ByteOrder.LITTLE_ENDIAN);
     verifyMagicNumber(buffer);
     parseVersionNumber(buffer);
@@ -264,7 +283,10 @@ public class SimpleperfTraceParser implements TraceParser {
     int recordSize = buffer.getInt();
 
     // 0 is used to indicate the end of the trace
-    while (recordSize != 0) {
+    for (int recordCount = 0; recordSize != 0; recordCount++) {
+      if (recordCount % CANCELLATION_CHECK_INTERVAL == 0) {
+        checkCancelled(listener);
+      }
       // The next recordSize bytes should represent the record
       byte[] recordBytes = new byte[recordSize];
       buffer.get(recordBytes);
@@ -330,25 +352,34 @@ public class SimpleperfTraceParser implements TraceParser {
     }
   }
 
+  private static void checkCancelled(@NotNull Listener listener) {
+    if (listener.isCancelled()) {
+      throw new CancellationException("Simpleperf trace parsing was cancelled.");
+    }
+  }
+
   /**
    * Parses the data from {@link #mySamples} into a map of tid -> {@link CaptureNode}.
    */
-  private void parseSampleData() {
+  private void parseSampleData(@NotNull Listener listener) {
     if (mySamples.isEmpty()) {
       myCaptureRange.clear();
+      listener.onRangeParsed(new Range(myCaptureRange));
       return;
     }
     // Set the capture range
     long startTimestamp = mySamples.get(0).getTime();
     long endTimestamp = mySamples.get(mySamples.size() - 1).getTime();
     myCaptureRange.set(TimeUnit.NANOSECONDS.toMicros(startTimestamp), TimeUnit.NANOSECONDS.toMicros(endTimestamp));
+    listener.onRangeParsed(new Range(myCaptureRange));
 
     // Split the samples per thread.
     Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
 
     // Process the samples for each thread
     for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
+      checkCancelled(listener);
+      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue(), listener);
     }
   }
 
@@ -380,7 +411,7 @@ public class SimpleperfTraceParser implements TraceParser {
   /**
    * Parses the list of samples of a thread into a {@link CaptureNode} tree.
    */
-  private void parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples) {
+  private void parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples, @NotNull Listener listener) {
     if (threadSamples.isEmpty()) {
       getLog().warn(String.format("Warning: No samples read for thread %s (%d)", myThreads.get(threadId), threadId));
       return;
@@ -399,7 +430,8 @@ public class SimpleperfTraceParser implements TraceParser {
     SimpleperfReport.Thread thread = myThreads.get(threadId);
     CaptureNode root = createCaptureNode(new SingleNameModel(thread.getThreadName()), firstTimestamp, threadTimeNs);
     root.setDepth(0);
-    myCaptureTrees.put(new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId()), root);
+    CpuThreadInfo threadInfo = new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId());
+    myCaptureTrees.put(threadInfo, root);
 
     // Parse the first call chain so we have a value for lastCallchain
     List<SimpleperfReport.Sample.CallChainEntry> previousCallChain = Lists.reverse(threadSamples.get(0).getCallchainList());
@@ -429,6 +461,7 @@ public class SimpleperfTraceParser implements TraceParser {
     updateAncestorsEndTime(lastTimestamp, threadTimeNs, lastVisitedNode);
     // update the root timestamp
     setNodeEndTime(root, lastTimestamp, threadTimeNs);
+    listener.onThreadParsed(threadInfo, root);
   }
 
   /**
@@ -21,12 +21,14 @@ import com.android.tools.perflib.vmtrace.ClockType
 import com.android.tools.profilers.cpu.CaptureNode
 import com.android.tools.profilers.cpu.CpuThreadInfo
 import com.android.tools.profilers.cpu.ThreadState
+import com.android.tools.profilers.cpu.TraceParser
 import com.android.tools.profilers.cpu.nodemodel.SystemTraceNodeFactory
 import com.android.tools.profilers.cpu.systemtrace.CounterDataUtils.aggregateCounters
 import com.android.tools.profilers.cpu.systemtrace.CounterDataUtils.convertCounterToSeriesData
 import com.android.tools.profilers.cpu.systemtrace.CounterDataUtils.convertSeriesDataToDeltaSeries
 import com.android.tools.profilers.cpu.systemtrace.PowerRailTrackModel.Companion.isPowerRailShown
 import com.android.tools.profilers.cpu.systemtrace.PowerRailTrackModel.Companion.powerRailGroupMap
+import java.util.concurrent.CancellationException
 import java.util.concurrent.TimeUnit
 import java.util.function.UnaryOperator
 import kotlin.math.max
@@ -38,14 +40,23 @@ class SystemTraceCpuCaptureBuilder(private val model: SystemTraceModelAdapter) {
     val BLAST_BUFFER_QUEUE_COUNTER_REGEX = Regex("QueuedBuffer - .+BLAST#\\d")
   }
 
+  /**
+   * Builds the capture. Each thread's call tree is reported to [listener] as soon as it is built, before the scheduling and counter data.
+   */
+  @JvmOverloads
   fun build(traceId: Long,
             mainProcessId: Int,
-            initialViewRange: Range): SystemTraceCpuCapture {
+            initialViewRange: Range,
+            listener: TraceParser.Listener = TraceParser.Listener.NONE): SystemTraceCpuCapture {
 
     val mainProcess = model.getProcessById(mainProcessId) ?: throw IllegalArgumentException(
       "A process with the id $mainProcessId was not found while parsing the capture.")
 
     val captureTreeNodes = buildCaptureTreeNodes(mainProcess)
+    captureTreeNodes.forEach { (thread, root) -> listener.onThreadParsed(thread, root) }
+    if (listener.isCancelled) {
+      throw CancellationException()
+    }
     val threadState = buildThreadStateData(mainProcess)
     val cpuState = buildCpuStateData(mainProcess)
     val cpuCounters = buildCpuCountersData()
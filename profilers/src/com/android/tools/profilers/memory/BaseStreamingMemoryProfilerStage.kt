@@ -92,6 +92,17 @@ abstract class BaseStreamingMemoryProfilerStage(profilers: StudioProfilers,
     }
   }
 
+  private val captureLoadingProgressUpdatable = object: Updatable {
+    private var lastProgress = -1.0
+    override fun update(elapsedNs: Long) {
+      val progress = captureSelection.selectedCapture?.takeUnless { it.isDoneLoading }?.loadingProgress ?: -1.0
+      if (progress != lastProgress) {
+        lastProgress = progress
+        captureSelection.aspect.changed(CaptureSelectionAspect.CURRENT_CAPTURE_LOADING_PROGRESS)
+      }
+    }
+  }
+
   val rangeSelectionModel = RangeSelectionModel(timeline.selectionRange, timeline.viewRange).apply {
     addListener(object : RangeSelectionListener {
       override fun selectionCreated() {
@@ -118,7 +129,7 @@ abstract class BaseStreamingMemoryProfilerStage(profilers: StudioProfilers,
   private val updatables
     get() =
       listOf(detailedMemoryUsage, memoryAxis, objectsAxis, gcStatsModel, allocationSamplingRateDurations,
-             allocationSamplingRateUpdatable, captureElapsedTimeUpdatable) +
+             allocationSamplingRateUpdatable, captureElapsedTimeUpdatable, captureLoadingProgressUpdatable) +
       captureSeries
 
   val isLiveAllocationTrackingReady get() = MemoryProfiler.isUsingLiveAllocation(studioProfilers, sessionData)
@@ -276,6 +276,7 @@ enum class CaptureSelectionAspect {
   CURRENT_LOADING_CAPTURE,
   CURRENT_LOADED_CAPTURE,
   CURRENT_CAPTURE_ELAPSED_TIME,
+  CURRENT_CAPTURE_LOADING_PROGRESS,
   CURRENT_HEAP,
   CURRENT_HEAP_UPDATING,
   CURRENT_HEAP_UPDATED,
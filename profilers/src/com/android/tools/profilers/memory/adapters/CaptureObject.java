@@ -188,6 +188,13 @@ public interface CaptureObject extends MemoryObject {
 
   boolean isDoneLoading();
 
+  /**
+   * @return how much of the capture has been loaded so far, from 0 to 1, or a negative value if the capture doesn't report its progress.
+   */
+  default double getLoadingProgress() {
+    return -1;
+  }
+
   boolean isError();
 
   void unload();
@@ -20,10 +20,13 @@ package com.android.tools.profilers.memory.adapters
 import com.android.tools.adtui.model.Range
 import com.android.tools.idea.protobuf.ByteString
 import com.android.tools.perflib.heap.ClassObj
+import com.android.tools.perflib.heap.Heap
 import com.android.tools.perflib.heap.Instance
 import com.android.tools.perflib.heap.Snapshot
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor
+import com.android.tools.perflib.heap.io.HprofBuffer
 import com.android.tools.perflib.heap.io.InMemoryBuffer
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer
 import com.android.tools.profiler.proto.Common
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo
 import com.android.tools.profiler.proto.Transport
@@ -50,11 +53,22 @@ import com.google.common.util.concurrent.ListenableFuture
 import com.google.common.util.concurrent.MoreExecutors
 import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.google.wireless.android.sdk.stats.AndroidProfilerEvent.Loading
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.diagnostic.debug
+import com.intellij.openapi.util.io.FileUtil
 import gnu.trove.TObjectProcedure
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import java.io.File
+import java.io.FileOutputStream
 import java.io.OutputStream
+import java.util.Collections
+import java.util.EnumMap
+import java.util.concurrent.Callable
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.stream.Collectors
 import java.util.stream.Stream
 
@@ -75,6 +89,47 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
 
   @Volatile
   private var isLoadingError = false
+
+  /**
+   * How much of the heap dump has been loaded, from 0 to 1.
+   */
+  @Volatile
+  private var loadingProgress = 0.0
+
+  private val phaseTimesNs: MutableMap<LoadingPhase, Long> = Collections.synchronizedMap(EnumMap(LoadingPhase::class.java))
+
+  /**
+   * Time spent in each phase of the last load, in nanoseconds. Logged at debug level and by the loading benchmark.
+   */
+  @get:VisibleForTesting
+  val loadingPhaseTimesNs: Map<LoadingPhase, Long> get() = synchronized(phaseTimesNs) { phaseTimesNs.toMap() }
+
+  /**
+   * Number of threads that create and classify the instance objects when loading in parallel.
+   */
+  @VisibleForTesting
+  var loadingParallelism = Runtime.getRuntime().availableProcessors()
+
+  /**
+   * Number of instances each thread creates at a time when loading in parallel.
+   */
+  @VisibleForTesting
+  var loadingPartitionSize = DEFAULT_PARTITION_SIZE
+
+  /**
+   * The temp file the heap dump is memory-mapped from, if any. The snapshot reads instance values from it lazily, so it is only deleted
+   * when the capture is unloaded. Guarded by `this`, along with [isUnloaded].
+   */
+  @get:VisibleForTesting
+  var heapDumpFile: File? = null
+    private set
+  private var isUnloaded = false
+
+  /**
+   * Retained sizes and depths of the instances, when computed by [HeapDominatorTree] instead of by the perflib snapshot.
+   */
+  private var dominatorTree: HeapDominatorTree? = null
+
   var hasNativeAllocations = false
     private set
   private val activityFragmentLeakFilter = ActivityFragmentLeakInstanceFilter(classDb)
@@ -104,22 +159,61 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
   override fun getClassDatabase() = classDb
   override fun getSession() = _session
 
-  override fun load(queryRange: Range?, queryJoiner: Executor?) = doGetBytesRequest().let { response ->
-    if (response.contents === ByteString.EMPTY) false.also { isLoadingError = true }
-    else true.also {
-      ideProfilerServices.featureTracker.trackLoading(Loading.Type.HPROF,
-                                                      sizeKb = countBytes() / 1024,
-                                                      measure = { instanceIndex.size.toLong() }) {
-        load(InMemoryBuffer(response.contents.asReadOnlyByteBuffer()))
+  override fun load(queryRange: Range?, queryJoiner: Executor?): Boolean {
+    val (buffer, sizeKb) = fetchHeapDump() ?: return false.also { isLoadingError = true }
+    ideProfilerServices.featureTracker.trackLoading(Loading.Type.HPROF, sizeKb = sizeKb, measure = { instanceIndex.size.toLong() }) {
+      load(buffer)
+    }
+    return true
+  }
+
+  /**
+   * Fetches the heap dump, and returns a buffer to parse it from along with its size in KB, or null if it is empty.
+   *
+   * When memory-mapped loading is enabled, the dump is written to a temp file that is mapped instead of kept on-heap, so only the
+   * snapshot's indexes need heap space while parsing. The transferred bytes become unreachable as soon as this returns.
+   *
+   * The transport only serves the dump as a single `GetBytes` response, so the whole dump is still on the heap once while it is
+   * fetched and written out. Streaming it to the file in chunks needs a chunked transfer from the transport first.
+   */
+  private fun fetchHeapDump(): Pair<HprofBuffer, Int>? {
+    val response = doGetBytesRequest()
+    if (response.contents === ByteString.EMPTY) {
+      return null
+    }
+    val sizeKb = response.serializedSize / 1024
+    if (!ideProfilerServices.featureConfig.isMemoryMappedHeapDumpLoadingEnabled) {
+      return InMemoryBuffer(response.contents.asReadOnlyByteBuffer()) to sizeKb
+    }
+    val file = FileUtil.createTempFile("heapdump_${heapDumpInfo.startTime}", ".hprof", true)
+    FileOutputStream(file).use { response.contents.writeTo(it) }
+    synchronized(this) {
+      if (isUnloaded) {
+        FileUtil.delete(file)
+        return null
       }
+      heapDumpFile = file
     }
+    return MemoryMappedFileBuffer(file) to sizeKb
   }
 
   @VisibleForTesting
-  fun load(buffer: InMemoryBuffer) {
+  fun load(buffer: HprofBuffer) {
+    phaseTimesNs.clear()
+    loadingProgress = 0.0
     val nativeRegistryPostProcessor = NativeRegistryPostProcessor()
-    val snapshot = Snapshot.createSnapshot(buffer, proguardMap ?: ProguardMap(), listOf(nativeRegistryPostProcessor))
-    snapshot.computeRetainedSizes()
+    val snapshot = timePhase(LoadingPhase.PARSE) {
+      Snapshot.createSnapshot(buffer, proguardMap ?: ProguardMap(), listOf(nativeRegistryPostProcessor))
+    }
+    timePhase(LoadingPhase.RETAINED_SIZES) {
+      if (ideProfilerServices.featureConfig.isHeapDumpDominatorTreeEnabled) {
+        // Keep the reference graph off-heap along with the dump it was read from.
+        dominatorTree = HeapDominatorTree.compute(snapshot, ideProfilerServices.featureConfig.isMemoryMappedHeapDumpLoadingEnabled)
+      }
+      else {
+        snapshot.computeRetainedSizes()
+      }
+    }
     hasNativeAllocations = nativeRegistryPostProcessor.hasNativeAllocations
     hasLoaded = true
     val javaLangClassObject = snapshot.heaps.stream()
@@ -127,38 +221,142 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
       .map { createClassObjectInstance(null, it) }
       .findAny().orElse(null)
     val heapSetMappings = snapshot.heaps.associateWith { HeapSet(this, it.name, it.id) }
-    val addInstanceToRightHeap: (HeapSet, Long, InstanceObject) -> Unit =
-      AllHeapSet(this, heapSetMappings.values.toTypedArray()).let { superHeap ->
-        superHeap.clearClassifierSets() // forces sub-classifier creation
-        _heapSets[superHeap.id] = superHeap
-        { _, id, classInst -> addInstance(superHeap, id, classInst) }
+    val superHeap = AllHeapSet(this, heapSetMappings.values.toTypedArray()).also {
+      it.clearClassifierSets() // forces sub-classifier creation
+      _heapSets[it.id] = it
+    }
+    if (ideProfilerServices.featureConfig.isParallelHeapDumpLoadingEnabled) {
+      loadInParallel(heapSetMappings.keys.toList(), javaLangClassObject, superHeap)
+    }
+    else {
+      // Index and classify the instances in a single pass.
+      timePhase(LoadingPhase.INDEX) {
+        heapSetMappings.keys.forEachIndexed { heapIndex, heap ->
+          heap.classes.forEach { addInstance(superHeap, it.id, createClassObjectInstance(javaLangClassObject, it)) }
+          heap.forEachInstance(object : TObjectProcedure<Instance> {
+            override fun execute(instance: Instance): Boolean {
+              assert(ClassDb.JAVA_LANG_CLASS != instance.classObj!!.className)
+              val classEntry = instance.classObj!!.makeEntry()
+              addInstance(superHeap, instance.id, HeapDumpInstanceObject(this@HeapDumpCaptureObject, instance, classEntry, null))
+              return true
+            }
+          })
+          updateProgress(LoadingPhase.INDEX, heapIndex + 1, heapSetMappings.size)
+        }
       }
+    }
     heapSetMappings.forEach { (heap, heapSet) ->
-      heap.classes.forEach { addInstanceToRightHeap(heapSet, it.id, createClassObjectInstance(javaLangClassObject, it)) }
-      heap.forEachInstance(object : TObjectProcedure<Instance> {
-        override fun execute(instance: Instance): Boolean {
-          assert(ClassDb.JAVA_LANG_CLASS != instance.classObj!!.className)
-          val classEntry = instance.classObj!!.makeEntry()
-          addInstanceToRightHeap(heapSet, instance.id, HeapDumpInstanceObject(this@HeapDumpCaptureObject, instance, classEntry, null))
-          return true
-        }
-      })
       if ("default" != heap.name || snapshot.heaps.size == 1 || heap.instancesCount > 0) {
         _heapSets.put(heap.id, heapSet)
       }
     }
+    loadingProgress = 1.0
+    LOG.debug { "Loaded ${instanceIndex.size} instances, phase times (ns): $loadingPhaseTimesNs" }
+  }
+
+  /**
+   * Creates the [InstanceObject]s of all heaps on a [ForkJoinPool], then adds them to [superHeap].
+   *
+   * Each heap's instances are streamed into partitions of [loadingPartitionSize], and every partition creates its instance objects
+   * as soon as it is full. The heap sets and their class sets are then filled concurrently, each with its instances in heap order, as
+   * if they were loaded one by one.
+   */
+  private fun loadInParallel(heaps: List<Heap>, javaLangClassObject: InstanceObject?, superHeap: AllHeapSet) {
+    val pool = ForkJoinPool(loadingParallelism)
+    try {
+      val partitionsByHeap = timePhase(LoadingPhase.INDEX) {
+        // Classes are few compared to instances. Register them up front, so the workers only read the class database.
+        val classEntries = Long2ObjectOpenHashMap<ClassDb.ClassEntry>()
+        heaps.forEach { heap -> heap.classes.forEach { classEntries.put(it.id, it.makeEntry()) } }
+
+        val totalInstances = heaps.sumOf { it.instancesCount }
+        val createdInstances = AtomicInteger()
+        fun createInstanceObjects(instances: List<Instance>) = pool.submit(Callable {
+          instances.map { instance ->
+            val classObj = instance.classObj!!
+            assert(ClassDb.JAVA_LANG_CLASS != classObj.className)
+            val classEntry = classEntries.get(classObj.id) ?: synchronized(classDb) { classObj.makeEntry() }
+            HeapDumpInstanceObject(this@HeapDumpCaptureObject, instance, classEntry, null)
+          }.also { updateProgress(LoadingPhase.INDEX, createdInstances.addAndGet(it.size), totalInstances) }
+        })
+
+        heaps.map { heap ->
+          val partitions = ArrayList<Future<List<HeapDumpInstanceObject>>>()
+          var instances = ArrayList<Instance>(loadingPartitionSize)
+          heap.forEachInstance { instance ->
+            instances.add(instance)
+            if (instances.size == loadingPartitionSize) {
+              partitions.add(createInstanceObjects(instances))
+              instances = ArrayList(loadingPartitionSize)
+            }
+            true
+          }
+          if (instances.isNotEmpty()) {
+            partitions.add(createInstanceObjects(instances))
+          }
+          partitions
+        }.map { partitions -> partitions.map { it.get() } }
+      }
+
+      timePhase(LoadingPhase.CLASSIFY) {
+        val groups = ArrayList<List<InstanceObject>>()
+        heaps.forEachIndexed { heapIndex, heap ->
+          val classObjects = heap.classes.map { classObj ->
+            createClassObjectInstance(javaLangClassObject, classObj).also { indexInstance(classObj.id, it) }
+          }
+          groups.add(classObjects)
+          partitionsByHeap[heapIndex].forEach { partition ->
+            partition.forEach { indexInstance(it.instanceId, it) }
+            groups.add(partition)
+          }
+        }
+        val totalInstances = groups.sumOf { it.size }
+        val classifiedInstances = AtomicInteger()
+        superHeap.addNewDeltaInstanceObjects(groups, pool) {
+          updateProgress(LoadingPhase.CLASSIFY, classifiedInstances.addAndGet(it), totalInstances)
+        }
+      }
+    }
+    finally {
+      pool.shutdown()
+    }
   }
 
   private fun addInstance(heapSet: HeapSet, id: Long, instObj: InstanceObject) {
+    indexInstance(id, instObj)
+    heapSet.addDeltaInstanceObject(instObj)
+  }
+
+  private fun indexInstance(id: Long, instObj: InstanceObject) {
     assert(!instanceIndex.containsKey(id))
     instanceIndex.put(id, instObj)
-    heapSet.addDeltaInstanceObject(instObj)
   }
 
+  private inline fun <A> timePhase(phase: LoadingPhase, run: () -> A): A {
+    val startNs = System.nanoTime()
+    return run().also {
+      phaseTimesNs[phase] = System.nanoTime() - startNs
+      loadingProgress = phase.endProgress
+    }
+  }
+
+  private fun updateProgress(phase: LoadingPhase, done: Int, total: Int) {
+    loadingProgress = phase.startProgress + (phase.endProgress - phase.startProgress) * done / total
+  }
+
+  override fun getLoadingProgress() = loadingProgress
   override fun isDoneLoading() = hasLoaded || isLoadingError
   override fun isError() = isLoadingError
   override fun unload() {
     executorService.shutdownNow()
+    // A load still in progress, a filter task that ignores the interrupt, or an instance still shown in the UI may read from the
+    // mapping, so it isn't disposed here: unmapping it under them would crash the JVM. The mapping is released once the snapshot is
+    // garbage collected. The file can be deleted while mapped, except on Windows, where it is deleted on exit instead.
+    synchronized(this) {
+      isUnloaded = true
+      heapDumpFile?.let { FileUtil.delete(it) }
+      heapDumpFile = null
+    }
   }
 
   override fun getClassifierAttributes() =
@@ -172,6 +370,9 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
     else listOf(InstanceAttribute.LABEL, InstanceAttribute.DEPTH, InstanceAttribute.SHALLOW_SIZE, InstanceAttribute.RETAINED_SIZE)
   open fun findInstanceObject(instance: Instance) = if (hasLoaded) instanceIndex.get(instance.id) else null
 
+  fun getRetainedSize(instance: Instance) = dominatorTree?.getRetainedSize(instance) ?: instance.totalRetainedSize
+  fun getDepth(instance: Instance) = dominatorTree?.getDepth(instance) ?: instance.distanceToGcRoot
+
   fun createClassObjectInstance(javaLangClass: InstanceObject?, classObj: ClassObj): InstanceObject {
     val classEntry = classObj.makeEntry(if (javaLangClass == null) ClassDb.JAVA_LANG_CLASS else classObj.className)
     // Handle java.lang.Class which is a special case. All its instances are other classes, so wee need to create an InstanceObject for it
@@ -238,6 +439,27 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
   private fun countBytes() = doGetBytesRequest().serializedSize
 
   private fun ClassObj.makeEntry(name: String = this.className) =
-    if (superClassObj != null) classDb.registerClass(id, superClassObj!!.id, name, totalRetainedSize)
-    else classDb.registerClass(id, name, totalRetainedSize)
+    (dominatorTree?.getClassRetainedSize(id) ?: totalRetainedSize).let { retainedSize ->
+      if (superClassObj != null) classDb.registerClass(id, superClassObj!!.id, name, retainedSize)
+      else classDb.registerClass(id, name, retainedSize)
+    }
+
+  /**
+   * Phases of loading a heap dump, in order, with the progress reached at the end of each.
+   */
+  enum class LoadingPhase(val endProgress: Double) {
+    PARSE(0.3),
+    RETAINED_SIZES(0.6),
+    INDEX(0.8),
+    CLASSIFY(1.0);
+
+    val startProgress get() = values().getOrNull(ordinal - 1)?.endProgress ?: 0.0
+  }
+
+  companion object {
+    private val LOG: Logger
+      get() = Logger.getInstance(HeapDumpCaptureObject::class.java)
+
+    private const val DEFAULT_PARTITION_SIZE = 1 shl 16
+  }
 }
\ No newline at end of file
@@ -94,8 +94,8 @@ final class HeapDumpFieldObject implements FieldObject {
 
         myNativeSize = instance.getNativeSize();
         myShallowSize = instance.getSize();
-        myRetainedSize = instance.getTotalRetainedSize();
-        myDepth = instance.getDistanceToGcRoot();
+        myRetainedSize = captureObject.getRetainedSize(instance);
+        myDepth = captureObject.getDepth(instance);
       }
     }
     else {
@@ -104,7 +104,7 @@ final class HeapDumpFieldObject implements FieldObject {
       myNativeSize = 0;
       myShallowSize = type.getSize();
       myRetainedSize = type.getSize();
-      myDepth = parentInstance.getDistanceToGcRoot();
+      myDepth = captureObject.getDepth(parentInstance);
     }
 
     myHashCode = Arrays.hashCode(new Object[]{myInstanceObject, getFieldName(), getValueType(), myField.getValue()});
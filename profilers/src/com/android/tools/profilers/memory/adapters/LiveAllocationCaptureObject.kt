@@ -108,6 +108,48 @@ class LiveAllocationCaptureObject(private val client: ProfilerClient,
         .apply { updateSeenTimestamp(Memory.BatchJNIGlobalRefEvent::getTimestamp) }
   }
 
+  private val checkpointsEnabled = stage.studioProfilers.ideServices.featureConfig.isLiveAllocationCheckpointsEnabled
+
+  private val allocationCheckpoints = if (!checkpointsEnabled) null else LiveEventCheckpointIndex<AllocationEvent, Int>(
+    session.startTimestamp,
+    AllocationEvent::getTimestamp,
+    { event ->
+      when (event.eventCase) {
+        AllocationEvent.EventCase.ALLOC_DATA -> event.allocData.tag
+        AllocationEvent.EventCase.FREE_DATA -> event.freeData.tag
+        else -> null
+      }
+    },
+    { event -> event.eventCase == AllocationEvent.EventCase.FREE_DATA },
+    allocationEventAdapter::getEvents,
+    ::lastSeenTimestampNs)
+
+  private val jniReferenceCheckpoints = if (!checkpointsEnabled) null else LiveEventCheckpointIndex<JNIGlobalReferenceEvent, Long>(
+    session.startTimestamp,
+    JNIGlobalReferenceEvent::getTimestamp,
+    { event ->
+      when (event.eventType) {
+        JNIGlobalReferenceEvent.Type.CREATE_GLOBAL_REF, JNIGlobalReferenceEvent.Type.DELETE_GLOBAL_REF -> event.refValue
+        else -> null
+      }
+    },
+    { event -> event.eventType == JNIGlobalReferenceEvent.Type.DELETE_GLOBAL_REF },
+    jniReferenceEventAdapter::getEvents,
+    ::lastSeenTimestampNs)
+
+  /**
+   * Timing of the latest range query, to verify that loading a range doesn't get slower as the session gets longer.
+   */
+  @Volatile
+  var lastRangeQueryTiming: RangeQueryTiming? = null
+    private set
+
+  @VisibleForTesting
+  fun setMinCheckpointSpacing(eventCount: Int) {
+    allocationCheckpoints?.minCheckpointSpacing = eventCount
+    jniReferenceCheckpoints?.minCheckpointSpacing = eventCount
+  }
+
   override fun getSession() = session
   override fun getName() = "Live Allocation"
   override fun getExportableExtension() = null
@@ -192,6 +234,7 @@ class LiveAllocationCaptureObject(private val client: ProfilerClient,
       }
       currentTask?.cancel(false)
       currentTask = executorService!!.submit<Any?> {
+        val queryStartNs = System.nanoTime()
         val newStartTimeNs = TimeUnit.MICROSECONDS.toNanos(queryRange.min.toLong())
         val newEndTimeNs = TimeUnit.MICROSECONDS.toNanos(queryRange.max.toLong())
         if (newStartTimeNs == previousQueryStartTimeNs && newEndTimeNs == previousQueryEndTimeNs) {
@@ -221,11 +264,17 @@ class LiveAllocationCaptureObject(private val client: ProfilerClient,
 
         // Clear and recreate the instance/heap sets if previous range does not intersect with the new one
         val clear = previousQueryEndTimeNs <= newStartTimeNs || newEndTimeNs <= previousQueryStartTimeNs
+        var snapshotEventCount = 0
         if (clear) {
           instanceMap.clear()
           // If we are resetting, then first establish the object snapshot at the query range's start point.
-          queryJavaInstanceSnapshot(newStartTimeNs, snapshotList)
-          queryJniReferencesSnapshot(newStartTimeNs, snapshotList)
+          snapshotEventCount =
+            if (allocationCheckpoints != null && jniReferenceCheckpoints != null) {
+              queryCheckpointedSnapshot(newStartTimeNs, allocationCheckpoints, jniReferenceCheckpoints, snapshotList)
+            }
+            else {
+              queryJavaInstanceSnapshot(newStartTimeNs, snapshotList) + queryJniReferencesSnapshot(newStartTimeNs, snapshotList)
+            }
 
           // Update the delta allocations and deallocations within the selection range on the snapshot.
           queryDelta(newStartTimeNs, newEndTimeNs, deltaAllocationList, deltaFreeList, false)
@@ -274,6 +323,9 @@ class LiveAllocationCaptureObject(private val client: ProfilerClient,
         // last sample we have seen. Set the last query timestamp to the last sample's timestmap, so that next time we will requery
         // the range between (last-seen sample, newEndTimeNs).
         previousQueryEndTimeNs = min(newEndTimeNs, lastSeenTimestampNs)
+        lastRangeQueryTiming = RangeQueryTiming(newStartTimeNs, newEndTimeNs, snapshotEventCount, System.nanoTime() - queryStartNs).also {
+          logger.debug("Loaded live allocations of $newStartTimeNs..$newEndTimeNs: $it")
+        }
         val selection = stage.captureSelection
         joiner.execute {
           selection.aspect.changed(CaptureSelectionAspect.CURRENT_HEAP_UPDATED)
@@ -340,7 +392,7 @@ class LiveAllocationCaptureObject(private val client: ProfilerClient,
       }
     }
 
-  private fun queryJniReferencesSnapshot(snapshotTimeNs: Long, snapshotList: MutableList<InstanceObject>) {
+  private fun queryJniReferencesSnapshot(snapshotTimeNs: Long, snapshotList: MutableList<InstanceObject>) =
     querySnapshot(snapshotTimeNs, snapshotList, jniReferenceEventAdapter) { event, instanceMap ->
       when (event.eventType) {
         JNIGlobalReferenceEvent.Type.CREATE_GLOBAL_REF -> {
@@ -361,20 +413,54 @@ class LiveAllocationCaptureObject(private val client: ProfilerClient,
         else -> { }
       }
     }
-  }
 
+  /**
+   * @return the number of events replayed to establish the snapshot.
+   */
   private fun<E> querySnapshot(snapshotTimeNs: Long, snapshotList: MutableList<InstanceObject>,
-                               eventAdapter: EventAdapter<*, E>, handleEvent: (E, MutableMap<Any, InstanceObject>) -> Unit) {
+                               eventAdapter: EventAdapter<*, E>, handleEvent: (E, MutableMap<Any, InstanceObject>) -> Unit): Int {
     val instanceMap = LinkedHashMap<Any, InstanceObject>()
+    var eventCount = 0
     // Retrieve all the event samples from the start of the session until the snapshot time.
     eventAdapter.forEachEventStream(session.startTimestamp, snapshotTimeNs) { eventStream ->
       // Only consider events up to but excluding the snapshot time.
       eventStream
         .filter { eventAdapter.getTimestamp(it) < snapshotTimeNs }
         .sorted(Comparator.comparingLong(eventAdapter::getTimestamp))
-        .forEach { handleEvent(it, instanceMap) }
+        .forEach {
+          handleEvent(it, instanceMap)
+          eventCount++
+        }
     }
     snapshotList.addAll(instanceMap.values)
+    return eventCount
+  }
+
+  /**
+   * Same as [queryJavaInstanceSnapshot] followed by [queryJniReferencesSnapshot], but only replays the events since the nearest
+   * checkpoints before |snapshotTimeNs|. JNI references are resolved after all the Java instances, so references to instances that were
+   * freed before the snapshot time are dropped the same way.
+   *
+   * @return the number of events replayed to establish the snapshot.
+   */
+  private fun queryCheckpointedSnapshot(snapshotTimeNs: Long,
+                                        allocations: LiveEventCheckpointIndex<AllocationEvent, Int>,
+                                        jniReferences: LiveEventCheckpointIndex<JNIGlobalReferenceEvent, Long>,
+                                        snapshotList: MutableList<InstanceObject>): Int {
+    val liveAllocations = allocations.query(snapshotTimeNs)
+    for (event in liveAllocations.liveEvents) {
+      val instance = event.allocData.getOrCreateInstanceObject()
+      instance.setAllocationTime(event.timestamp)
+      snapshotList.add(instance)
+    }
+    val liveReferences = jniReferences.query(snapshotTimeNs)
+    for (event in liveReferences.liveEvents) {
+      event.getOrCreateJniRefObject()?.let { refObject ->
+        refObject.setAllocEvent(event)
+        snapshotList.add(refObject)
+      }
+    }
+    return liveAllocations.replayedEventCount + liveReferences.replayedEventCount
   }
 
   /**
@@ -476,22 +562,34 @@ class LiveAllocationCaptureObject(private val client: ProfilerClient,
   fun resolveNativeBacktrace(backtrace: NativeBacktrace?): NativeCallStack = when {
     backtrace == null || backtrace.addressesCount == 0 -> NativeCallStack.getDefaultInstance()
     else -> NativeCallStack.newBuilder().let { builder ->
+      symbolizeNativeFrames(backtrace.addressesList.filterTo(LinkedHashSet()) { !nativeFrameMap.containsKey(it) })
       for (address in backtrace.addressesList) {
-        if (!nativeFrameMap.containsKey(address)) {
-          val (module, offset) = getRegionByAddress(address)?.let {
-            Pair(it.name, it.fileOffset + (address - it.startAddress)) // Adjust address to represent module offset.
-          } ?: Pair("", 0L)
-          val unsymbolizedFrame = NativeFrame.newBuilder().setAddress(address).setModuleName(module).setModuleOffset(offset).build()
-          val symbolizedFrame = stage.studioProfilers.ideServices.nativeFrameSymbolizer
-            .symbolize(stage.studioProfilers.sessionsManager.selectedSessionMetaData.processAbi, unsymbolizedFrame)
-          nativeFrameMap.put(address, symbolizedFrame)
-        }
         builder.addFrames(nativeFrameMap[address])
       }
       builder.build()
     }
   }
 
+  /**
+   * Symbolizes the frames of the [addresses] in one batch, rather than one frame at a time, and adds them to the [nativeFrameMap].
+   */
+  private fun symbolizeNativeFrames(addresses: Collection<Long>) {
+    if (addresses.isEmpty()) {
+      return
+    }
+    val unsymbolizedFrames = addresses.map { address ->
+      val (module, offset) = getRegionByAddress(address)?.let {
+        Pair(it.name, it.fileOffset + (address - it.startAddress)) // Adjust address to represent module offset.
+      } ?: Pair("", 0L)
+      NativeFrame.newBuilder().setAddress(address).setModuleName(module).setModuleOffset(offset).build()
+    }
+    val symbolizedFrames = stage.studioProfilers.ideServices.nativeFrameSymbolizer
+      .symbolizeAll(stage.studioProfilers.sessionsManager.selectedSessionMetaData.processAbi, unsymbolizedFrames)
+    unsymbolizedFrames.zip(symbolizedFrames).forEach { (unsymbolizedFrame, symbolizedFrame) ->
+      nativeFrameMap.put(unsymbolizedFrame.address, symbolizedFrame)
+    }
+  }
+
   private fun getRegionByAddress(address: Long) = jniMemoryRegionMap.floorEntry(address)?.let { entry ->
     val region = entry.value
     if (address in region.startAddress until region.endAddress) region else null
@@ -537,11 +635,19 @@ class LiveAllocationCaptureObject(private val client: ProfilerClient,
     const val SAMPLING_INFO_MESSAGE = "Selected region does not have full tracking. Data may be inaccurate."
   }
 
+  /**
+   * @param snapshotEventCount the number of events replayed to establish the live instances at the start of the range, or 0 if the range
+   * overlapped the previous one, in which case only the events at its edges were queried.
+   * @param elapsedNs the time spent querying and processing events, not including updating the heap sets.
+   */
+  data class RangeQueryTiming(val startTimeNs: Long, val endTimeNs: Long, val snapshotEventCount: Int, val elapsedNs: Long)
+
   private interface EventAdapter<B,E> {
     fun getTimestamp(event: E): Long
     fun getEventList(batch: B): List<E>
     fun getBatchEvents(startTimeNs: Long, endTimeNs: Long): List<B>
     fun forEachEventStream(startTimeNs: Long, endTimeNs: Long, handle: (Stream<E>) -> Unit) =
       getBatchEvents(startTimeNs, endTimeNs).forEach { handle(getEventList(it).stream()) }
+    fun getEvents(startTimeNs: Long, endTimeNs: Long): List<E> = getBatchEvents(startTimeNs, endTimeNs).flatMap(::getEventList)
   }
 }
\ No newline at end of file
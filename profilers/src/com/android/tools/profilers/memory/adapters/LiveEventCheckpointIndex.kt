@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters
+
+import com.google.common.annotations.VisibleForTesting
+import java.util.TreeMap
+import kotlin.math.max
+
+/**
+ * Finds the events that are live at a point in time of a session, e.g. the allocations that have not been freed yet, from checkpoints
+ * of that live set. Only the events since the nearest earlier checkpoint are replayed, instead of every event since the start of the
+ * session.
+ *
+ * Checkpoints are taken while replaying, whenever at least [minCheckpointSpacing] events, and no fewer than the size of the live set, were
+ * applied since the previous one. This keeps the memory held by checkpoints on the order of the number of events replayed. Checkpoints are
+ * never taken past [getCompleteUntilNs], as events before that time may still be arriving.
+ *
+ * @param getKey the key of the object created or released by an event, or null if the event should be ignored.
+ * @param isRelease whether an event releases the object of its key, rather than creating it.
+ * @param getEvents the events within a time range. Events outside of it are filtered out.
+ */
+internal class LiveEventCheckpointIndex<E, K : Any>(private val startTimeNs: Long,
+                                                    private val getTimestamp: (E) -> Long,
+                                                    private val getKey: (E) -> K?,
+                                                    private val isRelease: (E) -> Boolean,
+                                                    private val getEvents: (Long, Long) -> List<E>,
+                                                    private val getCompleteUntilNs: () -> Long) {
+  private val checkpoints = TreeMap<Long, List<E>>()
+
+  @VisibleForTesting
+  var minCheckpointSpacing = DEFAULT_MIN_CHECKPOINT_SPACING
+
+  val checkpointCount get() = checkpoints.size
+
+  /**
+   * @return the events creating objects that are still live right before [timeNs], in the order they happened.
+   */
+  fun query(timeNs: Long): Result<E> {
+    val checkpoint = checkpoints.floorEntry(timeNs)
+    val live = LinkedHashMap<K, E>()
+    checkpoint?.value?.forEach { live[getKey(it)!!] = it }
+    if (checkpoint?.key == timeNs) {
+      return Result(live.values, timeNs, 0)
+    }
+
+    val minTimeNs = checkpoint?.key ?: Long.MIN_VALUE
+    val events = getEvents(checkpoint?.key ?: startTimeNs, timeNs)
+      .filter { getTimestamp(it) in minTimeNs until timeNs }
+      .sortedBy(getTimestamp)
+    val completeUntilNs = getCompleteUntilNs()
+    var replayedCount = 0
+    var sinceCheckpointCount = 0
+    var previousTimestamp = Long.MIN_VALUE
+    for (event in events) {
+      val key = getKey(event) ?: continue
+      val timestamp = getTimestamp(event)
+      // A checkpoint at a timestamp holds the events strictly before it, so it can't be taken between events of the same timestamp.
+      if (timestamp > previousTimestamp && timestamp <= completeUntilNs && sinceCheckpointCount >= max(minCheckpointSpacing, live.size)) {
+        checkpoints[timestamp] = ArrayList(live.values)
+        sinceCheckpointCount = 0
+      }
+      if (isRelease(event)) live.remove(key) else live[key] = event
+      previousTimestamp = timestamp
+      replayedCount++
+      sinceCheckpointCount++
+    }
+    return Result(live.values, checkpoint?.key ?: startTimeNs, replayedCount)
+  }
+
+  /**
+   * @param checkpointTimeNs the time of the checkpoint the query started from, or the start of the session if there was none.
+   * @param replayedEventCount the number of events applied on top of the checkpoint.
+   */
+  class Result<E>(val liveEvents: Collection<E>, val checkpointTimeNs: Long, val replayedEventCount: Int)
+
+  companion object {
+    const val DEFAULT_MIN_CHECKPOINT_SPACING = 10_000
+  }
+}
@@ -23,6 +23,8 @@ import com.android.tools.profilers.memory.adapters.instancefilters.CaptureObject
 import java.util.Collections
 import java.util.IdentityHashMap
 import java.util.Objects
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
 import java.util.stream.Stream
 import kotlin.math.min
 
@@ -269,30 +271,115 @@ abstract class ClassifierSet(supplyName: () -> String) : MemoryObject {
     }
 
     if (change.countsChanged) {
-      if (isAllocation) {
-        deltaAllocationCount += op.countChange * instanceObject.instanceCount
-        allocationSize += (op.countChange * instanceObject.shallowSize).toLong()
-      } else {
-        deltaDeallocationCount += op.countChange * instanceObject.instanceCount
-        deallocationSize += (op.countChange * instanceObject.shallowSize).toLong()
+      changeDeltaCounts(instanceObject, isAllocation, op, change.instanceChanged)
+    }
+    return change
+  }
+
+  private fun changeDeltaCounts(instanceObject: InstanceObject, isAllocation: Boolean, op: SetOperation, instanceChanged: Boolean) {
+    if (isAllocation) {
+      deltaAllocationCount += op.countChange * instanceObject.instanceCount
+      allocationSize += (op.countChange * instanceObject.shallowSize).toLong()
+    } else {
+      deltaDeallocationCount += op.countChange * instanceObject.instanceCount
+      deallocationSize += (op.countChange * instanceObject.shallowSize).toLong()
+    }
+    val factor = op.countChange * if (isAllocation) 1 else -1
+    val deltaNativeSize = factor * instanceObject.nativeSize.validOrZero()
+    val deltaShallowSize = factor * instanceObject.shallowSize.toLong().validOrZero()
+    totalNativeSize += deltaNativeSize
+    this.deltaShallowSize += deltaShallowSize
+    totalShallowSize += deltaShallowSize
+    invalidateRetainedSizeCache()
+    if (instanceChanged && !instanceObject.isCallStackEmpty) {
+      instancesWithStackInfoCount += op.countChange
+      needsRefiltering = true
+    }
+    if (instanceChanged) {
+      instanceFilterMatchCounter.invalidate()
+    }
+  }
+
+  /**
+   * Same as calling [addDeltaInstanceObject] on every instance of [groups], none of which may be in this set yet, but fills the child
+   * sets concurrently on [pool], all the way down to the leaf sets. Each child set is filled by a single task, in the order of [groups],
+   * so it ends up with the same instances in the same order as when they are added one by one. This set's own counts are summed from
+   * those of its children rather than updated instance by instance. [onLeafFilled] is called, from any thread, with the number of
+   * instances every time a leaf set has been filled.
+   */
+  fun addNewDeltaInstanceObjects(groups: List<List<InstanceObject>>, pool: ForkJoinPool, onLeafFilled: (Int) -> Unit = {}) {
+    addNewDeltaInstances(groups, pool, onLeafFilled)
+  }
+
+  private fun addNewDeltaInstances(groups: List<List<InstanceObject>>, pool: ForkJoinPool, onLeafFilled: (Int) -> Unit): DeltaCounts {
+    val counts = when (val s = ensurePartitioned()) {
+      is State.Partitioned -> {
+        // Children are created here, in order of first appearance, as the classifier isn't thread-safe.
+        val groupsByChild = LinkedHashMap<ClassifierSet, MutableList<List<InstanceObject>>>()
+        groups.forEach { group ->
+          group.groupByTo(LinkedHashMap()) { s.classifier.getClassifierSet(it, true)!! }.forEach { (child, instances) ->
+            groupsByChild.getOrPut(child) { ArrayList() }.add(instances)
+          }
+        }
+        // Waiting on the sub-tasks from a pool thread is fine, as a ForkJoinPool runs pending tasks while joining.
+        pool.invokeAll(groupsByChild.map { (child, childGroups) ->
+          Callable { child.addNewDeltaInstances(childGroups, pool, onLeafFilled) }
+        }).fold(DeltaCounts()) { sum, childCounts -> sum + childCounts.get() }
       }
-      val factor = op.countChange * if (isAllocation) 1 else -1
-      val deltaNativeSize = factor * instanceObject.nativeSize.validOrZero()
-      val deltaShallowSize = factor * instanceObject.shallowSize.toLong().validOrZero()
-      val deltaRetainedSize = factor * instanceObject.retainedSize.validOrZero()
-      totalNativeSize += deltaNativeSize
-      this.deltaShallowSize += deltaShallowSize
-      totalShallowSize += deltaShallowSize
-      invalidateRetainedSizeCache()
-      if (change.instanceChanged && !instanceObject.isCallStackEmpty) {
-        instancesWithStackInfoCount += op.countChange
-        needsRefiltering = true
+      is State.Coalesced -> DeltaCounts().also { sum ->
+        groups.forEach { group ->
+          s.deltaInstances.addAll(group)
+          group.forEach(sum::add)
+        }
+        onLeafFilled(sum.instances)
       }
-      if (change.instanceChanged) {
-        instanceFilterMatchCounter.invalidate()
+    }
+    deltaAllocationCount += counts.allocationCount
+    allocationSize += counts.allocationSize
+    totalNativeSize += counts.nativeSize
+    deltaShallowSize += counts.shallowSize
+    totalShallowSize += counts.shallowSize
+    invalidateRetainedSizeCache()
+    if (counts.instancesWithStackInfo > 0) {
+      instancesWithStackInfoCount += counts.instancesWithStackInfo
+      needsRefiltering = true
+    }
+    if (counts.instances > 0) {
+      instanceFilterMatchCounter.invalidate()
+    }
+    return counts
+  }
+
+  /**
+   * What [changeDeltaCounts] adds up for new allocations.
+   */
+  private class DeltaCounts {
+    var instances = 0
+    var allocationCount = 0
+    var allocationSize = 0L
+    var nativeSize = 0L
+    var shallowSize = 0L
+    var instancesWithStackInfo = 0
+
+    fun add(instanceObject: InstanceObject) {
+      instances++
+      allocationCount += instanceObject.instanceCount
+      allocationSize += instanceObject.shallowSize.toLong()
+      nativeSize += instanceObject.nativeSize.validOrZero()
+      shallowSize += instanceObject.shallowSize.toLong().validOrZero()
+      if (!instanceObject.isCallStackEmpty) {
+        instancesWithStackInfo++
       }
     }
-    return change
+
+    operator fun plus(other: DeltaCounts) = DeltaCounts().also {
+      it.instances = instances + other.instances
+      it.allocationCount = allocationCount + other.allocationCount
+      it.allocationSize = allocationSize + other.allocationSize
+      it.nativeSize = nativeSize + other.nativeSize
+      it.shallowSize = shallowSize + other.shallowSize
+      it.instancesWithStackInfo = instancesWithStackInfo + other.instancesWithStackInfo
+    }
   }
 
   fun clearClassifierSets() {
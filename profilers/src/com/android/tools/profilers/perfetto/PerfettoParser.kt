@@ -27,6 +27,7 @@ import com.intellij.openapi.diagnostic.Logger
 import perfetto.protos.PerfettoTrace
 import java.io.File
 import java.util.Base64
+import java.util.concurrent.CancellationException
 import java.util.concurrent.TimeUnit
 
 class PerfettoParser(private val mainProcessSelector: MainProcessSelector,
@@ -40,7 +41,13 @@ class PerfettoParser(private val mainProcessSelector: MainProcessSelector,
     val TPD_LOCK = Any()
   }
 
-  override fun parse(file: File, traceId: Long): CpuCapture {
+  override fun parse(file: File, traceId: Long): CpuCapture = parse(file, traceId, TraceParser.Listener.NONE)
+
+  /**
+   * TPD loads the whole trace at once, so the capture range is reported once the CPU data is loaded and the threads once their call
+   * trees are built. Cancellation is checked between these steps.
+   */
+  override fun parse(file: File, traceId: Long, listener: TraceParser.Listener): CpuCapture {
     // We only allow one instance running here, because TPD currently doesn't handle the multiple loaded traces case (since we can only see
     // one in the UI), so any attempt of doing so (like double clicking very fast in the UI to trigger two parses) might lead to a race
     // condition and end up with a failure.
@@ -51,6 +58,7 @@ class PerfettoParser(private val mainProcessSelector: MainProcessSelector,
       if (!traceLoaded) {
         error("Unable to load trace with TPD.")
       }
+      checkNotCancelled(listener)
 
       val processList = traceProcessor.getProcessMetadata(traceId, ideProfilerServices)
       check(processList.isNotEmpty()) { "Invalid trace without any process information." }
@@ -86,6 +94,8 @@ class PerfettoParser(private val mainProcessSelector: MainProcessSelector,
         it.getSafeProcessName().endsWith(SystemTraceSurfaceflingerManager.SURFACEFLINGER_PROCESS_NAME)
       })).distinct()
       val model = traceProcessor.loadCpuData(traceId, processesToQuery, selectedProcess, ideProfilerServices)
+      checkNotCancelled(listener)
+      listener.onRangeParsed(Range(model.getCaptureStartTimestampUs().toDouble(), model.getCaptureEndTimestampUs().toDouble()))
 
       // Track the power rail and battery counter count for power profiler usage metrics.
       // Note: "powerRailCount" is the number of raw power rails. Counting this raw count
@@ -101,7 +111,13 @@ class PerfettoParser(private val mainProcessSelector: MainProcessSelector,
       if (initialViewRange.isEmpty) {
         initialViewRange.set(model.getCaptureStartTimestampUs().toDouble(), model.getCaptureEndTimestampUs().toDouble())
       }
-      return builder.build(traceId, userSelectedProcess, initialViewRange)
+      return builder.build(traceId, userSelectedProcess, initialViewRange, listener)
+    }
+  }
+
+  private fun checkNotCancelled(listener: TraceParser.Listener) {
+    if (listener.isCancelled) {
+      throw CancellationException()
     }
   }
 }
\ No newline at end of file
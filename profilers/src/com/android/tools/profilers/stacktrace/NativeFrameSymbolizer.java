@@ -16,6 +16,8 @@
 package com.android.tools.profilers.stacktrace;
 
 import com.android.tools.profiler.proto.Memory.NativeCallStack;
+import com.intellij.util.containers.ContainerUtil;
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -25,6 +27,15 @@ public interface NativeFrameSymbolizer {
   @NotNull
   NativeCallStack.NativeFrame symbolize(String abi, NativeCallStack.NativeFrame unsymbolizedFrame);
 
+  /**
+   * Symbolizes many frames at once, e.g. all the new frames of a backtrace, which implementations can do more efficiently than one at a
+   * time. Returns the symbolized frames in the order of the unsymbolized ones.
+   */
+  @NotNull
+  default List<NativeCallStack.NativeFrame> symbolizeAll(String abi, @NotNull List<NativeCallStack.NativeFrame> unsymbolizedFrames) {
+    return ContainerUtil.map(unsymbolizedFrames, frame -> symbolize(abi, frame));
+  }
+
   /**
    * Stop / Cleanup any processes or state created by the symbolizer. This is a call made outside the symbolize function as an optimization.
    * It is the callers responsibility to call stop when done processing symbols allowing the symbolizer to reset state.
@@ -130,6 +130,26 @@ public class FakeIdeProfilerServices implements IdeProfilerServices {
    */
   private boolean myTraceboxEnabled = false;
 
+  /**
+   * Whether heap dumps are indexed on several threads.
+   */
+  private boolean myParallelHeapDumpLoadingEnabled = true;
+
+  /**
+   * Whether heap dumps are parsed from a memory-mapped temp file.
+   */
+  private boolean myMemoryMappedHeapDumpLoadingEnabled = true;
+
+  /**
+   * Whether heap dump retained sizes are computed by HeapDominatorTree.
+   */
+  private boolean myHeapDumpDominatorTreeEnabled = false;
+
+  /**
+   * Whether live allocation tracking keeps checkpoints of the live instances.
+   */
+  private boolean myLiveAllocationCheckpointsEnabled = true;
+
   /**
    * Whether power and battery data tracks should be visible in system trace and if shown,
    * which graph display style will be used for the power and battery tracks.
@@ -239,16 +259,36 @@ public class FakeIdeProfilerServices implements IdeProfilerServices {
         return myEnergyProfilerEnabled;
       }
 
+      @Override
+      public boolean isHeapDumpDominatorTreeEnabled() {
+        return myHeapDumpDominatorTreeEnabled;
+      }
+
       @Override
       public boolean isJankDetectionUiEnabled() {
         return myIsJankDetectionUiEnabled;
       }
 
+      @Override
+      public boolean isLiveAllocationCheckpointsEnabled() {
+        return myLiveAllocationCheckpointsEnabled;
+      }
+
       @Override
       public boolean isMemoryCSVExportEnabled() {
         return false;
       }
 
+      @Override
+      public boolean isMemoryMappedHeapDumpLoadingEnabled() {
+        return myMemoryMappedHeapDumpLoadingEnabled;
+      }
+
+      @Override
+      public boolean isParallelHeapDumpLoadingEnabled() {
+        return myParallelHeapDumpLoadingEnabled;
+      }
+
       @Override
       public boolean isPerformanceMonitoringEnabled() {
         return false;
@@ -442,4 +482,20 @@ public class FakeIdeProfilerServices implements IdeProfilerServices {
   public void enableTaskBasedUx(boolean enabled) {
     myTaskBasedUxEnabled = enabled;
   }
+
+  public void enableParallelHeapDumpLoading(boolean enabled) {
+    myParallelHeapDumpLoadingEnabled = enabled;
+  }
+
+  public void enableMemoryMappedHeapDumpLoading(boolean enabled) {
+    myMemoryMappedHeapDumpLoadingEnabled = enabled;
+  }
+
+  public void enableHeapDumpDominatorTree(boolean enabled) {
+    myHeapDumpDominatorTreeEnabled = enabled;
+  }
+
+  public void enableLiveAllocationCheckpoints(boolean enabled) {
+    myLiveAllocationCheckpointsEnabled = enabled;
+  }
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu
+
+import com.android.tools.adtui.model.Range
+import com.android.tools.adtui.model.filter.Filter
+import com.android.tools.perflib.vmtrace.ClockType
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel
+import com.google.common.truth.Truth.assertThat
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import kotlin.random.Random
+
+class CompactCaptureTreeTest {
+
+  @Test
+  fun builderLinksNodes() {
+    val a = SingleNameModel("a")
+    val builder = CompactCaptureTree.Builder(1)
+    val root = builder.add(-1, SingleNameModel("root"), 0, 0)
+    val first = builder.add(root, a, 1, 1)
+    val grandChild = builder.add(first, SingleNameModel("b"), 2, 2)
+    val second = builder.add(root, a, 5, 3)
+    builder.setEnd(root, 10, 6)
+    val tree = builder.build()
+
+    assertThat(tree.size).isEqualTo(4)
+    assertThat(tree.modelCount).isEqualTo(3)
+    assertThat(tree.childCount(root)).isEqualTo(2)
+    assertThat(tree.firstChild(root)).isEqualTo(first)
+    assertThat(tree.nextSibling(first)).isEqualTo(second)
+    assertThat(tree.nextSibling(second)).isEqualTo(-1)
+    assertThat(tree.parent(grandChild)).isEqualTo(first)
+    assertThat(tree.depth(grandChild)).isEqualTo(2)
+    assertThat(tree.subtreeEnd(first)).isEqualTo(second)
+    assertThat(tree.subtreeEnd(root)).isEqualTo(4)
+    assertThat(tree.model(second)).isSameAs(a)
+
+    assertThat(tree.root.getChildAt(1)).isEqualTo(tree.node(second))
+    assertThat(tree.node(grandChild).parent).isEqualTo(tree.node(first))
+    assertThat(tree.root.end).isEqualTo(10)
+    tree.clockType = ClockType.THREAD
+    assertThat(tree.root.end).isEqualTo(6)
+    assertThat(tree.node(second).start).isEqualTo(3)
+  }
+
+  @Test
+  fun nodesMustBeAddedInPreOrder() {
+    val builder = CompactCaptureTree.Builder()
+    val root = builder.add(-1, SingleNameModel("root"), 0, 0)
+    val first = builder.add(root, SingleNameModel("a"), 1, 1)
+    builder.add(root, SingleNameModel("b"), 2, 2)
+    assertThrows(IllegalArgumentException::class.java) { builder.add(first, SingleNameModel("c"), 3, 3) }
+  }
+
+  @Test
+  fun roundTripKeepsTree() {
+    val original = randomTree(Random(1), 2_000)
+    val compact = CompactCaptureTree.fromCaptureNode(original)
+    assertThat(compact.size).isEqualTo(original.descendantsStream.count().toInt())
+    assertSameTree(compact.toCaptureNode(), original)
+    assertSameHNodes(compact.root, original)
+  }
+
+  @Test
+  fun fromCaptureNodesAddsVisualRoot() {
+    val first = randomTree(Random(3), 100)
+    val second = randomTree(Random(4), 50)
+    second.startGlobal = -5
+    second.children[0].filterType = CaptureNode.FilterType.UNMATCH
+    val tree = CompactCaptureTree.fromCaptureNodes(listOf(first, second), ClockType.THREAD)
+
+    assertThat(tree.hasVisualRoot).isTrue()
+    assertThat(tree.clockType).isEqualTo(ClockType.THREAD)
+    assertThat(tree.model(0).id).isEmpty()
+    assertThat(tree.startGlobal(0)).isEqualTo(-5)
+    assertThat(tree.endGlobal(0)).isEqualTo(1000)
+    assertThat(tree.childCount(0)).isEqualTo(2)
+    val secondIndex = tree.nextSibling(tree.firstChild(0))
+    assertThat(secondIndex).isEqualTo(101)
+    assertThat(tree.depth(secondIndex)).isEqualTo(1)
+    assertThat(tree.isUnmatched(tree.firstChild(secondIndex))).isTrue()
+    assertSameTree(tree.toCaptureNode(secondIndex), second, depthOffset = 1)
+    assertThat(tree.toCaptureNode(maxDepth = 1).children.map { it.childCount }).containsExactly(0, 0)
+  }
+
+  @Test
+  fun filterMatchesCaptureNodeFilter() {
+    val original = randomTree(Random(2), 2_000)
+    val compact = CompactCaptureTree.fromCaptureNode(original)
+    for (filter in listOf(Filter("method1"), Filter("method42"), Filter("nothing"), Filter.EMPTY_FILTER)) {
+      val expected = original.applyFilter(filter)
+      val actual = compact.applyFilter(filter)
+      assertThat(actual.matchCount).isEqualTo(expected.matchCount)
+      assertThat(actual.totalCount).isEqualTo(expected.totalCount)
+      assertThat(compact.toCaptureNode().descendantsStream.map { it.filterType }.toList())
+        .isEqualTo(original.descendantsStream.map { it.filterType }.toList())
+    }
+  }
+
+  @Test
+  fun toCaptureNodeSkipsCallsOutsideRange() {
+    val builder = CompactCaptureTree.Builder()
+    val root = builder.add(-1, SingleNameModel("root"), 0, 0)
+    val before = builder.add(root, SingleNameModel("before"), 0, 0)
+    builder.setEnd(builder.add(before, SingleNameModel("beforeChild"), 1, 1), 2, 2)
+    builder.setEnd(before, 10, 10)
+    val inside = builder.add(root, SingleNameModel("inside"), 20, 20)
+    builder.setEnd(inside, 30, 30)
+    builder.setEnd(root, 100, 100)
+    val tree = builder.build()
+
+    val copy = tree.toCaptureNode(root, Range(15.0, 25.0))
+    assertThat(copy.children.map { it.data.name }).containsExactly("inside")
+    assertThat(tree.toCaptureNode(before).children.map { it.data.name }).containsExactly("beforeChild")
+  }
+
+  private fun assertSameTree(actual: CaptureNode, expected: CaptureNode, depthOffset: Int = 0) {
+    assertThat(actual.data).isSameAs(expected.data)
+    assertThat(actual.startGlobal).isEqualTo(expected.startGlobal)
+    assertThat(actual.endGlobal).isEqualTo(expected.endGlobal)
+    assertThat(actual.startThread).isEqualTo(expected.startThread)
+    assertThat(actual.endThread).isEqualTo(expected.endThread)
+    assertThat(actual.depth).isEqualTo(expected.depth + depthOffset)
+    assertThat(actual.filterType).isEqualTo(expected.filterType)
+    assertThat(actual.childCount).isEqualTo(expected.childCount)
+    actual.children.zip(expected.children).forEach { (a, e) -> assertSameTree(a, e, depthOffset) }
+  }
+
+  private fun assertSameHNodes(actual: CompactCaptureTree.Node, expected: CaptureNode) {
+    assertThat(actual.start).isEqualTo(expected.start)
+    assertThat(actual.end).isEqualTo(expected.end)
+    assertThat(actual.depth).isEqualTo(expected.depth)
+    assertThat(actual.childCount).isEqualTo(expected.childCount)
+    for (i in 0 until expected.childCount) {
+      assertSameHNodes(actual.getChildAt(i), expected.getChildAt(i))
+    }
+  }
+
+  private fun randomTree(random: Random, nodeCount: Int): CaptureNode {
+    val models = List(100) { SingleNameModel("method$it") }
+    val root = CaptureNode(SingleNameModel("root"))
+    root.endGlobal = nodeCount * 10L
+    root.endThread = nodeCount * 5L
+    val nodes = mutableListOf(root)
+    repeat(nodeCount - 1) { i ->
+      val parent = nodes[random.nextInt(nodes.size)]
+      val child = CaptureNode(models[random.nextInt(models.size)])
+      child.startGlobal = i * 10L
+      child.endGlobal = i * 10L + 5
+      child.startThread = i * 5L
+      child.endThread = i * 5L + 2
+      child.setDepth(parent.depth + 1)
+      parent.addChild(child)
+      nodes.add(child)
+    }
+    return root
+  }
+}
@@ -15,10 +15,16 @@
  */
 package com.android.tools.profilers.cpu.art
 
+import com.android.tools.adtui.model.Range
+import com.android.tools.profilers.cpu.CaptureNode
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils
+import com.android.tools.profilers.cpu.CpuThreadInfo
+import com.android.tools.profilers.cpu.TraceParser
+import com.google.common.truth.Truth.assertThat
 import com.intellij.openapi.util.io.FileUtil
 import org.junit.Test
 import java.io.FileOutputStream
+import java.util.concurrent.CancellationException
 import kotlin.test.assertFalse
 import kotlin.test.assertTrue
 
@@ -76,4 +82,38 @@ class ArtTraceParserTest {
     val result = ArtTraceParser.verifyFileHasArtHeader(trace);
     assertFalse { result }
   }
-}
\ No newline at end of file
+
+  @Test
+  fun listenerReceivesRangeAndEveryThread() {
+    val trace = CpuProfilerTestUtils.getTraceFile("art_non_streaming.trace")
+    val threads = mutableMapOf<CpuThreadInfo, CaptureNode>()
+    var range: Range? = null
+    val capture = ArtTraceParser().parse(trace, 0, object : TraceParser.Listener {
+      override fun onRangeParsed(parsedRange: Range) {
+        assertThat(range).isNull()
+        assertThat(threads).isEmpty()
+        range = parsedRange
+      }
+
+      override fun onThreadParsed(thread: CpuThreadInfo, root: CaptureNode) {
+        threads[thread] = root
+      }
+    })
+
+    assertThat(range!!.min).isEqualTo(capture.range.min)
+    assertThat(range!!.max).isEqualTo(capture.range.max)
+    assertThat(threads.keys).containsExactlyElementsIn(capture.threads)
+    threads.forEach { (thread, root) -> assertThat(capture.getCaptureNode(thread.id)).isSameAs(root) }
+  }
+
+  @Test
+  fun cancelledParsingThrows() {
+    val trace = CpuProfilerTestUtils.getTraceFile("art_non_streaming.trace")
+    val result = runCatching {
+      ArtTraceParser().parse(trace, 0, object : TraceParser.Listener {
+        override fun isCancelled() = true
+      })
+    }
+    assertThat(result.exceptionOrNull()).isInstanceOf(CancellationException::class.java)
+  }
+}
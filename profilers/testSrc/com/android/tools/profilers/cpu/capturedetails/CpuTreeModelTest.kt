@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.AspectObserver
 import com.android.tools.adtui.model.Range
 import com.android.tools.perflib.vmtrace.ClockType
 import com.android.tools.profilers.Utils
+import com.android.tools.profilers.cpu.CompactCaptureTree
 import com.google.common.truth.Truth.assertThat
 import com.intellij.testFramework.ApplicationRule
 import org.junit.ClassRule
@@ -31,7 +32,16 @@ class CpuTreeModelTest {
   @Test
   fun testTreeUpdate() {
     val tree = CpuTreeNodeTest.TopDownTest.createTree()
-    val topDown = Aggregate.TopDown.rootAt(tree)
+    checkTreeUpdate(Aggregate.TopDown.rootAt(tree))
+  }
+
+  @Test
+  fun testCompactTreeUpdate() {
+    val tree = CpuTreeNodeTest.TopDownTest.createTree()
+    checkTreeUpdate(Aggregate.TopDown.rootAt(CompactCaptureTree.fromCaptureNode(tree)))
+  }
+
+  private fun checkTreeUpdate(topDown: Aggregate.TopDown) {
     val range = Range(-Double.MAX_VALUE, Double.MAX_VALUE)
     val model = CpuTreeModel(ClockType.GLOBAL, range, topDown, Utils::runOnUi)
 
@@ -18,6 +18,8 @@ package com.android.tools.profilers.cpu.capturedetails
 import com.android.tools.adtui.model.Range
 import com.android.tools.perflib.vmtrace.ClockType
 import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.CompactCaptureTree
+import com.android.tools.profilers.cpu.VisualNodeCaptureNode
 import com.android.tools.profilers.cpu.capturedetails.CpuTreeModelTest.Companion.and
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel
 import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel
@@ -31,12 +33,14 @@ class CpuTreeNodeTest {
   class TopDownTest {
     @Test
     fun testTreeMerger() {
-      assertTree(id("A"),
-                 assertTree(id("B"),
-                            assertTree(id("D")),
-                            assertTree(id("E")),
-                            assertTree(id("G"))),
-                 assertTree(id("C"), assertTree(id("F"))))(Aggregate.TopDown.rootAt(createTree()))
+      val assertion = assertTree(id("A"),
+                                 assertTree(id("B"),
+                                            assertTree(id("D")),
+                                            assertTree(id("E")),
+                                            assertTree(id("G"))),
+                                 assertTree(id("C"), assertTree(id("F"))))
+      assertion(Aggregate.TopDown.rootAt(createTree()))
+      assertion(Aggregate.TopDown.rootAt(CompactCaptureTree.fromCaptureNode(createTree())))
     }
 
     @Test
@@ -48,15 +52,17 @@ class CpuTreeNodeTest {
       // set node "A->B->E" and "A->B->G" unmatch.
       root.children[2].children.forEach { it.filterType = CaptureNode.FilterType.UNMATCH }
 
-      assertTree(id("A") and matched,
-                 assertTree(id("B") and matched,
-                            assertTree(id("D") and matched),
-                            assertTree(id("E") and matched)),
-                 assertTree(id("C") and matched,
-                            assertTree(id("F") and matched)),
-                 assertTree(id("B") and unmatched,
-                            assertTree(id("E") and unmatched),
-                            assertTree(id("G") and unmatched)))(Aggregate.TopDown.rootAt(root))
+      val assertion = assertTree(id("A") and matched,
+                                 assertTree(id("B") and matched,
+                                            assertTree(id("D") and matched),
+                                            assertTree(id("E") and matched)),
+                                 assertTree(id("C") and matched,
+                                            assertTree(id("F") and matched)),
+                                 assertTree(id("B") and unmatched,
+                                            assertTree(id("E") and unmatched),
+                                            assertTree(id("G") and unmatched)))
+      assertion(Aggregate.TopDown.rootAt(root))
+      assertion(Aggregate.TopDown.rootAt(CompactCaptureTree.fromCaptureNode(root)))
     }
 
     @Test
@@ -89,11 +95,11 @@ class CpuTreeNodeTest {
       val root = newNode(SingleNameModel("A"), 0, 10, ClockType.THREAD)
       root.addChild(newNode("D", 3, 5))
       root.addChild(newNode("E", 7, 9))
-      val topDown = CpuTreeNode.of(Aggregate.TopDown.rootAt(root),
-                                   ClockType.THREAD, Range(root.start.toDouble(), root.end.toDouble()),
-                                   null)
-      assertThat(topDown.total).isEqualTo(9.0)
-      assertThat(topDown.self).isEqualTo(7.0)
+      for (aggregate in listOf(Aggregate.TopDown.rootAt(root), Aggregate.TopDown.rootAt(CompactCaptureTree.fromCaptureNode(root)))) {
+        val topDown = CpuTreeNode.of(aggregate, ClockType.THREAD, Range(root.start.toDouble(), root.end.toDouble()), null)
+        assertThat(topDown.total).isEqualTo(9.0)
+        assertThat(topDown.self).isEqualTo(7.0)
+      }
     }
 
     companion object {
@@ -214,6 +220,29 @@ class CpuTreeNodeTest {
       childA.children[0].addChild(newNode("C", 3, 4))
       val node = Aggregate.BottomUp.rootAt(root)
       assertThat(node.children.none { it.id == root.data.id }).isTrue()
+      assertThat(Aggregate.BottomUp.rootAt(CompactCaptureTree.fromCaptureNode(root)).children.none { it.id == root.data.id }).isTrue()
+    }
+
+    @Test
+    fun testCompactVisualRootIsNotAParent() {
+      val first = createComplexTree()
+      val second = createComplexTree()
+      val visual = VisualNodeCaptureNode(SingleNameModel(""), ClockType.GLOBAL).apply {
+        addChild(first)
+        addChild(second)
+        endGlobal = 40
+        endThread = 40
+      }
+      val range = Range(0.0, 40.0)
+      val expected = ArrayList<CpuTreeNode<Aggregate.BottomUp>>()
+      traverse(CpuTreeNode.of(Aggregate.BottomUp.rootAt(visual), ClockType.GLOBAL, range, null), expected)
+      val actual = ArrayList<CpuTreeNode<Aggregate.BottomUp>>()
+      val tree = CompactCaptureTree.fromCaptureNodes(listOf(first, second), ClockType.GLOBAL)
+      traverse(CpuTreeNode.of(Aggregate.BottomUp.rootAt(tree), ClockType.GLOBAL, range, null), actual)
+
+      assertThat(actual.map { it.base.id }).isEqualTo(expected.map { it.base.id })
+      assertThat(actual.map { it.total }).isEqualTo(expected.map { it.total })
+      assertThat(actual.map { it.childrenTotal }).isEqualTo(expected.map { it.childrenTotal })
     }
 
     /**
@@ -410,13 +439,15 @@ class CpuTreeNodeTest {
     companion object {
       private const val EPS = 1e-5
       private fun traverseAndCheck(root: CaptureNode, expectedNodes: List<ExpectedNode>) {
-        val traverseOrder = ArrayList<CpuTreeNode<Aggregate.BottomUp>>()
-        traverse(CpuTreeNode.of(Aggregate.BottomUp.rootAt(root),
-                                ClockType.GLOBAL,
-                                Range(root.start.toDouble(), root.end.toDouble()),
-                                null),
-                 traverseOrder)
-        checkTraverseOrder(expectedNodes, traverseOrder)
+        for (bottomUp in listOf(Aggregate.BottomUp.rootAt(root), Aggregate.BottomUp.rootAt(CompactCaptureTree.fromCaptureNode(root)))) {
+          val traverseOrder = ArrayList<CpuTreeNode<Aggregate.BottomUp>>()
+          traverse(CpuTreeNode.of(bottomUp,
+                                  ClockType.GLOBAL,
+                                  Range(root.start.toDouble(), root.end.toDouble()),
+                                  null),
+                   traverseOrder)
+          checkTraverseOrder(expectedNodes, traverseOrder)
+        }
       }
 
       private fun addChildren(node: CaptureNode, vararg children: CaptureNode) {
@@ -24,6 +24,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.perflib.vmtrace.ClockType;
 import com.android.tools.profilers.Utils;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CompactCaptureTree;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import com.intellij.testFramework.ApplicationRule;
@@ -240,6 +241,46 @@ public class FlameChartTest {
     assertNull(flameChart.getNode());
   }
 
+  @Test
+  public void compactTreeGivesTheSameFlameChart() {
+    CaptureNode thread1 = newNode("thread1", 0, 71);
+    thread1.addChild(newNode("A", 0, 20));
+    thread1.addChild(newNode("B", 21, 30));
+    thread1.addChild(newNode("A", 35, 40));
+    thread1.getChildren().get(1).addChild(newNode("C", 21, 25));
+    thread1.getChildren().get(1).addChild(newNode("C", 25, 30));
+    CaptureNode thread2 = newNode("thread2", 10, 50);
+    thread2.addChild(newNode("A", 10, 30));
+
+    Range selection = new Range(0, 71);
+    CpuCapture capture = Mockito.mock(CpuCapture.class);
+    Mockito.when(capture.getRange()).thenReturn(selection);
+
+    CaptureDetails.FlameChart flameChart = new CaptureDetails.FlameChart(ClockType.GLOBAL, selection,
+                                                                         Arrays.asList(thread1, thread2), capture,
+                                                                         this::runOnUi);
+    CompactCaptureTree tree = CompactCaptureTree.fromCaptureNodes(Arrays.asList(thread1, thread2), ClockType.GLOBAL);
+    CaptureDetails.FlameChart compactFlameChart = new CaptureDetails.FlameChart(ClockType.GLOBAL, selection, tree, capture,
+                                                                                this::runOnUi);
+    assertSameFlameChart(flameChart.getNode(), compactFlameChart.getNode());
+
+    selection.set(19, 25);
+    assertSameFlameChart(flameChart.getNode(), compactFlameChart.getNode());
+
+    selection.set(110, 120);
+    assertNull(compactFlameChart.getNode());
+  }
+
+  private static void assertSameFlameChart(@NotNull CaptureNode expected, @NotNull CaptureNode actual) {
+    assertEquals(expected.getData().getId(), actual.getData().getId());
+    assertEquals(expected.getStart(), actual.getStart());
+    assertEquals(expected.getEnd(), actual.getEnd());
+    assertEquals(expected.getChildCount(), actual.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameFlameChart(expected.getChildAt(i), actual.getChildAt(i));
+    }
+  }
+
   @NotNull
   private static CaptureNode newNode(String method, long start, long end) {
     CaptureNode node = new CaptureNode(new SingleNameModel(method));
@@ -18,7 +18,10 @@ package com.android.tools.profilers.cpu.simpleperf
 import com.android.tools.adtui.model.Range
 import com.android.tools.profiler.proto.SimpleperfReport
 import com.android.tools.profilers.cpu.BaseCpuCapture
+import com.android.tools.profilers.cpu.CaptureNode
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils
+import com.android.tools.profilers.cpu.CpuThreadInfo
+import com.android.tools.profilers.cpu.TraceParser
 import com.android.tools.profilers.cpu.nodemodel.CppFunctionModel
 import com.google.common.collect.Lists
 import com.google.common.truth.Truth
@@ -29,6 +32,7 @@ import org.junit.Test
 import java.io.File
 import java.io.FileOutputStream
 import java.io.IOException
+import java.util.concurrent.CancellationException
 import java.util.concurrent.TimeUnit
 import kotlin.test.assertFalse
 import kotlin.test.assertTrue
@@ -322,6 +326,37 @@ class SimpleperfTraceParserTest {
     Truth.assertThat(capture.mainThreadId).isEqualTo(BaseCpuCapture.NO_THREAD_ID)
   }
 
+  @Test
+  fun listenerReceivesRangeAndEveryThreadBeforeParsingCompletes() {
+    val threads = mutableMapOf<CpuThreadInfo, CaptureNode>()
+    var range: Range? = null
+    val capture = myParser.parse(myTraceFile, 0, object : TraceParser.Listener {
+      override fun onRangeParsed(parsedRange: Range) {
+        Truth.assertThat(threads).isEmpty()
+        range = parsedRange
+      }
+
+      override fun onThreadParsed(thread: CpuThreadInfo, root: CaptureNode) {
+        threads[thread] = root
+      }
+    })
+
+    Truth.assertThat(range!!.min).isEqualTo(capture.range.min)
+    Truth.assertThat(range!!.max).isEqualTo(capture.range.max)
+    Truth.assertThat(threads.keys).containsExactlyElementsIn(capture.threads)
+    threads.forEach { (thread, root) -> Truth.assertThat(capture.getCaptureNode(thread.id)).isSameAs(root) }
+  }
+
+  @Test
+  fun cancelledParsingThrows() {
+    val result = runCatching {
+      myParser.parse(myTraceFile, 0, object : TraceParser.Listener {
+        override fun isCancelled() = true
+      })
+    }
+    Truth.assertThat(result.exceptionOrNull()).isInstanceOf(CancellationException::class.java)
+  }
+
   @Test
   fun tagsSortedByExpectedOrder() {
     val shuffledTags = listOf("/a/b/c", "/c/d/e", "[java]", "/a/*").shuffled()
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import kotlin.random.Random
+
+class HeapDominatorTreeTest {
+
+  @Test
+  fun diamondIsDominatedByItsTop() {
+    // 0 -> 1 -> {2, 3} -> 4, 5 unreachable
+    val graph = HeapDominatorTree.Graph.Builder(6)
+      .addEdge(0, 1).addEdge(1, 2).addEdge(1, 3).addEdge(2, 4).addEdge(3, 4)
+      .build()
+    assertThat(graph.computeImmediateDominators().toList()).containsExactly(-1, 0, 1, 1, 1, -1).inOrder()
+    assertThat(graph.computeRetainedSizes(longArrayOf(0, 1, 2, 4, 8, 16)).toList()).containsExactly(15L, 15L, 2L, 4L, 8L, 0L).inOrder()
+    assertThat(graph.computeDepths().toList()).containsExactly(-1, 0, 1, 1, 2, Int.MAX_VALUE).inOrder()
+  }
+
+  @Test
+  fun cyclesAreHandled() {
+    // 0 -> 1 <-> 2 -> 3, 0 -> 3
+    val graph = HeapDominatorTree.Graph.Builder(4)
+      .addEdge(0, 1).addEdge(1, 2).addEdge(2, 1).addEdge(2, 3).addEdge(0, 3)
+      .build()
+    assertThat(graph.computeImmediateDominators().toList()).containsExactly(-1, 0, 1, 0).inOrder()
+  }
+
+  @Test
+  fun dominatorsMatchNaiveComputation() {
+    val random = Random(7)
+    repeat(20) {
+      val nodeCount = random.nextInt(2, 60)
+      val edges = List(random.nextInt(nodeCount * 2)) { random.nextInt(nodeCount) to random.nextInt(1, nodeCount) }
+      for (offHeap in listOf(false, true)) {
+        val builder = HeapDominatorTree.Graph.Builder(nodeCount, offHeap)
+        edges.forEach { (from, to) -> builder.addEdge(from, to) }
+        assertThat(builder.build().computeImmediateDominators().toList()).isEqualTo(naiveImmediateDominators(nodeCount, edges).toList())
+      }
+    }
+  }
+
+  @Test
+  fun groupRetainedSizesCountNestedInstancesOnce() {
+    // 0 -> 1 -> 2 -> 3 and 0 -> 4. Nodes 1 and 2 are in group 0, 4 in group 1.
+    val graph = HeapDominatorTree.Graph.Builder(5)
+      .addEdge(0, 1).addEdge(1, 2).addEdge(2, 3).addEdge(0, 4)
+      .build()
+    val sizes = longArrayOf(0, 1, 2, 4, 8)
+    val groups = intArrayOf(-1, 0, 0, -1, 1)
+    assertThat(graph.computeGroupRetainedSizes(sizes, groups, 2).toList()).containsExactly(7L, 8L).inOrder()
+  }
+
+  /**
+   * Finds each node's dominators by removing every other node in turn and checking whether it is still reachable.
+   */
+  private fun naiveImmediateDominators(nodeCount: Int, edges: List<Pair<Int, Int>>): IntArray {
+    fun reachable(removed: Int): BooleanArray {
+      val seen = BooleanArray(nodeCount)
+      if (removed == 0) return seen
+      val stack = ArrayDeque(listOf(0))
+      seen[0] = true
+      while (stack.isNotEmpty()) {
+        val node = stack.removeLast()
+        edges.filter { it.first == node && it.second != removed && !seen[it.second] }.forEach {
+          seen[it.second] = true
+          stack.addLast(it.second)
+        }
+      }
+      return seen
+    }
+
+    val allReachable = reachable(-1)
+    val dominators = List(nodeCount) { node ->
+      if (!allReachable[node] || node == 0) emptySet()
+      else (0 until nodeCount).filter { it != node && !reachable(it)[node] }.toSet()
+    }
+    // The immediate dominator is the strict dominator that is dominated by all the others.
+    return IntArray(nodeCount) { node ->
+      dominators[node].firstOrNull { candidate -> dominators[node].all { it == candidate || it in dominators[candidate] } } ?: -1
+    }
+  }
+}
@@ -28,6 +28,7 @@ import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.idea.transport.faketransport.FakeGrpcChannel;
 import com.android.tools.idea.transport.faketransport.FakeTransportService;
 import com.android.tools.perflib.heap.SnapshotBuilder;
+import com.android.tools.perflib.heap.io.InMemoryBuffer;
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo;
 import com.android.tools.profilers.FakeIdeProfilerServices;
 import com.android.tools.profilers.ProfilerClient;
@@ -35,6 +36,7 @@ import com.android.tools.profilers.ProfilersTestData;
 import com.android.tools.profilers.StudioProfilers;
 import com.android.tools.profilers.memory.FakeCaptureObjectLoader;
 import com.android.tools.profilers.memory.MainMemoryProfilerStage;
+import com.android.tools.profilers.memory.adapters.classifiers.AllHeapSet;
 import com.android.tools.profilers.memory.adapters.classifiers.ClassSet;
 import com.android.tools.profilers.memory.adapters.classifiers.Classifier;
 import com.android.tools.profilers.memory.adapters.classifiers.ClassifierSet;
@@ -42,6 +44,8 @@ import com.android.tools.profilers.memory.adapters.classifiers.HeapSet;
 import com.android.tools.profilers.memory.adapters.instancefilters.ActivityFragmentLeakInstanceFilter;
 import com.android.tools.profilers.memory.adapters.instancefilters.CaptureObjectInstanceFilter;
 import com.google.common.truth.Truth;
+import java.io.File;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
@@ -50,6 +54,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -247,6 +252,169 @@ public class HeapDumpCaptureObjectTest {
     Truth.assertThat(capture.getInstances().count()).isEqualTo(allInstanceCount);
   }
 
+  @Test
+  public void testHeapDumpIsParsedFromMappedTempFile() throws Exception {
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    byte[] buffer = snapshotBuilder.getByteBuffer();
+    myTransportService.addFile(Long.toString(0), ByteString.copyFrom(buffer));
+
+    HeapDumpCaptureObject capture = createCapture();
+    capture.load(null, null);
+    assertTrue(capture.isDoneLoading());
+    assertFalse(capture.isError());
+    File heapDumpFile = capture.getHeapDumpFile();
+    assertNotNull(heapDumpFile);
+    assertEquals(buffer.length, heapDumpFile.length());
+    Truth.assertThat(capture.getInstances().count()).isGreaterThan(0L);
+
+    capture.unload();
+    assertFalse(heapDumpFile.exists());
+    assertNull(capture.getHeapDumpFile());
+  }
+
+  @Test
+  public void testLoadAfterUnloadDoesNotKeepTempFile() throws Exception {
+    myTransportService.addFile(Long.toString(0), ByteString.copyFrom(new SnapshotBuilder(2, 0, 0).addRoot(1).getByteBuffer()));
+
+    HeapDumpCaptureObject capture = createCapture();
+    capture.unload();
+    assertFalse(capture.load(null, null));
+    assertNull(capture.getHeapDumpFile());
+  }
+
+  @Test
+  public void testHeapDumpIsParsedFromMemoryWhenMappingIsDisabled() throws Exception {
+    myIdeProfilerServices.enableMemoryMappedHeapDumpLoading(false);
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    myTransportService.addFile(Long.toString(0), ByteString.copyFrom(snapshotBuilder.getByteBuffer()));
+
+    HeapDumpCaptureObject capture = createCapture();
+    capture.load(null, null);
+    assertTrue(capture.isDoneLoading());
+    assertFalse(capture.isError());
+    assertNull(capture.getHeapDumpFile());
+    Truth.assertThat(capture.getInstances().count()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void testParallelLoadingMatchesSequentialLoading() throws Exception {
+    Path hprof = resolveWorkspacePath("tools/adt/idea/profilers/testData/hprofs/displayingbitmaps_leakedActivity.hprof");
+    FileChannel fileChannel = FileChannel.open(hprof, StandardOpenOption.READ);
+    MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+    buffer.load();
+
+    myIdeProfilerServices.enableParallelHeapDumpLoading(false);
+    HeapDumpCaptureObject sequential = createCapture();
+    sequential.load(new InMemoryBuffer(buffer.duplicate()));
+
+    myIdeProfilerServices.enableParallelHeapDumpLoading(true);
+    HeapDumpCaptureObject parallel = createCapture();
+    // Use small partitions so instances of the same class end up in many of them.
+    parallel.setLoadingPartitionSize(100);
+    parallel.setLoadingParallelism(4);
+    parallel.load(new InMemoryBuffer(buffer.duplicate()));
+
+    Truth.assertThat(parallel.getLoadingProgress()).isEqualTo(1.0);
+    Truth.assertThat(parallel.getLoadingPhaseTimesNs().keySet()).containsExactlyElementsIn(HeapDumpCaptureObject.LoadingPhase.values());
+    Truth.assertThat(summarize(parallel)).isEqualTo(summarize(sequential));
+    Truth.assertThat(parallel.getInstances().count()).isEqualTo(sequential.getInstances().count());
+  }
+
+  @Test
+  public void testDominatorTreeMatchesPerflibRetainedSizes() throws Exception {
+    // 1 -> {2, 3} -> 4 -> 5, with 3 also reachable from its own root.
+    byte[] hprof = new SnapshotBuilder(5, 0, 0)
+      .addReferences(1, 2, 3)
+      .addReferences(2, 4)
+      .addReferences(3, 4)
+      .addReferences(4, 5)
+      .addRoot(1)
+      .addRoot(3)
+      .getByteBuffer();
+
+    myIdeProfilerServices.enableHeapDumpDominatorTree(false);
+    HeapDumpCaptureObject perflib = createCapture();
+    perflib.load(new InMemoryBuffer(ByteBuffer.wrap(hprof)));
+
+    myIdeProfilerServices.enableHeapDumpDominatorTree(true);
+    HeapDumpCaptureObject dominatorTree = createCapture();
+    dominatorTree.load(new InMemoryBuffer(ByteBuffer.wrap(hprof)));
+
+    Truth.assertThat(summarizeRetention(dominatorTree)).isEqualTo(summarizeRetention(perflib));
+  }
+
+  @Test
+  public void testDominatorTreeClassRetainedSizes() throws Exception {
+    // Same graph as above. Each instance has its own class, from Class0 for instance 1 to Class4 for instance 5.
+    byte[] hprof = new SnapshotBuilder(5, 0, 0)
+      .addReferences(1, 2, 3)
+      .addReferences(2, 4)
+      .addReferences(3, 4)
+      .addReferences(4, 5)
+      .addRoot(1)
+      .addRoot(3)
+      .getByteBuffer();
+
+    myIdeProfilerServices.enableHeapDumpDominatorTree(true);
+    HeapDumpCaptureObject capture = createCapture();
+    capture.load(new InMemoryBuffer(ByteBuffer.wrap(hprof)));
+
+    Map<String, InstanceObject> instancesByClass = capture.getInstances()
+      .filter(instance -> instance.getValueType() != ValueObject.ValueType.CLASS)
+      .collect(Collectors.toMap(instance -> instance.getClassEntry().getClassName(), instance -> instance));
+    Truth.assertThat(instancesByClass.keySet()).containsExactly("Class0", "Class1", "Class2", "Class3", "Class4");
+    long[] shallowSizes = new long[5];
+    for (int i = 0; i < 5; i++) {
+      shallowSizes[i] = instancesByClass.get("Class" + i).getShallowSize();
+    }
+    // 1 retains 2, but 4 is shared by 2 and 3, so only the virtual root dominates it.
+    Truth.assertThat(classRetainedSize(instancesByClass, "Class0")).isEqualTo(shallowSizes[0] + shallowSizes[1]);
+    Truth.assertThat(classRetainedSize(instancesByClass, "Class1")).isEqualTo(shallowSizes[1]);
+    Truth.assertThat(classRetainedSize(instancesByClass, "Class2")).isEqualTo(shallowSizes[2]);
+    Truth.assertThat(classRetainedSize(instancesByClass, "Class3")).isEqualTo(shallowSizes[3] + shallowSizes[4]);
+    Truth.assertThat(classRetainedSize(instancesByClass, "Class4")).isEqualTo(shallowSizes[4]);
+  }
+
+  private static long classRetainedSize(@NotNull Map<String, InstanceObject> instancesByClass, @NotNull String className) {
+    return instancesByClass.get(className).getClassEntry().getRetainedSize();
+  }
+
+  @NotNull
+  private HeapDumpCaptureObject createCapture() {
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(0).setEndTime(1).build();
+    return new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getChannel()), ProfilersTestData.SESSION_DATA,
+                                     dumpInfo, null, myIdeProfilerServices.getFeatureTracker(),
+                                     myStage.getStudioProfilers().getIdeServices());
+  }
+
+  /**
+   * @return for each heap, its classes in order along with their instance count and shallow size.
+   */
+  @NotNull
+  private static List<String> summarize(@NotNull HeapDumpCaptureObject capture) {
+    return capture.getHeapSets().stream()
+      .filter(heap -> !(heap instanceof AllHeapSet))
+      .flatMap(heap -> heap.getChildrenClassifierSets().stream().map(
+        set -> heap.getName() + "/" + ((ClassSet)set).getClassEntry().getClassName() + ": " + set.getTotalObjectCount() + ", " +
+               set.getTotalShallowSize()))
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * @return each instance along with its depth and retained size, sorted by name.
+   */
+  @NotNull
+  private static List<String> summarizeRetention(@NotNull HeapDumpCaptureObject capture) {
+    return capture.getInstances()
+      .map(instance -> instance.getValueText() + ": " + instance.getDepth() + ", " + instance.getRetainedSize())
+      .sorted()
+      .collect(Collectors.toList());
+  }
+
   private static void verifyInstance(@NotNull InstanceObject instance,
                                      @NotNull String valueText,
                                      int depth,
@@ -553,6 +553,55 @@ public class LiveAllocationCaptureObjectTest {
       verifyClassifierResult(heapSet, new LinkedList<>(expected_0_to_4), 0);
     }
 
+    @Test
+    public void testSelectionJumpsReplayEventsFromCheckpoints() throws Exception {
+      boolean[] loadSuccess = new boolean[1];
+      LiveAllocationCaptureObject capture = new LiveAllocationCaptureObject(myProfilerClient,
+                                                                            ProfilersTestData.SESSION_DATA,
+                                                                            CAPTURE_START_TIME,
+                                                                            LOAD_SERVICE,
+                                                                            myStage);
+      // Checkpoint as often as possible.
+      capture.setMinCheckpointSpacing(1);
+
+      HeapSet heapSet = capture.getHeapSet(myHeapId);
+      heapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_PACKAGE);
+      myStage.getCaptureSelection().getAspect().addDependency(myAspectObserver).onChange(CaptureSelectionAspect.CURRENT_HEAP_CONTENTS, () -> loadSuccess[0] = true);
+
+      Queue<ClassifierSetTestData> expected_4_to_8 = new LinkedList<>();
+      expected_4_to_8.add(new ClassifierSetTestData(0, myHeapName, 4, 4, 2, 6, 2, true));
+      expected_4_to_8.add(new ClassifierSetTestData(1, "This", 2, 2, 1, 3, 2, true));
+      expected_4_to_8.add(new ClassifierSetTestData(2, "Also", 1, 1, 1, 2, 1, true));
+      expected_4_to_8.add(new ClassifierSetTestData(3, "Foo", 1, 1, 1, 2, 0, true));
+      expected_4_to_8.add(new ClassifierSetTestData(2, "Is", 1, 1, 0, 1, 1, true));
+      expected_4_to_8.add(new ClassifierSetTestData(3, "Foo", 1, 1, 0, 1, 0, true));
+      expected_4_to_8.add(new ClassifierSetTestData(1, "That", 2, 2, 1, 3, 2, true));
+      expected_4_to_8.add(new ClassifierSetTestData(2, "Also", 1, 1, 1, 2, 1, true));
+      expected_4_to_8.add(new ClassifierSetTestData(3, "Bar", 1, 1, 1, 2, 0, true));
+      expected_4_to_8.add(new ClassifierSetTestData(2, "Is", 1, 1, 0, 1, 1, true));
+      expected_4_to_8.add(new ClassifierSetTestData(3, "Bar", 1, 1, 0, 1, 0, true));
+
+      Range loadRange = new Range(CAPTURE_START_TIME, CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(4));
+      capture.load(loadRange, LOAD_JOINER);
+
+      // The first jump replays every event before the range, taking checkpoints along the way.
+      loadSuccess[0] = false;
+      loadRange.set(CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(4), CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(8));
+      assertThat(loadSuccess[0]).isTrue();
+      verifyClassifierResult(heapSet, new LinkedList<>(expected_4_to_8), 0);
+      int firstSnapshotEventCount = capture.getLastRangeQueryTiming().getSnapshotEventCount();
+      assertThat(firstSnapshotEventCount).isGreaterThan(0);
+
+      loadRange.set(CAPTURE_START_TIME, CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(4));
+
+      // Jumping back only replays the events since the nearest checkpoint, with the same result.
+      loadSuccess[0] = false;
+      loadRange.set(CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(4), CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(8));
+      assertThat(loadSuccess[0]).isTrue();
+      verifyClassifierResult(heapSet, new LinkedList<>(expected_4_to_8), 0);
+      assertThat(capture.getLastRangeQueryTiming().getSnapshotEventCount()).isLessThan(firstSnapshotEventCount);
+    }
+
     @Test
     public void testInfoMessageBasedOnSelection() {
       MemoryAllocSamplingData fullData = MemoryAllocSamplingData.newBuilder()
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import kotlin.random.Random
+
+class LiveEventCheckpointIndexTest {
+
+  @Test
+  fun queriesMatchFullReplay() {
+    val random = Random(3)
+    val events = randomEvents(random, 2_000)
+    val index = createIndex(events, completeUntilNs = Long.MAX_VALUE).apply { minCheckpointSpacing = 50 }
+    repeat(200) {
+      val timeNs = random.nextLong(events.last().timestamp + 2)
+      assertThat(index.query(timeNs).liveEvents.toList()).isEqualTo(replay(events, timeNs))
+    }
+    assertThat(index.checkpointCount).isGreaterThan(1)
+  }
+
+  @Test
+  fun queriesOnlyReplayEventsSinceNearestCheckpoint() {
+    val events = List(1_000) { Event(it.toLong(), it, false) }
+    val index = createIndex(events, completeUntilNs = Long.MAX_VALUE).apply { minCheckpointSpacing = 1 }
+    assertThat(index.query(1_000).replayedEventCount).isEqualTo(1_000)
+
+    // The live set grows with every event, so checkpoints are spaced out by the live set size.
+    val result = index.query(999)
+    assertThat(result.checkpointTimeNs).isLessThan(999L)
+    assertThat(result.replayedEventCount).isAtMost(999 - result.checkpointTimeNs.toInt())
+    assertThat(result.liveEvents.size).isEqualTo(999)
+  }
+
+  @Test
+  fun checkpointsAreNotTakenPastCompleteData() {
+    val events = List(100) { Event(it.toLong(), it % 10, it % 2 == 1) }
+    val index = createIndex(events, completeUntilNs = 10).apply { minCheckpointSpacing = 1 }
+    index.query(100)
+    val result = index.query(100)
+    assertThat(result.checkpointTimeNs).isAtMost(10L)
+    assertThat(result.liveEvents.toList()).isEqualTo(replay(events, 100))
+  }
+
+  private data class Event(val timestamp: Long, val key: Int, val release: Boolean)
+
+  /**
+   * Like the transport, returns the events of a few batches around the requested range.
+   */
+  private fun createIndex(events: List<Event>, completeUntilNs: Long) =
+    LiveEventCheckpointIndex<Event, Int>(0, Event::timestamp, Event::key, Event::release,
+                                         { start, end -> events.filter { it.timestamp in start - 5 until end + 5 } },
+                                         { completeUntilNs })
+
+  private fun replay(events: List<Event>, timeNs: Long): List<Event> {
+    val live = LinkedHashMap<Int, Event>()
+    events.filter { it.timestamp < timeNs }.forEach { if (it.release) live.remove(it.key) else live[it.key] = it }
+    return live.values.toList()
+  }
+
+  /**
+   * Generates events with increasing, sometimes equal, timestamps, releasing keys that are live and creating keys that are not.
+   */
+  private fun randomEvents(random: Random, count: Int): List<Event> {
+    val live = mutableSetOf<Int>()
+    var timestamp = 0L
+    return List(count) {
+      timestamp += random.nextLong(3)
+      if (live.isNotEmpty() && random.nextBoolean()) {
+        val key = live.random(random)
+        live.remove(key)
+        Event(timestamp, key, true)
+      }
+      else {
+        val key = generateSequence { random.nextInt(1_000) }.first { it !in live }
+        live.add(key)
+        Event(timestamp, key, false)
+      }
+    }
+  }
+}
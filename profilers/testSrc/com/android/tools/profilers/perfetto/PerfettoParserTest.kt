@@ -15,16 +15,21 @@
  */
 package com.android.tools.profilers.perfetto
 
+import com.android.tools.adtui.model.Range
 import com.android.tools.profilers.FakeFeatureTracker
 import com.android.tools.profilers.FakeIdeProfilerServices
 import com.android.tools.profilers.FakeTraceProcessorService
+import com.android.tools.profilers.cpu.CaptureNode
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils
+import com.android.tools.profilers.cpu.CpuThreadInfo
 import com.android.tools.profilers.cpu.MainProcessSelector
+import com.android.tools.profilers.cpu.TraceParser
 import com.android.tools.profilers.cpu.config.ProfilingConfiguration.TraceType
 import com.android.tools.profilers.cpu.systemtrace.SystemTraceCpuCapture
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
 import perfetto.protos.PerfettoTrace
+import java.util.concurrent.CancellationException
 import java.util.concurrent.TimeUnit
 
 class PerfettoParserTest {
@@ -94,6 +99,45 @@ class PerfettoParserTest {
     assertThat(capture.type).isEqualTo(TraceType.PERFETTO)
   }
 
+  @Test
+  fun listenerReceivesRangeAndEveryThread() {
+    val services = FakeIdeProfilerServices()
+    val traceFile = CpuProfilerTestUtils.getTraceFile("perfetto.trace")
+    val threads = mutableMapOf<CpuThreadInfo, CaptureNode>()
+    var range: Range? = null
+
+    val parser = PerfettoParser(MainProcessSelector(), services)
+    val capture = parser.parse(traceFile, 1, object : TraceParser.Listener {
+      override fun onRangeParsed(parsedRange: Range) {
+        assertThat(threads).isEmpty()
+        range = parsedRange
+      }
+
+      override fun onThreadParsed(thread: CpuThreadInfo, root: CaptureNode) {
+        threads[thread] = root
+      }
+    })
+
+    assertThat(range!!.min).isEqualTo(capture.range.min)
+    assertThat(range!!.max).isEqualTo(capture.range.max)
+    assertThat(threads.keys).containsExactlyElementsIn(capture.threads)
+    threads.forEach { (thread, root) -> assertThat(capture.getCaptureNode(thread.id)).isSameAs(root) }
+  }
+
+  @Test
+  fun cancelledParsingThrows() {
+    val services = FakeIdeProfilerServices()
+    val traceFile = CpuProfilerTestUtils.getTraceFile("perfetto.trace")
+
+    val parser = PerfettoParser(MainProcessSelector(), services)
+    val result = runCatching {
+      parser.parse(traceFile, 1, object : TraceParser.Listener {
+        override fun isCancelled() = true
+      })
+    }
+    assertThat(result.exceptionOrNull()).isInstanceOf(CancellationException::class.java)
+  }
+
   @Test
   fun parseAndroidFrameLayers() {
     val services = FakeIdeProfilerServices()
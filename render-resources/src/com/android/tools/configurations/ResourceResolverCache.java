@@ -26,26 +26,33 @@ import com.android.ide.common.resources.ResourceRepository;
 import com.android.ide.common.resources.ResourceRepositoryUtil;
 import com.android.ide.common.resources.ResourceResolver;
 import com.android.ide.common.resources.ResourceValueMap;
+import com.android.ide.common.resources.ResourceVisitor;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.ide.common.resources.configuration.LocaleQualifier;
+import com.android.ide.common.resources.configuration.ResourceQualifier;
 import com.android.ide.common.util.DisjointUnionMap;
 import com.android.resources.ResourceType;
 import com.android.resources.ResourceUrl;
 import com.android.sdklib.IAndroidTarget;
 import com.android.tools.res.CacheableResourceRepository;
+import com.android.tools.res.LocalResourceRepository;
 import com.android.tools.res.ResourceRepositoryManager;
 import com.android.tools.sdk.AndroidPlatform;
 import com.android.tools.sdk.AndroidTargetData;
 import com.android.tools.sdk.CompatibilityRenderTarget;
 import com.android.utils.SparseArray;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Table;
 import com.intellij.openapi.application.ReadAction;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -71,18 +78,38 @@ public class ResourceResolverCache {
   @GuardedBy("myLock")
   public final Map<String, Table<ResourceNamespace, ResourceType, ResourceValueMap>> myAppResourceMap = new HashMap<>();
 
+  /**
+   * Modification counts of the individual resource types of the app resources at the time the tables in {@link #myAppResourceMap}
+   * were configured, keyed like {@link #myAppResourceMap}. Used to reconfigure only the resource types that changed.
+   */
+  @GuardedBy("myLock")
+  private final Map<String, Table<ResourceNamespace, ResourceType, Long>> myAppResourceGenerations = new HashMap<>();
+
   /**
    * Map of configured resources from Android framework. These are cached separately from the final resource
-   * resolver since they can be shared between different layouts that only vary by theme.
+   * resolver since they can be shared between different layouts that only vary by theme. The key is the qualifier
+   * string of the configuration restricted to the qualifiers used by framework resources, so that configurations
+   * differing only in qualifiers irrelevant to the framework share the same map.
    */
   @VisibleForTesting
   @GuardedBy("myLock")
   public final Map<String, Map<ResourceType, ResourceValueMap>> myFrameworkResourceMap = new HashMap<>();
 
+  /** Qualifiers used by folders of framework resource repositories, indexed like {@link FolderConfiguration#getQualifier(int)}. */
+  @GuardedBy("myLock")
+  private final Map<ResourceRepository, boolean[]> myFrameworkQualifiers = new WeakHashMap<>();
+
   /** The generation timestamp of our most recently cached app resources, used to invalidate on edits. */
   @GuardedBy("myLock")
   private long myCachedGeneration;
 
+  /**
+   * Modification counts of the individual resource types of the app resources at {@link #myCachedGeneration}, or null if the app
+   * resources don't track modifications of resource types.
+   */
+  @GuardedBy("myLock")
+  @Nullable private Table<ResourceNamespace, ResourceType, Long> myTypeGenerations;
+
   /** Map from API level to framework resources */
   private final SparseArray<AndroidTargetData> myFrameworkResources = new SparseArray<>();
 
@@ -94,6 +121,8 @@ public class ResourceResolverCache {
   private String myCustomConfigurationKey;
   @GuardedBy("myLock")
   private String myCustomResolverKey;
+  @GuardedBy("myLock")
+  private String myCustomFrameworkKey;
 
   public ResourceResolverCache(ConfigurationSettings settings) {
     mySettings = settings;
@@ -109,15 +138,26 @@ public class ResourceResolverCache {
       return ResourceResolver.create(Collections.emptyMap(), null);
     }
     CacheableResourceRepository resources = repositoryManager.getAppResources();
+    Table<ResourceNamespace, ResourceType, Long> typeGenerations;
     synchronized (myLock) {
-      if (myCachedGeneration != resources.getModificationCount()) {
+      long generation = resources.getModificationCount();
+      if (myCachedGeneration != generation) {
         myResolverMap.clear();
-        myAppResourceMap.clear();
+        if (resources instanceof LocalResourceRepository) {
+          // The configured app resources are kept. Resource types that changed are configured again when they are used.
+          myTypeGenerations = getTypeGenerations((LocalResourceRepository)resources);
+        }
+        else {
+          myTypeGenerations = null;
+          myAppResourceMap.clear();
+          myAppResourceGenerations.clear();
+        }
       }
 
       // Store the modification count as soon as possible. This ensures that if there is any modification of resources while the
       // resolver is being created, it will be cleared subsequently.
-      myCachedGeneration = resources.getModificationCount();
+      myCachedGeneration = generation;
+      typeGenerations = myTypeGenerations;
     }
 
     // When looking up the configured project and framework resources, the theme doesn't matter, so we look up only
@@ -141,12 +181,8 @@ public class ResourceResolverCache {
           target == null ? Collections.emptyMap() : getConfiguredFrameworkResources(target, fullConfiguration);
 
       // App resources
-      Table<ResourceNamespace, ResourceType, ResourceValueMap> configuredAppRes = getCachedAppResources(qualifierString);
-      if (configuredAppRes == null) {
-        // Get the project resource values based on the current config.
-        configuredAppRes = ReadAction.compute(() -> ResourceRepositoryUtil.getConfiguredResources(resources, fullConfiguration));
-        cacheAppResources(qualifierString, configuredAppRes);
-      }
+      Table<ResourceNamespace, ResourceType, ResourceValueMap> configuredAppRes =
+          getConfiguredAppResources(resources, typeGenerations, qualifierString, fullConfiguration);
 
       // Resource Resolver
       Map<ResourceNamespace, Map<ResourceType, ResourceValueMap>> allResources =
@@ -190,16 +226,121 @@ public class ResourceResolverCache {
       return Collections.emptyMap();
     }
 
-    String qualifierString = fullConfiguration.getQualifierString();
+    String frameworkKey = getFrameworkResourcesKey(resourceRepository, fullConfiguration);
     // Get the framework resource values based on the current config.
-    Map<ResourceType, ResourceValueMap> frameworkResources = getCachedFrameworkResources(qualifierString);
+    Map<ResourceType, ResourceValueMap> frameworkResources = getCachedFrameworkResources(frameworkKey);
     if (frameworkResources == null) {
       frameworkResources = ResourceRepositoryUtil.getConfiguredResources(resourceRepository, fullConfiguration).row(ResourceNamespace.ANDROID);
-      cacheFrameworkResources(qualifierString, frameworkResources);
+      cacheFrameworkResources(frameworkKey, frameworkResources);
+    }
+    synchronized (myLock) {
+      if (fullConfiguration.getQualifierString().equals(myCustomConfigurationKey)) {
+        myCustomFrameworkKey = frameworkKey;
+      }
     }
     return frameworkResources;
   }
 
+  /**
+   * Returns the app resources configured for the given configuration. A table cached for the configuration is reused
+   * if the app resources changed since it was configured, with only the resource types that changed configured again.
+   */
+  @Slow
+  @NotNull
+  private Table<ResourceNamespace, ResourceType, ResourceValueMap> getConfiguredAppResources(
+      @NotNull CacheableResourceRepository resources,
+      @Nullable Table<ResourceNamespace, ResourceType, Long> typeGenerations,
+      @NotNull String qualifierString,
+      @NotNull FolderConfiguration fullConfiguration) {
+    Table<ResourceNamespace, ResourceType, ResourceValueMap> configuredAppRes;
+    Table<ResourceNamespace, ResourceType, Long> configuredGenerations;
+    synchronized (myLock) {
+      configuredAppRes = myAppResourceMap.get(qualifierString);
+      configuredGenerations = myAppResourceGenerations.get(qualifierString);
+    }
+    if (configuredAppRes != null && Objects.equals(configuredGenerations, typeGenerations)) {
+      return configuredAppRes;
+    }
+
+    if (configuredAppRes == null || configuredGenerations == null || typeGenerations == null) {
+      // Get the project resource values based on the current config.
+      configuredAppRes = ReadAction.compute(() -> ResourceRepositoryUtil.getConfiguredResources(resources, fullConfiguration));
+    }
+    else {
+      // The table may be in use by existing resolvers, so the changed resource types are configured in a copy.
+      Table<ResourceNamespace, ResourceType, ResourceValueMap> updatedAppRes = HashBasedTable.create(configuredAppRes);
+      updatedAppRes.rowKeySet().retainAll(typeGenerations.rowKeySet());
+      for (Table.Cell<ResourceNamespace, ResourceType, Long> cell : typeGenerations.cellSet()) {
+        ResourceNamespace namespace = cell.getRowKey();
+        ResourceType type = cell.getColumnKey();
+        if (!Objects.equals(cell.getValue(), configuredGenerations.get(namespace, type))) {
+          ResourceValueMap values =
+              ReadAction.compute(() -> ResourceRepositoryUtil.getConfiguredResources(resources, namespace, type, fullConfiguration));
+          updatedAppRes.put(namespace, type, values);
+        }
+      }
+      configuredAppRes = updatedAppRes;
+    }
+    cacheAppResources(qualifierString, configuredAppRes, typeGenerations);
+    return configuredAppRes;
+  }
+
+  @NotNull
+  private static Table<ResourceNamespace, ResourceType, Long> getTypeGenerations(@NotNull LocalResourceRepository resources) {
+    Table<ResourceNamespace, ResourceType, Long> generations = HashBasedTable.create();
+    for (ResourceNamespace namespace : resources.getNamespaces()) {
+      for (ResourceType type : ResourceType.values()) {
+        generations.put(namespace, type, resources.getModificationCount(namespace, type));
+      }
+    }
+    return generations;
+  }
+
+  /**
+   * Returns the key of the configured framework resources for the given configuration. Qualifiers not used by any folder of
+   * the framework resources don't affect the configured resources, so they are left out of the key.
+   */
+  @NotNull
+  private String getFrameworkResourcesKey(@NotNull ResourceRepository frameworkResources, @NotNull FolderConfiguration fullConfiguration) {
+    boolean[] usedQualifiers;
+    synchronized (myLock) {
+      usedQualifiers = myFrameworkQualifiers.get(frameworkResources);
+    }
+    if (usedQualifiers == null) {
+      usedQualifiers = getUsedQualifiers(frameworkResources);
+      synchronized (myLock) {
+        myFrameworkQualifiers.put(frameworkResources, usedQualifiers);
+      }
+    }
+
+    FolderConfiguration frameworkConfiguration = new FolderConfiguration();
+    for (int i = 0; i < usedQualifiers.length; i++) {
+      ResourceQualifier qualifier = fullConfiguration.getQualifier(i);
+      if (usedQualifiers[i] && qualifier != null) {
+        frameworkConfiguration.addQualifier(qualifier);
+      }
+    }
+    return frameworkConfiguration.getQualifierString();
+  }
+
+  @NotNull
+  private static boolean[] getUsedQualifiers(@NotNull ResourceRepository resources) {
+    boolean[] usedQualifiers = new boolean[FolderConfiguration.getQualifierCount()];
+    Set<FolderConfiguration> visitedConfigurations = Collections.newSetFromMap(new IdentityHashMap<>());
+    resources.accept(item -> {
+      FolderConfiguration configuration = item.getConfiguration();
+      if (visitedConfigurations.add(configuration)) {
+        for (int i = 0; i < usedQualifiers.length; i++) {
+          if (configuration.getQualifier(i) != null) {
+            usedQualifiers[i] = true;
+          }
+        }
+      }
+      return ResourceVisitor.VisitResult.CONTINUE;
+    });
+    return usedQualifiers;
+  }
+
   @NotNull
   private static String getResolverKey(@NotNull String themeStyle, @NotNull String qualifierString) {
     return qualifierString.isEmpty() ? themeStyle : themeStyle + SdkConstants.RES_QUALIFIER_SEP + qualifierString;
@@ -237,7 +378,9 @@ public class ResourceResolverCache {
   public void reset() {
     synchronized (myLock) {
       myCachedGeneration = 0;
+      myTypeGenerations = null;
       myAppResourceMap.clear();
+      myAppResourceGenerations.clear();
       myResolverMap.clear();
     }
   }
@@ -260,8 +403,13 @@ public class ResourceResolverCache {
       }
 
       if (myCustomConfigurationKey != null) {
-        myFrameworkResourceMap.remove(myCustomConfigurationKey);
         myAppResourceMap.remove(myCustomConfigurationKey);
+        myAppResourceGenerations.remove(myCustomConfigurationKey);
+      }
+      if (myCustomFrameworkKey != null) {
+        // The framework resources may be shared with another configuration, in which case they are configured again when needed.
+        myFrameworkResourceMap.remove(myCustomFrameworkKey);
+        myCustomFrameworkKey = null;
       }
       if (myCustomResolverKey != null) {
         myResolverMap.remove(myCustomResolverKey);
@@ -295,16 +443,17 @@ public class ResourceResolverCache {
     }
   }
 
-  private void cacheAppResources(
-      @NotNull String qualifierString, @NotNull Table<ResourceNamespace, ResourceType, ResourceValueMap> configuredAppResources) {
+  private void cacheAppResources(@NotNull String qualifierString,
+                                 @NotNull Table<ResourceNamespace, ResourceType, ResourceValueMap> configuredAppResources,
+                                 @Nullable Table<ResourceNamespace, ResourceType, Long> typeGenerations) {
     synchronized (myLock) {
       myAppResourceMap.put(qualifierString, configuredAppResources);
-    }
-  }
-
-  private @Nullable Table<ResourceNamespace, ResourceType, ResourceValueMap> getCachedAppResources(@NotNull String qualifierString) {
-    synchronized (myLock) {
-      return myAppResourceMap.get(qualifierString);
+      if (typeGenerations == null) {
+        myAppResourceGenerations.remove(qualifierString);
+      }
+      else {
+        myAppResourceGenerations.put(qualifierString, typeGenerations);
+      }
     }
   }
 
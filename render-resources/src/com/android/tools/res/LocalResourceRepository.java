@@ -211,6 +211,17 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     myGeneration = count;
   }
 
+  /**
+   * Returns the modification count of the resources of the given type in the given namespace. It changes whenever resources of
+   * that type are added, removed or modified, which allows caches of configured resources to recompute only the resource types
+   * that changed. Like {@link #getModificationCount()}, the returned values come from a counter shared by all repositories.
+   * <p>
+   * The default implementation doesn't track resource types individually and returns {@link #getModificationCount()}.
+   */
+  public long getModificationCount(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    return getModificationCount();
+  }
+
   /**
    * Executes the given callback using the given executor after all currently pending updates have been processed.
    * The repository is not guaranteed to be completely up to date with respect to PSI and VFS because additional
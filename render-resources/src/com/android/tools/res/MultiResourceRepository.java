@@ -97,6 +97,10 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @GuardedBy("ITEM_MAP_LOCK")
   private long[] myModificationCounts;
 
+  /** Modification count of the last change that may have affected resources of all types, e.g. a change of the children. */
+  @GuardedBy("ITEM_MAP_LOCK")
+  private long myStructureModificationCount;
+
   @GuardedBy("ITEM_MAP_LOCK")
   private final ResourceTable myCachedMaps = new ResourceTable();
 
@@ -122,7 +126,8 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
       for (LocalResourceRepository child : myLocalResources) {
         child.removeParent(this);
       }
-      setModificationCount(ourModificationCounter.incrementAndGet());
+      myStructureModificationCount = ourModificationCounter.incrementAndGet();
+      setModificationCount(myStructureModificationCount);
       myLocalResources = ImmutableList.copyOf(localResources);
       int size = myLocalResources.size() + libraryResources.size() + otherResources.size();
       myChildren = ImmutableList.<ResourceRepository>builderWithExpectedSize(size)
@@ -240,6 +245,17 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     }
   }
 
+  @Override
+  public long getModificationCount(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    synchronized (ITEM_MAP_LOCK) {
+      long modificationCount = myStructureModificationCount;
+      for (LocalResourceRepository child : myLocalResources) {
+        modificationCount = Math.max(modificationCount, child.getModificationCount(namespace, type));
+      }
+      return modificationCount;
+    }
+  }
+
   @Override
   @NotNull
   public Set<ResourceNamespace> getNamespaces() {
@@ -391,7 +407,8 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @GuardedBy("ITEM_MAP_LOCK")
   public void invalidateCache() {
     clearCachedData();
-    setModificationCount(ourModificationCounter.incrementAndGet());
+    myStructureModificationCount = ourModificationCounter.incrementAndGet();
+    setModificationCount(myStructureModificationCount);
 
     invalidateParentCaches();
   }
@@ -23,6 +23,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Interface to be implemented by executors of rendered async actions.
@@ -45,6 +46,16 @@ public interface RenderAsyncActionExecutor {
    */
   long getExecutedRenderActionCount();
 
+  /**
+   * Returns the number of render actions that were evicted before running because too many actions were waiting to execute.
+   */
+  long getEvictedRenderActionCount();
+
+  /**
+   * Returns the total time, in milliseconds, that the executed render actions have waited to start running.
+   */
+  long getTotalQueueWaitTimeMs();
+
   /**
    * Runs an action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
    * method.
@@ -64,6 +75,21 @@ public interface RenderAsyncActionExecutor {
     long actionTimeout, @NotNull TimeUnit actionTimeoutUnit,
     @NotNull RenderingTopic renderingTopic, @NotNull Callable<T> callable);
 
+  /**
+   * Runs an action that requires the rendering lock, like {@link #runAsyncActionWithTimeout(long, TimeUnit, long, TimeUnit, RenderingTopic,
+   * Callable)}. Actions with the same {@code isolationKey}, usually the class loader of a render, always run sequentially on the same
+   * thread. Executors that support it may run actions with different keys concurrently. Actions with no key never run concurrently with any
+   * other action.
+   *
+   * @param isolationKey the key of the actions this one must not run concurrently with, or null if it must not run concurrently with any.
+   */
+  default @NotNull <T> CompletableFuture<T> runAsyncActionWithTimeout(
+    long queueingTimeout, @NotNull TimeUnit queueingTimeoutUnit,
+    long actionTimeout, @NotNull TimeUnit actionTimeoutUnit,
+    @NotNull RenderingTopic renderingTopic, @Nullable Object isolationKey, @NotNull Callable<T> callable) {
+    return runAsyncActionWithTimeout(queueingTimeout, queueingTimeoutUnit, actionTimeout, actionTimeoutUnit, renderingTopic, callable);
+  }
+
   /**
    * Runs an action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
    * method.
@@ -84,6 +110,18 @@ public interface RenderAsyncActionExecutor {
       actionTimeout, actionTimeoutUnit, renderingTopic, callable);
   }
 
+  /**
+   * Runs an action that requires the rendering lock, only sequentially with the other actions of the same {@code isolationKey}.
+   * See {@link #runAsyncActionWithTimeout(long, TimeUnit, long, TimeUnit, RenderingTopic, Object, Callable)}.
+   */
+  default @NotNull <T> CompletableFuture<T> runAsyncActionWithTimeout(
+    long actionTimeout, @NotNull TimeUnit actionTimeoutUnit,
+    @NotNull RenderingTopic renderingTopic, @Nullable Object isolationKey, @NotNull Callable<T> callable) {
+    return runAsyncActionWithTimeout(
+      DEFAULT_RENDER_THREAD_QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
+      actionTimeout, actionTimeoutUnit, renderingTopic, isolationKey, callable);
+  }
+
   /**
    * Runs an action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
    * method.
@@ -130,6 +168,19 @@ public interface RenderAsyncActionExecutor {
       renderingTopic, callable);
   }
 
+  /**
+   * Runs an action that requires the rendering lock, only sequentially with the other actions of the same {@code isolationKey}.
+   * See {@link #runAsyncActionWithTimeout(long, TimeUnit, long, TimeUnit, RenderingTopic, Object, Callable)}.
+   */
+  default @NotNull <T> CompletableFuture<T> runAsyncAction(@NotNull RenderingTopic renderingTopic,
+                                                           @Nullable Object isolationKey,
+                                                           @NotNull Callable<T> callable) {
+    return runAsyncActionWithTimeout(
+      DEFAULT_RENDER_THREAD_QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
+      DEFAULT_RENDER_THREAD_TIMEOUT_MS, TimeUnit.MILLISECONDS,
+      renderingTopic, isolationKey, callable);
+  }
+
   /**
    * Runs an action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
    * method.
@@ -158,6 +209,20 @@ public interface RenderAsyncActionExecutor {
     });
   }
 
+  /**
+   * Runs an action that requires the rendering lock, only sequentially with the other actions of the same {@code isolationKey}.
+   * See {@link #runAsyncActionWithTimeout(long, TimeUnit, long, TimeUnit, RenderingTopic, Object, Callable)}.
+   */
+  @NotNull
+  default CompletableFuture<Void> runAsyncAction(@NotNull RenderingTopic renderingTopic,
+                                                 @Nullable Object isolationKey,
+                                                 @NotNull Runnable runnable) {
+    return runAsyncAction(renderingTopic, isolationKey, () -> {
+      runnable.run();
+      return null;
+    });
+  }
+
   /**
    * Cancels all pending actions of the given topics.
    * <p>
@@ -22,6 +22,7 @@ import org.jetbrains.annotations.TestOnly
 import java.util.EnumMap
 import java.util.PriorityQueue
 import java.util.Queue
+import java.util.WeakHashMap
 import java.util.concurrent.Callable
 import java.util.concurrent.CancellationException
 import java.util.concurrent.CompletableFuture
@@ -36,56 +37,132 @@ import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.LongAdder
 import java.util.concurrent.locks.Lock
 import java.util.concurrent.locks.ReentrantLock
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
 import kotlin.concurrent.withLock
+import kotlin.concurrent.write
 
 /** Max number of tasks that can be waiting to execute */
 private val DEFAULT_MAX_QUEUED_TASKS = Integer.getInteger("layoutlib.thread.max.queued", 50)
 
 /**
- * Intended to be used for executing render tasks of layoutlib [RenderSession]. Currently, all calls
- * to the layoutlib should be done from the same thread. This executor guarantees that unit of work
+ * Number of threads running actions with an isolation key concurrently. If 0, all the actions run
+ * on the same thread.
+ */
+private val DEFAULT_ISOLATED_THREADS = Integer.getInteger("layoutlib.thread.isolated.count", 0)
+
+/**
+ * Intended to be used for executing render tasks of layoutlib [RenderSession]. By default, all
+ * calls to the layoutlib are done from the same thread. This executor guarantees that unit of work
  * passed to [runAction] or [runAsyncAction] will be executed sequentially from the same thread.
  *
+ * When created with isolated threads, actions with an isolation key, usually the class loader of a
+ * render, run on one of those threads instead. All the actions of a key run sequentially on the
+ * same thread, while actions of different keys can run concurrently. Actions with no key still run
+ * on the main render thread, and never concurrently with any other action.
+ *
+ * Isolated threads do not make layoutlib itself concurrent. Layoutlib keeps the context of the
+ * session being rendered in static state, and every call on a `RenderSession` (creating it,
+ * rendering, disposing...) holds its process-wide bridge lock while it runs, waiting for it up to
+ * the timeout given to the call. So session calls of different keys still run one at a time, and an
+ * isolated action can spend part of its action timeout waiting for another key's call. Only the
+ * work around those calls, like loading and transforming classes or processing the rendered image,
+ * runs concurrently.
+ *
+ * Actions running on an isolated thread must not wait for an action without a key to complete:
+ * that action needs every isolated action to finish first. [runAction] takes care of it when
+ * called from a render thread, by running the action right away on the calling thread.
+ *
  * @param maxQueueingTasks max number of tasks that can be queueing waiting for a task to complete.
  * @param renderingExecutorService a provider of the [ExecutorService] using the given
  *   [ThreadFactory].
+ * @param isolatedExecutorServices the executors running actions with an isolation key, if any.
  * @param scheduledExecutorService a [ScheduledExecutorService] to keep track of the task timeout.
  */
 class RenderExecutor
 private constructor(
   private val maxQueueingTasks: Int,
   private val renderingExecutorService: SingleThreadExecutorService,
+  private val isolatedExecutorServices: List<SingleThreadExecutorService>,
   private val scheduledExecutorService: ScheduledExecutorService
 ) : RenderAsyncActionExecutor {
   private val pendingActionsQueueLock: Lock = ReentrantLock()
   private val runningRenderLock: Lock = ReentrantLock()
 
+  /**
+   * Held for reading by the actions running on the isolated threads, and for writing by the actions
+   * running on the main render thread, so those never run concurrently with any other.
+   */
+  private val isolationLock = ReentrantReadWriteLock()
+  @GuardedBy("itself")
+  private val isolatedExecutorServiceByKey = WeakHashMap<Any, SingleThreadExecutorService>()
+
   @GuardedBy("pendingActionsQueueLock")
   private val allPendingActionsQueue: Queue<PriorityCompletableFuture<*>> = PriorityQueue()
   @GuardedBy("pendingActionsQueueLock")
   private val pendingActionsQueueByTopic:
     MutableMap<RenderingTopic, Queue<PriorityCompletableFuture<*>>> =
     EnumMap(RenderingTopic::class.java)
-  @GuardedBy("runningRenderLock") private var runningRender: PriorityCompletableFuture<*>? = null
+  @GuardedBy("runningRenderLock")
+  private val runningRenders = mutableSetOf<PriorityCompletableFuture<*>>()
   private val accumulatedTimeoutExceptions = AtomicInteger(0)
   private val executedRenderActions = LongAdder()
+  private val evictedRenderActions = LongAdder()
+  private val queueWaitTimeMs = LongAdder()
 
-  fun interrupt() = renderingExecutorService.interrupt()
+  private val allExecutorServices = listOf(renderingExecutorService) + isolatedExecutorServices
+
+  fun interrupt() = allExecutorServices.forEach { it.interrupt() }
 
   fun shutdown() {
     scheduledExecutorService.shutdownNow()
-    renderingExecutorService.shutdownNow()
+    allExecutorServices.forEach { it.shutdownNow() }
   }
 
   fun currentStackTrace() = renderingExecutorService.stackTrace()
 
-  private fun createRenderTimeoutException(message: String): TimeoutException =
-    TimeoutException(message).apply { stackTrace = renderingExecutorService.stackTrace() }
+  private fun createRenderTimeoutException(
+    message: String,
+    executorService: SingleThreadExecutorService
+  ): TimeoutException =
+    TimeoutException(message).apply { stackTrace = executorService.stackTrace() }
 
-  /** Calls the given action in the render thread synchronously. */
+  /**
+   * Returns the executor to run the actions of the given [isolationKey] on. Keys are assigned to
+   * the isolated executor with the fewest keys, and stay there for as long as they are reachable.
+   */
+  private fun getExecutorService(isolationKey: Any?): SingleThreadExecutorService {
+    if (isolationKey == null || isolatedExecutorServices.isEmpty()) return renderingExecutorService
+    return synchronized(isolatedExecutorServiceByKey) {
+      isolatedExecutorServiceByKey.getOrPut(isolationKey) {
+        val keyCounts = isolatedExecutorServiceByKey.values.groupingBy { it }.eachCount()
+        isolatedExecutorServices.minByOrNull { keyCounts[it] ?: 0 }!!
+      }
+    }
+  }
+
+  private fun <T> runIsolated(executorService: SingleThreadExecutorService, action: () -> T): T =
+    when {
+      isolatedExecutorServices.isEmpty() -> action()
+      executorService === renderingExecutorService -> isolationLock.write(action)
+      else -> isolationLock.read(action)
+    }
+
+  /**
+   * Calls the given action in the render thread synchronously.
+   *
+   * When called from an action already running on a render thread, waiting for the action to run
+   * on the main render thread would never return, so it runs on the calling thread instead. On an
+   * isolated thread, the isolation lock is traded for the write lock meanwhile, so the action still
+   * runs alone.
+   */
   @Deprecated("Use the async version runAsyncAction")
   @Throws(Exception::class)
   fun <T> runAction(callable: Callable<T>): T {
+    if (isRenderThread()) {
+      return runReentrant(callable)
+    }
+
     // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't
     // block.
     if (accumulatedTimeoutExceptions.get() > 3) {
@@ -93,7 +170,8 @@ private constructor(
         """
           The rendering thread is not processing requests.
           This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.
-          """
+          """,
+        renderingExecutorService
       )
     }
 
@@ -101,6 +179,18 @@ private constructor(
     return runAsyncAction(RenderingTopic.NOT_SPECIFIED, callable).get()
   }
 
+  private fun <T> runReentrant(callable: Callable<T>): T {
+    val readHoldCount = isolationLock.readHoldCount
+    if (readHoldCount == 0) return callable.call()
+    // A read lock can't be upgraded, so release it for as long as the action needs the write lock.
+    repeat(readHoldCount) { isolationLock.readLock().unlock() }
+    try {
+      return isolationLock.write { callable.call() }
+    } finally {
+      repeat(readHoldCount) { isolationLock.readLock().lock() }
+    }
+  }
+
   private class EvictedException(message: String?) : CancellationException(message)
 
   private fun scheduleTimeoutAction(
@@ -111,20 +201,44 @@ private constructor(
 
   override fun getExecutedRenderActionCount(): Long = executedRenderActions.toLong()
 
+  override fun getEvictedRenderActionCount(): Long = evictedRenderActions.toLong()
+
+  override fun getTotalQueueWaitTimeMs(): Long = queueWaitTimeMs.toLong()
+
+  override fun <T : Any?> runAsyncActionWithTimeout(
+    queueingTimeout: Long,
+    queueingTimeoutUnit: TimeUnit,
+    actionTimeout: Long,
+    actionTimeoutUnit: TimeUnit,
+    renderingTopic: RenderingTopic,
+    callable: Callable<T>
+  ): CompletableFuture<T> =
+    runAsyncActionWithTimeout(
+      queueingTimeout,
+      queueingTimeoutUnit,
+      actionTimeout,
+      actionTimeoutUnit,
+      renderingTopic,
+      null,
+      callable
+    )
+
   override fun <T : Any?> runAsyncActionWithTimeout(
     queueingTimeout: Long,
     queueingTimeoutUnit: TimeUnit,
     actionTimeout: Long,
     actionTimeoutUnit: TimeUnit,
     renderingTopic: RenderingTopic,
+    isolationKey: Any?,
     callable: Callable<T>
   ): CompletableFuture<T> {
+    val executorService = getExecutorService(isolationKey)
     val future =
       object : PriorityCompletableFuture<T>(renderingTopic) {
         override fun cancel(mayInterruptIfRunning: Boolean): Boolean =
           super.cancel(mayInterruptIfRunning).also {
             if (mayInterruptIfRunning && it) {
-              interrupt()
+              executorService.interrupt()
             }
           }
       }
@@ -138,7 +252,7 @@ private constructor(
         This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.
       """
               .trimIndent()
-          future.completeExceptionally(createRenderTimeoutException(message))
+          future.completeExceptionally(createRenderTimeoutException(message, executorService))
           accumulatedTimeoutExceptions.incrementAndGet()
         }
       } else {
@@ -163,13 +277,14 @@ private constructor(
       }
       .forEach {
         // Complete all the evicted tasks
+        evictedRenderActions.increment()
         it.completeExceptionally(
           EvictedException("Max number ($maxQueueingTasks) of render actions reached")
         )
       }
-    renderingExecutorService.execute(
+    executorService.execute(
       PriorityRunnable(renderingTopic) {
-        runningRenderLock.withLock { runningRender = future }
+        runningRenderLock.withLock { runningRenders.add(future) }
         try {
           executedRenderActions.increment()
           // Clear the interrupted state
@@ -183,28 +298,33 @@ private constructor(
 
           if (!isPending || future.isDone) return@PriorityRunnable
 
-          val actionTimeoutFuture =
-            scheduleTimeoutAction(actionTimeout, actionTimeoutUnit) {
-              if (!future.isDone) {
-                interrupt()
-              }
-              future.completeExceptionally(
-                createRenderTimeoutException(
-                  "The render action was too slow to execute (${actionTimeoutUnit.toMillis(actionTimeout)}ms)"
+          runIsolated(executorService) {
+            queueWaitTimeMs.add(System.currentTimeMillis() - future.creationTime)
+            val actionTimeoutFuture =
+              scheduleTimeoutAction(actionTimeout, actionTimeoutUnit) {
+                if (!future.isDone) {
+                  executorService.interrupt()
+                }
+                future.completeExceptionally(
+                  createRenderTimeoutException(
+                    "The render action was too slow to execute " +
+                      "(${actionTimeoutUnit.toMillis(actionTimeout)}ms)",
+                    executorService
+                  )
                 )
-              )
+              }
+            future.whenComplete { _, _ -> actionTimeoutFuture.cancel(false) }
+
+            // The request got called, so reset the timeout counter.
+            accumulatedTimeoutExceptions.set(0)
+            try {
+              future.complete(callable.call())
+            } catch (t: Throwable) {
+              future.completeExceptionally(t)
             }
-          future.whenComplete { _, _ -> actionTimeoutFuture.cancel(false) }
-
-          // The request got called, so reset the timeout counter.
-          accumulatedTimeoutExceptions.set(0)
-          try {
-            future.complete(callable.call())
-          } catch (t: Throwable) {
-            future.completeExceptionally(t)
           }
         } finally {
-          runningRenderLock.withLock { runningRender = null }
+          runningRenderLock.withLock { runningRenders.remove(future) }
         }
       }
     )
@@ -236,7 +356,7 @@ private constructor(
       }
     }
     runningRenderLock.withLock {
-      runningRender?.let {
+      runningRenders.toList().forEach {
         if (it.renderingTopic in topicsToCancel) {
           it.cancel(mayInterruptIfRunning)
           numberOfCancelledActions++
@@ -252,7 +372,7 @@ private constructor(
 
     if (timeoutSeconds > 0) {
       try {
-        renderingExecutorService.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)
+        allExecutorServices.forEach { it.awaitTermination(timeoutSeconds, TimeUnit.SECONDS) }
       } catch (ignored: InterruptedException) {
         Logger.getInstance(RenderExecutor::class.java)
           .warn("The RenderExecutor does not shutdown after $timeoutSeconds seconds")
@@ -268,27 +388,41 @@ private constructor(
   val numPendingActions: Int
     get() = allPendingActionsQueue.size
 
-  /** Returns true if the render thread is busy running some code, false otherwise. */
-  fun isBusy() = renderingExecutorService.isBusy
+  /** Returns true if any render thread is busy running some code, false otherwise. */
+  fun isBusy() = allExecutorServices.any { it.isBusy }
 
-  /** Returns true if called from the render thread. */
-  fun isRenderThread(): Boolean = renderingExecutorService.hasSpawnedCurrentThread()
+  /**
+   * Returns true if called from a render thread, including the isolated ones, since they also run
+   * user code.
+   */
+  fun isRenderThread(): Boolean = allExecutorServices.any { it.hasSpawnedCurrentThread() }
 
   companion object {
+    /**
+     * Creates a [RenderExecutor] running the actions with an isolation key on [isolatedThreads]
+     * threads, or on the main render thread if 0.
+     */
     @JvmStatic
-    fun create(): RenderExecutor {
+    @JvmOverloads
+    fun create(isolatedThreads: Int = DEFAULT_ISOLATED_THREADS): RenderExecutor {
       val scheduledExecutorService =
         ScheduledThreadPoolExecutor(1).also { it.removeOnCancelPolicy = true }
+      val threadProfileSettings =
+        ThreadProfileSettings(
+          scheduledExecutorService = scheduledExecutorService,
+          onSlowThread = { Logger.getInstance(RenderExecutor::class.java).warn(it) }
+        )
       return RenderExecutor(
         DEFAULT_MAX_QUEUED_TASKS,
         renderingExecutorService =
-          SingleThreadExecutorService.create(
-            "Layoutlib Render Thread",
-            ThreadProfileSettings(
-              scheduledExecutorService = scheduledExecutorService,
-              onSlowThread = { Logger.getInstance(RenderExecutor::class.java).warn(it) }
-            ),
-          ),
+          SingleThreadExecutorService.create("Layoutlib Render Thread", threadProfileSettings),
+        isolatedExecutorServices =
+          List(isolatedThreads) {
+            SingleThreadExecutorService.create(
+              "Layoutlib Render Thread ${it + 1}",
+              threadProfileSettings
+            )
+          },
         scheduledExecutorService = scheduledExecutorService,
       )
     }
@@ -296,8 +430,15 @@ private constructor(
     @TestOnly
     fun createForTests(
       executorService: SingleThreadExecutorService,
-      scheduledExecutorService: ScheduledExecutorService
-    ) = RenderExecutor(DEFAULT_MAX_QUEUED_TASKS, executorService, scheduledExecutorService)
+      scheduledExecutorService: ScheduledExecutorService,
+      isolatedExecutorServices: List<SingleThreadExecutorService> = emptyList()
+    ) =
+      RenderExecutor(
+        DEFAULT_MAX_QUEUED_TASKS,
+        executorService,
+        isolatedExecutorServices,
+        scheduledExecutorService
+      )
   }
 
   /**
@@ -340,7 +481,7 @@ private constructor(
   private open class PriorityCompletableFuture<T : Any?>(val renderingTopic: RenderingTopic) :
     Comparable<PriorityCompletableFuture<Any?>>, CompletableFuture<T>() {
 
-    private val creationTime = System.currentTimeMillis()
+    val creationTime = System.currentTimeMillis()
 
     override fun compareTo(other: PriorityCompletableFuture<Any?>): Int {
       // Plus sign as we want the lowest priority first to be removed from the wait list when
@@ -87,6 +87,19 @@ final public class RenderService implements Disposable {
     }
   }
 
+  /**
+   * Creates a new render executor that runs the actions of renders with different class loaders on up to {@code isolatedThreads}
+   * concurrent threads.
+   */
+  @TestOnly
+  public static void initializeRenderExecutor(int isolatedThreads) {
+    assert ApplicationManager.getApplication().isUnitTestMode(); // Only to be called from unit tests
+
+    synchronized (ourExecutorLock) {
+      ourExecutor = RenderExecutor.create(isolatedThreads);
+    }
+  }
+
   public static void shutdownRenderExecutor() {
     RenderExecutor currentExecutor = getExistingExecutor();
     if (currentExecutor != null) currentExecutor.shutdown();
@@ -104,7 +104,8 @@ fun RenderSession.dispose(classLoader: ModuleClassLoader): CompletableFuture<Voi
   disposeMethod.ifPresent { m: Method -> m.isAccessible = true }
   val finalDisposeMethod = disposeMethod
   return RenderService.getRenderAsyncActionExecutor().runAsyncAction(
-    RenderAsyncActionExecutor.RenderingTopic.CLEAN
+    RenderAsyncActionExecutor.RenderingTopic.CLEAN,
+    classLoader
   ) {
     finalDisposeMethod.ifPresent { m: Method? ->
       this@dispose.execute(
@@ -233,9 +234,11 @@ fun clearGapWorkerCache(classLoader: ModuleClassLoader) {
     val gapWorkerField = gapWorkerClass.getDeclaredField("sGapWorker")
     gapWorkerField.isAccessible = true
 
-    // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread
+    // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread of this
+    // class loader
     RenderService.getRenderAsyncActionExecutor().runAsyncAction(
-      RenderAsyncActionExecutor.RenderingTopic.CLEAN
+      RenderAsyncActionExecutor.RenderingTopic.CLEAN,
+      classLoader
     ) {
       try {
         val gapWorkerFieldValue = gapWorkerField[null] as ThreadLocal<*>
@@ -839,10 +839,12 @@ public class RenderTask {
     }
 
     synchronized (myRunningFutures) {
+      // Actions of tasks with different class loaders do not share any state, so they can run concurrently.
+      Object isolationKey = myModuleClassLoaderReference.getClassLoader();
       CompletableFuture<V> newFuture = timeout < 1 ?
-                                       RenderService.getRenderAsyncActionExecutor().runAsyncAction(myTopic, callable) :
+                                       RenderService.getRenderAsyncActionExecutor().runAsyncAction(myTopic, isolationKey, callable) :
                                        RenderService.getRenderAsyncActionExecutor().runAsyncActionWithTimeout(timeout, unit, myTopic,
-                                                                                                              callable);
+                                                                                                              isolationKey, callable);
       myRunningFutures.add(newFuture);
       newFuture
         .whenCompleteAsync((result, ex) -> {
@@ -1264,7 +1266,8 @@ public class RenderTask {
                                                                   myLogger,
                                                                   myContext.getModule().getResourceRepositoryManager());
     Map<RenderXmlTag, ViewInfo> map = new HashMap<>();
-    return RenderService.getRenderAsyncActionExecutor().runAsyncAction(myTopic, () -> measure(modelParser))
+    return RenderService.getRenderAsyncActionExecutor().runAsyncAction(myTopic, myModuleClassLoaderReference.getClassLoader(),
+                                                                       () -> measure(modelParser))
       .thenComposeAsync(session -> {
         if (session != null) {
           try {
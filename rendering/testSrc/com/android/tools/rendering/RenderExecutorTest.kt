@@ -547,4 +547,104 @@ class RenderExecutorTest {
       executor.shutdown()
     }
   }
+
+  @Test
+  fun testIsolatedActions() {
+    val executor = RenderExecutor.create(isolatedThreads = 2)
+    val keyA = Any()
+    val keyB = Any()
+    val actionsRunningLatch = CountDownLatch(2)
+    val completeActionsLatch = CountDownLatch(1)
+    val threadsByKey = mutableMapOf<Any, MutableSet<Thread>>()
+    val runningActions = AtomicInteger(0)
+    val maxRunningActions = AtomicInteger(0)
+    fun run(key: Any?, action: () -> Unit = {}): CompletableFuture<Void> =
+      executor.runAsyncAction(
+        getRandomTopic(),
+        key,
+        Callable<Void> {
+          val running = runningActions.incrementAndGet()
+          maxRunningActions.accumulateAndGet(running) { a, b -> maxOf(a, b) }
+          synchronized(threadsByKey) {
+            threadsByKey.getOrPut(key ?: executor) { mutableSetOf() }.add(Thread.currentThread())
+          }
+          action()
+          runningActions.decrementAndGet()
+          null
+        }
+      )
+
+    try {
+      // Actions of different keys run concurrently.
+      val blockedA = run(keyA) {
+        actionsRunningLatch.countDown()
+        completeActionsLatch.await()
+      }
+      val blockedB = run(keyB) {
+        actionsRunningLatch.countDown()
+        completeActionsLatch.await()
+      }
+      assertTrue(actionsRunningLatch.await(5, TimeUnit.SECONDS))
+      assertTrue(executor.isBusy())
+
+      // Actions of the same key run on the same thread, after the previous ones.
+      val nextA = run(keyA)
+      val unkeyed = run(null)
+      assertFalse(nextA.isDone)
+      assertFalse(unkeyed.isDone)
+      completeActionsLatch.countDown()
+      CompletableFuture.allOf(blockedA, blockedB, nextA, unkeyed).get(5, TimeUnit.SECONDS)
+
+      assertEquals(2, maxRunningActions.get())
+      assertEquals(1, threadsByKey[keyA]!!.size)
+      assertEquals(1, threadsByKey[keyB]!!.size)
+      assertTrue((threadsByKey[keyA]!! intersect threadsByKey[keyB]!!).isEmpty())
+      val isolatedThreads = threadsByKey[keyA]!! + threadsByKey[keyB]!!
+      assertTrue((threadsByKey[executor]!! intersect isolatedThreads).isEmpty())
+      assertEquals(4, executor.getExecutedRenderActionCount())
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  @Test
+  fun testSyncActionFromRenderThread() {
+    val executor = RenderExecutor.create(isolatedThreads = 1)
+    fun runNested(key: Any?): Pair<Thread, Thread> =
+      executor
+        .runAsyncAction(
+          getRandomTopic(),
+          key,
+          Callable { Thread.currentThread() to executor.runAction(Callable { Thread.currentThread() }) }
+        )
+        .get(5, TimeUnit.SECONDS)
+
+    try {
+      // Waiting for the nested action on the main render thread would never return.
+      val (isolatedThread, nestedIsolatedThread) = runNested(Any())
+      assertEquals(isolatedThread, nestedIsolatedThread)
+      val (mainThread, nestedMainThread) = runNested(null)
+      assertEquals(mainThread, nestedMainThread)
+      assertFalse(isolatedThread == mainThread)
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  @Test
+  fun testQueueStats() {
+    val actionExecutor = OnDemandExecutorService()
+    val executor =
+      RenderExecutor.createForTests(
+        executorService = TestSingleThreadExecutorService(actionExecutor),
+        scheduledExecutorService = VirtualTimeScheduler()
+      )
+
+    repeat(60) { executor.runAsyncActionWithTestDefault {} }
+    Thread.sleep(10)
+    actionExecutor.runAll()
+    assertEquals(10, executor.getEvictedRenderActionCount())
+    assertEquals(60, executor.getExecutedRenderActionCount())
+    assertTrue(executor.getTotalQueueWaitTimeMs() >= 50 * 10)
+  }
 }
@@ -24,7 +24,9 @@ import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.util.system.CpuArch;
+import java.awt.Rectangle;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -95,6 +97,55 @@ public class ImageConverter {
     }
   }
 
+  /**
+   * Converts pixel values in RGB888 format to the 32-bit integers in the 0xAARRGGBB format, writing only the pixels that differ from
+   * the current contents of {@code pixels}. Intended for frames that the emulator writes to shared memory, which are converted into
+   * the same pixel array over and over again.
+   *
+   * @param imageBytes the pixel values to convert, starting at the current position of the buffer, which is not changed
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param pixels the converted pixel values
+   * @return the bounds of the pixels that changed, or an empty rectangle if none did
+   */
+  public static @NotNull Rectangle unpackRgb888Changes(@NotNull ByteBuffer imageBytes, int width, int height, int[] pixels) {
+    if (imageBytes.remaining() < width * height * 3) {
+      throw new IllegalArgumentException("Number of bytes (" + imageBytes.remaining() + ") is less than required for " +
+                                         width + "x" + height + " image");
+    }
+    ByteBuffer buffer = imageBytes.duplicate();
+    byte[] row = new byte[width * 3];
+    int minX = width;
+    int maxX = -1;
+    int minY = -1;
+    int maxY = -1;
+    for (int y = 0; y < height; y++) {
+      buffer.get(row);
+      int offset = y * width;
+      boolean rowChanged = false;
+      int i = 0;
+      for (int x = 0; x < width; x++) {
+        int red = row[i++] & 0xFF;
+        int green = row[i++] & 0xFF;
+        int blue = row[i++] & 0xFF;
+        int pixel = 0xFF000000 | (red << 16) | (green << 8) | blue;
+        if (pixels[offset + x] != pixel) {
+          pixels[offset + x] = pixel;
+          minX = Math.min(minX, x);
+          maxX = Math.max(maxX, x);
+          rowChanged = true;
+        }
+      }
+      if (rowChanged) {
+        if (minY < 0) {
+          minY = y;
+        }
+        maxY = y;
+      }
+    }
+    return maxY < 0 ? new Rectangle() : new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+  }
+
   @VisibleForTesting
   synchronized static void loadNativeLibrary() {
     Path libFile = getLibLocation();
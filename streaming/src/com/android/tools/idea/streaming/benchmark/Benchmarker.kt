@@ -22,6 +22,7 @@ import com.android.utils.time.TimeSource
 import com.android.utils.time.TimeSource.TimeMark
 import com.google.common.math.Quantiles
 import com.intellij.openapi.diagnostic.Logger
+import org.HdrHistogram.Histogram
 import java.util.Timer
 import kotlin.concurrent.scheduleAtFixedRate
 import kotlin.math.roundToLong
@@ -76,8 +77,8 @@ class Benchmarker<InputType>(
       }
     }
     State.COMPLETE.onEnter {
+      val results = Results(inputRoundTrips, adapter.stageLatencies())
       adapter.cleanUp()
-      val results = Results(inputRoundTrips)
       callbacks.forEach {
         it.onStopped()
         it.onComplete(results)
@@ -166,7 +167,11 @@ class Benchmarker<InputType>(
     }
   }
 
-  class Results<InputType>(val raw: Map<InputType, Duration>) {
+  /**
+   * The round-trip durations of the inputs together with the [stageLatencies] reported by the [Adapter], which are histograms
+   * of microseconds keyed by the names of the stages.
+   */
+  class Results<InputType>(val raw: Map<InputType, Duration>, val stageLatencies: Map<String, Histogram> = emptyMap()) {
     val percentiles: Map<Int, Double> =
       Quantiles.percentiles().indexes(IntRange(1, 100).toList()).compute(raw.values.map { it.inWholeMilliseconds })
   }
@@ -210,6 +215,12 @@ class Benchmarker<InputType>(
     /** Indicates that benchmarking is over. */
     fun cleanUp()
 
+    /**
+     * Gets the latencies, in microseconds, of the stages of processing inside the object being benchmarked since it became ready,
+     * keyed by the names of the stages.
+     */
+    fun stageLatencies(): Map<String, Histogram> = emptyMap()
+
     /** Callbacks to return data to the [Benchmarker] during benchmarking. */
     interface Callbacks<InputType> {
       /**
@@ -24,6 +24,9 @@ import com.android.tools.idea.streaming.core.right
 import com.android.tools.idea.streaming.core.rotatedByQuadrants
 import com.android.tools.idea.streaming.core.scaled
 import com.android.tools.idea.streaming.core.scaledUnbiased
+import com.android.tools.idea.streaming.device.DeviceView
+import com.android.tools.idea.streaming.device.FrameProcessingStats
+import com.android.tools.idea.streaming.device.VideoDecoder
 import com.android.utils.time.TimeSource
 import com.android.utils.time.TimeSource.TimeMark
 import com.intellij.openapi.diagnostic.Logger
@@ -32,6 +35,7 @@ import com.intellij.openapi.project.Project
 import com.intellij.util.ui.UIUtil
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.launch
+import org.HdrHistogram.Histogram
 import java.awt.Color
 import java.awt.Dimension
 import java.awt.Point
@@ -235,6 +239,10 @@ internal class DeviceAdapter (
 
   private var lastPressed: Point? = null
 
+  /** Processing latencies of the frames displayed by [target], if its frames go through a [VideoDecoder]. */
+  private val frameProcessingStats: FrameProcessingStats?
+    get() = (target.view as? DeviceView)?.deviceClient?.videoDecoder?.stats
+
   init {
     require(maxTouches > 0) { "Must specify a positive value for maxTouches!" }
     require(step > 0) { "Must specify a positive value for step!" }
@@ -270,6 +278,7 @@ internal class DeviceAdapter (
             isIndeterminate = false
             fraction = 1.0
           }
+          frameProcessingStats?.reset()
           adapterCallbacks.onReady()
         }
       }
@@ -312,6 +321,12 @@ internal class DeviceAdapter (
     lastPressed?.let { target.view.click(it, MouseEvent.MOUSE_RELEASED) }
   }
 
+  override fun stageLatencies(): Map<String, Histogram> {
+    val stats = frameProcessingStats ?: return emptyMap()
+    LOG.info("Dropped ${stats.droppedFrameCount} decoded frames")
+    return stats.getLatencies()
+  }
+
   override fun cleanUp() {
     target.view.removeFrameListener(this)
     coroutineScope.launch { installer.uninstallBenchmarkingApp() }
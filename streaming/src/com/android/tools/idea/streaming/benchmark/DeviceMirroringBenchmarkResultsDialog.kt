@@ -31,6 +31,7 @@ import com.intellij.ui.charts.xPainter
 import com.intellij.ui.charts.yPainter
 import com.intellij.ui.components.dialog
 import com.intellij.ui.dsl.builder.panel
+import org.HdrHistogram.Histogram
 import java.awt.Component
 import java.awt.Dimension
 import java.awt.Point
@@ -60,6 +61,15 @@ class DeviceMirroringBenchmarkResultsDialog(private val deviceName: String, priv
     xLabelFormatStr = "%d%%")
 
   private fun createPanel() = panel {
+    if (results.stageLatencies.isNotEmpty()) {
+      group("Frame Processing Latency") {
+        for ((stage, latencies) in results.stageLatencies) {
+          row("$stage:") {
+            text(latencies.toSummary())
+          }
+        }
+      }
+    }
     separator()
     row {
       resizableRow()
@@ -141,6 +151,16 @@ class DeviceMirroringBenchmarkResultsDialog(private val deviceName: String, priv
       component.preferredSize = Dimension(800, 400)
     }
 
+    /** Summarizes a histogram of microseconds. */
+    private fun Histogram.toSummary(): String {
+      if (totalCount == 0L) {
+        return "No frames"
+      }
+      fun format(micros: Long) = "%.1f ms".format(micros / 1000.0)
+      return "median ${format(getValueAtPercentile(50.0))}, 90% ${format(getValueAtPercentile(90.0))}, " +
+             "99% ${format(getValueAtPercentile(99.0))}, max ${format(maxValue)} ($totalCount frames)"
+    }
+
     private fun <T : Number> Iterable<T>.toValueIterable() = object : ValueIterable<T>() {
       override fun iterator(): Iterator<T> = this@toValueIterable.iterator()
     }
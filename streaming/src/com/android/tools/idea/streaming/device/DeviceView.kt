@@ -385,6 +385,9 @@ internal class DeviceView(
       deviceDisplaySize.size = displayFrame.displaySize
       displayOrientationQuadrants = displayFrame.orientation
       displayOrientationCorrectionQuadrants = displayFrame.orientationCorrection
+      if (frameNumber != displayFrame.frameNumber) {
+        decoder.stats.recordPainting(System.nanoTime() - displayFrame.availabilityTime)
+      }
       frameNumber = displayFrame.frameNumber
       notifyFrameListeners(displayRect, displayFrame.image)
 
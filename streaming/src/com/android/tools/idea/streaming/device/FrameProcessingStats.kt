@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.streaming.device
+
+import com.android.annotations.concurrency.GuardedBy
+import org.HdrHistogram.Histogram
+import java.util.concurrent.TimeUnit
+
+/**
+ * Latencies, in microseconds, of the stages that video frames go through on their way to the screen: decoding of a video packet,
+ * conversion of the decoded frame to an image, and painting, from the moment the image becomes available until it has been drawn.
+ * Also counts the decoded frames that were dropped because the conversion didn't keep up with the decoding.
+ */
+internal class FrameProcessingStats {
+  @GuardedBy("this")
+  private val decodingTime = Histogram(1)
+  @GuardedBy("this")
+  private val conversionTime = Histogram(1)
+  @GuardedBy("this")
+  private val paintingTime = Histogram(1)
+  @get:Synchronized
+  var droppedFrameCount = 0
+    private set
+
+  @Synchronized
+  fun recordDecoding(decodingTimeNanos: Long) {
+    decodingTime.recordValue(TimeUnit.NANOSECONDS.toMicros(decodingTimeNanos))
+  }
+
+  @Synchronized
+  fun recordConversion(conversionTimeNanos: Long) {
+    conversionTime.recordValue(TimeUnit.NANOSECONDS.toMicros(conversionTimeNanos))
+  }
+
+  @Synchronized
+  fun recordPainting(paintingTimeNanos: Long) {
+    paintingTime.recordValue(TimeUnit.NANOSECONDS.toMicros(paintingTimeNanos))
+  }
+
+  @Synchronized
+  fun recordDroppedFrame() {
+    droppedFrameCount++
+  }
+
+  /** Returns copies of the latency histograms keyed by the names of the stages, in the order of the stages. */
+  @Synchronized
+  fun getLatencies(): Map<String, Histogram> =
+    linkedMapOf("Decoding" to decodingTime.copy(), "Conversion" to conversionTime.copy(), "Painting" to paintingTime.copy())
+
+  @Synchronized
+  fun reset() {
+    decodingTime.reset()
+    conversionTime.reset()
+    paintingTime.reset()
+    droppedFrameCount = 0
+  }
+}
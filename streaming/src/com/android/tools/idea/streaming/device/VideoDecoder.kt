@@ -25,7 +25,13 @@ import com.intellij.openapi.diagnostic.debug
 import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.util.containers.ContainerUtil
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ReceiveChannel
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import org.bytedeco.ffmpeg.avcodec.AVCodec
 import org.bytedeco.ffmpeg.avcodec.AVCodecContext
 import org.bytedeco.ffmpeg.avcodec.AVCodecParserContext
@@ -54,6 +60,7 @@ import org.bytedeco.ffmpeg.global.avutil.av_frame_alloc
 import org.bytedeco.ffmpeg.global.avutil.av_frame_free
 import org.bytedeco.ffmpeg.global.avutil.av_frame_get_buffer
 import org.bytedeco.ffmpeg.global.avutil.av_frame_make_writable
+import org.bytedeco.ffmpeg.global.avutil.av_frame_unref
 import org.bytedeco.ffmpeg.global.avutil.av_image_get_buffer_size
 import org.bytedeco.ffmpeg.global.swscale.SWS_BILINEAR
 import org.bytedeco.ffmpeg.global.swscale.sws_freeContext
@@ -79,6 +86,7 @@ import java.lang.Long.toHexString
 import java.nio.ByteBuffer
 import java.nio.ByteOrder.LITTLE_ENDIAN
 import java.nio.channels.ClosedChannelException
+import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.function.Consumer
 import kotlin.text.Charsets.UTF_8
 
@@ -91,7 +99,15 @@ internal class VideoDecoder(
   private val imageLock = Any()
   @GuardedBy("imageLock")
   private var displayFrame: VideoFrame? = null
+  /** The image of [displayFrame] if it can be reused for a later frame once it is no longer displayed. */
+  @GuardedBy("imageLock")
+  private var reusableDisplayImage: BufferedImage? = null
+  /** An image that is no longer displayed and can be reused for the next frame. */
+  @GuardedBy("imageLock")
+  private var spareImage: BufferedImage? = null
   private val frameListeners = ContainerUtil.createLockFreeCopyOnWriteList<FrameListener>()
+  /** Latencies of decoding, conversion and painting of the video frames. */
+  val stats = FrameProcessingStats()
 
   fun addFrameListener(listener: FrameListener) {
     frameListeners.add(listener)
@@ -111,6 +127,9 @@ internal class VideoDecoder(
   /**
    * Starts the decoder and returns. The decoder will continue to run until the video channel
    * is disconnected or [decoderScope] is cancelled.
+   *
+   * Decoding of video packets and conversion of the decoded frames to images run in separate coroutines.
+   * If the conversion doesn't keep up, the decoded frames it didn't get to are dropped in favor of newer ones.
    */
   fun start() {
     firstPacketArrival = 0L
@@ -118,7 +137,20 @@ internal class VideoDecoder(
       val header = ByteBuffer.allocate(CHANNEL_HEADER_LENGTH)
       videoChannel.readFully(header)
       val codecName = String(header.array(), UTF_8).trim()
-      val decodingContext = DecodingContext(codecName)
+      val framePool = DecodedFramePool()
+      var stopping = false
+      // Holds at most one decoded frame. A frame that the conversion didn't take before the next one arrived is dropped.
+      val decodedFrames = Channel<DecodedFrame>(1, BufferOverflow.DROP_OLDEST) { frame ->
+        if (!stopping) {
+          stats.recordDroppedFrame()
+        }
+        framePool.release(frame)
+      }
+      val decodingContext = DecodingContext(codecName, framePool, decodedFrames)
+      val conversionContext = ConversionContext()
+      val conversionJob = launch {
+        conversionContext.convertFrames(decodedFrames, framePool)
+      }
       try {
         while (true) {
           decodingContext.readAndProcessPacket()
@@ -129,7 +161,14 @@ internal class VideoDecoder(
       catch (_: EOFException) {
       }
       finally {
+        stopping = true
+        decodedFrames.cancel()
+        withContext(NonCancellable) {
+          conversionJob.cancelAndJoin()
+        }
+        conversionContext.close()
         decodingContext.close()
+        framePool.close()
         onEndOfVideoStream()
       }
     }
@@ -159,15 +198,51 @@ internal class VideoDecoder(
       val orientationCorrection: Int,
       val round: Boolean,
       val frameNumber: Int,
-      val originationTime: Long)
+      val originationTime: Long,
+      /** The value of [System.nanoTime] when the frame became available for display. */
+      val availabilityTime: Long)
+
+  /** A decoded video frame together with the header of the packet it was decoded from. */
+  private class DecodedFrame {
+    val frame: AVFrame = av_frame_alloc()
+    lateinit var header: PacketHeader
+  }
 
-  private inner class DecodingContext(codecName: String) : AutoCloseable {
+  /**
+   * Decoded frames that are reused instead of being allocated for every packet. Since the decoder holds at most one frame
+   * that is being decoded, one that is waiting to be converted and one that is being converted, there are at most three frames.
+   */
+  private class DecodedFramePool : AutoCloseable {
+    private val freeFrames = ConcurrentLinkedQueue<DecodedFrame>()
+    // Accessed only by the decoding coroutine and by close.
+    private val allFrames = mutableListOf<DecodedFrame>()
+
+    fun take(): DecodedFrame =
+      freeFrames.poll() ?: DecodedFrame().also { allFrames.add(it) }
+
+    fun release(frame: DecodedFrame) {
+      av_frame_unref(frame.frame)
+      freeFrames.add(frame)
+    }
+
+    /** Frees all frames. Must not be called while any of the frames is still in use. */
+    override fun close() {
+      for (frame in allFrames) {
+        av_frame_free(frame.frame)
+      }
+      allFrames.clear()
+      freeFrames.clear()
+    }
+  }
+
+  private inner class DecodingContext(
+    codecName: String,
+    private val framePool: DecodedFramePool,
+    private val decodedFrames: Channel<DecodedFrame>,
+  ) : AutoCloseable {
 
     private val codec: AVCodec
     private val codecContext: AVCodecContext
-    private val decodingFrame: AVFrame
-    private var renderingFrame: AVFrame? = null
-    private var swsContext: SwsContext? = null
     private val parserContext: AVCodecParserContext
     private val headerBuffer: ByteBuffer = PacketHeader.createBuffer()
     private val packet: AVPacket = av_packet_alloc()
@@ -191,8 +266,6 @@ internal class VideoDecoder(
         avcodec_free_context(codecContext)
         throw VideoDecoderException("Could not open codec ${codec.name()}")
       }
-
-      decodingFrame = av_frame_alloc()
     }
 
     suspend fun readAndProcessPacket() {
@@ -231,9 +304,6 @@ internal class VideoDecoder(
     override fun close() {
       avcodec_close(codecContext)
       avcodec_free_context(codecContext)
-      av_frame_free(decodingFrame)
-      renderingFrame?.let { av_frame_free(it) }
-      swsContext?.let { sws_freeContext(it) }
       av_packet_free(packet)
       av_packet_free(pendingPacket)
     }
@@ -302,17 +372,55 @@ internal class VideoDecoder(
     }
 
     private fun processFrame(packet: AVPacket, header: PacketHeader) {
+      val decodingStart = System.nanoTime()
       val ret = avcodec_send_packet(codecContext, packet)
       if (ret < 0) {
         throw VideoDecoderException("Video packet was rejected by the decoder: $ret")
       }
 
-      if (avcodec_receive_frame(codecContext, decodingFrame) != 0) {
+      val decodedFrame = framePool.take()
+      if (avcodec_receive_frame(codecContext, decodedFrame.frame) != 0) {
+        framePool.release(decodedFrame)
         throw VideoDecoderException("Could not receive video frame")
       }
+      decodedFrame.header = header
+      stats.recordDecoding(System.nanoTime() - decodingStart)
+
+      if (decodedFrames.trySend(decodedFrame).isFailure) {
+        framePool.release(decodedFrame) // The conversion has stopped.
+      }
+    }
+  }
 
-      val frameWidth = decodingFrame.width()
-      val frameHeight = decodingFrame.height()
+  /** Converts decoded frames to images and makes them available for display. */
+  private inner class ConversionContext : AutoCloseable {
+
+    private var renderingFrame: AVFrame? = null
+    private var swsContext: SwsContext? = null
+
+    suspend fun convertFrames(decodedFrames: ReceiveChannel<DecodedFrame>, framePool: DecodedFramePool) {
+      for (decodedFrame in decodedFrames) {
+        try {
+          convertFrame(decodedFrame.frame, decodedFrame.header)
+        }
+        catch (e: VideoDecoderException) {
+          thisLogger().error(e)
+        }
+        finally {
+          framePool.release(decodedFrame)
+        }
+      }
+    }
+
+    override fun close() {
+      renderingFrame?.let { av_frame_free(it) }
+      swsContext?.let { sws_freeContext(it) }
+    }
+
+    private fun convertFrame(decodedFrame: AVFrame, header: PacketHeader) {
+      val conversionStart = System.nanoTime()
+      val frameWidth = decodedFrame.width()
+      val frameHeight = decodedFrame.height()
       var renderingFrame = renderingFrame
       if (renderingFrame == null || renderingFrame.width() != frameWidth || renderingFrame.height() != frameHeight) {
         renderingFrame?.let { av_frame_free(it) }
@@ -325,7 +433,7 @@ internal class VideoDecoder(
         throw RuntimeException("av_frame_make_writable failed")
       }
 
-      sws_scale(getSwsContext(renderingFrame), decodingFrame.data(), decodingFrame.linesize(), 0, frameHeight,
+      sws_scale(getSwsContext(decodedFrame, renderingFrame), decodedFrame.data(), decodedFrame.linesize(), 0, frameHeight,
                 renderingFrame.data(), renderingFrame.linesize())
 
       val numBytes = av_image_get_buffer_size(renderingFrame.format(), frameWidth, frameHeight, 1)
@@ -337,34 +445,50 @@ internal class VideoDecoder(
       val startY = (frameHeight - imageHeight) / 2
       framePixels.position(startY * frameWidth) // Skip the potential black strip at the top of the frame.
 
+      // The pixels are copied to an image that is not displayed, so that painting doesn't have to wait for the copying.
+      val reusableImage = takeSpareImage(frameWidth, imageHeight)
+      val imagePixels = (reusableImage.raster.dataBuffer as DataBufferInt).data
+      framePixels.get(imagePixels, 0, imageHeight * frameWidth)
+      var image = reusableImage
+      if (header.displayOrientationCorrection != 0) {
+        image = ImageUtils.rotateByQuadrants(image, header.displayOrientationCorrection)
+      }
+      if (header.displayRound) {
+        image = ellipticalClip(image, null)
+      }
+
       synchronized(imageLock) {
-        var image = displayFrame?.image
-        if (image?.width == frameWidth && image.height == imageHeight &&
-            displayFrame?.orientationCorrection == 0 && header.displayOrientationCorrection == 0 && !header.displayRound) {
-          val imagePixels = (image.raster.dataBuffer as DataBufferInt).data
-          framePixels.get(imagePixels, 0, imageHeight * frameWidth)
+        reusableDisplayImage?.let { spareImage = it }
+        if (image === reusableImage) {
+          reusableDisplayImage = image
         }
         else {
-          val imagePixels = IntArray(frameWidth * imageHeight)
-          framePixels.get(imagePixels, 0, imageHeight * frameWidth)
-          val buffer = DataBufferInt(imagePixels, imagePixels.size)
-          val sampleModel = SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, frameWidth, imageHeight, SAMPLE_MODEL_BIT_MASKS)
-          val raster = Raster.createWritableRaster(sampleModel, buffer, ZERO_POINT)
-          image = ImageUtils.rotateByQuadrants(BufferedImage(COLOR_MODEL, raster, false, null), header.displayOrientationCorrection)
-          if (header.displayRound) {
-            image = ellipticalClip(image, null)
-          }
+          reusableDisplayImage = null
+          spareImage = reusableImage
         }
-
         displayFrame = VideoFrame(image, header.displaySize, header.displayOrientation, header.displayOrientationCorrection,
-                                  header.displayRound, header.frameNumber.toInt(), header.originationTimestampUs / 1000)
+                                  header.displayRound, header.frameNumber.toInt(), header.originationTimestampUs / 1000, System.nanoTime())
       }
+      stats.recordConversion(System.nanoTime() - conversionStart)
 
       onNewFrameAvailable()
     }
 
-    private fun getSwsContext(renderingFrame: AVFrame): SwsContext {
-      val context = sws_getCachedContext(swsContext, decodingFrame.width(), decodingFrame.height(), decodingFrame.format(),
+    private fun takeSpareImage(width: Int, height: Int): BufferedImage {
+      val image = synchronized(imageLock) {
+        spareImage.also { spareImage = null }
+      }
+      if (image?.width == width && image.height == height) {
+        return image
+      }
+      val buffer = DataBufferInt(width * height)
+      val sampleModel = SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height, SAMPLE_MODEL_BIT_MASKS)
+      val raster = Raster.createWritableRaster(sampleModel, buffer, ZERO_POINT)
+      return BufferedImage(COLOR_MODEL, raster, false, null)
+    }
+
+    private fun getSwsContext(decodedFrame: AVFrame, renderingFrame: AVFrame): SwsContext {
+      val context = sws_getCachedContext(swsContext, decodedFrame.width(), decodedFrame.height(), decodedFrame.format(),
                                          renderingFrame.width(), renderingFrame.height(), renderingFrame.format(),
                                          SWS_BILINEAR, null, null, null as DoublePointer?) ?:
           throw VideoDecoderException("Could not allocate SwsContext")
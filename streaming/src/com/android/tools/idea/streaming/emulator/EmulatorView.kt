@@ -164,10 +164,14 @@ import java.awt.image.DataBufferInt
 import java.awt.image.DirectColorModel
 import java.awt.image.Raster
 import java.awt.image.SinglePixelPackedSampleModel
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicReference
 import javax.swing.KeyStroke
 import kotlin.math.PI
 import kotlin.math.abs
+import kotlin.math.ceil
+import kotlin.math.floor
 import kotlin.math.min
 import kotlin.math.roundToInt
 import com.android.emulator.control.Image as ImageMessage
@@ -202,6 +206,11 @@ class EmulatorView(
     get() = emulatorConfig.api
 
   private var lastScreenshot: Screenshot? = null
+  /**
+   * Held while a frame is converted into the shared display image and while the display image is painted and passed to the frame
+   * listeners, so that they never see a partially converted frame.
+   */
+  private val displayImageLock = Any()
   private val displayTransform = AffineTransform()
   private val screenshotShape: DisplayShape
     get() = lastScreenshot?.displayShape ?: DisplayShape(0, 0, initialOrientation)
@@ -511,18 +520,20 @@ class EmulatorView(
     val physicalToVirtualScale = 1.0 / screenScale
     g.scale(physicalToVirtualScale, physicalToVirtualScale) // Set the scale to draw in physical pixels.
 
-    // Draw display.
-    if (displayRect.width == screenshotShape.width && displayRect.height == screenshotShape.height) {
-      g.drawImage(screenshot.image, null, displayRect.x, displayRect.y)
-    }
-    else {
-      displayTransform.setToTranslation(displayRect.x.toDouble(), displayRect.y.toDouble())
-      displayTransform.scale(displayRect.width.toDouble() / screenshotShape.width, displayRect.height.toDouble() / screenshotShape.height)
-      g.drawImage(screenshot.image, displayTransform, null)
-    }
-
     frameNumber = screenshotShape.frameNumber
-    notifyFrameListeners(displayRect, screenshot.image)
+    synchronized(displayImageLock) {
+      // Draw display.
+      if (displayRect.width == screenshotShape.width && displayRect.height == screenshotShape.height) {
+        g.drawImage(screenshot.image, null, displayRect.x, displayRect.y)
+      }
+      else {
+        displayTransform.setToTranslation(displayRect.x.toDouble(), displayRect.y.toDouble())
+        displayTransform.scale(displayRect.width.toDouble() / screenshotShape.width, displayRect.height.toDouble() / screenshotShape.height)
+        g.drawImage(screenshot.image, displayTransform, null)
+      }
+
+      notifyFrameListeners(displayRect, screenshot.image)
+    }
 
     if (multiTouchMode) {
       // Draw multi-touch visual feedback.
@@ -596,15 +607,17 @@ class EmulatorView(
       }
 
       cancelScreenshotFeed()
+      val frameBuffer =
+          if (StudioFlags.EMBEDDED_EMULATOR_SHARED_MEMORY_FRAMES.get()) SharedMemoryFrameBuffer.create(maxImageSize) else null
       val imageFormat = ImageFormat.newBuilder()
         .setDisplay(displayId)
         .setFormat(ImageFormat.ImgFormat.RGB888)
         .setWidth(maxImageSize.width)
         .setHeight(maxImageSize.height)
-        .build()
-      val receiver = ScreenshotReceiver(maxImageSize, orientationQuadrants)
+      frameBuffer?.let { imageFormat.transport = it.transport }
+      val receiver = ScreenshotReceiver(maxImageSize, orientationQuadrants, frameBuffer)
       screenshotReceiver = receiver
-      screenshotFeed = emulator.streamScreenshot(imageFormat, receiver)
+      screenshotFeed = emulator.streamScreenshot(imageFormat.build(), receiver)
     }
   }
 
@@ -1121,9 +1134,16 @@ class EmulatorView(
       displayRectangle?.contains(event.x * screenScale, event.y * screenScale) ?: false
   }
 
+  /**
+   * Receives the display images of the emulator. If the [frameBuffer] is not null, the emulator is expected to write the pixels of
+   * the images to it rather than sending them. Such frames are converted into the same [sharedImage] over and over again, and only
+   * the part of the display that changed is repainted. The conversion holds the [displayImageLock], since the [sharedImage] may be
+   * being painted at the same time.
+   */
   private inner class ScreenshotReceiver(
     val maxImageSize: Dimension,
-    val orientationQuadrants: Int
+    val orientationQuadrants: Int,
+    private val frameBuffer: SharedMemoryFrameBuffer? = null,
   ) : EmptyStreamObserver<ImageMessage>(), Disposable {
     private val screenshotForProcessing = AtomicReference<Screenshot?>()
     private val screenshotForDisplay = AtomicReference<Screenshot?>()
@@ -1131,6 +1151,13 @@ class EmulatorView(
     private val recycledImage = AtomicReference<SofterReference<BufferedImage>?>()
     private val alarm = Alarm(this)
     private var expectedFrameNumber = -1
+    private var sharedImage: BufferedImage? = null
+    @GuardedBy("this")
+    private var changedRegion = Rectangle()
+
+    init {
+      frameBuffer?.let { Disposer.register(this, it) }
+    }
 
     override fun onNext(response: ImageMessage) {
       val arrivalTime = System.currentTimeMillis()
@@ -1156,7 +1183,8 @@ class EmulatorView(
         return // Ignore empty screenshot.
       }
 
-      if (response.image.size() != imageFormat.width * imageFormat.height * 3) {
+      val sharedFrame = if (response.image.isEmpty) frameBuffer?.getFrame(imageFormat.width, imageFormat.height) else null
+      if (sharedFrame == null && response.image.size() != imageFormat.width * imageFormat.height * 3) {
         LOG.error("Inconsistent ImageMessage: ${imageFormat.width}x${imageFormat.width} image contains ${response.image.size()} bytes" +
                   " instead of ${imageFormat.width * imageFormat.height * 3}")
         return
@@ -1186,21 +1214,22 @@ class EmulatorView(
       }
 
       alarm.cancelAllRequests()
+      val conversionStart = System.nanoTime()
       val recycledImage = recycledImage.getAndSet(null)?.get()
-      val image = if (recycledImage?.width == imageFormat.width && recycledImage.height == imageFormat.height) {
-        val pixels = (recycledImage.raster.dataBuffer as DataBufferInt).data
-        ImageConverter.unpackRgb888(response.image, pixels)
-        recycledImage
-      }
-      else {
-        val pixels = IntArray(imageFormat.width * imageFormat.height)
-        ImageConverter.unpackRgb888(response.image, pixels)
-        val buffer = DataBufferInt(pixels, pixels.size)
-        val sampleModel = SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, imageFormat.width, imageFormat.height, SAMPLE_MODEL_BIT_MASKS)
-        val raster = Raster.createWritableRaster(sampleModel, buffer, ZERO_POINT)
-        @Suppress("UndesirableClassUsage")
-        BufferedImage(COLOR_MODEL, raster, false, null)
+      val image = when {
+        sharedFrame != null -> unpackSharedFrame(sharedFrame, imageFormat.width, imageFormat.height)
+        recycledImage?.width == imageFormat.width && recycledImage.height == imageFormat.height -> {
+          val pixels = (recycledImage.raster.dataBuffer as DataBufferInt).data
+          ImageConverter.unpackRgb888(response.image, pixels)
+          recycledImage
+        }
+        else -> {
+          val pixels = IntArray(imageFormat.width * imageFormat.height)
+          ImageConverter.unpackRgb888(response.image, pixels)
+          createImage(imageFormat.width, imageFormat.height, pixels)
+        }
       }
+      stats?.recordConversion(System.nanoTime() - conversionStart)
 
       val lostFrames = if (expectedFrameNumber > 0) response.seq - expectedFrameNumber else 0
       stats?.recordFrameArrival(arrivalTime - frameOriginationTime, lostFrames, imageFormat.width * imageFormat.height)
@@ -1228,6 +1257,46 @@ class EmulatorView(
       }
     }
 
+    /**
+     * Converts a frame from the shared memory frame buffer into the [sharedImage], which is replaced only when the size of the frames
+     * changes, and adds the pixels that changed to the [changedRegion].
+     */
+    private fun unpackSharedFrame(frame: ByteBuffer, width: Int, height: Int): BufferedImage {
+      var image = sharedImage
+      if (image == null || image.width != width || image.height != height) {
+        image = createImage(width, height, IntArray(width * height))
+        sharedImage = image
+      }
+      val pixels = (image.raster.dataBuffer as DataBufferInt).data
+      val changes = synchronized(displayImageLock) {
+        ImageConverter.unpackRgb888Changes(frame, width, height, pixels)
+      }
+      synchronized(this) {
+        if (changedRegion.isEmpty) {
+          changedRegion = changes
+        }
+        else if (!changes.isEmpty) {
+          changedRegion = changedRegion.union(changes)
+        }
+      }
+      return image
+    }
+
+    @Synchronized
+    private fun takeChangedRegion(): Rectangle {
+      val region = changedRegion
+      changedRegion = Rectangle()
+      return region
+    }
+
+    private fun createImage(width: Int, height: Int, pixels: IntArray): BufferedImage {
+      val buffer = DataBufferInt(pixels, pixels.size)
+      val sampleModel = SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height, SAMPLE_MODEL_BIT_MASKS)
+      val raster = Raster.createWritableRaster(sampleModel, buffer, ZERO_POINT)
+      @Suppress("UndesirableClassUsage")
+      return BufferedImage(COLOR_MODEL, raster, false, null)
+    }
+
     private fun checkAspectRatioConsistency(imageFormat: ImageFormat, displayMode: DisplayMode): Boolean {
       val imageAspectRatio = if (imageFormat.rotation.rotationValue % 2 == 0) imageFormat.width.toDouble() / imageFormat.height
                              else imageFormat.height.toDouble() / imageFormat.width
@@ -1283,11 +1352,14 @@ class EmulatorView(
       }
 
       // Creation of a large BufferedImage is expensive. Recycle the old image if it has the proper size.
-      lastScreenshot?.image?.let {
+      val previousImage = lastScreenshot?.image
+      previousImage?.let {
         if (it.width == screenshot.displayShape.width && it.height == screenshot.displayShape.height) {
-          recycledImage.set(SofterReference(it))
-          alarm.cancelAllRequests()
-          alarm.addRequest({ recycledImage.set(null) }, CACHED_IMAGE_LIVE_TIME_MILLIS, ModalityState.any())
+          if (it !== screenshot.image) { // The shared image is never recycled.
+            recycledImage.set(SofterReference(it))
+            alarm.cancelAllRequests()
+            alarm.addRequest({ recycledImage.set(null) }, CACHED_IMAGE_LIVE_TIME_MILLIS, ModalityState.any())
+          }
         }
         else if (!isSameAspectRatio(it.width, it.height, screenshot.displayShape.width, screenshot.displayShape.height, 0.01)) {
           zoom(ZoomType.FIT) // Display dimensions changed - reset zoom level.
@@ -1299,13 +1371,42 @@ class EmulatorView(
 
       receivedFrameCount++
       frameTimestampMillis = System.currentTimeMillis()
-      repaint()
+      val changedRegion = takeChangedRegion()
+      if (previousImage === screenshot.image) {
+        repaintDisplayRegion(changedRegion, screenshot.image)
+      }
+      else {
+        repaint()
+      }
 
       if (screenshot.displayShape.displayMode != lastDisplayMode) {
         firePropertyChange(DISPLAY_MODE_PROPERTY, lastDisplayMode, screenshot.displayShape.displayMode)
       }
     }
 
+    /**
+     * Repaints the part of the view that shows the given region of the display image.
+     */
+    @UiThread
+    private fun repaintDisplayRegion(region: Rectangle, image: BufferedImage) {
+      if (region.isEmpty) {
+        return
+      }
+      val displayRect = displayRectangle
+      if (displayRect == null) {
+        repaint()
+        return
+      }
+      // The display rectangle is in physical pixels. The margin of one pixel accounts for rounding and interpolation.
+      val scaleX = displayRect.width.toDouble() / image.width
+      val scaleY = displayRect.height.toDouble() / image.height
+      val left = floor((displayRect.x + region.x * scaleX) / screenScale).toInt() - 1
+      val top = floor((displayRect.y + region.y * scaleY) / screenScale).toInt() - 1
+      val right = ceil((displayRect.x + region.maxX * scaleX) / screenScale).toInt() + 1
+      val bottom = ceil((displayRect.y + region.maxY * scaleY) / screenScale).toInt() + 1
+      repaint(left, top, right - left, bottom - top)
+    }
+
     override fun dispose() {
     }
   }
@@ -1382,6 +1483,11 @@ class EmulatorView(
       data.latencyEndToEnd.recordValue(latency)
     }
 
+    @Synchronized
+    fun recordConversion(conversionTimeNanos: Long) {
+      data.conversionTime.recordValue(TimeUnit.NANOSECONDS.toMicros(conversionTimeNanos))
+    }
+
     @Synchronized
     override fun dispose() {
       data.log()
@@ -1410,6 +1516,7 @@ class EmulatorView(
       var pixelCount = 0L
       val latencyEndToEnd = Histogram(1)
       val latencyOfArrival = Histogram(1)
+      val conversionTime = Histogram(1)
       val collectionStart = System.currentTimeMillis()
 
       fun log() {
@@ -1420,7 +1527,8 @@ class EmulatorView(
           val dropped = if (droppedFrameCount != 0) " dropped frames: $droppedFrameCount$neverArrived" else ""
           LOG.info("Frames: $frameCount $dropped average frame rate: $frameRate average frame size: $frameSize pixels\n" +
                    "latency: ${shortDebugString(latencyEndToEnd.toProto())}\n" +
-                   "latency of arrival: ${shortDebugString(latencyOfArrival.toProto())}")
+                   "latency of arrival: ${shortDebugString(latencyOfArrival.toProto())}\n" +
+                   "conversion time (us): ${shortDebugString(conversionTime.toProto())}")
         }
       }
     }
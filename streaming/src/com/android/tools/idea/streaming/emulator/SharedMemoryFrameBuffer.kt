@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.streaming.emulator
+
+import com.android.emulator.control.ImageTransport
+import com.android.emulator.control.ImageTransport.TransportChannel
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.diagnostic.thisLogger
+import java.awt.Dimension
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.READ
+import java.nio.file.StandardOpenOption.WRITE
+
+/**
+ * A memory-mapped file that the emulator writes display frames to in RGB888 format, so that the frames don't have to be sent
+ * over gRPC. The [transport] is passed to the emulator in the requested [com.android.emulator.control.ImageFormat], after which
+ * the streamed images carry only the metadata of the frames.
+ *
+ * The file is deleted when the buffer is disposed.
+ */
+internal class SharedMemoryFrameBuffer private constructor(private val file: Path, private val buffer: MappedByteBuffer) : Disposable {
+
+  val transport: ImageTransport = ImageTransport.newBuilder()
+    .setChannel(TransportChannel.MMAP)
+    .setHandle(file.toUri().toString())
+    .build()
+
+  /**
+   * Returns the current contents of the frame buffer for an image with the given dimensions, or null if such an image doesn't fit.
+   * The emulator keeps writing to the buffer, so the contents may already belong to a later frame.
+   */
+  fun getFrame(width: Int, height: Int): ByteBuffer? {
+    val size = width.toLong() * height * 3
+    if (size > buffer.capacity()) {
+      return null
+    }
+    return buffer.duplicate().limit(size.toInt())
+  }
+
+  override fun dispose() {
+    try {
+      Files.deleteIfExists(file)
+    }
+    catch (e: IOException) {
+      // On Windows a file cannot be deleted while it is mapped.
+      file.toFile().deleteOnExit()
+    }
+  }
+
+  companion object {
+    /**
+     * Creates a frame buffer for images up to [maxImageSize], or returns null if the memory-mapped file cannot be created.
+     */
+    fun create(maxImageSize: Dimension): SharedMemoryFrameBuffer? {
+      var file: Path? = null
+      try {
+        file = Files.createTempFile("emulator_frames", ".rgb")
+        val size = maxImageSize.width.toLong() * maxImageSize.height * 3
+        val buffer = FileChannel.open(file, READ, WRITE).use { it.map(FileChannel.MapMode.READ_WRITE, 0, size) }
+        return SharedMemoryFrameBuffer(file, buffer)
+      }
+      catch (e: IOException) {
+        thisLogger().warn("Unable to create a shared memory frame buffer", e)
+        file?.toFile()?.delete()
+        return null
+      }
+    }
+  }
+}
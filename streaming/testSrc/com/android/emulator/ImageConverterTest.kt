@@ -17,9 +17,12 @@ package com.android.emulator
 
 import com.android.tools.idea.protobuf.ByteString
 import com.android.tools.idea.protobuf.UnsafeByteOperations
+import com.google.common.truth.Truth.assertThat
 import com.intellij.testFramework.UsefulTestCase.assertThrows
 import org.junit.Assert.fail
 import org.junit.Test
+import java.awt.Rectangle
+import java.nio.ByteBuffer
 
 /**
  * Tests for [ImageConverter].
@@ -62,6 +65,37 @@ class ImageConverterTest {
     }
   }
 
+  @Test
+  fun testUnpackRgb888Changes() {
+    val width = 1000
+    val height = IMAGE_SIZE / width
+    val bytes = testImage.toByteArray()
+    val pixels = IntArray(IMAGE_SIZE)
+    val expectedPixels = IntArray(IMAGE_SIZE)
+    ImageConverter.unpackRgb888Slow(testImage, expectedPixels)
+
+    assertThat(ImageConverter.unpackRgb888Changes(ByteBuffer.wrap(bytes), width, height, pixels)).isEqualTo(Rectangle(0, 0, width, height))
+    assertThat(pixels).isEqualTo(expectedPixels)
+
+    assertThat(ImageConverter.unpackRgb888Changes(ByteBuffer.wrap(bytes), width, height, pixels)).isEqualTo(Rectangle())
+
+    bytes[(20 * width + 10) * 3] = 0
+    bytes[(30 * width + 5) * 3 + 2] = 0
+    assertThat(ImageConverter.unpackRgb888Changes(ByteBuffer.wrap(bytes), width, height, pixels)).isEqualTo(Rectangle(5, 20, 6, 11))
+    ImageConverter.unpackRgb888Slow(ByteString.copyFrom(bytes), expectedPixels)
+    assertThat(pixels).isEqualTo(expectedPixels)
+
+    val t = runBenchmark { ImageConverter.unpackRgb888Changes(ByteBuffer.wrap(bytes), width, height, pixels) }
+    println("unpackRgb888Changes: ${String.format("%.5f", t)} sec")
+  }
+
+  @Test
+  fun testUnpackRgb888ChangesErrorHandling() {
+    assertThrows(IllegalArgumentException::class.java) {
+      ImageConverter.unpackRgb888Changes(ByteBuffer.allocate(26), 3, 3, IntArray(9))
+    }
+  }
+
   private fun runBenchmark(runnable: Runnable): Double {
     return runBenchmarkWithoutCorrection(runnable) - runBenchmarkWithoutCorrection {}
   }
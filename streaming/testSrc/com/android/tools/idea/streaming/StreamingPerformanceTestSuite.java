@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.streaming;
+
+import com.android.testutils.JarTestSuiteRunner;
+import com.android.tools.idea.adb.AdbService;
+import com.android.tools.tests.IdeaTestSuiteBase;
+import org.junit.runner.RunWith;
+
+/**
+ * Runs the streaming benchmarks. See intellij.android.streaming.performance in streaming/BUILD.
+ */
+@RunWith(JarTestSuiteRunner.class)
+public class StreamingPerformanceTestSuite extends IdeaTestSuiteBase {
+
+  static {
+    // Disable production AdbService to prevent it from interfering with AndroidDebugBridge (b/281701515).
+    AdbService.disabled = true;
+  }
+}
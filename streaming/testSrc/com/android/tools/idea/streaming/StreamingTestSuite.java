@@ -18,10 +18,17 @@ package com.android.tools.idea.streaming;
 import com.android.testutils.JarTestSuiteRunner;
 import com.android.tools.adtui.swing.IconLoaderRule;
 import com.android.tools.idea.adb.AdbService;
+import com.android.tools.idea.streaming.device.DeviceMirroringBenchmarkTest;
 import com.android.tools.tests.IdeaTestSuiteBase;
 import org.junit.runner.RunWith;
 
 @RunWith(JarTestSuiteRunner.class)
+@JarTestSuiteRunner.ExcludeClasses({
+  StreamingTestSuite.class,  // a suite mustn't contain itself
+  // Benchmarks run in their own target, see intellij.android.streaming.performance in streaming/BUILD.
+  StreamingPerformanceTestSuite.class,
+  DeviceMirroringBenchmarkTest.class,
+})
 public class StreamingTestSuite extends IdeaTestSuiteBase {
 
   static {
@@ -22,6 +22,7 @@ import com.android.testutils.MockitoKt.mock
 import com.android.tools.idea.streaming.benchmark.Benchmarker.Adapter
 import com.android.utils.time.TestTimeSource
 import com.google.common.truth.Truth.assertThat
+import org.HdrHistogram.Histogram
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.JUnit4
@@ -57,6 +58,7 @@ class BenchmarkerTest {
     override fun ready() { readyCalls++ }
     override fun finalizeInputs() { finalizeInputsCalls++ }
     override fun cleanUp() { cleanUpCalls++ }
+    override fun stageLatencies(): Map<String, Histogram> = stageLatencies
   }
   private val benchmarker = createBenchmarker()
 
@@ -67,6 +69,7 @@ class BenchmarkerTest {
   private var cleanUpCalls: Int = 0
   private var finalizeInputsCalls: Int = 0
   private var stopCallbackCalled = false
+  private val stageLatencies = mapOf("Decoding" to Histogram(1).apply { recordValue(1500) })
 
   @Test
   fun timerSchedulingStarted() {
@@ -216,6 +219,21 @@ class BenchmarkerTest {
     }
   }
 
+  @Test
+  fun resultsIncludeStageLatencies() {
+    benchmarker.start()
+    adapter.adapterCallbacks.onReady()
+    val taskCaptor: ArgumentCaptor<TimerTask> = argumentCaptor()
+    verify(mockTimer).scheduleAtFixedRate(taskCaptor.capture(), anyLong(), anyLong())
+
+    repeat(numValues) { taskCaptor.value.run() }
+    adapter.adapterCallbacks.inputReturned(dispatched.last(), testTimeSource.markNow())
+
+    assertThat(benchmarker.isDone()).isTrue()
+    assertThat(results).hasSize(1)
+    assertThat(results[0].stageLatencies).isEqualTo(stageLatencies)
+  }
+
   @Test
   fun callsOnProgressCallbacks() {
     benchmarker.start()
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.streaming.device
+
+import com.android.testutils.waitForCondition
+import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.idea.testing.AndroidExecutorsRule
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import com.intellij.openapi.util.Disposer
+import com.intellij.testFramework.RuleChain
+import kotlinx.coroutines.runBlocking
+import org.HdrHistogram.Histogram
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import java.awt.Dimension
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit.SECONDS
+import com.sun.management.ThreadMXBean as SunThreadMXBean
+
+private val CODECS = listOf("vp8", "vp9", "avc", "hevc", "av01")
+private val DISPLAY_SIZES = listOf(Dimension(720, 1280), Dimension(1080, 2400), Dimension(1840, 2208))
+private const val RECORDED_FRAMES = 120
+private const val REPLAY_FRAME_RATE = 60
+
+/**
+ * Headless device mirroring benchmark. For every combination of a codec from [CODECS] and a display size from [DISPLAY_SIZES],
+ * replays a recorded video stream through [FakeScreenSharingAgent], [DeviceClient] and [VideoDecoder] at [REPLAY_FRAME_RATE]
+ * frames per second and reports the rate of the frames that became available for display, their end-to-end latency, the median
+ * decoding and conversion times, and the memory allocated per frame.
+ *
+ * Recordings are taken from the directory given by the `device.mirroring.benchmark.recordings` system property, where the one for
+ * the vp8 codec and a 1080x2400 display is named `vp8-1080x2400.vstream` (see [VideoStreamRecording]). Combinations without
+ * a recording use a stream of [RECORDED_FRAMES] frames recorded from the fake agent. Codecs for which ffmpeg has no encoder
+ * are skipped.
+ *
+ * The allocation rate covers all threads of the process, including the one replaying the stream.
+ */
+class DeviceMirroringBenchmarkTest {
+  private val agentRule = FakeScreenSharingAgentRule()
+  @get:Rule
+  val ruleChain = RuleChain(agentRule, AndroidExecutorsRule(workerThreadExecutor = Executors.newCachedThreadPool()),
+                            ClipboardSynchronizationDisablementRule())
+
+  private val benchmark = Benchmark.Builder("Device Mirroring").setProject("Android Studio Streaming").build()
+  private val recordingsDir: Path? = System.getProperty("device.mirroring.benchmark.recordings")?.let { Paths.get(it) }
+
+  @Before
+  fun setUp() {
+    assumeFFmpegAvailable()
+  }
+
+  @Test
+  fun mirroring() {
+    for (codecName in CODECS) {
+      if (findVideoEncoder(codecName) == null) {
+        println("Skipping $codecName - encoder is not available")
+        continue
+      }
+      for (displaySize in DISPLAY_SIZES) {
+        measure(codecName, displaySize)
+      }
+    }
+  }
+
+  private fun measure(codecName: String, displaySize: Dimension) {
+    val disposable = Disposer.newDisposable("$codecName ${displaySize.width}x${displaySize.height}")
+    Disposer.register(agentRule.disposable, disposable)
+    StudioFlags.DEVICE_MIRRORING_VIDEO_CODEC.override(codecName, disposable)
+    val device = agentRule.connectDevice("Pixel", 33, displaySize)
+    try {
+      val agent = device.agent
+      val deviceClient = DeviceClient(disposable, device.serialNumber, device.handle, device.configuration, device.deviceState.cpuAbi,
+                                      agentRule.project)
+      runBlocking { deviceClient.establishAgentConnection(displaySize, UNKNOWN_ORIENTATION, startVideoStream = true) }
+      waitForCondition(15, SECONDS) { agent.isRunning && agent.videoStreamActive }
+      val decoder = deviceClient.videoDecoder!!
+      val frameMonitor = FrameMonitor(decoder)
+      decoder.addFrameListener(frameMonitor)
+      frameMonitor.waitForLastFrame(agent)
+
+      val recording = loadRecording(codecName, displaySize) ?: runBlocking { agent.recordVideoStream((1..RECORDED_FRAMES).toList()) }
+      frameMonitor.waitForLastFrame(agent)
+
+      decoder.stats.reset()
+      val allocatedBefore = allocatedBytes()
+      val start = System.nanoTime()
+      frameMonitor.reset()
+      runBlocking { agent.replayVideoStream(recording, REPLAY_FRAME_RATE) }
+      frameMonitor.waitForLastFrame(agent)
+      val elapsedNanos = (frameMonitor.lastFrameTime - start).coerceAtLeast(1)
+      val allocated = allocatedBytes() - allocatedBefore
+      decoder.removeFrameListener(frameMonitor)
+
+      val frameCount = frameMonitor.frameCount
+      val latencies = decoder.stats.getLatencies()
+      val prefix = "mirroring_${codecName}_${displaySize.width}x${displaySize.height}"
+      record("${prefix}_frames_per_second", frameCount * SECONDS.toNanos(1) / elapsedNanos)
+      record("${prefix}_dropped_frames", decoder.stats.droppedFrameCount.toLong())
+      record("${prefix}_latency_median_ms", frameMonitor.latencies.getValueAtPercentile(50.0))
+      record("${prefix}_latency_p90_ms", frameMonitor.latencies.getValueAtPercentile(90.0))
+      record("${prefix}_decoding_median_us", latencies.getValue("Decoding").getValueAtPercentile(50.0))
+      record("${prefix}_conversion_median_us", latencies.getValue("Conversion").getValueAtPercentile(50.0))
+      record("${prefix}_allocated_kb_per_frame", allocated / 1024 / frameCount.coerceAtLeast(1))
+    }
+    finally {
+      Disposer.dispose(disposable)
+      agentRule.disconnectDevice(device)
+    }
+  }
+
+  private fun loadRecording(codecName: String, displaySize: Dimension): VideoStreamRecording? {
+    val file = recordingsDir?.resolve("$codecName-${displaySize.width}x${displaySize.height}.vstream") ?: return null
+    return if (Files.exists(file)) VideoStreamRecording.readFrom(file) else null
+  }
+
+  private fun record(metricName: String, value: Long) {
+    Metric(metricName).apply {
+      addSamples(benchmark, MetricSample(Instant.now().toEpochMilli(), value))
+      commit()
+    }
+  }
+
+  private fun allocatedBytes(): Long {
+    val threadBean = ManagementFactory.getThreadMXBean() as SunThreadMXBean
+    return threadBean.getThreadAllocatedBytes(threadBean.allThreadIds).filter { it > 0 }.sum()
+  }
+
+  /** Records the frames that become available for display and their end-to-end latency in milliseconds. */
+  private class FrameMonitor(private val decoder: VideoDecoder) : VideoDecoder.FrameListener {
+    val latencies = Histogram(1)
+    @Volatile
+    var frameCount = 0
+    @Volatile
+    var lastFrameNumber = 0
+    @Volatile
+    var lastFrameTime = System.nanoTime()
+
+    override fun onNewFrameAvailable() {
+      decoder.consumeDisplayFrame { frame ->
+        if (frame.frameNumber != lastFrameNumber) {
+          latencies.recordValue((System.currentTimeMillis() - frame.originationTime).coerceAtLeast(0))
+          frameCount++
+          lastFrameTime = System.nanoTime()
+          lastFrameNumber = frame.frameNumber
+        }
+      }
+    }
+
+    override fun onEndOfVideoStream() {
+    }
+
+    fun reset() {
+      latencies.reset()
+      frameCount = 0
+      lastFrameTime = System.nanoTime()
+    }
+
+    /**
+     * Waits until the last frame sent by the [agent] becomes available, or until no frame became available for a second, since
+     * not every packet necessarily produces a frame.
+     */
+    fun waitForLastFrame(agent: FakeScreenSharingAgent) {
+      waitForCondition(60, SECONDS) {
+        lastFrameNumber == agent.frameNumber || System.nanoTime() - lastFrameTime > SECONDS.toNanos(1)
+      }
+    }
+  }
+}
@@ -191,6 +191,21 @@ internal class DeviceViewTest {
     assertThat(frameListenerCalls).isEqualTo(framesBeforeRemoving)
   }
 
+  @Test
+  fun testFrameProcessingStats() {
+    assumeFFmpegAvailable()
+    createDeviceView(200, 300, 2.0)
+    waitForCondition(2, SECONDS) { fakeUi.render(); view.frameNumber == agent.frameNumber }
+    runBlocking { agent.renderDisplay(1) }
+    waitForCondition(2, SECONDS) { fakeUi.render(); view.frameNumber == agent.frameNumber }
+
+    val latencies = view.deviceClient.videoDecoder!!.stats.getLatencies()
+    assertThat(latencies.keys).containsExactly("Decoding", "Conversion", "Painting").inOrder()
+    // Frames may be dropped before conversion, but every converted frame has been decoded.
+    assertThat(latencies["Decoding"]!!.totalCount).isAtLeast(latencies["Conversion"]!!.totalCount)
+    assertThat(latencies["Painting"]!!.totalCount).isGreaterThan(0)
+  }
+
   @Test
   fun testResizingRotationAndMouseInput() {
     assumeFFmpegAvailable()
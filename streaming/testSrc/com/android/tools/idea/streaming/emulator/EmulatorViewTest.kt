@@ -15,6 +15,8 @@
  */
 package com.android.tools.idea.streaming.emulator
 
+import com.android.emulator.control.ImageFormat
+import com.android.emulator.control.ImageTransport.TransportChannel
 import com.android.testutils.ImageDiffUtil
 import com.android.testutils.MockitoKt.any
 import com.android.testutils.MockitoKt.eq
@@ -109,7 +111,10 @@ import java.awt.event.KeyEvent.VK_RIGHT
 import java.awt.event.KeyEvent.VK_SHIFT
 import java.awt.event.KeyEvent.VK_TAB
 import java.awt.event.KeyEvent.VK_UP
+import java.net.URI
+import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.Paths
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeUnit.MILLISECONDS
 import java.util.concurrent.TimeUnit.SECONDS
@@ -289,6 +294,35 @@ class EmulatorViewTest {
     assertAppearance(ui, "EmulatorView4")
   }
 
+  @Test
+  fun testSharedMemoryFrames() {
+    StudioFlags.EMBEDDED_EMULATOR_SHARED_MEMORY_FRAMES.override(true, testRootDisposable)
+    val view = emulatorViewRule.newEmulatorView()
+
+    val container = createScrollPane(view)
+    val ui = FakeUi(container, 2.0)
+
+    var frameNumber = view.frameNumber
+    container.size = Dimension(200, 300)
+    ui.layoutAndDispatchEvents()
+    var call = getStreamScreenshotCallAndWaitForFrame(ui, view, ++frameNumber)
+    val request = call.request as ImageFormat
+    assertThat(request.transport.channel).isEqualTo(TransportChannel.MMAP)
+    val frameFile = Paths.get(URI(request.transport.handle))
+    assertThat(Files.size(frameFile)).isEqualTo(363L * 547 * 3)
+    assertAppearance(ui, "EmulatorView1")
+
+    // The frame buffer is replaced when the size of the display image changes.
+    container.size = Dimension(250, 200)
+    ui.layoutAndDispatchEvents()
+    call = getStreamScreenshotCallAndWaitForFrame(ui, view, ++frameNumber)
+    assertThat(shortDebugString(call.request)).startsWith("format: RGB888 width: 454 height: 364 transport { channel: MMAP")
+    assertAppearance(ui, "EmulatorView2")
+    if (!SystemInfo.isWindows) { // Windows doesn't allow deletion of memory-mapped files.
+      assertThat(Files.exists(frameFile)).isFalse()
+    }
+  }
+
   @Test
   fun testKeyboardInput() {
     val view = emulatorViewRule.newEmulatorView()
@@ -302,6 +302,39 @@ class FakeScreenSharingAgent(
     }
   }
 
+  /**
+   * Renders display content for each of the [imageFlavors] like [renderDisplay] and returns the recording of the produced
+   * video stream. The video stream has to be active.
+   */
+  suspend fun recordVideoStream(imageFlavors: List<Int>): VideoStreamRecording {
+    return withContext(singleThreadedDispatcher) {
+      val displayStreamer = displayStreamer
+      check(displayStreamer != null && videoStreamActive) { "The video stream is not active" }
+      val packets = mutableListOf<ByteArray>()
+      displayStreamer.recordedPackets = packets
+      try {
+        for (flavor in imageFlavors) {
+          displayStreamer.renderDisplay(flavor)
+        }
+      }
+      finally {
+        displayStreamer.recordedPackets = null
+      }
+      VideoStreamRecording(displayStreamer.codecName, packets)
+    }
+  }
+
+  /**
+   * Sends the video packets of the [recording] as if they were produced by rendering display content. If [frameRate] is positive,
+   * the frames are sent at that rate, otherwise as fast as possible. Returns when all packets have been sent. The codec of
+   * the recording has to match the codec of the video stream, which is determined by [StudioFlags.DEVICE_MIRRORING_VIDEO_CODEC].
+   */
+  suspend fun replayVideoStream(recording: VideoStreamRecording, frameRate: Int) {
+    withContext(singleThreadedDispatcher) {
+      displayStreamer?.replay(recording, frameRate)
+    }
+  }
+
   suspend fun setDisplayOrientationCorrection(value: Int) {
     withContext(singleThreadedDispatcher) {
       displayOrientationCorrection = value
@@ -445,24 +478,15 @@ class FakeScreenSharingAgent(
 
   private inner class DisplayStreamer(private val channel: SuspendingSocketChannel) : Disposable {
 
-    private val codecName = nullize(StudioFlags.DEVICE_MIRRORING_VIDEO_CODEC.get()) ?: "vp8"
+    val codecName = nullize(StudioFlags.DEVICE_MIRRORING_VIDEO_CODEC.get()) ?: "vp8"
     private val encoder: AVCodec by lazy {
-      // Use avcodec_find_encoder instead of avcodec_find_encoder_by_name because the names of encoders and decoders don't match.
-      val codecId = when (codecName) {
-        "vp8" -> AV_CODEC_ID_VP8
-        "vp9" -> AV_CODEC_ID_VP9
-        "av01" -> AV_CODEC_ID_AV1
-        "avc" -> AV_CODEC_ID_H264
-        "hevc" -> AV_CODEC_ID_HEVC
-        "vvc" -> AV_CODEC_ID_VVC
-        else -> throw RuntimeException("$codecName encoder not found")
-      }
-
-      avcodec_find_encoder(codecId) ?: throw RuntimeException("$codecName encoder not found")
+      findVideoEncoder(codecName) ?: throw RuntimeException("$codecName encoder not found")
     }
     private val packetHeader = VideoPacketHeader(displaySize, roundDisplay)
     private var presentationTimestampOffset = 0L
     private var lastImageFlavor: Int = 0
+    /** Packets sent while recording, see [recordVideoStream]. */
+    var recordedPackets: MutableList<ByteArray>? = null
     @Volatile var stopped = false
 
     suspend fun start() {
@@ -610,13 +634,42 @@ class FakeScreenSharingAgent(
         packetHeader.serialize(buffer)
         buffer.put(packetData)
         buffer.flip()
-        try {
-          channel.writeFully(buffer)
+        recordedPackets?.add(buffer.array().copyOf())
+        writePacket(buffer)
+      }
+    }
+
+    /**
+     * Sends the packets of the [recording] with new frame numbers and origination timestamps. If [frameRate] is positive,
+     * the frames are sent at that rate, otherwise as fast as possible.
+     */
+    suspend fun replay(recording: VideoStreamRecording, frameRate: Int) {
+      check(recording.codecName == codecName) { "The recording uses ${recording.codecName} but the video stream uses $codecName" }
+      val frameIntervalNanos = if (frameRate > 0) TimeUnit.SECONDS.toNanos(1) / frameRate else 0L
+      var nextFrameTime = System.nanoTime()
+      for (packet in recording.packets) {
+        if (!videoStreamActive || stopped) {
+          return
         }
-        catch (e: IOException) {
-          if (!isLostConnection(e)) { // Lost connection is not an error because it means that the other end closed the socket connection.
-            throw e
-          }
+        val buffer = ByteBuffer.wrap(packet.copyOf()).order(LITTLE_ENDIAN)
+        val isConfig = buffer.getLong(VideoStreamRecording.PRESENTATION_TIMESTAMP_OFFSET) == 0L
+        if (!isConfig && frameIntervalNanos != 0L) {
+          delay(TimeUnit.NANOSECONDS.toMillis(nextFrameTime - System.nanoTime()).coerceAtLeast(0))
+          nextFrameTime += frameIntervalNanos
+        }
+        buffer.putLong(VideoStreamRecording.FRAME_NUMBER_OFFSET, (++frameNumber).toLong())
+        buffer.putLong(VideoStreamRecording.ORIGINATION_TIMESTAMP_OFFSET, System.currentTimeMillis() * 1000)
+        writePacket(buffer)
+      }
+    }
+
+    private suspend fun writePacket(buffer: ByteBuffer) {
+      try {
+        channel.writeFully(buffer)
+      }
+      catch (e: IOException) {
+        if (!isLostConnection(e)) { // Lost connection is not an error because it means that the other end closed the socket connection.
+          throw e
         }
       }
     }
@@ -818,6 +871,23 @@ class FakeScreenSharingAgent(
   }
 }
 
+/**
+ * Returns the ffmpeg encoder for the given codec name used by the screen sharing agent, or null if the encoder is not available.
+ */
+fun findVideoEncoder(codecName: String): AVCodec? {
+  // Use avcodec_find_encoder instead of avcodec_find_encoder_by_name because the names of encoders and decoders don't match.
+  val codecId = when (codecName) {
+    "vp8" -> AV_CODEC_ID_VP8
+    "vp9" -> AV_CODEC_ID_VP9
+    "av01" -> AV_CODEC_ID_AV1
+    "avc" -> AV_CODEC_ID_H264
+    "hevc" -> AV_CODEC_ID_HEVC
+    "vvc" -> AV_CODEC_ID_VVC
+    else -> return null
+  }
+  return avcodec_find_encoder(codecId)
+}
+
 private fun isLostConnection(exception: IOException): Boolean {
   var ex: Throwable? = exception
   while (ex is IOException) {
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.streaming.device
+
+import java.io.EOFException
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder.LITTLE_ENDIAN
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * A recorded device mirroring video stream that can be replayed by [FakeScreenSharingAgent.replayVideoStream].
+ *
+ * The recording is stored in the wire format of the video channel: a header containing the name of the codec, followed by
+ * video packets, each consisting of a 40-byte packet header and the packet data. A dump of the video channel of a real device
+ * is therefore a valid recording.
+ */
+class VideoStreamRecording(val codecName: String, packets: List<ByteArray>) {
+
+  /** The video packets including their headers. */
+  val packets: List<ByteArray> = packets.toList()
+
+  /** The number of packets containing video frames, as opposed to codec configuration. */
+  val frameCount: Int
+    get() = packets.count { ByteBuffer.wrap(it).order(LITTLE_ENDIAN).getLong(PRESENTATION_TIMESTAMP_OFFSET) != 0L }
+
+  @Throws(IOException::class)
+  fun writeTo(file: Path) {
+    Files.newOutputStream(file).buffered().use { stream ->
+      stream.write(codecName.padEnd(CHANNEL_HEADER_LENGTH).toByteArray())
+      for (packet in packets) {
+        stream.write(packet)
+      }
+    }
+  }
+
+  companion object {
+    internal const val PACKET_HEADER_SIZE = 40
+    internal const val PACKET_SIZE_OFFSET = 12
+    internal const val FRAME_NUMBER_OFFSET = 16
+    internal const val ORIGINATION_TIMESTAMP_OFFSET = 24
+    internal const val PRESENTATION_TIMESTAMP_OFFSET = 32
+    private const val CHANNEL_HEADER_LENGTH = 20
+
+    @Throws(IOException::class)
+    fun readFrom(file: Path): VideoStreamRecording {
+      val buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(LITTLE_ENDIAN)
+      if (buffer.remaining() < CHANNEL_HEADER_LENGTH) {
+        throw EOFException("$file is too short to be a video stream recording")
+      }
+      val codecName = String(buffer.array(), 0, CHANNEL_HEADER_LENGTH).trim()
+      buffer.position(CHANNEL_HEADER_LENGTH)
+      val packets = mutableListOf<ByteArray>()
+      while (buffer.hasRemaining()) {
+        if (buffer.remaining() < PACKET_HEADER_SIZE) {
+          throw EOFException("Truncated packet header in $file")
+        }
+        val packetSize = buffer.getInt(buffer.position() + PACKET_SIZE_OFFSET)
+        if (packetSize <= 0 || buffer.remaining() - PACKET_HEADER_SIZE < packetSize) {
+          throw IOException("Invalid or truncated packet of $packetSize bytes in $file")
+        }
+        val packet = ByteArray(PACKET_HEADER_SIZE + packetSize)
+        buffer.get(packet)
+        packets.add(packet)
+      }
+      return VideoStreamRecording(codecName, packets)
+    }
+  }
+}
@@ -15,12 +15,19 @@
  */
 package com.android.tools.datastore;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
 import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.sqlite.SQLiteConfig;
 
 public class DataStoreDatabase {
   public enum Characteristic {
@@ -29,6 +36,41 @@ public class DataStoreDatabase {
     PERFORMANT
   }
 
+  /**
+   * Upgrades a database from one schema version to the next.
+   */
+  public interface SchemaMigration {
+    void migrate(@NotNull Connection connection) throws SQLException;
+  }
+
+  /**
+   * The oldest schema version a database can be restored from. Files written before the schema was versioned report a
+   * {@code user_version} of 0 and use an incompatible SQLite format, so they are discarded.
+   */
+  @VisibleForTesting public static final int FIRST_RESTORABLE_SCHEMA_VERSION = 1;
+
+  /**
+   * Migrations applied to databases from prior runs before they are restored. The migration at index i upgrades a database from
+   * version {@code FIRST_RESTORABLE_SCHEMA_VERSION + i} to the next version. Append to this list whenever the schema changes.
+   */
+  private static final List<SchemaMigration> MIGRATIONS = ImmutableList.of();
+
+  /**
+   * The schema version written by this version of Studio, stored in the database file as the SQLite {@code user_version}.
+   */
+  public static final int SCHEMA_VERSION = FIRST_RESTORABLE_SCHEMA_VERSION + MIGRATIONS.size();
+
+  /**
+   * Suffix of the file that the database of the previous run is moved to when a {@link Characteristic#DURABLE} database is opened.
+   * Databases of older runs are shifted to {@code .previous.1}, {@code .previous.2} and so on, see {@link #getPreviousRunFile}.
+   */
+  public static final String PREVIOUS_RUN_SUFFIX = ".previous";
+
+  /**
+   * The number of runs whose databases are kept, so a run that is restarted before its previous run was restored does not lose it.
+   */
+  public static final int MAX_PREVIOUS_RUNS = 3;
+
   @NotNull
   private LogService.Logger getLogger() {
     return myLogService.getLogger(DataStoreDatabase.class);
@@ -64,11 +106,9 @@ public class DataStoreDatabase {
           break;
         case DURABLE:
           File dbFile = new File(dbPath);
-          // Due to an incompatible update in SQLite we do not support loading SQL files from previous versions of studio.
-          // As a intermediate measure we delete the file until we support loading existing databases.
-          // TODO: Investigate removing this when we add a feature to restore sessions from prior Studio runs.
+          // Keep the database of the previous run around so its sessions can be restored with #openPreviousRun.
           if (dbFile.exists()) {
-            dbFile.delete();
+            archivePreviousRun(dbFile);
           }
 
           File parent = dbFile.getParentFile();
@@ -78,13 +118,13 @@ public class DataStoreDatabase {
             }
           }
           connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
+          setSchemaVersion(connection, SCHEMA_VERSION);
           break;
         default:
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Performance optimization. The transaction is committed periodically by the DataStoreService, see #commit().
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException e) {
@@ -99,9 +139,150 @@ public class DataStoreDatabase {
     myConnection = connection;
   }
 
+  private DataStoreDatabase(@NotNull Connection connection, @NotNull LogService logService) {
+    myLogService = logService;
+    myConnection = connection;
+  }
+
+  /**
+   * @param generation 0 for the previous run, 1 for the run before it, up to {@link #MAX_PREVIOUS_RUNS} - 1.
+   * @return the file the database of an earlier run at {@code dbPath} is kept in.
+   */
+  @NotNull
+  public static File getPreviousRunFile(@NotNull String dbPath, int generation) {
+    return new File(generation == 0 ? dbPath + PREVIOUS_RUN_SUFFIX : dbPath + PREVIOUS_RUN_SUFFIX + "." + generation);
+  }
+
+  /**
+   * Opens the database that an earlier run left at {@code dbPath} (see {@link #getPreviousRunFile}) read-only, so the sessions it
+   * contains can be queried again. Opening does not read any table data, blobs are only loaded as they are queried, so the cost of
+   * opening does not depend on the size of the database.
+   *
+   * @param generation 0 for the previous run, 1 for the run before it, up to {@link #MAX_PREVIOUS_RUNS} - 1.
+   * @return the opened database, or null if there is no database from that run or it could not be opened.
+   */
+  @Nullable
+  public static DataStoreDatabase openPreviousRun(@NotNull String dbPath, int generation, @NotNull LogService logService) {
+    File previousFile = getPreviousRunFile(dbPath, generation);
+    if (!previousFile.exists()) {
+      return null;
+    }
+    try {
+      Class.forName("org.sqlite.JDBC");
+      SQLiteConfig config = new SQLiteConfig();
+      config.setReadOnly(true);
+      Connection connection =
+        DriverManager.getConnection(String.format("jdbc:sqlite:%s", previousFile.getPath()), config.toProperties());
+      if (getSchemaVersion(connection) != SCHEMA_VERSION) {
+        // The file is migrated before it is archived, so this only happens if it was modified since.
+        connection.close();
+        return null;
+      }
+      return new DataStoreDatabase(connection, logService);
+    }
+    catch (ClassNotFoundException | SQLException e) {
+      logService.getLogger(DataStoreDatabase.class).warn(e);
+      return null;
+    }
+  }
+
+  /**
+   * Moves the database at {@code dbFile} out of the way so a new one can be created in its place. If the database can be upgraded to
+   * the current schema it is kept as the previous run, otherwise it is deleted. Databases of older runs are shifted back by one
+   * generation, and the oldest one is deleted.
+   */
+  private void archivePreviousRun(@NotNull File dbFile) {
+    File oldestFile = getPreviousRunFile(dbFile.getPath(), MAX_PREVIOUS_RUNS - 1);
+    if (oldestFile.exists() && !oldestFile.delete()) {
+      getLogger().warn("Unable to delete database of an older run");
+    }
+    for (int generation = MAX_PREVIOUS_RUNS - 2; generation >= 0; generation--) {
+      File file = getPreviousRunFile(dbFile.getPath(), generation);
+      if (file.exists() && !file.renameTo(getPreviousRunFile(dbFile.getPath(), generation + 1))) {
+        file.delete();
+      }
+    }
+    File previousFile = getPreviousRunFile(dbFile.getPath(), 0);
+
+    boolean isRestorable;
+    try (Connection connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()))) {
+      isRestorable = upgradeSchema(connection, MIGRATIONS);
+    }
+    catch (SQLException e) {
+      // Not a database we can read, e.g. written by an incompatible version of SQLite.
+      isRestorable = false;
+    }
+
+    if (!isRestorable || !dbFile.renameTo(previousFile)) {
+      dbFile.delete();
+    }
+  }
+
+  /**
+   * Runs the migrations needed to bring the database to the latest version in {@code migrations}.
+   *
+   * @return true if the database is now at the latest version, false if it is too old or newer than any version we know about.
+   */
+  @VisibleForTesting
+  public static boolean upgradeSchema(@NotNull Connection connection, @NotNull List<SchemaMigration> migrations) throws SQLException {
+    int latestVersion = FIRST_RESTORABLE_SCHEMA_VERSION + migrations.size();
+    int version = getSchemaVersion(connection);
+    if (version < FIRST_RESTORABLE_SCHEMA_VERSION || version > latestVersion) {
+      return false;
+    }
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    try {
+      for (; version < latestVersion; version++) {
+        migrations.get(version - FIRST_RESTORABLE_SCHEMA_VERSION).migrate(connection);
+      }
+      setSchemaVersion(connection, latestVersion);
+      connection.commit();
+    }
+    catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    }
+    finally {
+      connection.setAutoCommit(autoCommit);
+    }
+    return true;
+  }
+
+  @VisibleForTesting
+  public static int getSchemaVersion(@NotNull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+      return result.next() ? result.getInt(1) : 0;
+    }
+  }
+
+  private static void setSchemaVersion(@NotNull Connection connection, int version) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      // PRAGMA statements do not support bound parameters.
+      statement.execute("PRAGMA user_version = " + version);
+    }
+  }
+
+  /**
+   * Commits the current transaction, so data written so far is persisted and the journal does not grow unbounded.
+   */
+  public void commit() {
+    try {
+      if (!myConnection.isClosed() && !myConnection.getAutoCommit()) {
+        myConnection.commit();
+      }
+    }
+    catch (SQLException e) {
+      getLogger().error(e);
+    }
+  }
+
   public void disconnect() {
     try {
-      myConnection.commit();
+      // Databases restored from a previous run are read-only and never start a transaction.
+      if (!myConnection.getAutoCommit()) {
+        myConnection.commit();
+      }
     }
     catch (SQLException e) {
       getLogger().error(e);
@@ -18,6 +18,7 @@ package com.android.tools.datastore;
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.DURABLE;
 
 import com.android.tools.analytics.UsageTracker;
+import com.android.tools.datastore.database.BatchedInsertQueue;
 import com.android.tools.datastore.database.DataStoreTable;
 import com.android.tools.datastore.database.UnifiedEventsTable;
 import com.android.tools.datastore.service.CpuService;
@@ -27,6 +28,7 @@ import com.android.tools.datastore.service.MemoryService;
 import com.android.tools.datastore.service.NetworkService;
 import com.android.tools.datastore.service.ProfilerService;
 import com.android.tools.datastore.service.TransportService;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.io.grpc.ManagedChannel;
 import com.android.tools.idea.io.grpc.Server;
 import com.android.tools.idea.io.grpc.ServerBuilder;
@@ -54,6 +56,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -80,6 +83,11 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
    * and can be queried via the events pipeline. Example data pushed into this stream are stream connected / disconnected events.
    */
   public static final long DATASTORE_RESERVED_STREAM_ID = -1;
+  /**
+   * The number of sessions {@link #restorePreviousRun()} brings back. Restored sessions are written to the database of this run, so they
+   * are carried over to the next run as well, this bounds how many accumulate.
+   */
+  @VisibleForTesting static final int MAX_RESTORED_SESSIONS = 10;
 
   public static class BackingNamespace {
     public static final BackingNamespace DEFAULT_SHARED_NAMESPACE = new BackingNamespace("default.sql", DURABLE);
@@ -130,6 +138,15 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
 
   private final Timer myReportTimer;
 
+  /**
+   * Periodically writes out batched events and commits the database transactions. Null if commits only happen on shutdown.
+   */
+  @Nullable private final Timer myCommitTimer;
+
+  @NotNull private final BatchedInsertQueue.Stats myInsertStats = new BatchedInsertQueue.Stats();
+
+  private UnifiedEventsTable myUnifiedEventsTable;
+
   /**
    * @param fetchExecutor A callback which is given a {@link Runnable} for each datastore service.
    *                      The runnable, when run, begins polling the target service. You probably
@@ -167,6 +184,15 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
 
     myReportTimer = new Timer("DataStoreReportTimer");
     myReportTimer.schedule(new ReportTimerTask(), REPORT_INITIAL_DELAY, REPORT_PERIOD);
+
+    long commitIntervalMs = StudioFlags.PROFILER_DATASTORE_COMMIT_INTERVAL_MS.get();
+    if (commitIntervalMs > 0) {
+      myCommitTimer = new Timer("DataStoreCommitTimer");
+      myCommitTimer.schedule(new CommitTimerTask(commitIntervalMs), commitIntervalMs, commitIntervalMs);
+    }
+    else {
+      myCommitTimer = null;
+    }
     DataStoreTable.addDataStoreErrorCallback(this);
   }
 
@@ -194,7 +220,9 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   public void createPollers() {
     // TODO b/73538507 shared between all services to support inserting file content into generic byte cache (e.g. importing hprof)
     // We should be able to keep this inside TransportService after legacy pipeline removal.
-    UnifiedEventsTable unifiedTable = new UnifiedEventsTable();
+    UnifiedEventsTable unifiedTable = new UnifiedEventsTable(StudioFlags.PROFILER_DATASTORE_BATCH_SIZE.get(), myInsertStats,
+                                                             StudioFlags.PROFILER_DATASTORE_PARTITIONED_EVENTS.get());
+    myUnifiedEventsTable = unifiedTable;
     myTransportService = new TransportService(this, unifiedTable, myFetchExecutor);
     registerService(myTransportService);
     registerService(new ProfilerService(this, myLogService));
@@ -264,13 +292,40 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     }
   }
 
+  /**
+   * Copies the most recent sessions of the previous run into the database of this run, so they show up in the sessions list and can be
+   * opened again. The database of the previous run is opened read-only and closed again once the sessions are copied.
+   *
+   * @return the number of sessions restored.
+   */
+  public int restorePreviousRun() {
+    DataStoreDatabase previousRun =
+      DataStoreDatabase.openPreviousRun(myDatastoreDirectory + BackingNamespace.DEFAULT_SHARED_NAMESPACE.myNamespace, 0, myLogService);
+    if (previousRun == null) {
+      return 0;
+    }
+    try {
+      int sessionCount = myUnifiedEventsTable.restoreSessions(previousRun.getConnection(), MAX_RESTORED_SESSIONS);
+      getLogger().info(String.format(Locale.US, "Restored %d sessions of the previous run", sessionCount));
+      return sessionCount;
+    }
+    finally {
+      previousRun.disconnect();
+    }
+  }
+
   public void shutdown() {
     myReportTimer.cancel();
+    if (myCommitTimer != null) {
+      myCommitTimer.cancel();
+    }
     myServer.shutdownNow();
     for (DataStoreClient client : myConnectedClients.values()) {
       client.getChannel().shutdownNow();
     }
     myConnectedClients.clear();
+    myUnifiedEventsTable.flushPendingEvents();
+    logInsertStats();
     myDatabases.forEach((name, db) -> db.disconnect());
     DataStoreTable.removeDataStoreErrorCallback(this);
   }
@@ -318,6 +373,21 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     return myLogService;
   }
 
+  /**
+   * Logs the counters describing the batched writes into the unified events table, so ingestion falling behind shows up in idea.log.
+   */
+  private void logInsertStats() {
+    if (myInsertStats.getFlushCount() == 0) {
+      return;
+    }
+    getLogger().info(String.format(Locale.US, "Event inserts: %d rows in %d batches, %d pending, flush latency avg %d ms, max %d ms",
+                                   myInsertStats.getFlushedRowCount(),
+                                   myInsertStats.getFlushCount(),
+                                   myInsertStats.getQueueDepth(),
+                                   TimeUnit.NANOSECONDS.toMillis(myInsertStats.getAverageFlushLatencyNs()),
+                                   TimeUnit.NANOSECONDS.toMillis(myInsertStats.getMaxFlushLatencyNs())));
+  }
+
   /**
    * This class is used to manage the stub to each service per device.
    */
@@ -371,6 +441,39 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     }
   }
 
+  private final class CommitTimerTask extends TimerTask {
+    private final long myIntervalNs;
+
+    private CommitTimerTask(long intervalMs) {
+      myIntervalNs = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+    }
+
+    @Override
+    public void run() {
+      long startTimeNs = System.nanoTime();
+      try {
+        myUnifiedEventsTable.flushPendingEvents();
+        for (DataStoreDatabase db : myDatabases.values()) {
+          db.commit();
+        }
+      }
+      catch (RuntimeException e) {
+        // An exception escaping a TimerTask cancels the Timer, which would silently stop all further commits.
+        getLogger().error(e);
+        return;
+      }
+      // If writing out a commit interval's worth of data takes longer than the interval itself, the pollers are producing events
+      // faster than we can store them and the queue will keep growing.
+      long elapsedNs = System.nanoTime() - startTimeNs;
+      if (elapsedNs > myIntervalNs) {
+        getLogger().warn(String.format(Locale.US, "Database commit took %d ms (interval %d ms), %d events pending",
+                                       TimeUnit.NANOSECONDS.toMillis(elapsedNs),
+                                       TimeUnit.NANOSECONDS.toMillis(myIntervalNs),
+                                       myInsertStats.getQueueDepth()));
+      }
+    }
+  }
+
   private final class ReportTimerTask extends TimerTask {
     private long myStartTime = System.nanoTime();
 
@@ -380,6 +483,7 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       // Cast to int. Unlikely we'll ever have more than 2 billion seconds (e.g. ~60 years) here...
       dbStats.setAgeSec((int)TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - myStartTime));
       collectReport(dbStats);
+      logInsertStats();
 
       AndroidStudioEvent.Builder event = AndroidStudioEvent
         .newBuilder()
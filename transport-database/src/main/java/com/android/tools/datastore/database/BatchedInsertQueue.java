@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Accumulates rows destined for a single table so they can be written with one JDBC batch instead of one statement per row.
+ * <p>
+ * Pending rows are handed to the writer once {@code maxBatchSize} rows have been queued, or whenever {@link #flush()} is called
+ * (e.g. by the periodic commit task of the {@link com.android.tools.datastore.DataStoreService}, or before a table is queried).
+ * Batches are written in the order they were queued.
+ */
+public final class BatchedInsertQueue<K> {
+  private final int myMaxBatchSize;
+  @NotNull private final Consumer<List<K>> myWriter;
+  @NotNull private final Stats myStats;
+
+  /**
+   * Guards {@link #myPending}. Held only for as long as it takes to swap the pending list out.
+   */
+  private final Object myPendingLock = new Object();
+
+  /**
+   * Serializes calls to {@link #myWriter} so batches reach the database in the order they were queued.
+   */
+  private final Object myWriteLock = new Object();
+
+  @NotNull private List<K> myPending;
+
+  /**
+   * @param maxBatchSize the number of pending rows that triggers a flush from {@link #add(Object)}.
+   * @param stats        counters updated by this queue. May be shared between queues.
+   * @param writer       callback that writes a batch of rows to the database. Called on the thread that triggers the flush.
+   */
+  public BatchedInsertQueue(int maxBatchSize, @NotNull Stats stats, @NotNull Consumer<List<K>> writer) {
+    assert maxBatchSize > 0;
+    myMaxBatchSize = maxBatchSize;
+    myStats = stats;
+    myWriter = writer;
+    myPending = new ArrayList<>(maxBatchSize);
+  }
+
+  public void add(@NotNull K row) {
+    boolean isFull;
+    synchronized (myPendingLock) {
+      myPending.add(row);
+      myStats.myQueueDepth.incrementAndGet();
+      isFull = myPending.size() >= myMaxBatchSize;
+    }
+    if (isFull) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes out all pending rows. No-op if there is nothing pending.
+   */
+  public void flush() {
+    synchronized (myWriteLock) {
+      List<K> batch;
+      synchronized (myPendingLock) {
+        if (myPending.isEmpty()) {
+          return;
+        }
+        batch = myPending;
+        myPending = new ArrayList<>(myMaxBatchSize);
+      }
+
+      long startNs = System.nanoTime();
+      try {
+        myWriter.accept(batch);
+      }
+      finally {
+        myStats.recordFlush(batch.size(), System.nanoTime() - startNs);
+      }
+    }
+  }
+
+  /**
+   * Thread-safe counters describing how far ingestion is behind.
+   */
+  public static final class Stats {
+    private final AtomicLong myQueueDepth = new AtomicLong();
+    private final AtomicLong myFlushCount = new AtomicLong();
+    private final AtomicLong myFlushedRowCount = new AtomicLong();
+    private final AtomicLong myLastFlushLatencyNs = new AtomicLong();
+    private final AtomicLong myMaxFlushLatencyNs = new AtomicLong();
+    private final AtomicLong myTotalFlushLatencyNs = new AtomicLong();
+
+    private void recordFlush(int rowCount, long latencyNs) {
+      myQueueDepth.addAndGet(-rowCount);
+      myFlushCount.incrementAndGet();
+      myFlushedRowCount.addAndGet(rowCount);
+      myLastFlushLatencyNs.set(latencyNs);
+      myMaxFlushLatencyNs.accumulateAndGet(latencyNs, Math::max);
+      myTotalFlushLatencyNs.addAndGet(latencyNs);
+    }
+
+    /**
+     * @return the number of rows queued but not yet written to the database.
+     */
+    public long getQueueDepth() {
+      return myQueueDepth.get();
+    }
+
+    public long getFlushCount() {
+      return myFlushCount.get();
+    }
+
+    public long getFlushedRowCount() {
+      return myFlushedRowCount.get();
+    }
+
+    public long getLastFlushLatencyNs() {
+      return myLastFlushLatencyNs.get();
+    }
+
+    public long getMaxFlushLatencyNs() {
+      return myMaxFlushLatencyNs.get();
+    }
+
+    public long getAverageFlushLatencyNs() {
+      long count = myFlushCount.get();
+      return count == 0 ? 0 : myTotalFlushLatencyNs.get() / count;
+    }
+  }
+}
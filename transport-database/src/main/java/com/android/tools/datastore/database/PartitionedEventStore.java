@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.EventGroup;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An in-memory, column-oriented store of unified pipeline events that answers {@link GetEventGroupsRequest}s with the same semantics as
+ * {@link UnifiedEventsTable#queryUnifiedEventGroups(GetEventGroupsRequest)}, without running SQL or deserializing event blobs.
+ * <p>
+ * Events are partitioned by (StreamId, Kind) and then by GroupId. Each group keeps its events sorted by timestamp in parallel arrays, so
+ * the first and last entries are the group's min/max timestamp summary and the events of a time range are found by binary search.
+ * The latest event before and the first event after the requested range (the -1/+1 neighbors) are read from the entries adjacent to
+ * that range, instead of the MAX/MIN GROUP BY scans of the SQL path.
+ * <p>
+ * This class is thread safe.
+ */
+public final class PartitionedEventStore {
+  private final ReadWriteLock myLock = new ReentrantReadWriteLock();
+  private final Map<PartitionKey, Map<Long, GroupColumns>> myPartitions = new HashMap<>();
+
+  /**
+   * Insertion counter, used to break ties between events with the same timestamp the way ROWID does in the SQL path.
+   */
+  private long myNextSequence;
+
+  /**
+   * Adds an event to the store. Like {@link UnifiedEventsTable#insertUnifiedEvent(long, Event)}, an event is dropped if the store
+   * already contains one with the same stream, kind, pid, group, timestamp and ended state.
+   */
+  public void insert(long streamId, @NotNull Event event) {
+    myLock.writeLock().lock();
+    try {
+      myPartitions.computeIfAbsent(new PartitionKey(streamId, event.getKind().getNumber()), key -> new HashMap<>())
+        .computeIfAbsent(event.getGroupId(), groupId -> new GroupColumns())
+        .insert(event, myNextSequence++);
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes events with the given stream, pid, group and kind whose timestamps are within [fromTimestamp, toTimestamp].
+   */
+  public void delete(long streamId, int pid, long groupId, @NotNull Event.Kind kind, long fromTimestamp, long toTimestamp) {
+    myLock.writeLock().lock();
+    try {
+      Map<Long, GroupColumns> partition = myPartitions.get(new PartitionKey(streamId, kind.getNumber()));
+      if (partition == null) {
+        return;
+      }
+      GroupColumns group = partition.get(groupId);
+      if (group != null && group.delete(pid, fromTimestamp, toTimestamp) && group.mySize == 0) {
+        partition.remove(groupId);
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * See {@link UnifiedEventsTable#queryUnifiedEventGroups(GetEventGroupsRequest)} for the semantics of the request.
+   */
+  @NotNull
+  public List<EventGroup> query(@NotNull GetEventGroupsRequest request) {
+    boolean hasFrom = request.getFromTimestamp() > 0;
+    boolean hasTo = request.getToTimestamp() > 0 && request.getToTimestamp() != Long.MAX_VALUE;
+    // The same group id may appear in several partitions if the request does not filter by stream.
+    Map<Long, GroupResult> results = new HashMap<>();
+
+    myLock.readLock().lock();
+    try {
+      for (Map.Entry<PartitionKey, Map<Long, GroupColumns>> entry : myPartitions.entrySet()) {
+        PartitionKey key = entry.getKey();
+        if (key.myKind != request.getKind().getNumber() || (request.getStreamId() != 0 && key.myStreamId != request.getStreamId())) {
+          continue;
+        }
+        Map<Long, GroupColumns> partition = entry.getValue();
+        Collection<GroupColumns> groups;
+        if (request.getGroupId() != 0) {
+          GroupColumns group = partition.get(request.getGroupId());
+          groups = group == null ? Collections.emptyList() : Collections.singletonList(group);
+        }
+        else {
+          groups = partition.values();
+        }
+        for (GroupColumns group : groups) {
+          group.collect(request, hasFrom, hasTo, results);
+        }
+      }
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+
+    List<EventGroup> groups = new ArrayList<>(results.size());
+    for (Map.Entry<Long, GroupResult> entry : results.entrySet()) {
+      EventGroup group = entry.getValue().build(entry.getKey());
+      if (group != null) {
+        groups.add(group);
+      }
+    }
+    return groups;
+  }
+
+  private static final class PartitionKey {
+    private final long myStreamId;
+    private final int myKind;
+
+    private PartitionKey(long streamId, int kind) {
+      myStreamId = streamId;
+      myKind = kind;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myStreamId, myKind);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof PartitionKey)) {
+        return false;
+      }
+      PartitionKey other = (PartitionKey)obj;
+      return myStreamId == other.myStreamId && myKind == other.myKind;
+    }
+  }
+
+  /**
+   * Events of a single group within a partition, stored column by column and sorted by timestamp.
+   */
+  private static final class GroupColumns {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[] myTimestamps = new long[INITIAL_CAPACITY];
+    private long[] mySequences = new long[INITIAL_CAPACITY];
+    private int[] myPids = new int[INITIAL_CAPACITY];
+    private int[] myCommandIds = new int[INITIAL_CAPACITY];
+    private boolean[] myIsEnded = new boolean[INITIAL_CAPACITY];
+    private Event[] myEvents = new Event[INITIAL_CAPACITY];
+    private int mySize;
+
+    private void insert(@NotNull Event event, long sequence) {
+      long timestamp = event.getTimestamp();
+      // Events almost always arrive in timestamp order, in which case this is an append.
+      int index = upperBound(timestamp);
+      for (int i = index - 1; i >= 0 && myTimestamps[i] == timestamp; i--) {
+        if (myPids[i] == event.getPid() && myIsEnded[i] == event.getIsEnded()) {
+          return;
+        }
+      }
+
+      if (mySize == myTimestamps.length) {
+        int capacity = mySize * 2;
+        myTimestamps = Arrays.copyOf(myTimestamps, capacity);
+        mySequences = Arrays.copyOf(mySequences, capacity);
+        myPids = Arrays.copyOf(myPids, capacity);
+        myCommandIds = Arrays.copyOf(myCommandIds, capacity);
+        myIsEnded = Arrays.copyOf(myIsEnded, capacity);
+        myEvents = Arrays.copyOf(myEvents, capacity);
+      }
+      if (index < mySize) {
+        int length = mySize - index;
+        System.arraycopy(myTimestamps, index, myTimestamps, index + 1, length);
+        System.arraycopy(mySequences, index, mySequences, index + 1, length);
+        System.arraycopy(myPids, index, myPids, index + 1, length);
+        System.arraycopy(myCommandIds, index, myCommandIds, index + 1, length);
+        System.arraycopy(myIsEnded, index, myIsEnded, index + 1, length);
+        System.arraycopy(myEvents, index, myEvents, index + 1, length);
+      }
+      myTimestamps[index] = timestamp;
+      mySequences[index] = sequence;
+      myPids[index] = event.getPid();
+      myCommandIds[index] = event.getCommandId();
+      myIsEnded[index] = event.getIsEnded();
+      myEvents[index] = event;
+      mySize++;
+    }
+
+    /**
+     * @return true if any event was removed.
+     */
+    private boolean delete(int pid, long fromTimestamp, long toTimestamp) {
+      int from = lowerBound(fromTimestamp);
+      int to = upperBound(toTimestamp);
+      if (from >= to) {
+        return false;
+      }
+      int write = from;
+      for (int read = from; read < to; read++) {
+        if (myPids[read] == pid) {
+          continue;
+        }
+        move(read, write++);
+      }
+      if (write == to) {
+        return false;
+      }
+      for (int read = to; read < mySize; read++) {
+        move(read, write++);
+      }
+      Arrays.fill(myEvents, write, mySize, null);
+      mySize = write;
+      return true;
+    }
+
+    private void move(int from, int to) {
+      myTimestamps[to] = myTimestamps[from];
+      mySequences[to] = mySequences[from];
+      myPids[to] = myPids[from];
+      myCommandIds[to] = myCommandIds[from];
+      myIsEnded[to] = myIsEnded[from];
+      myEvents[to] = myEvents[from];
+    }
+
+    private void collect(@NotNull GetEventGroupsRequest request, boolean hasFrom, boolean hasTo, @NotNull Map<Long, GroupResult> results) {
+      if (mySize == 0) {
+        return;
+      }
+      long groupId = myEvents[0].getGroupId();
+      // Use the min/max summary to avoid searching groups that are entirely outside of the range.
+      int start = !hasFrom || myTimestamps[0] >= request.getFromTimestamp() ? 0
+                  : myTimestamps[mySize - 1] < request.getFromTimestamp() ? mySize : lowerBound(request.getFromTimestamp());
+      int end = !hasTo || myTimestamps[mySize - 1] <= request.getToTimestamp() ? mySize
+                : myTimestamps[0] > request.getToTimestamp() ? 0 : upperBound(request.getToTimestamp());
+      end = Math.max(start, end);
+
+      GroupResult result = null;
+      if (hasFrom) {
+        for (int i = start - 1; i >= 0; i--) {
+          if (matches(request, i)) {
+            result = results.computeIfAbsent(groupId, id -> new GroupResult());
+            result.offerBefore(myTimestamps[i], mySequences[i], myEvents[i]);
+            break;
+          }
+        }
+      }
+      for (int i = start; i < end; i++) {
+        if (matches(request, i)) {
+          if (result == null) {
+            result = results.computeIfAbsent(groupId, id -> new GroupResult());
+          }
+          result.myInRange.add(myEvents[i]);
+        }
+      }
+      if (hasTo) {
+        for (int i = end; i < mySize; i++) {
+          if (matches(request, i)) {
+            if (result == null) {
+              result = results.computeIfAbsent(groupId, id -> new GroupResult());
+            }
+            result.offerAfter(myTimestamps[i], mySequences[i], myEvents[i]);
+            break;
+          }
+        }
+      }
+    }
+
+    private boolean matches(@NotNull GetEventGroupsRequest request, int index) {
+      return (request.getPid() == 0 || myPids[index] == request.getPid()) &&
+             (request.getCommandId() == 0 || myCommandIds[index] == request.getCommandId());
+    }
+
+    /**
+     * @return the index of the first event with a timestamp greater than or equal to {@code timestamp}.
+     */
+    private int lowerBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] < timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the index of the first event with a timestamp greater than {@code timestamp}.
+     */
+    private int upperBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] <= timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * Events collected for one group id while answering a query, possibly across several partitions.
+   */
+  private static final class GroupResult {
+    private final List<Event> myInRange = new ArrayList<>();
+    @Nullable private Event myBefore;
+    private long myBeforeTimestamp;
+    private long myBeforeSequence;
+    @Nullable private Event myAfter;
+    private long myAfterTimestamp;
+    private long myAfterSequence;
+
+    private void offerBefore(long timestamp, long sequence, @NotNull Event event) {
+      if (myBefore == null || timestamp > myBeforeTimestamp || (timestamp == myBeforeTimestamp && sequence > myBeforeSequence)) {
+        myBefore = event;
+        myBeforeTimestamp = timestamp;
+        myBeforeSequence = sequence;
+      }
+    }
+
+    private void offerAfter(long timestamp, long sequence, @NotNull Event event) {
+      if (myAfter == null || timestamp < myAfterTimestamp || (timestamp == myAfterTimestamp && sequence < myAfterSequence)) {
+        myAfter = event;
+        myAfterTimestamp = timestamp;
+        myAfterSequence = sequence;
+      }
+    }
+
+    /**
+     * @return the group, or null if none of the collected events qualify.
+     */
+    @Nullable
+    private EventGroup build(long groupId) {
+      EventGroup.Builder builder = EventGroup.newBuilder().setGroupId(groupId);
+      // The latest event before the range is only returned if the group has not ended by then.
+      if (myBefore != null && !myBefore.getIsEnded()) {
+        builder.addEvents(myBefore);
+      }
+      builder.addAllEvents(myInRange);
+      // The first event after the range is only returned for groups that have events up to the end of the range.
+      if (builder.getEventsCount() == 0) {
+        return null;
+      }
+      if (myAfter != null) {
+        builder.addEvents(myAfter);
+      }
+      return builder.build();
+    }
+  }
+}
@@ -17,6 +17,7 @@ package com.android.tools.datastore.database;
 
 import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
 import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Common.SessionData;
 import com.android.tools.profiler.proto.Transport.BytesRequest;
 import com.android.tools.profiler.proto.Transport.BytesResponse;
 import com.android.tools.profiler.proto.Transport.EventGroup;
@@ -24,11 +25,16 @@ import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicates;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
@@ -60,6 +66,53 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     }
   }
 
+  /**
+   * An event waiting to be inserted into the UnifiedEventsTable as part of a batch.
+   */
+  private static final class PendingEvent {
+    private final long myStreamId;
+    @NotNull private final Event myEvent;
+
+    private PendingEvent(long streamId, @NotNull Event event) {
+      myStreamId = streamId;
+      myEvent = event;
+    }
+  }
+
+  /**
+   * Queue of events waiting to be inserted, or null if events are inserted as soon as they are received.
+   */
+  @Nullable private final BatchedInsertQueue<PendingEvent> myEventQueue;
+
+  /**
+   * In-memory copy of the events used to answer {@link #queryUnifiedEventGroups(GetEventGroupsRequest)}, or null if queries go to
+   * the database.
+   */
+  @Nullable private final PartitionedEventStore myPartitionedStore;
+
+  public UnifiedEventsTable() {
+    myEventQueue = null;
+    myPartitionedStore = null;
+  }
+
+  /**
+   * @param maxBatchSize the number of events to accumulate before they are written to the database in one batch. Events are
+   *                     also written whenever the table is queried or {@link #flushPendingEvents()} is called.
+   * @param stats        counters updated as batches are written.
+   */
+  public UnifiedEventsTable(int maxBatchSize, @NotNull BatchedInsertQueue.Stats stats) {
+    this(maxBatchSize, stats, false);
+  }
+
+  /**
+   * @param usePartitionedStore if true, event groups are queried from a {@link PartitionedEventStore} kept alongside the database
+   *                            instead of from SQL. The database is still written to.
+   */
+  public UnifiedEventsTable(int maxBatchSize, @NotNull BatchedInsertQueue.Stats stats, boolean usePartitionedStore) {
+    myEventQueue = maxBatchSize > 1 ? new BatchedInsertQueue<>(maxBatchSize, stats, this::insertPendingEvents) : null;
+    myPartitionedStore = usePartitionedStore ? new PartitionedEventStore() : null;
+  }
+
   @Override
   public void prepareStatements() {
     try {
@@ -95,6 +148,13 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   public void insertUnifiedEvent(long streamId, @NotNull Event event) {
+    if (myPartitionedStore != null) {
+      myPartitionedStore.insert(streamId, event);
+    }
+    if (myEventQueue != null) {
+      myEventQueue.add(new PendingEvent(streamId, event));
+      return;
+    }
     execute(Statements.INSERT_EVENT,
             streamId,
             event.getPid(),
@@ -106,7 +166,33 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
             event.toByteArray());
   }
 
+  /**
+   * Writes out any events that are waiting to be inserted as part of a batch.
+   */
+  public void flushPendingEvents() {
+    if (myEventQueue != null) {
+      myEventQueue.flush();
+    }
+  }
+
+  private void insertPendingEvents(@NotNull List<PendingEvent> events) {
+    executeBatch(Statements.INSERT_EVENT, events, pending -> new Object[]{
+      pending.myStreamId,
+      pending.myEvent.getPid(),
+      pending.myEvent.getGroupId(),
+      pending.myEvent.getKind().getNumber(),
+      pending.myEvent.getCommandId(),
+      pending.myEvent.getTimestamp(),
+      pending.myEvent.getIsEnded() ? 1 : 0,
+      pending.myEvent.toByteArray()});
+  }
+
   public void deleteEvents(long streamId, int pid, long groupId, Event.Kind kind, long fromTimestamp, long toTimestamp) {
+    // Pending events may fall inside the deleted range, so they need to be in the table first.
+    flushPendingEvents();
+    if (myPartitionedStore != null) {
+      myPartitionedStore.delete(streamId, pid, groupId, kind, fromTimestamp, toTimestamp);
+    }
     execute(Statements.DELETE_EVENTS, streamId, pid, groupId, kind.getNumber(), fromTimestamp, toTimestamp);
   }
 
@@ -154,6 +240,10 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
    * @param request
    */
   public List<EventGroup> queryUnifiedEventGroups(@NotNull GetEventGroupsRequest request) {
+    if (myPartitionedStore != null) {
+      return myPartitionedStore.query(request);
+    }
+    flushPendingEvents();
     ArrayList<Object> baseParams = new ArrayList<>();
     List<Object> beforeRangeParams = null;
     List<Object> afterRangeParams = null;
@@ -241,6 +331,101 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     return builderGroups.values().stream().map(EventGroup.Builder::build).collect(Collectors.toList());
   }
 
+  /**
+   * Copies the most recent sessions of a database written by an earlier run into this table, together with the events and payloads of
+   * their streams, so they can be opened again. Sessions that were still running when that run ended are closed at their last event.
+   *
+   * @param source      connection to a database holding the tables of an earlier run, e.g. from
+   *                    {@link com.android.tools.datastore.DataStoreDatabase#openPreviousRun}. Only read from.
+   * @param maxSessions the number of sessions to restore, starting from the most recent one.
+   * @return the number of sessions restored.
+   */
+  public int restoreSessions(@NotNull Connection source, int maxSessions) {
+    if (isClosed()) {
+      return 0;
+    }
+    try {
+      Map<Long, Event> sessionStarts = new HashMap<>();
+      Map<Long, Event> sessionEnds = new HashMap<>();
+      Map<Long, Long> sessionStreamIds = new HashMap<>();
+      try (PreparedStatement statement = source.prepareStatement("SELECT StreamId, Data FROM [UnifiedEventsTable] WHERE Kind = ?")) {
+        statement.setInt(1, Event.Kind.SESSION.getNumber());
+        ResultSet results = statement.executeQuery();
+        while (results.next()) {
+          Event event = Event.parser().parseFrom(results.getBytes(2));
+          if (event.getIsEnded()) {
+            sessionEnds.put(event.getGroupId(), event);
+          }
+          else {
+            sessionStarts.put(event.getGroupId(), event);
+            sessionStreamIds.put(event.getGroupId(), results.getLong(1));
+          }
+        }
+      }
+
+      List<Event> restoredStarts = sessionStarts.values().stream()
+        .sorted(Comparator.comparingLong(Event::getTimestamp).reversed())
+        .limit(maxSessions)
+        .collect(Collectors.toList());
+      Set<Long> restoredStreamIds = new HashSet<>();
+      for (Event start : restoredStarts) {
+        SessionData.SessionStarted session = start.getSession().getSessionStarted();
+        Event end = sessionEnds.get(start.getGroupId());
+        long endTimestamp = end != null ? end.getTimestamp() : getLastTimestamp(source, session.getStreamId(), start.getTimestamp());
+        try (PreparedStatement statement = source.prepareStatement(
+          "SELECT Data FROM [UnifiedEventsTable] WHERE StreamId = ? AND (ProcessId = ? OR ProcessId = 0) AND Kind != ? " +
+          "AND Timestamp >= ? AND Timestamp <= ?")) {
+          statement.setLong(1, session.getStreamId());
+          statement.setInt(2, session.getPid());
+          statement.setInt(3, Event.Kind.SESSION.getNumber());
+          statement.setLong(4, start.getTimestamp());
+          statement.setLong(5, endTimestamp);
+          ResultSet results = statement.executeQuery();
+          while (results.next()) {
+            insertUnifiedEvent(session.getStreamId(), Event.parser().parseFrom(results.getBytes(1)));
+          }
+        }
+        long sessionStreamId = sessionStreamIds.get(start.getGroupId());
+        insertUnifiedEvent(sessionStreamId, start);
+        insertUnifiedEvent(sessionStreamId, end != null ? end : Event.newBuilder()
+          .setKind(Event.Kind.SESSION)
+          .setGroupId(start.getGroupId())
+          .setPid(start.getPid())
+          .setTimestamp(endTimestamp)
+          .setIsEnded(true)
+          .build());
+        restoredStreamIds.add(session.getStreamId());
+      }
+
+      // Payloads are not linked to sessions, so all payloads of the restored streams are copied.
+      for (long streamId : restoredStreamIds) {
+        try (PreparedStatement statement = source.prepareStatement("SELECT Id, Data FROM [BytesTable] WHERE StreamId = ?")) {
+          statement.setLong(1, streamId);
+          ResultSet results = statement.executeQuery();
+          while (results.next()) {
+            execute(Statements.INSERT_BYTES, streamId, results.getString(1), results.getBytes(2));
+          }
+        }
+      }
+      flushPendingEvents();
+      return restoredStarts.size();
+    }
+    catch (SQLException | InvalidProtocolBufferException ex) {
+      onError(ex);
+      return 0;
+    }
+  }
+
+  private static long getLastTimestamp(@NotNull Connection source, long streamId, long fromTimestamp) throws SQLException {
+    try (PreparedStatement statement = source.prepareStatement(
+      "SELECT MAX(Timestamp) FROM [UnifiedEventsTable] WHERE StreamId = ? AND Timestamp >= ?")) {
+      statement.setLong(1, streamId);
+      statement.setLong(2, fromTimestamp);
+      ResultSet results = statement.executeQuery();
+      return results.next() ? Math.max(fromTimestamp, results.getLong(1)) : fromTimestamp;
+    }
+  }
+
   public void insertBytes(long streamId, @NotNull String id, @NotNull BytesResponse response) {
     execute(Statements.INSERT_BYTES, streamId, id, response.toByteArray());
   }
@@ -290,6 +475,7 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   private List<Event> queryUnifiedEvents(Statements stmt, Object... args) {
+    flushPendingEvents();
     List<Event> records = new ArrayList<>();
     try {
       ResultSet results = executeQuery(stmt, args);
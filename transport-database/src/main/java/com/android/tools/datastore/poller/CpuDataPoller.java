@@ -71,7 +71,7 @@ public class CpuDataPoller extends PollRunner {
     long getDataStartNs = myDataRequestStartTimestampNs;
     CpuProfiler.CpuDataRequest.Builder request = CpuProfiler.CpuDataRequest
       .newBuilder().setSession(mySession).setStartTimestamp(getDataStartNs).setEndTimestamp(Long.MAX_VALUE);
-    CpuProfiler.CpuDataResponse response = myPollingService.getData(request.build());
+    CpuProfiler.CpuDataResponse response = withPollDeadline(myPollingService).getData(request.build());
     for (Cpu.CpuUsageData data : response.getDataList()) {
       getDataStartNs = Math.max(getDataStartNs, data.getEndTimestamp());
       myCpuTable.insert(mySession, data);
@@ -81,7 +81,7 @@ public class CpuDataPoller extends PollRunner {
     long getThreadsStartNs = myDataRequestStartTimestampNs;
     CpuProfiler.GetThreadsRequest.Builder threadsRequest = CpuProfiler.GetThreadsRequest
       .newBuilder().setSession(mySession).setStartTimestamp(getThreadsStartNs).setEndTimestamp(Long.MAX_VALUE);
-    CpuProfiler.GetThreadsResponse threadsResponse = myPollingService.getThreads(threadsRequest.build());
+    CpuProfiler.GetThreadsResponse threadsResponse = withPollDeadline(myPollingService).getThreads(threadsRequest.build());
 
     if (myDataRequestStartTimestampNs == Long.MIN_VALUE) {
       // Store the very first snapshot in the database.
@@ -105,7 +105,7 @@ public class CpuDataPoller extends PollRunner {
     // Poll trace info.
     CpuProfiler.GetTraceInfoRequest.Builder traceInfoRequest = CpuProfiler.GetTraceInfoRequest
       .newBuilder().setSession(mySession).setFromTimestamp(myTraceInfoRequestStartTimestampNs).setToTimestamp(Long.MAX_VALUE);
-    CpuProfiler.GetTraceInfoResponse traceInfoResponse = myPollingService.getTraceInfo(traceInfoRequest.build());
+    CpuProfiler.GetTraceInfoResponse traceInfoResponse = withPollDeadline(myPollingService).getTraceInfo(traceInfoRequest.build());
     for (Trace.TraceInfo traceInfo : traceInfoResponse.getTraceInfoList()) {
       myCpuTable.insertTraceInfo(mySession, traceInfo);
       myTraceInfoRequestStartTimestampNs =
@@ -113,5 +113,6 @@ public class CpuDataPoller extends PollRunner {
     }
 
     myDataRequestStartTimestampNs = Math.max(Math.max(myDataRequestStartTimestampNs + 1, getDataStartNs), getThreadsStartNs);
+    onPolledItems(response.getDataCount() + threadsResponse.getThreadsCount() + traceInfoResponse.getTraceInfoCount());
   }
 }
@@ -25,6 +25,7 @@ import com.android.tools.profiler.proto.Transport.GetDevicesResponse;
 import com.android.tools.profiler.proto.Transport.GetProcessesRequest;
 import com.android.tools.profiler.proto.Transport.GetProcessesResponse;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -64,9 +65,10 @@ public class DeviceProcessPoller extends PollRunner {
 
   @Override
   public void poll() {
+    int changeCount = 0;
     try {
       GetDevicesRequest devicesRequest = GetDevicesRequest.newBuilder().build();
-      GetDevicesResponse deviceResponse = myPollingService.getDevices(devicesRequest);
+      GetDevicesResponse deviceResponse = withPollDeadline(myPollingService).getDevices(devicesRequest);
       for (Common.Device device : deviceResponse.getDeviceList()) {
         long deviceId = device.getDeviceId();
 
@@ -74,7 +76,7 @@ public class DeviceProcessPoller extends PollRunner {
         DeviceData deviceData = myDevices.computeIfAbsent(deviceId, s -> new DeviceData(device));
 
         GetProcessesRequest processesRequest = GetProcessesRequest.newBuilder().setDeviceId(deviceId).build();
-        GetProcessesResponse processesResponse = myPollingService.getProcesses(processesRequest);
+        GetProcessesResponse processesResponse = withPollDeadline(myPollingService).getProcesses(processesRequest);
 
         // Gather the list of last known active processes.
         Set<Common.Process> liveProcesses = new HashSet<>();
@@ -89,18 +91,29 @@ public class DeviceProcessPoller extends PollRunner {
               .setPackageName(process.getPackageName()).build();
           AgentData cachedData = myTable.getAgentStatus(agentStatusRequest);
           if (cachedData.getStatus() == AgentData.Status.UNSPECIFIED) {
-            AgentData agentData = myPollingService.getAgentStatus(agentStatusRequest);
+            AgentData agentData = withPollDeadline(myPollingService).getAgentStatus(agentStatusRequest);
             myTable.updateAgentStatus(deviceId, process, agentData);
           }
 
-          deviceData.processes.add(process);
+          if (deviceData.processes.add(process)) {
+            changeCount++;
+          }
         }
 
-        Set<Common.Process> deadProcesses = Sets.difference(deviceData.processes, liveProcesses);
+        // Dead processes are dropped once they are killed, so they are not marked dead again on every poll.
+        Set<Common.Process> deadProcesses = ImmutableSet.copyOf(Sets.difference(deviceData.processes, liveProcesses));
+        deviceData.processes.removeAll(deadProcesses);
+        changeCount += deadProcesses.size();
         killProcesses(deviceId, deadProcesses);
       }
+      // The full device and process lists are received on every poll, only changes count as new items.
+      onPolledItems(changeCount);
     }
     catch (StatusRuntimeException ex) {
+      if (isDeadlineExceeded(ex)) {
+        // The device is slow to respond, not disconnected. The next poll tries again.
+        throw ex;
+      }
       // We expect this to get called when connection to the device is lost.
       // To properly clean up the state we first set all ALIVE processes to DEAD
       // then we disconnect the channel.
@@ -32,6 +32,7 @@ import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import com.android.tools.profiler.proto.Transport.TimeRequest;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
@@ -99,7 +100,7 @@ public final class EnergyDataPoller extends PollRunner {
   // TODO: Remove this temporary function once we're not creating fake data anymore
   private long queryCurrentTime() {
     TimeRequest timeRequest = TimeRequest.newBuilder().setStreamId(mySession.getStreamId()).build();
-    return myTransportService.getCurrentTime(timeRequest).getTimestampNs();
+    return withPollDeadline(myTransportService).getCurrentTime(timeRequest).getTimestampNs();
   }
 
   @Override
@@ -111,14 +112,20 @@ public final class EnergyDataPoller extends PollRunner {
     EnergyProfiler.EnergyRequest request = EnergyProfiler.EnergyRequest
       .newBuilder().setSession(mySession).setStartTimestamp(myDataRequestStartTimestampNs).setEndTimestamp(endTimestampNs).build();
 
-    addLatestEvents(request); // Update events before samples, so any event with an effect on samples will get reflected in the samples.
-    addLatestSamples(request);
+    // Update events before samples, so any event with an effect on samples will get reflected in the samples.
+    int eventCount = addLatestEvents(request);
+    int sampleCount = addLatestSamples(request);
 
     myDataRequestStartTimestampNs = endTimestampNs;
+    onPolledItems(eventCount + sampleCount);
   }
 
-  private void addLatestEvents(@NotNull EnergyProfiler.EnergyRequest request) {
-    for (Common.Event event : myEnergyService.getEvents(request).getEventsList()) {
+  /**
+   * @return the number of events received.
+   */
+  private int addLatestEvents(@NotNull EnergyProfiler.EnergyRequest request) {
+    List<Common.Event> events = withPollDeadline(myEnergyService).getEvents(request).getEventsList();
+    for (Common.Event event : events) {
       // Location-related events.
       if (event.getEnergyEvent().hasLocationUpdateRequested()) {
         myBatteryModel.handleEvent(
@@ -145,9 +152,13 @@ public final class EnergyDataPoller extends PollRunner {
 
       myEnergyTable.insertOrReplace(mySession, event);
     }
+    return events.size();
   }
 
-  private void addLatestSamples(@NotNull EnergyProfiler.EnergyRequest request) {
+  /**
+   * @return the number of samples stored.
+   */
+  private int addLatestSamples(@NotNull EnergyProfiler.EnergyRequest request) {
     // Network-related samples
     {
       NetworkProfiler.NetworkDataRequest networkDataRequest =
@@ -155,7 +166,7 @@ public final class EnergyDataPoller extends PollRunner {
           .newBuilder().setSession(request.getSession()).setStartTimestamp(request.getStartTimestamp())
           .setEndTimestamp(request.getEndTimestamp()).setType(NetworkProfiler.NetworkDataRequest.Type.ALL).build();
 
-      NetworkProfiler.NetworkDataResponse networkDataResponse = myNetworkService.getData(networkDataRequest);
+      NetworkProfiler.NetworkDataResponse networkDataResponse = withPollDeadline(myNetworkService).getData(networkDataRequest);
       for (NetworkProfiler.NetworkProfilerData networkData : networkDataResponse.getDataList()) {
         switch (networkData.getDataCase()) {
           case CONNECTIVITY_DATA:
@@ -186,7 +197,8 @@ public final class EnergyDataPoller extends PollRunner {
         try {
           // TODO: Test on single core phones to see if they report data via "cpu0" or "cpu".
           myCpuConfig = new CpuConfig(
-            myCpuService.getCpuCoreConfig(CpuProfiler.CpuCoreConfigRequest.newBuilder().setDeviceId(mySession.getStreamId()).build())
+            withPollDeadline(myCpuService)
+              .getCpuCoreConfig(CpuProfiler.CpuCoreConfigRequest.newBuilder().setDeviceId(mySession.getStreamId()).build())
               .getCpuCoreConfig(),
             myLogService);
         }
@@ -198,7 +210,7 @@ public final class EnergyDataPoller extends PollRunner {
       CpuProfiler.CpuDataRequest cpuDataRequest =
         CpuProfiler.CpuDataRequest.newBuilder().setSession(request.getSession()).setStartTimestamp(request.getStartTimestamp())
           .setEndTimestamp(request.getEndTimestamp()).build();
-      CpuProfiler.CpuDataResponse cpuDataResponse = myCpuService.getData(cpuDataRequest);
+      CpuProfiler.CpuDataResponse cpuDataResponse = withPollDeadline(myCpuService).getData(cpuDataRequest);
       Cpu.CpuUsageData prevUsageData = myLastData;
 
       for (Cpu.CpuUsageData currUsageData : cpuDataResponse.getDataList()) {
@@ -213,9 +225,11 @@ public final class EnergyDataPoller extends PollRunner {
       }
     }
 
-    for (EnergyProfiler.EnergySample sample : myBatteryModel.getSamplesBetween(request.getStartTimestamp(), request.getEndTimestamp())) {
+    List<EnergyProfiler.EnergySample> samples = myBatteryModel.getSamplesBetween(request.getStartTimestamp(), request.getEndTimestamp());
+    for (EnergyProfiler.EnergySample sample : samples) {
       myEnergyTable.insertOrReplace(mySession, sample);
     }
+    return samples.size();
   }
 
   @NotNull
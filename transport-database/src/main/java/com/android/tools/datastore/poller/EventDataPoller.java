@@ -54,7 +54,7 @@ public class EventDataPoller extends PollRunner {
                                                                   .setStartTimestamp(myDataRequestStartTimestampNs)
                                                                   .setEndTimestamp(Long.MAX_VALUE);
     // Query for and cache activity data that has changed since our last polling.
-    ActivityDataResponse activityResponse = myEventPollingService.getActivityData(dataRequestBuilder.build());
+    ActivityDataResponse activityResponse = withPollDeadline(myEventPollingService).getActivityData(dataRequestBuilder.build());
     for (ActivityData data : activityResponse.getDataList()) {
       long id = data.getHash();
       ActivityData cached_data = myEventsTable.findActivityDataOrNull(mySession, id);
@@ -83,10 +83,11 @@ public class EventDataPoller extends PollRunner {
 
     // Poll for system event data. If we have a duplicate event then we replace it with the incomming one.
     // we replace the event as the event information may have changed, eg now it has an uptime where previously it didn't
-    SystemDataResponse systemResponse = myEventPollingService.getSystemData(dataRequestBuilder.build());
+    SystemDataResponse systemResponse = withPollDeadline(myEventPollingService).getSystemData(dataRequestBuilder.build());
     for (SystemData data : systemResponse.getDataList()) {
       long id = data.getEventId();
       myEventsTable.insertOrReplace(id, mySession, data);
     }
+    onPolledItems(activityResponse.getDataCount() + systemResponse.getDataCount());
   }
 }
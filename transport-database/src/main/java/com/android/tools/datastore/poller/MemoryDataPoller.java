@@ -68,7 +68,7 @@ public class MemoryDataPoller extends PollRunner {
   public void poll() {
     MemoryRequest.Builder dataRequestBuilder =
       MemoryRequest.newBuilder().setSession(mySession).setStartTime(myDataRequestStartTimestampNs).setEndTime(Long.MAX_VALUE);
-    MemoryData response = myPollingService.getData(dataRequestBuilder.build());
+    MemoryData response = withPollDeadline(myPollingService).getData(dataRequestBuilder.build());
 
     // TODO: A UI request may come in while mid way through the poll, this can cause us to have partial data
     // returned to the UI. This can be solved using transactions in the DB when this class is moved fully over.
@@ -125,5 +125,6 @@ public class MemoryDataPoller extends PollRunner {
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
+    onPolledItems(response.getMemSamplesCount() + response.getAllocStatsSamplesCount() + response.getGcStatsSamplesCount());
   }
 }
\ No newline at end of file
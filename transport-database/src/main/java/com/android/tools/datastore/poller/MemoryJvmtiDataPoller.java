@@ -45,7 +45,7 @@ public class MemoryJvmtiDataPoller extends PollRunner {
   public void poll() {
     MemoryRequest.Builder dataRequestBuilder = MemoryRequest
       .newBuilder().setSession(mySession).setStartTime(myDataRequestStartTimestampNs).setEndTime(Long.MAX_VALUE);
-    MemoryData response = myPollingService.getJvmtiData(dataRequestBuilder.build());
+    MemoryData response = withPollDeadline(myPollingService).getJvmtiData(dataRequestBuilder.build());
 
     for (BatchAllocationContexts sample : response.getBatchAllocationContextsList()) {
       myLiveAllocationTable.insertAllocationContexts(mySession, sample);
@@ -62,5 +62,7 @@ public class MemoryJvmtiDataPoller extends PollRunner {
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
+    onPolledItems(response.getBatchAllocationContextsCount() + response.getBatchAllocationEventsCount() +
+                  response.getJniReferenceEventBatchesCount() + response.getAllocSamplingRateEventsCount());
   }
 }
\ No newline at end of file
@@ -53,19 +53,20 @@ public class NetworkDataPoller extends PollRunner {
     NetworkDataRequest.Builder dataRequestBuilder = NetworkDataRequest
       .newBuilder().setSession(mySession).setStartTimestamp(myDataRequestStartTimestampNs).setEndTimestamp(Long.MAX_VALUE)
       .setType(NetworkDataRequest.Type.ALL);
-    NetworkDataResponse response = myPollingService.getData(dataRequestBuilder.build());
+    NetworkDataResponse response = withPollDeadline(myPollingService).getData(dataRequestBuilder.build());
 
     for (NetworkProfilerData data : response.getDataList()) {
       myDataRequestStartTimestampNs = Math.max(myDataRequestStartTimestampNs, data.getEndTimestamp());
       myNetworkTable.insert(mySession, data);
     }
+    onPolledItems(response.getDataCount());
     pollHttpRange();
   }
 
   private void pollHttpRange() {
     HttpRangeRequest.Builder requestBuilder = HttpRangeRequest
       .newBuilder().setSession(mySession).setStartTimestamp(myHttpRangeRequestStartTimeNs).setEndTimestamp(Long.MAX_VALUE);
-    HttpRangeResponse httpRange = myPollingService.getHttpRange(requestBuilder.build());
+    HttpRangeResponse httpRange = withPollDeadline(myPollingService).getHttpRange(requestBuilder.build());
 
     for (HttpConnectionData connection : httpRange.getDataList()) {
       myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, connection.getStartTimestamp() + 1);
@@ -97,6 +98,6 @@ public class NetworkDataPoller extends PollRunner {
   private HttpDetailsResponse pollHttpDetails(long id, HttpDetailsRequest.Type type) {
     HttpDetailsRequest request = HttpDetailsRequest
       .newBuilder().setConnId(id).setType(type).build();
-    return myPollingService.getHttpDetails(request);
+    return withPollDeadline(myPollingService).getHttpDetails(request);
   }
 }
\ No newline at end of file
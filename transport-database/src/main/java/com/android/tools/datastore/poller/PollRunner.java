@@ -15,19 +15,43 @@
  */
 package com.android.tools.datastore.poller;
 
+import com.android.tools.idea.io.grpc.Status;
 import com.android.tools.idea.io.grpc.StatusRuntimeException;
+import com.android.tools.idea.io.grpc.stub.AbstractStub;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * A {@link RunnableFuture} which, while running, triggers a callback at a specified period
  * (which can be used to poll a target service at some frequency).
+ * <p>
+ * A runner either polls on its own thread via {@link #run()}, or is handed to a {@link PollScheduler} which calls {@link #poll()} from
+ * a shared thread pool at an adaptive period.
  */
 public abstract class PollRunner implements RunnableFuture<Void> {
 
   public static final long POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
 
+  /**
+   * Deadline of each call a poll makes through a stub returned by {@link #withPollDeadline}. Without one, a call to a service that
+   * stopped responding blocks its thread forever, and on a {@link PollScheduler} that thread is shared with other runners. A poll
+   * whose call exceeds the deadline is skipped, and the runner polls again on its next period.
+   */
+  public static final long POLL_DEADLINE_NS = TimeUnit.SECONDS.toNanos(10);
+
+  /**
+   * Returned by {@link #pollScheduled()} if the poll did not report how many items it received.
+   */
+  static final int ITEMS_NOT_REPORTED = -1;
+
+  /**
+   * Returned by {@link #pollScheduled()} once the runner has been cancelled.
+   */
+  static final int RUNNER_CANCELLED = -2;
+
   private long myPollPeriodNs;
 
   private boolean myIsRunning = false;
@@ -36,6 +60,21 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   private CountDownLatch myIsDone = new CountDownLatch(1);
 
+  /**
+   * Whether this runner is driven by a {@link PollScheduler} instead of {@link #run()}.
+   */
+  private volatile boolean myIsScheduled = false;
+
+  /**
+   * Held by the {@link PollScheduler} while a poll is in progress.
+   */
+  private final ReentrantLock myScheduledPollLock = new ReentrantLock();
+
+  /**
+   * Number of items reported via {@link #onPolledItems(int)} during the current poll, or {@link #ITEMS_NOT_REPORTED}.
+   */
+  private int myPolledItemCount = ITEMS_NOT_REPORTED;
+
 
   public PollRunner(long pollPeriodNs) {
     myPollPeriodNs = pollPeriodNs;
@@ -57,7 +96,15 @@ public abstract class PollRunner implements RunnableFuture<Void> {
       myIsRunning = true;
       while (myRunning.getCount() > 0) {
         long startTimeNs = System.nanoTime();
-        poll();
+        myPolledItemCount = ITEMS_NOT_REPORTED;
+        try {
+          poll();
+        }
+        catch (StatusRuntimeException e) {
+          if (!isDeadlineExceeded(e)) {
+            throw e;
+          }
+        }
         long sleepTime = Math.max(myPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
         myRunning.await(sleepTime, TimeUnit.NANOSECONDS);
       }
@@ -73,9 +120,102 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   public abstract void poll();
 
+  /**
+   * @return {@code stub} with a deadline of {@link #POLL_DEADLINE_NS} from now. Call once per request, the deadline starts counting
+   * when this is called.
+   */
+  @NotNull
+  protected static <S extends AbstractStub<S>> S withPollDeadline(@NotNull S stub) {
+    return stub.withDeadlineAfter(POLL_DEADLINE_NS, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return true if {@code e} was thrown because a call took longer than its deadline, i.e. the service is slow to respond rather than
+   * gone.
+   */
+  protected static boolean isDeadlineExceeded(@NotNull StatusRuntimeException e) {
+    return e.getStatus().getCode() == Status.Code.DEADLINE_EXCEEDED;
+  }
+
+  /**
+   * Called by subclasses from {@link #poll()} to report how many items the poll received. A {@link PollScheduler} polls runners
+   * that keep receiving nothing less often, and runners that receive {@link #getFullBatchSize()} items or more more often.
+   * Runners that never report keep polling at their fixed period.
+   */
+  protected final void onPolledItems(int count) {
+    myPolledItemCount = Math.max(myPolledItemCount, 0) + count;
+  }
+
+  /**
+   * @return the number of items per poll above which a {@link PollScheduler} considers this runner to be falling behind.
+   */
+  protected int getFullBatchSize() {
+    return 100;
+  }
+
+  public long getPollPeriodNs() {
+    return myPollPeriodNs;
+  }
+
+  void markScheduled() {
+    myIsScheduled = true;
+  }
+
+  /**
+   * Runs a single poll on behalf of a {@link PollScheduler}.
+   *
+   * @return the number of items the poll reported via {@link #onPolledItems(int)}, {@link #ITEMS_NOT_REPORTED}, or
+   * {@link #RUNNER_CANCELLED} if the runner should not be scheduled again.
+   * @throws RuntimeException if {@link #poll()} failed, in which case the runner is cancelled.
+   */
+  int pollScheduled() {
+    myScheduledPollLock.lock();
+    try {
+      if (isCancelled()) {
+        myIsDone.countDown();
+        return RUNNER_CANCELLED;
+      }
+      myPolledItemCount = ITEMS_NOT_REPORTED;
+      poll();
+      if (isCancelled()) {
+        myIsDone.countDown();
+        return RUNNER_CANCELLED;
+      }
+      return myPolledItemCount;
+    }
+    catch (StatusRuntimeException e) {
+      if (isDeadlineExceeded(e)) {
+        // Same as run(), skip this poll. Counting it as empty makes the scheduler back off from the slow service.
+        return 0;
+      }
+      // Same as run(), the target service is gone.
+      myRunning.countDown();
+      myIsDone.countDown();
+      return RUNNER_CANCELLED;
+    }
+    catch (RuntimeException e) {
+      // The runner is not polled again, complete it so stop() does not wait forever. The scheduler reports the exception.
+      myRunning.countDown();
+      myIsDone.countDown();
+      throw e;
+    }
+    finally {
+      myScheduledPollLock.unlock();
+    }
+  }
+
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     myRunning.countDown();
+    // If a scheduled poll is in progress, it completes the runner when it returns. Otherwise no further polls will run.
+    if (myIsScheduled && myScheduledPollLock.tryLock()) {
+      try {
+        myIsDone.countDown();
+      }
+      finally {
+        myScheduledPollLock.unlock();
+      }
+    }
     return true;
   }
 
@@ -91,7 +231,7 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   @Override
   public Void get() throws InterruptedException {
-    if (myIsRunning) {
+    if (myIsRunning || myIsScheduled) {
       myIsDone.await();
     }
     return null;
@@ -99,7 +239,7 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   @Override
   public Void get(long timeout, TimeUnit unit) throws InterruptedException {
-    if (myIsRunning) {
+    if (myIsRunning || myIsScheduled) {
       myIsDone.await(timeout, unit);
     }
     return null;
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.tools.datastore.LogService;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Runs {@link PollRunner}s on a small shared thread pool, instead of each runner sleeping on a thread of its own.
+ * <p>
+ * Each runner starts at its own poll period. Runners whose last {@link #EMPTY_POLLS_BEFORE_BACKOFF} polls received nothing back off,
+ * doubling their period up to {@link #MAX_DELAY_NS}, while runners that receive full batches halve it down to {@link #MIN_DELAY_NS}.
+ * Any other poll that receives data resets the runner to its own period. If a poll starts more than {@link #LAG_WARNING_NS} later than
+ * it was due, i.e. the pool is saturated, a warning with the runner's statistics is logged whenever its maximum lag grows.
+ */
+public final class PollScheduler {
+  @VisibleForTesting static final int EMPTY_POLLS_BEFORE_BACKOFF = 4;
+  @VisibleForTesting static final long MIN_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(50);
+  @VisibleForTesting static final long MAX_DELAY_NS = TimeUnit.SECONDS.toNanos(2);
+  @VisibleForTesting static final long LAG_WARNING_NS = TimeUnit.SECONDS.toNanos(1);
+
+  @NotNull private final ScheduledExecutorService myExecutor;
+  @NotNull private final LongSupplier myNanoTime;
+  @NotNull private final LogService myLogService;
+  private final Map<PollRunner, PollerStats> myStats = new ConcurrentHashMap<>();
+
+  public PollScheduler(int threadCount, @NotNull LogService logService) {
+    this(Executors.newScheduledThreadPool(
+      threadCount, new ThreadFactoryBuilder().setNameFormat("DataStorePollScheduler-%d").setDaemon(true).build()), System::nanoTime,
+         logService);
+  }
+
+  @VisibleForTesting
+  PollScheduler(@NotNull ScheduledExecutorService executor, @NotNull LongSupplier nanoTime, @NotNull LogService logService) {
+    myExecutor = executor;
+    myNanoTime = nanoTime;
+    myLogService = logService;
+  }
+
+  /**
+   * Starts polling {@code runner} until it is stopped.
+   */
+  public void schedule(@NotNull PollRunner runner) {
+    runner.markScheduled();
+    PollerStats stats = new PollerStats(runner.getClass().getSimpleName(), runner.getPollPeriodNs());
+    myStats.put(runner, stats);
+    submit(runner, stats, 0);
+  }
+
+  /**
+   * @return a snapshot of the statistics of the runners currently being polled.
+   */
+  @VisibleForTesting
+  @NotNull
+  List<PollerStats> getStats() {
+    return new ArrayList<>(myStats.values());
+  }
+
+  public void shutdown() {
+    myExecutor.shutdownNow();
+    myStats.keySet().forEach(runner -> runner.cancel(true));
+    myStats.clear();
+  }
+
+  private void submit(@NotNull PollRunner runner, @NotNull PollerStats stats, long delayNs) {
+    long dueNs = myNanoTime.getAsLong() + delayNs;
+    try {
+      myExecutor.schedule(() -> poll(runner, stats, dueNs), delayNs, TimeUnit.NANOSECONDS);
+    }
+    catch (RejectedExecutionException e) {
+      // Shut down.
+      runner.cancel(true);
+      myStats.remove(runner);
+    }
+  }
+
+  private void poll(@NotNull PollRunner runner, @NotNull PollerStats stats, long dueNs) {
+    long startNs = myNanoTime.getAsLong();
+    int itemCount;
+    try {
+      itemCount = runner.pollScheduled();
+    }
+    catch (RuntimeException e) {
+      // The executor would swallow the exception and the runner would silently stop being polled.
+      myLogService.getLogger(PollScheduler.class).error(e);
+      itemCount = PollRunner.RUNNER_CANCELLED;
+    }
+    if (itemCount == PollRunner.RUNNER_CANCELLED) {
+      myStats.remove(runner);
+      return;
+    }
+    long durationNs = myNanoTime.getAsLong() - startNs;
+    long lagNs = startNs - dueNs;
+    long previousMaxLagNs = stats.myMaxLagNs;
+    stats.recordPoll(lagNs, durationNs, itemCount, runner.getFullBatchSize());
+    if (lagNs > LAG_WARNING_NS && lagNs > previousMaxLagNs) {
+      myLogService.getLogger(PollScheduler.class).warn(String.format(
+        Locale.US, "%s polled %d ms late, last poll took %d ms, %d of %d polls empty, polling every %d ms",
+        stats.getName(), TimeUnit.NANOSECONDS.toMillis(lagNs), TimeUnit.NANOSECONDS.toMillis(durationNs), stats.getEmptyPollCount(),
+        stats.getPollCount(), TimeUnit.NANOSECONDS.toMillis(stats.getDelayNs())));
+    }
+    // Like PollRunner#run, the time spent polling counts towards the delay.
+    submit(runner, stats, Math.max(stats.myDelayNs - durationNs, 0L));
+  }
+
+  /**
+   * Statistics of a single runner. Updated by the scheduler threads, may be read from any thread.
+   */
+  public static final class PollerStats {
+    @NotNull private final String myName;
+    private final long myPeriodNs;
+    private int myEmptyPollStreak;
+
+    private volatile long myDelayNs;
+    private volatile long myPollCount;
+    private volatile long myEmptyPollCount;
+    private volatile long myLastLagNs;
+    private volatile long myMaxLagNs;
+    private volatile long myLastPollDurationNs;
+
+    private PollerStats(@NotNull String name, long periodNs) {
+      myName = name;
+      myPeriodNs = periodNs;
+      myDelayNs = periodNs;
+    }
+
+    private void recordPoll(long lagNs, long durationNs, int itemCount, int fullBatchSize) {
+      myPollCount++;
+      myLastLagNs = lagNs;
+      myMaxLagNs = Math.max(myMaxLagNs, lagNs);
+      myLastPollDurationNs = durationNs;
+
+      if (itemCount == PollRunner.ITEMS_NOT_REPORTED) {
+        myDelayNs = myPeriodNs;
+      }
+      else if (itemCount == 0) {
+        myEmptyPollCount++;
+        if (++myEmptyPollStreak >= EMPTY_POLLS_BEFORE_BACKOFF) {
+          myDelayNs = Math.min(myDelayNs * 2, Math.max(MAX_DELAY_NS, myPeriodNs));
+        }
+      }
+      else {
+        myEmptyPollStreak = 0;
+        myDelayNs = itemCount >= fullBatchSize ? Math.max(myDelayNs / 2, Math.min(MIN_DELAY_NS, myPeriodNs)) : myPeriodNs;
+      }
+    }
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    /**
+     * @return the delay between the end of the runner's last poll and the start of its next one.
+     */
+    public long getDelayNs() {
+      return myDelayNs;
+    }
+
+    public long getPollCount() {
+      return myPollCount;
+    }
+
+    public long getEmptyPollCount() {
+      return myEmptyPollCount;
+    }
+
+    /**
+     * @return how late the runner's last poll started, compared to when it was due.
+     */
+    public long getLastLagNs() {
+      return myLastLagNs;
+    }
+
+    public long getMaxLagNs() {
+      return myMaxLagNs;
+    }
+
+    public long getLastPollDurationNs() {
+      return myLastPollDurationNs;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class BatchedInsertQueueTest {
+  private val stats = BatchedInsertQueue.Stats()
+  private val batches = mutableListOf<List<Int>>()
+  private val queue = BatchedInsertQueue<Int>(3, stats) { batches.add(ArrayList(it)) }
+
+  @Test
+  fun flushesWhenBatchIsFull() {
+    queue.add(1)
+    queue.add(2)
+    assertThat(batches).isEmpty()
+    assertThat(stats.queueDepth).isEqualTo(2L)
+
+    queue.add(3)
+    assertThat(batches).containsExactly(listOf(1, 2, 3))
+    assertThat(stats.queueDepth).isEqualTo(0L)
+    assertThat(stats.flushCount).isEqualTo(1L)
+    assertThat(stats.flushedRowCount).isEqualTo(3L)
+  }
+
+  @Test
+  fun explicitFlushWritesPartialBatch() {
+    queue.add(1)
+    queue.flush()
+    assertThat(batches).containsExactly(listOf(1))
+    assertThat(stats.queueDepth).isEqualTo(0L)
+  }
+
+  @Test
+  fun flushWithNothingPendingIsNoOp() {
+    queue.flush()
+    assertThat(batches).isEmpty()
+    assertThat(stats.flushCount).isEqualTo(0L)
+    assertThat(stats.averageFlushLatencyNs).isEqualTo(0L)
+  }
+
+  @Test
+  fun batchesAreWrittenInOrder() {
+    (1..7).forEach(queue::add)
+    queue.flush()
+    assertThat(batches).containsExactly(listOf(1, 2, 3), listOf(4, 5, 6), listOf(7)).inOrder()
+    assertThat(stats.maxFlushLatencyNs).isAtLeast(stats.lastFlushLatencyNs)
+  }
+}
@@ -20,6 +20,8 @@ import org.junit.Test
 import java.io.BufferedOutputStream
 import java.io.File
 import java.io.FileOutputStream
+import java.sql.DriverManager
+import java.sql.SQLException
 
 class DataStoreDatabaseTest {
 
@@ -63,4 +65,113 @@ class DataStoreDatabaseTest {
     db.disconnect()
     assertThat(db.connection.isClosed).isTrue()
   }
+
+  @Test
+  fun testNewDatabaseHasCurrentSchemaVersion() {
+    myDatabaseFile.delete()
+    val db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    assertThat(DataStoreDatabase.getSchemaVersion(db.connection)).isEqualTo(DataStoreDatabase.SCHEMA_VERSION)
+    db.disconnect()
+  }
+
+  @Test
+  fun testPreviousRunIsRestoredReadOnly() {
+    myDatabaseFile.delete()
+    var db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    db.connection.createStatement().use {
+      it.execute("CREATE TABLE Foo (Value INTEGER)")
+      it.execute("INSERT INTO Foo VALUES (42)")
+    }
+    db.disconnect()
+    assertThat(DataStoreDatabase.openPreviousRun(myDatabaseFile.absolutePath, 0, FakeLogService())).isNull()
+
+    // Opening the database again starts from an empty file and archives the previous one.
+    db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    db.connection.createStatement().use {
+      assertThat(it.executeQuery("SELECT name FROM sqlite_master WHERE type='table'").next()).isFalse()
+    }
+    db.disconnect()
+
+    val previous = DataStoreDatabase.openPreviousRun(myDatabaseFile.absolutePath, 0, FakeLogService())!!
+    previous.connection.createStatement().use {
+      val result = it.executeQuery("SELECT Value FROM Foo")
+      assertThat(result.next()).isTrue()
+      assertThat(result.getInt(1)).isEqualTo(42)
+    }
+    var writeFailed = false
+    try {
+      previous.connection.createStatement().use { it.execute("INSERT INTO Foo VALUES (1)") }
+    }
+    catch (e: SQLException) {
+      writeFailed = true
+    }
+    assertThat(writeFailed).isTrue()
+    previous.disconnect()
+    assertThat(previous.connection.isClosed).isTrue()
+  }
+
+  @Test
+  fun testOlderRunsAreKept() {
+    myDatabaseFile.delete()
+    for (run in 0..DataStoreDatabase.MAX_PREVIOUS_RUNS) {
+      val db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+      db.connection.createStatement().use {
+        it.execute("CREATE TABLE Foo (Value INTEGER)")
+        it.execute("INSERT INTO Foo VALUES ($run)")
+      }
+      db.disconnect()
+    }
+    // Opening once more archives the last run, so every generation is in use and the first run was dropped.
+    DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService()).disconnect()
+
+    for (generation in 0 until DataStoreDatabase.MAX_PREVIOUS_RUNS) {
+      val previous = DataStoreDatabase.openPreviousRun(myDatabaseFile.absolutePath, generation, FakeLogService())!!
+      previous.connection.createStatement().use {
+        val result = it.executeQuery("SELECT Value FROM Foo")
+        assertThat(result.next()).isTrue()
+        assertThat(result.getInt(1)).isEqualTo(DataStoreDatabase.MAX_PREVIOUS_RUNS - generation)
+      }
+      previous.disconnect()
+    }
+    assertThat(DataStoreDatabase.getPreviousRunFile(myDatabaseFile.absolutePath, DataStoreDatabase.MAX_PREVIOUS_RUNS).exists()).isFalse()
+  }
+
+  @Test
+  fun testUnversionedDatabaseIsNotRestored() {
+    myDatabaseFile.delete()
+    DriverManager.getConnection("jdbc:sqlite:${myDatabaseFile.absolutePath}").use { connection ->
+      connection.createStatement().use { it.execute("CREATE TABLE Foo (Value INTEGER)") }
+    }
+    val db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    db.disconnect()
+    assertThat(DataStoreDatabase.openPreviousRun(myDatabaseFile.absolutePath, 0, FakeLogService())).isNull()
+  }
+
+  @Test
+  fun testUpgradeSchemaRunsMigrationsInOrder() {
+    val applied = mutableListOf<String>()
+    val migrations = listOf(
+      DataStoreDatabase.SchemaMigration { connection ->
+        connection.createStatement().use { it.execute("CREATE TABLE Foo (Value INTEGER)") }
+        applied.add("Foo")
+      },
+      DataStoreDatabase.SchemaMigration { connection ->
+        connection.createStatement().use { it.execute("ALTER TABLE Foo ADD COLUMN Other INTEGER") }
+        applied.add("Other")
+      })
+    DriverManager.getConnection("jdbc:sqlite::memory:").use { connection ->
+      connection.createStatement().use { it.execute("PRAGMA user_version = ${DataStoreDatabase.FIRST_RESTORABLE_SCHEMA_VERSION}") }
+      assertThat(DataStoreDatabase.upgradeSchema(connection, migrations)).isTrue()
+      assertThat(applied).containsExactly("Foo", "Other").inOrder()
+      assertThat(DataStoreDatabase.getSchemaVersion(connection)).isEqualTo(DataStoreDatabase.FIRST_RESTORABLE_SCHEMA_VERSION + 2)
+
+      // Already up to date, nothing left to run.
+      applied.clear()
+      assertThat(DataStoreDatabase.upgradeSchema(connection, migrations)).isTrue()
+      assertThat(applied).isEmpty()
+
+      // Databases written by a newer version can not be restored.
+      assertThat(DataStoreDatabase.upgradeSchema(connection, migrations.subList(0, 1))).isFalse()
+    }
+  }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.EventGroup
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import kotlin.random.Random
+
+/**
+ * Validates that [PartitionedEventStore] answers queries exactly like the SQL implementation in [UnifiedEventsTable].
+ */
+class PartitionedEventStoreTest {
+  private lateinit var database: DataStoreDatabase
+  private lateinit var sqlTable: UnifiedEventsTable
+  private val store = PartitionedEventStore()
+
+  @Before
+  fun setUp() {
+    database = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    sqlTable = UnifiedEventsTable()
+    sqlTable.initialize(database.connection)
+  }
+
+  @After
+  fun tearDown() {
+    database.disconnect()
+  }
+
+  @Test
+  fun neighborEventsAreReturned() {
+    insert(1, event(groupId = 1, timestamp = 1))
+    insert(1, event(groupId = 1, timestamp = 5))
+    insert(1, event(groupId = 1, timestamp = 10))
+    insert(1, event(groupId = 1, timestamp = 15))
+    // Ended before the range, so not returned.
+    insert(1, event(groupId = 2, timestamp = 2))
+    insert(1, event(groupId = 2, timestamp = 3, isEnded = true))
+    // Only has data after the range, so not returned.
+    insert(1, event(groupId = 3, timestamp = 20))
+
+    val request = GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(6).setToTimestamp(11).build()
+    val groups = store.query(request)
+    assertThat(groups.map { it.groupId }).containsExactly(1L)
+    assertThat(groups[0].eventsList.map { it.timestamp }).containsExactly(5L, 10L, 15L).inOrder()
+    assertSameAsSql(request)
+  }
+
+  @Test
+  fun duplicatedEventsAreDropped() {
+    val event = event(groupId = 1, timestamp = 1)
+    insert(1, event)
+    insert(1, event.toBuilder().setCommandId(5).build())
+    val request = GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).build()
+    assertThat(store.query(request).single().eventsList).containsExactly(event)
+    assertSameAsSql(request)
+  }
+
+  @Test
+  fun deleteEvents() {
+    for (timestamp in 1L..5L) {
+      insert(1, event(groupId = 1, timestamp = timestamp))
+      insert(1, event(groupId = 1, timestamp = timestamp, pid = 2))
+    }
+    delete(1, 1, 1, Common.Event.Kind.SESSION, 2, 4)
+    delete(1, 2, 1, Common.Event.Kind.SESSION, 4, 2)
+    val request = GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).build()
+    assertThat(store.query(request).single().eventsList.map { it.timestamp }).containsExactly(1L, 1L, 2L, 3L, 4L, 5L, 5L)
+    assertSameAsSql(request)
+
+    delete(1, 1, 1, Common.Event.Kind.SESSION, 0, 10)
+    delete(1, 2, 1, Common.Event.Kind.SESSION, 0, 10)
+    assertThat(store.query(request)).isEmpty()
+  }
+
+  @Test
+  fun randomQueriesMatchSql() {
+    val random = Random(1234)
+    // Events are inserted in timestamp order like the pollers do. Otherwise the SQL path is free to pick any of the rows matching its
+    // MAX(Timestamp), MAX(ROWID) aggregates as the neighbor events.
+    val events = List(2000) {
+      val streamId = random.nextLong(1, 3)
+      streamId to event(kind = if (random.nextInt(4) == 0) Common.Event.Kind.PROCESS else Common.Event.Kind.SESSION,
+                        groupId = random.nextLong(1, 20),
+                        timestamp = random.nextLong(1, 500),
+                        pid = random.nextInt(1, 3),
+                        commandId = random.nextInt(0, 3),
+                        isEnded = random.nextInt(10) == 0)
+    }
+    events.sortedBy { it.second.timestamp }.forEach { (streamId, event) -> insert(streamId, event) }
+
+    repeat(500) {
+      val from = random.nextLong(0, 500)
+      val request = GetEventGroupsRequest.newBuilder()
+        .setKind(if (random.nextBoolean()) Common.Event.Kind.SESSION else Common.Event.Kind.PROCESS)
+        .setStreamId(random.nextLong(0, 3))
+        .setPid(random.nextInt(0, 3))
+        .setGroupId(if (random.nextInt(3) == 0) random.nextLong(1, 20) else 0)
+        .setCommandId(if (random.nextInt(3) == 0) random.nextInt(1, 3) else 0)
+        .setFromTimestamp(from)
+        .setToTimestamp(if (random.nextInt(4) == 0) Long.MAX_VALUE else from + random.nextLong(0, 100))
+        .build()
+      assertSameAsSql(request)
+    }
+  }
+
+  private fun insert(streamId: Long, event: Common.Event) {
+    sqlTable.insertUnifiedEvent(streamId, event)
+    store.insert(streamId, event)
+  }
+
+  private fun delete(streamId: Long, pid: Int, groupId: Long, kind: Common.Event.Kind, from: Long, to: Long) {
+    sqlTable.deleteEvents(streamId, pid, groupId, kind, from, to)
+    store.delete(streamId, pid, groupId, kind, from, to)
+  }
+
+  private fun assertSameAsSql(request: GetEventGroupsRequest) {
+    val expected = normalize(sqlTable.queryUnifiedEventGroups(request))
+    assertWithMessage(request.toString()).that(normalize(store.query(request))).isEqualTo(expected)
+  }
+
+  /**
+   * Neither implementation guarantees the order of groups, or of events with equal timestamps.
+   */
+  private fun normalize(groups: List<EventGroup>) = groups.associate { group ->
+    group.groupId to group.eventsList.sortedWith(compareBy({ it.timestamp }, { it.pid }, { it.isEnded }, { it.commandId }))
+  }
+
+  private fun event(kind: Common.Event.Kind = Common.Event.Kind.SESSION,
+                    groupId: Long,
+                    timestamp: Long,
+                    pid: Int = 1,
+                    commandId: Int = 0,
+                    isEnded: Boolean = false): Common.Event =
+    Common.Event.newBuilder()
+      .setKind(kind)
+      .setGroupId(groupId)
+      .setTimestamp(timestamp)
+      .setPid(pid)
+      .setCommandId(commandId)
+      .setIsEnded(isEnded)
+      .build()
+}
@@ -15,6 +15,9 @@
  */
 package com.android.tools.datastore.database
 
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.idea.protobuf.ByteString
 import com.android.tools.profiler.proto.Common
 import com.android.tools.profiler.proto.Transport.BytesRequest
 import com.android.tools.profiler.proto.Transport.BytesResponse
@@ -61,6 +64,10 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     val events = mutableListOf(Common.Event.newBuilder().build())
     return mutableListOf(
       (Consumer { it.insertUnifiedEvent(1, events[0]) }),
+      (Consumer {
+        it.insertUnifiedEvent(1, events[0])
+        it.flushPendingEvents()
+      }),
       (Consumer { it.deleteEvents(1, 1, 1, Common.Event.Kind.SESSION, 1, 1) }),
       (Consumer {
         it.queryUnifiedEventGroups(
@@ -69,7 +76,12 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
       }),
       (Consumer { it.queryUnifiedEvents() }),
       (Consumer { assertThat(it.getBytes(BytesRequest.getDefaultInstance())).isEqualTo(null) }),
-      (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }))
+      (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }),
+      (Consumer { table ->
+        val previousRun = createPreviousRun(sessionStarted(1, 1, 1, 1))
+        table.restoreSessions(previousRun.connection, 1)
+        previousRun.disconnect()
+      }))
   }
 
   private fun insertData(count: Int, incrementGroupId: Boolean): List<Common.Event> {
@@ -282,6 +294,78 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
                    SESSION_1_1_4)
   }
 
+  @Test
+  fun batchedInsertsAreWrittenWhenBatchIsFull() {
+    val stats = BatchedInsertQueue.Stats()
+    val database = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    val batchedTable = UnifiedEventsTable(3, stats)
+    batchedTable.initialize(database.connection)
+
+    batchedTable.insertUnifiedEvent(1, events[0])
+    batchedTable.insertUnifiedEvent(1, events[1])
+    assertThat(stats.queueDepth).isEqualTo(2L)
+    assertThat(stats.flushCount).isEqualTo(0L)
+
+    batchedTable.insertUnifiedEvent(1, events[2])
+    assertThat(stats.queueDepth).isEqualTo(0L)
+    assertThat(stats.flushCount).isEqualTo(1L)
+    assertThat(stats.flushedRowCount).isEqualTo(3L)
+    database.disconnect()
+  }
+
+  @Test
+  fun batchedInsertsAreVisibleToQueries() {
+    val stats = BatchedInsertQueue.Stats()
+    val database = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    val batchedTable = UnifiedEventsTable(100, stats)
+    batchedTable.initialize(database.connection)
+
+    events.forEach { batchedTable.insertUnifiedEvent(1, it) }
+    assertThat(stats.queueDepth).isEqualTo(events.size.toLong())
+
+    // Querying flushes the pending events first.
+    assertThat(batchedTable.queryUnifiedEvents()).containsExactlyElementsIn(events)
+    assertThat(stats.queueDepth).isEqualTo(0L)
+
+    // Same for deletion: pending events in the deleted range must be removed too.
+    batchedTable.insertUnifiedEvent(1, eventBuilder(Common.Event.Kind.SESSION, false, 4, 4, -1, 20))
+    batchedTable.deleteEvents(1, 4, 4, Common.Event.Kind.SESSION, 20, 20)
+    assertThat(batchedTable.queryUnifiedEvents()).containsExactlyElementsIn(events)
+    database.disconnect()
+  }
+
+  @Test
+  fun restoreSessions() {
+    val endedSession = sessionStarted(7, 3, 100, 10)
+    val runningSession = sessionStarted(7, 3, 200, 30)
+    val endedSessionEvent = eventBuilder(Common.Event.Kind.PROCESS, false, 3, 1, 0, 15)
+    val runningSessionEvent = eventBuilder(Common.Event.Kind.PROCESS, false, 3, 1, 0, 40)
+    val previousRun = createPreviousRun(endedSession,
+                                        eventBuilder(Common.Event.Kind.SESSION, true, 3, 100, 0, 20),
+                                        endedSessionEvent,
+                                        eventBuilder(Common.Event.Kind.PROCESS, false, 4, 2, 0, 15), // Another process.
+                                        eventBuilder(Common.Event.Kind.PROCESS, false, 3, 3, 0, 25), // Outside of both sessions.
+                                        runningSession,
+                                        runningSessionEvent)
+    val bytes = BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("trace")).build()
+    UnifiedEventsTable().apply {
+      initialize(previousRun.connection)
+      insertBytes(7, "trace", bytes)
+    }
+
+    // Only the most recent session is restored, and it is ended at its last event.
+    assertThat(table.restoreSessions(previousRun.connection, 1)).isEqualTo(1)
+    assertThat(table.queryUnifiedEvents()).containsExactly(
+      runningSession, runningSessionEvent, eventBuilder(Common.Event.Kind.SESSION, true, 3, 200, 0, 40))
+    assertThat(table.getBytes(BytesRequest.newBuilder().setStreamId(7).setId("trace").build())).isEqualTo(bytes)
+
+    assertThat(table.restoreSessions(previousRun.connection, 2)).isEqualTo(2)
+    assertThat(table.queryUnifiedEvents()).containsExactly(
+      runningSession, runningSessionEvent, eventBuilder(Common.Event.Kind.SESSION, true, 3, 200, 0, 40),
+      endedSession, endedSessionEvent, eventBuilder(Common.Event.Kind.SESSION, true, 3, 100, 0, 20))
+    previousRun.disconnect()
+  }
+
   @Test
   fun queryReturnsSameStatement() {
     val results = table.executeOneTimeQuery("SELECT * FROM [UnifiedEventsTable]", arrayOf())
@@ -312,6 +396,21 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     assertThat(actualResults).containsExactlyElementsIn(expectedResults)
   }
 
+  private fun createPreviousRun(vararg events: Common.Event): DataStoreDatabase {
+    val database = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    val previousTable = UnifiedEventsTable()
+    previousTable.initialize(database.connection)
+    events.forEach { previousTable.insertUnifiedEvent(7, it) }
+    return database
+  }
+
+  private fun sessionStarted(streamId: Long, pid: Int, sessionId: Long, timestamp: Long): Common.Event {
+    return eventBuilder(Common.Event.Kind.SESSION, false, pid, sessionId, 0, timestamp).toBuilder()
+      .setSession(Common.SessionData.newBuilder().setSessionStarted(
+        Common.SessionData.SessionStarted.newBuilder().setStreamId(streamId).setPid(pid).setSessionId(sessionId)))
+      .build()
+  }
+
   private fun eventBuilder(kind: Common.Event.Kind,
                            isEnded: Boolean,
                            pid: Int,
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller
+
+import com.android.testutils.VirtualTimeScheduler
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.idea.io.grpc.Status
+import com.android.tools.idea.io.grpc.StatusRuntimeException
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+class PollSchedulerTest {
+  private val timer = VirtualTimeScheduler()
+  private val errors = mutableListOf<Throwable>()
+  private val logService =
+    object : FakeLogService() {
+      private val logger =
+        object : FakeLogger() {
+          override fun error(t: Throwable) {
+            errors.add(t)
+          }
+        }
+
+      override fun getLogger(category: String) = logger
+
+      override fun getLogger(clazz: Class<*>) = logger
+    }
+  private val scheduler = PollScheduler(timer, LongSupplier { timer.currentTimeNanos }, logService)
+
+  @Test
+  fun idleRunnerBacksOff() {
+    val runner = FakeRunner(itemCount = 0)
+    scheduler.schedule(runner)
+    timer.advanceBy(0)
+    val stats = scheduler.stats.single()
+    assertThat(stats.delayNs).isEqualTo(PollRunner.POLLING_DELAY_NS)
+
+    // The first few empty polls keep the original period.
+    timer.advanceBy(PollRunner.POLLING_DELAY_NS * (PollScheduler.EMPTY_POLLS_BEFORE_BACKOFF - 2))
+    assertThat(stats.delayNs).isEqualTo(PollRunner.POLLING_DELAY_NS)
+    timer.advanceBy(PollRunner.POLLING_DELAY_NS)
+    assertThat(stats.delayNs).isEqualTo(PollRunner.POLLING_DELAY_NS * 2)
+
+    timer.advanceBy(10, TimeUnit.SECONDS)
+    assertThat(stats.delayNs).isEqualTo(PollScheduler.MAX_DELAY_NS)
+    assertThat(stats.emptyPollCount).isEqualTo(stats.pollCount)
+
+    // Receiving data again resets the period.
+    runner.itemCount = 1
+    timer.advanceBy(PollScheduler.MAX_DELAY_NS)
+    assertThat(stats.delayNs).isEqualTo(PollRunner.POLLING_DELAY_NS)
+  }
+
+  @Test
+  fun busyRunnerSpeedsUp() {
+    val runner = FakeRunner(itemCount = 100)
+    scheduler.schedule(runner)
+    timer.advanceBy(0)
+    val stats = scheduler.stats.single()
+    assertThat(stats.delayNs).isEqualTo(PollRunner.POLLING_DELAY_NS / 2)
+
+    timer.advanceBy(1, TimeUnit.SECONDS)
+    assertThat(stats.delayNs).isEqualTo(PollScheduler.MIN_DELAY_NS)
+    assertThat(runner.pollCount).isGreaterThan((TimeUnit.SECONDS.toNanos(1) / PollRunner.POLLING_DELAY_NS).toInt())
+  }
+
+  @Test
+  fun unreportedRunnerKeepsItsPeriod() {
+    val runner = FakeRunner(itemCount = null)
+    scheduler.schedule(runner)
+    timer.advanceBy(PollRunner.POLLING_DELAY_NS * 10)
+    assertThat(runner.pollCount).isEqualTo(11)
+    assertThat(scheduler.stats.single().delayNs).isEqualTo(PollRunner.POLLING_DELAY_NS)
+  }
+
+  @Test
+  fun stoppedRunnerIsNotPolledAgain() {
+    val runner = FakeRunner(itemCount = 1)
+    scheduler.schedule(runner)
+    timer.advanceBy(0)
+    runner.stop()
+    assertThat(runner.isDone).isTrue()
+
+    timer.advanceBy(1, TimeUnit.SECONDS)
+    assertThat(runner.pollCount).isEqualTo(1)
+    assertThat(scheduler.stats).isEmpty()
+  }
+
+  @Test
+  fun shutdownStopsAllRunners() {
+    val runners = List(3) { FakeRunner(itemCount = 1) }
+    runners.forEach(scheduler::schedule)
+    timer.advanceBy(0)
+    scheduler.shutdown()
+    runners.forEach { assertThat(it.isDone).isTrue() }
+    assertThat(scheduler.stats).isEmpty()
+  }
+
+  @Test
+  fun failingRunnerIsReportedAndDropped() {
+    val runner = FakeRunner(itemCount = 1)
+    scheduler.schedule(runner)
+    timer.advanceBy(0)
+    runner.failure = IllegalStateException("poll failed")
+    timer.advanceBy(PollRunner.POLLING_DELAY_NS)
+    assertThat(errors).containsExactly(runner.failure)
+    assertThat(runner.isDone).isTrue()
+    assertThat(scheduler.stats).isEmpty()
+
+    timer.advanceBy(1, TimeUnit.SECONDS)
+    assertThat(runner.pollCount).isEqualTo(2)
+  }
+
+  @Test
+  fun pollExceedingDeadlineIsSkipped() {
+    val runner = FakeRunner(itemCount = 1)
+    scheduler.schedule(runner)
+    timer.advanceBy(0)
+    runner.failure = StatusRuntimeException(Status.DEADLINE_EXCEEDED)
+    timer.advanceBy(PollRunner.POLLING_DELAY_NS * PollScheduler.EMPTY_POLLS_BEFORE_BACKOFF)
+    val stats = scheduler.stats.single()
+    assertThat(errors).isEmpty()
+    assertThat(runner.isDone).isFalse()
+    // Polls that time out count as empty, so the runner backs off from the slow service.
+    assertThat(stats.emptyPollCount).isEqualTo(PollScheduler.EMPTY_POLLS_BEFORE_BACKOFF.toLong())
+    assertThat(stats.delayNs).isEqualTo(PollRunner.POLLING_DELAY_NS * 2)
+
+    runner.failure = null
+    timer.advanceBy(stats.delayNs)
+    assertThat(stats.delayNs).isEqualTo(PollRunner.POLLING_DELAY_NS)
+  }
+
+  private class FakeRunner(var itemCount: Int?) : PollRunner(POLLING_DELAY_NS) {
+    var pollCount = 0
+    var failure: RuntimeException? = null
+
+    override fun poll() {
+      pollCount++
+      failure?.let { throw it }
+      itemCount?.let { onPolledItems(it) }
+    }
+  }
+}